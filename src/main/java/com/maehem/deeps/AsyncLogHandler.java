@@ -0,0 +1,167 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps;
+
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Handler that queues records in a fixed size ring buffer and passes them
+ * to another handler on its own thread.
+ *
+ * The thread that logs only stores a reference.  If the buffer is full,
+ * records below INFO are dropped rather than making the logging thread
+ * wait, and the number dropped is reported once there is room again.
+ * INFO and above wait for room so they are never lost.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class AsyncLogHandler extends Handler {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Handler target;
+    private final LogRecord[] ring;
+    private int head = 0;  // Next record to publish.
+    private int count = 0;
+    private int dropped = 0;
+    private boolean closed = false;
+    private boolean busy = false; // Worker is publishing a record.
+
+    private final Thread worker;
+
+    public AsyncLogHandler( Handler target ) {
+        this(target, DEFAULT_CAPACITY);
+    }
+
+    public AsyncLogHandler( Handler target, int capacity ) {
+        this.target = target;
+        this.ring = new LogRecord[capacity];
+        this.worker = new Thread(this::drain, "Log Writer");
+        worker.setDaemon(true);
+        worker.start();
+        
+        // Push out what is left when the app quits.
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "Log Flush"));
+    }
+
+    @Override
+    public void publish( LogRecord record ) {
+        if ( !isLoggable(record) || !target.isLoggable(record) ) {
+            return;
+        }
+        // The source is inferred from the stack, so find it on this thread.
+        record.getSourceClassName();
+        synchronized (ring) {
+            if ( closed ) {
+                return;
+            }
+            if ( count == ring.length && record.getLevel().intValue() < Level.INFO.intValue() ) {
+                dropped++;
+                return;
+            }
+            while ( count == ring.length && !closed && worker.isAlive() ) {
+                try {
+                    ring.wait(100);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if ( count == ring.length ) {
+                return;
+            }
+            ring[(head + count) % ring.length] = record;
+            count++;
+            ring.notifyAll();
+        }
+    }
+
+    private void drain() {
+        while ( true ) {
+            LogRecord record;
+            int lost;
+            synchronized (ring) {
+                while ( count == 0 && !closed ) {
+                    try {
+                        ring.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if ( count == 0 ) {
+                    ring.notifyAll();
+                    return;
+                }
+                record = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                count--;
+                lost = dropped;
+                dropped = 0;
+                busy = true;
+            }
+            try {
+                if ( lost > 0 ) {
+                    target.publish(new LogRecord(Level.WARNING,
+                            "Log buffer was full, " + lost + " records dropped."));
+                }
+                target.publish(record);
+            } catch (RuntimeException ex) {
+                reportError(null, ex, ErrorManager.WRITE_FAILURE);
+            }
+            synchronized (ring) {
+                busy = false;
+                ring.notifyAll(); // Wake flush()
+            }
+        }
+    }
+
+    /**
+     * Wait until queued records are written, then flush target.
+     */
+    @Override
+    public void flush() {
+        synchronized (ring) {
+            while ( (count > 0 || busy) && worker.isAlive() ) {
+                try {
+                    ring.wait(100);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        target.flush();
+    }
+
+    @Override
+    public void close() throws SecurityException {
+        synchronized (ring) {
+            closed = true;
+            ring.notifyAll();
+        }
+        try {
+            worker.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+}
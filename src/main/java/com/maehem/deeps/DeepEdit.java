@@ -18,7 +18,6 @@ package com.maehem.deeps;
 
 import static com.maehem.deeps.Deeps.log;
 import com.maehem.deeps.editor.EditorMainView;
-import java.util.logging.Handler;
 import java.util.logging.Level;
 import javafx.application.Application;
 import javafx.stage.Stage;
@@ -38,10 +37,9 @@ public class DeepEdit extends Application {
         //log.setUseParentHandlers(false);
         //log.addHandler(handler);
 
-        log.setLevel(Level.FINER);
-        for (Handler h : log.getHandlers()) {
-            h.setLevel(Level.FINER);
-        }
+        // Only INFO and up ever reached the console, so don't build
+        // FINER records.  Console logging runs on its own thread.
+        log.useAsyncConsole(Level.INFO);
 
         new EditorMainView(window);        
     }
@@ -17,15 +17,35 @@
 
 package com.maehem.deeps;
 
-import java.util.logging.ConsoleHandler;
-import java.util.logging.Handler;
+import com.maehem.deeps.game.Camera;
+import com.maehem.deeps.game.EntityRenderer;
+import com.maehem.deeps.game.EntityStore;
+import com.maehem.deeps.game.GameLoop;
+import com.maehem.deeps.game.GameRenderer;
+import com.maehem.deeps.game.GameWorld;
+import com.maehem.deeps.game.LightMap;
+import com.maehem.deeps.game.MotionSystem;
+import com.maehem.deeps.game.RailNetwork;
+import com.maehem.deeps.game.RailSystem;
+import com.maehem.deeps.game.SoundMap;
+import com.maehem.deeps.game.SoundSystem;
+import com.maehem.deeps.game.VisionGrid;
+import com.maehem.deeps.game.VisionSystem;
+import com.maehem.deeps.game.WearSystem;
+import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.view.ZoneView;
+import java.io.File;
+import java.util.List;
 import java.util.logging.Level;
-import java.util.logging.Logger;
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.scene.Group;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Text;
 import javafx.stage.Stage;
 
 /**
@@ -33,14 +53,18 @@ import javafx.stage.Stage;
  * @author Mark J Koch ( @maehem on GitHub )
  */
 public class Deeps  extends Application {
-    public static final Logger log = Logger.getLogger("deeps");
+    public static final DeepsLogger log = DeepsLogger.getLogger("deeps");
 
     private static final int WIDTH = 800;
     private static final int HEIGHT = 600;
     
+    private static final long METRICS_INTERVAL = 500_000_000L; // nanos
+    private static final int AMBIENT_LIGHT = 30;
+
     private Stage window;
-    private Group playArea = new Group();
-    private final StackPane topArea = new StackPane(playArea);
+    private final Pane playArea = new Pane();
+    private final Text metricsText = new Text();
+    private final StackPane topArea = new StackPane(playArea, metricsText);
     private final StackPane root = new StackPane(topArea);
     private final Scene scene = new Scene(root); //, 1280, 920);
 
@@ -52,16 +76,9 @@ public class Deeps  extends Application {
  
     @Override
     public void start(Stage window) throws Exception {
-        ConsoleHandler handler
-                    = new ConsoleHandler();
-
-        // Add console handler as handler of logs
-        log.addHandler(handler);
-
-        log.setLevel(Level.FINER);
-        for (Handler h : log.getHandlers()) {
-            h.setLevel(Level.FINER);
-        }
+        // Only INFO and up is wanted at play, so don't build FINER records
+        // while drawing.  Console logging runs on its own thread.
+        log.useAsyncConsole(Level.INFO);
 
         this.window = window;
         window.setScene(this.scene);
@@ -73,12 +90,90 @@ public class Deeps  extends Application {
         //quit when the window is close().
         window.setOnCloseRequest(e -> Platform.exit());
 
-        // Maybe catch exception here to report what kind?
-        //playArea.getChildren().add(new StartingZone());
-        
+        // Only the zone view moves, the play area stays put.
+        playArea.setClip(new Rectangle(WIDTH, HEIGHT));
+        StackPane.setAlignment(metricsText, Pos.TOP_LEFT);
+        metricsText.setFill(Color.LIGHTGREEN);
+        root.setStyle("-fx-background-color: black;");
+
+        startGame(getParameters().getRaw());
+
         window.show();        
     }
 
+    /**
+     * Start the game loop on a zone.
+     * 
+     * Arguments:  &lt;project dir&gt; [zone name]
+     * With no zone name, the first zone found is used.
+     */
+    private void startGame( List<String> args ) {
+        if ( args.isEmpty() ) {
+            log.log(Level.WARNING, "No game project given.  Usage: Deeps <project dir> [zone name]");
+            return;
+        }
+        try {
+            GameWorld world = new GameWorld(new File(args.get(0)));
+            List<String> zones = world.getZoneNames();
+            if ( zones.isEmpty() ) {
+                log.log(Level.WARNING, "Game project has no zones: {0}", args.get(0));
+                return;
+            }
+            Zone zone = world.loadZone(args.size() > 1 ? args.get(1) : zones.get(0));
+            ZoneView zoneView = new ZoneView(zone, ZoneView.RenderMode.CANVAS);
+            playArea.getChildren().add(zoneView);
+
+            LightMap light = new LightMap(zone);
+            zoneView.setLightMap(light.getLevels(), AMBIENT_LIGHT);
+            light.addListener(zoneView::repaint);
+
+            Camera camera = new Camera(zoneView, WIDTH, HEIGHT);
+            EntityStore entities = EntityStore.load(zone);
+            EntityRenderer entityRenderer = new EntityRenderer(entities, zoneView, camera, WIDTH, HEIGHT);
+            playArea.getChildren().add(entityRenderer.getCanvas());
+
+            GameLoop loop = new GameLoop();
+            loop.addSystem(new MotionSystem(entities, zone));
+            loop.addSystem(new RailSystem(entities, new RailNetwork(zone)));
+            loop.addSystem(camera);
+            // No player yet, so the player sees from the middle of the screen.
+            VisionSystem vision = new VisionSystem(entities, new VisionGrid(zone));
+            loop.addSystem((tick, dt) -> vision.setViewer((int) camera.getX(), (int) camera.getY()));
+            loop.addSystem(vision);
+            loop.addSystem(new SoundSystem(entities, new SoundMap(zone)));
+            // Fixtures lose a point of durability a minute.
+            loop.addSystem(new WearSystem(zone, GameLoop.DEFAULT_TICK_RATE * 60, loop.getTick()));
+            loop.addRenderer(camera);
+            loop.addRenderer(entityRenderer);
+            loop.addRenderer(new GameRenderer() {
+                private long lastShown = 0;
+                
+                @Override
+                public void render(double alpha) {
+                    long now = System.nanoTime();
+                    if ( now - lastShown > METRICS_INTERVAL ) {
+                        lastShown = now;
+                        metricsText.setText(loop.getMetrics().toString());
+                    }
+                }
+            });
+
+            // Arrow keys pan for now.
+            scene.setOnKeyPressed((e) -> {
+                switch (e.getCode()) {
+                    case LEFT:  camera.moveBy(-4, 0); break;
+                    case RIGHT: camera.moveBy(4, 0);  break;
+                    case UP:    camera.moveBy(0, -4); break;
+                    case DOWN:  camera.moveBy(0, 4);  break;
+                }
+            });
+            window.setOnHidden((e) -> loop.stop());
+            loop.start();
+        } catch (Exception ex) {
+            log.log(Level.SEVERE, "Could not start game!", ex);
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
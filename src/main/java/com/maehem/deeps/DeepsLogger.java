@@ -0,0 +1,186 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps;
+
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Thin front for a java.util.logging Logger.
+ *
+ * The fixed argument log() methods check the level before anything is
+ * built, so a disabled call costs a level compare and no parameter array.
+ * Call sites that would box or format anything expensive can check
+ * isLoggable() first.
+ *
+ * Records carry the class and method that called us, found when the record
+ * is made, so handlers on other threads, i.e. AsyncLogHandler, report the
+ * real source and not this class.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public final class DeepsLogger {
+
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private final Logger logger;
+
+    private DeepsLogger( Logger logger ) {
+        this.logger = logger;
+    }
+
+    public static DeepsLogger getLogger( String name ) {
+        return new DeepsLogger(Logger.getLogger(name));
+    }
+
+    /**
+     * @return the underlying JUL logger.
+     */
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public boolean isLoggable( Level level ) {
+        return logger.isLoggable(level);
+    }
+
+    public void log( Level level, String msg ) {
+        if ( logger.isLoggable(level) ) {
+            publish(level, msg, null, null);
+        }
+    }
+
+    public void log( Level level, String msg, Object p0 ) {
+        if ( logger.isLoggable(level) ) {
+            publish(level, msg, new Object[]{p0}, null);
+        }
+    }
+
+    public void log( Level level, String msg, Object p0, Object p1 ) {
+        if ( logger.isLoggable(level) ) {
+            publish(level, msg, new Object[]{p0, p1}, null);
+        }
+    }
+
+    public void log( Level level, String msg, Object p0, Object p1, Object p2 ) {
+        if ( logger.isLoggable(level) ) {
+            publish(level, msg, new Object[]{p0, p1, p2}, null);
+        }
+    }
+
+    public void log( Level level, String msg, Object p0, Object p1, Object p2, Object p3 ) {
+        if ( logger.isLoggable(level) ) {
+            publish(level, msg, new Object[]{p0, p1, p2, p3}, null);
+        }
+    }
+
+    public void log( Level level, String msg, Object p0, Object p1, Object p2, Object p3, Object p4 ) {
+        if ( logger.isLoggable(level) ) {
+            publish(level, msg, new Object[]{p0, p1, p2, p3, p4}, null);
+        }
+    }
+
+    public void log( Level level, String msg, Object[] params ) {
+        if ( logger.isLoggable(level) ) {
+            publish(level, msg, params, null);
+        }
+    }
+
+    public void log( Level level, String msg, Throwable thrown ) {
+        if ( logger.isLoggable(level) ) {
+            publish(level, msg, null, thrown);
+        }
+    }
+
+    /**
+     * Hand a record to the logger with the caller as its source.
+     */
+    private void publish( Level level, String msg, Object[] params, Throwable thrown ) {
+        LogRecord record = new LogRecord(level, msg);
+        record.setLoggerName(logger.getName());
+        record.setParameters(params);
+        record.setThrown(thrown);
+        WALKER.walk(frames -> frames
+                .filter(f -> !f.getClassName().equals(DeepsLogger.class.getName()))
+                .findFirst()
+        ).ifPresent(f -> {
+            record.setSourceClassName(f.getClassName());
+            record.setSourceMethodName(f.getMethodName());
+        });
+        logger.log(record);
+    }
+
+    public void severe( String msg ) {
+        log(Level.SEVERE, msg);
+    }
+
+    public void warning( String msg ) {
+        log(Level.WARNING, msg);
+    }
+
+    public void info( String msg ) {
+        log(Level.INFO, msg);
+    }
+
+    public void fine( String msg ) {
+        log(Level.FINE, msg);
+    }
+
+    public void setLevel( Level level ) {
+        logger.setLevel(level);
+    }
+
+    public Level getLevel() {
+        return logger.getLevel();
+    }
+
+    public void addHandler( Handler h ) {
+        logger.addHandler(h);
+    }
+
+    public void removeHandler( Handler h ) {
+        logger.removeHandler(h);
+    }
+
+    public Handler[] getHandlers() {
+        return logger.getHandlers();
+    }
+
+    public void setUseParentHandlers( boolean use ) {
+        logger.setUseParentHandlers(use);
+    }
+
+    /**
+     * Log to the console through an AsyncLogHandler so that formatting and
+     * console I/O happen on the logging thread.
+     *
+     * @param level lowest level to log
+     */
+    public void useAsyncConsole( Level level ) {
+        ConsoleHandler console = new ConsoleHandler();
+        console.setLevel(level);
+        AsyncLogHandler handler = new AsyncLogHandler(console);
+        handler.setLevel(level);
+
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        logger.setLevel(level);
+    }
+}
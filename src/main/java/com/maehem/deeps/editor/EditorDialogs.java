@@ -132,9 +132,19 @@ public class EditorDialogs {
                     project.setFilePath(new File(pathText.getText()));
                     project.setEdited(true);
                 }
-                project.doSave();
-                // Cause UI to rebuild.
-                project.notifyProjectChanged(project, EditorProjectListener.ChangeType.LOADED);
+                // Cause UI to rebuild once the save is written.
+                project.addListener(new EditorProjectListener() {
+                    @Override
+                    public void projectStateChanged(EditorProject ep, ChangeType type) {
+                        if ( type == ChangeType.SAVED || type == ChangeType.CLEARED ) {
+                            project.removeListener(this);
+                        }
+                        if ( type == ChangeType.SAVED ) {
+                            project.notifyProjectChanged(project, ChangeType.LOADED);
+                        }
+                    }
+                });
+                project.doSaveAsync();
 
                 return "OK";
             }
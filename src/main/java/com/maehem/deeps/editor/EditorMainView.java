@@ -53,9 +53,12 @@ public class EditorMainView {
         EditorProject project = EditorProject.getInstance();
         project.setStage(stage);
         project.setScene(scene);
-        project.notifyProjectChanged(project,
-                EditorProjectListener.ChangeType.LOADED
-        );
+        // An open still running sends LOADED itself when it is done.
+        if ( !project.isLoading() ) {
+            project.notifyProjectChanged(project,
+                    EditorProjectListener.ChangeType.LOADED
+            );
+        }
 
     }
     
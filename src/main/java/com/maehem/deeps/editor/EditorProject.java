@@ -22,8 +22,13 @@ import com.maehem.deeps.editor.EditorZoneEditor.Function;
 import com.maehem.deeps.model.GameModel;
 import com.maehem.deeps.model.SheetModel;
 import com.maehem.deeps.model.Tile;
+import com.maehem.deeps.model.ZoneBinaryFormat;
+import com.maehem.deeps.model.ZoneChunkFormat;
 import com.maehem.deeps.model.ZoneFileFormatException;
+import com.maehem.deeps.model.ZoneFileConverter;
+import com.maehem.deeps.model.ZoneFiles;
 import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneSnapshot;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -32,12 +37,24 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
@@ -57,8 +74,22 @@ public final class EditorProject implements GameModel {
     private File projectDir = null;
     private boolean edited = false;
     private boolean loaded = false;
+    private boolean loading = false; // An open is running on openExecutor.
     private final ArrayList<Zone> zones = new ArrayList<>();
-    private final ArrayList<SheetModel> sheets = new ArrayList<>();
+    // Read by the zone loader threads while a project opens.
+    private final CopyOnWriteArrayList<SheetModel> sheets = new CopyOnWriteArrayList<>();
+    private final HashMap<Zone, File> zoneFiles = new HashMap<>(); // File each zone was read from or last written to.
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor((r) -> {
+        Thread t = new Thread(r, "Project Save");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService openExecutor = Executors.newSingleThreadExecutor((r) -> {
+        Thread t = new Thread(r, "Project Open");
+        t.setDaemon(true);
+        return t;
+    });
+    private int openCount = 0; // Bumped by each open and clear, so a stale open is dropped.
 
     private Stage stage;
     private Scene scene;
@@ -118,10 +149,11 @@ public final class EditorProject implements GameModel {
 
         ArrayList<String> projects = getPreviousProjectList();
         if ( !projects.isEmpty() ) {
+            // LOADED comes from openZones() once the project is read.
             loadProject(new File(projects.get(0)));
+        } else {
+            notifyProjectChanged(this, ChangeType.LOADED);
         }
-        
-        notifyProjectChanged(this, ChangeType.LOADED);
     }
 
     public static EditorProject getInstance() {
@@ -135,20 +167,54 @@ public final class EditorProject implements GameModel {
     public boolean isLoaded() {
         return loaded;
     }
+
+    /**
+     * @return true while a project is being read by loadProject()
+     */
+    public boolean isLoading() {
+        return loading;
+    }
     
     public boolean isEdited() {
         return edited;
     }
 
+    /**
+     * Open a project without blocking the UI.
+     * 
+     * Sheets and zones are read on background threads.  The sheets are
+     * added on the FX thread before the zones are read, as zones look up
+     * their sheets while loading.  Listeners get ChangeType.LOADED once the
+     * zones are in.  Must be called on the FX thread.
+     * 
+     * @param file project directory
+     */
     public void loadProject( File file ) {
+        int open = ++openCount;
+        loading = true;
+        openExecutor.execute(() -> {
             try {
-                readFile( file );
-                loaded = true;
-                rememberPreviousProject(file);
-                notifyProjectChanged(this, ChangeType.LOADED);
+                Properties p = readProperties(file);
+                List<SheetModel> loadedSheets = readSheets(file);
+                Platform.runLater(() -> {
+                    if ( open == openCount ) {
+                        openSheets(file, p, loadedSheets);
+                        openExecutor.execute(() -> {
+                            List<File> files = ZoneFiles.findAll(new File(file, "zones"));
+                            List<Zone> loadedZones = readZones(files);
+                            Platform.runLater(() -> openZones(open, file, files, loadedZones));
+                        });
+                    }
+                });
             } catch (FileNotFoundException ex) {
-                Logger.getLogger(EditorProject.class.getName()).log(Level.SEVERE, null, ex);
+                log.log(Level.SEVERE, null, ex);
+                Platform.runLater(() -> {
+                    if ( open == openCount ) {
+                        loading = false;
+                    }
+                });
             }
+        });
     }
     
     public void clear() {
@@ -165,8 +231,11 @@ public final class EditorProject implements GameModel {
             setFocusedMapTile(null);
             setCurrentSheetTile(-1L, null);
             setFunction(Function.SELECT);
+            openCount++;
+            loading = false;
             sheets.clear();
             zones.clear();
+            zoneFiles.clear();
             loaded = false;
             notifyProjectChanged(this, ChangeType.CLEARED);
         }
@@ -250,75 +319,264 @@ public final class EditorProject implements GameModel {
         return sheets.get(0);
     }
 
-    public void doSave() {
+    /**
+     * Save the project without blocking the UI.
+     * 
+     * The dirty zones are copied on the calling (FX) thread and written on a
+     * background thread.  Editing can continue while the write is in flight.
+     * Listeners get ChangeType.SAVED when the write is done.
+     */
+    public void doSaveAsync() {
         if (projectDir == null) {
             log.severe("Save called on NULL project path!");
             return;
         }
-        // save data
-        writeFile();
-        setEdited(false);
-        notifyProjectChanged(this, ChangeType.SAVED);
+        SaveJob job = prepareSave();
+        saveExecutor.execute(() -> {
+            boolean ok = job.write();
+            Platform.runLater(() -> finishSave(job, ok));
+        });
+    }
+
+    /**
+     * Write a copy of the project for the game to run:  the properties,
+     * the sheets, and every zone in binary (or chunked) form.  Unsaved
+     * edits are saved first.  The copy is written on the save thread, after
+     * any save in flight.  Must be called on the FX thread.
+     * 
+     * @param dir directory to write the copy into, not the project itself
+     * @param done told on the FX thread whether the export worked
+     */
+    public void exportForGame( File dir, Consumer<Boolean> done ) {
+        if (projectDir == null) {
+            log.severe("Export called on NULL project path!");
+            return;
+        }
+        if ( isEdited() ) {
+            doSaveAsync();
+        }
+        File fromDir = projectDir;
+        saveExecutor.execute(() -> {
+            boolean ok = false;
+            try {
+                File sheetsOut = new File(dir, "sheets");
+                if ( !sheetsOut.isDirectory() && !sheetsOut.mkdirs() ) {
+                    throw new IOException("Could not make directory: " + sheetsOut);
+                }
+                Files.copy(new File(fromDir, PROJECTS_FILE).toPath(), new File(dir, PROJECTS_FILE).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                File[] sheetFiles = new File(fromDir, "sheets").listFiles();
+                if ( sheetFiles != null ) {
+                    for ( File f : sheetFiles ) {
+                        if ( f.isFile() ) {
+                            Files.copy(f.toPath(), new File(sheetsOut, f.getName()).toPath(),
+                                    StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    }
+                }
+                ZoneFileConverter.export(this, new File(fromDir, "zones"), new File(dir, "zones"));
+                ok = true;
+            } catch (IOException | ZoneFileFormatException ex) {
+                log.log(Level.SEVERE, "Could not export project to: " + dir, ex);
+            }
+            boolean result = ok;
+            Platform.runLater(() -> done.accept(result));
+        });
     }
 
-    private void writeFile() {
+    /**
+     * Snapshot everything that needs writing.  Must be called on the FX thread.
+     */
+    private SaveJob prepareSave() {
         // Save World Properties File
         Properties p = new Properties();
         p.put("name", getName());
 
-        try {
-            // Save Zone(s) information
-            File propertiesFile = new File(projectDir, "project.properties");
-            try (FileOutputStream fos = new FileOutputStream(propertiesFile)) {
-                log.log(Level.INFO, "Store {0}", propertiesFile.getName());
-                p.store(fos, "Deeps Project");
+        SaveJob job = new SaveJob(projectDir, p);
+        File zonesDir = new File(projectDir, "zones");
+        // Only zones that changed are backed up and written.
+        for ( Zone z : getZones() ) {
+            // Chunked zones are too big to write as text and stay chunked.
+            boolean chunked = z.getStorageMode() == Zone.StorageMode.CHUNKED;
+            File zoneFile = new File(zonesDir, z.getName() + (chunked ? ZoneChunkFormat.EXTENSION : ZoneFiles.TEXT_EXTENSION));
+            File oldFile = zoneFiles.get(z);
+            if ( !z.isDirty() && zoneFile.equals(oldFile) && zoneFile.exists()
+                    && ZoneFiles.twins(zoneFile).isEmpty() ) {
+                continue;
             }
-            
-            File zonesDir = new File(projectDir, "zones");
-            if ( !zonesDir.exists() ) {
-                log.log(Level.INFO, "zones directory didn't exist. Creating it now...");
-                zonesDir.mkdir();
+            if ( chunked ) {
+                job.add(z, ZoneChunkFormat.snapshot(z), zoneFile, oldFile);
+            } else {
+                job.add(z, z.snapshot(), zoneFile, oldFile);
             }
-            
-            
-            // Backup Zone files before writing new files.
-            File backupZones = new File(zonesDir,"backups");
-            backupZones.mkdir();
-            for (File zf: getZoneFiles()) {
-                File dest = new File(backupZones, 
-                        zf.getName() + "_" + Instant.now().toString() 
-                );
-                if ( zf.renameTo(dest) ) {
-                    zf.delete();
-                } else {
-                    log.log(Level.WARNING, 
-                            "backup of file: {0} did not succeed.", 
-                            zf.getName());
+            // Edits made while the write is in flight will mark it dirty again.
+            z.setDirty(false);
+        }
+        setEdited(false);
+
+        return job;
+    }
+
+    /**
+     * Record the outcome of a save.  Must be called on the FX thread.
+     */
+    private void finishSave( SaveJob job, boolean ok ) {
+        for ( SaveJob.Entry e : job.entries ) {
+            if ( e.saved ) {
+                zoneFiles.put(e.zone, e.zoneFile);
+                if ( e.chunks != null ) {
+                    try {
+                        // Unloaded chunks now come from the new file.
+                        e.chunks.saved(e.zoneFile);
+                    } catch (IOException | ZoneFileFormatException ex) {
+                        log.log(Level.SEVERE, "Could not reopen Zone file: " + e.zoneFile.getName(), ex);
+                    }
                 }
+            } else {
+                e.zone.setDirty(true);
+            }
+        }
+        if ( !ok ) {
+            log.log(Level.SEVERE, "Project save did not complete!");
+            setEdited(true);
+            return;
+        }
+        rememberPreviousProject(job.projectDir);
+        notifyProjectChanged(this, ChangeType.SAVED);
+    }
+
+    /**
+     * Files to write for one save.  Only touches the file system so that it
+     * can run off the FX thread.
+     */
+    private static final class SaveJob {
+
+        private static final class Entry {
+            final Zone zone;
+            final ZoneSnapshot snapshot;            // Text zone, or
+            final ZoneChunkFormat.Snapshot chunks;  // chunked zone.
+            final File zoneFile;
+            final File oldFile;
+            volatile boolean saved = false;
+
+            Entry( Zone zone, ZoneSnapshot snapshot, ZoneChunkFormat.Snapshot chunks, File zoneFile, File oldFile ) {
+                this.zone = zone;
+                this.snapshot = snapshot;
+                this.chunks = chunks;
+                this.zoneFile = zoneFile;
+                this.oldFile = oldFile;
             }
-            
-            for ( Zone z : getZones() ) {
-                File zoneFile = new File(zonesDir, z.getName() + ".zone");
-                log.log(Level.INFO, "Store Zone file: {0}", zoneFile.getName());
-                try (FileOutputStream zos = new FileOutputStream(zoneFile)) {
-                    z.store(zos);
+        }
+
+        final File projectDir;
+        final Properties properties;
+        final ArrayList<Entry> entries = new ArrayList<>();
+
+        SaveJob( File projectDir, Properties properties ) {
+            this.projectDir = projectDir;
+            this.properties = properties;
+        }
+
+        void add( Zone zone, ZoneSnapshot snapshot, File zoneFile, File oldFile ) {
+            entries.add(new Entry(zone, snapshot, null, zoneFile, oldFile));
+        }
+
+        void add( Zone zone, ZoneChunkFormat.Snapshot chunks, File zoneFile, File oldFile ) {
+            entries.add(new Entry(zone, null, chunks, zoneFile, oldFile));
+        }
+
+        /**
+         * @return true if every file was written.
+         */
+        boolean write() {
+            try {
+                // Save Zone(s) information
+                File propertiesFile = new File(projectDir, "project.properties");
+                try (FileOutputStream fos = new FileOutputStream(propertiesFile)) {
+                    log.log(Level.INFO, "Store {0}", propertiesFile.getName());
+                    properties.store(fos, "Deeps Project");
+                    fos.getFD().sync();
                 }
+
+                File zonesDir = new File(projectDir, "zones");
+                if ( !zonesDir.exists() ) {
+                    log.log(Level.INFO, "zones directory didn't exist. Creating it now...");
+                    zonesDir.mkdir();
+                }
+
+                File backupZones = new File(zonesDir,"backups");
+                backupZones.mkdir();
+                boolean ok = true;
+                for ( Entry e : entries ) {
+                    e.saved = writeZone(e, backupZones);
+                    ok &= e.saved;
+                }
+
+                return ok;
+            } catch (IOException ex) {
+                log.log(Level.SEVERE, null, ex);
+                return false;
             }
-            
-            rememberPreviousProject(projectDir);
-            
-        } catch (FileNotFoundException ex) {
-            log.log(Level.SEVERE, null, ex);
-        } catch (IOException ex) {
-            log.log(Level.SEVERE, null, ex);
+        }
+
+        /**
+         * Write to a temporary file and sync it to disk before the old
+         * file is moved to backups, so a failed write never loses the zone.
+         */
+        private boolean writeZone( Entry e, File backupDir ) {
+            File tmp = new File(e.zoneFile.getParentFile(), e.zoneFile.getName() + ".tmp");
+            log.log(Level.INFO, "Store Zone file: {0}", e.zoneFile.getName());
+            try {
+                try (FileOutputStream zos = new FileOutputStream(tmp)) {
+                    if ( e.chunks != null ) {
+                        e.chunks.write(zos);
+                    } else {
+                        e.snapshot.write(new OutputStreamWriter(zos));
+                    }
+                    zos.getFD().sync();
+                }
+
+                // Backup Zone file before moving new file in place.
+                backupZoneFile(backupDir, e.zoneFile);
+                if ( e.oldFile != null && !e.oldFile.equals(e.zoneFile) ) {
+                    // Zone was renamed or came from a binary file.
+                    backupZoneFile(backupDir, e.oldFile);
+                }
+                // Only the file saved may be left for the zone, or it
+                // could be read in place of the one saved.  See ZoneFiles.
+                for ( File twin : ZoneFiles.twins(e.zoneFile) ) {
+                    log.log(Level.INFO, "Move aside other file of Zone: {0}", twin.getName());
+                    backupZoneFile(backupDir, twin);
+                }
+                Files.move(tmp.toPath(), e.zoneFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+                return true;
+            } catch (IOException ex) {
+                log.log(Level.SEVERE, "Could not store Zone file: " + e.zoneFile.getName(), ex);
+                tmp.delete();
+                return false;
+            }
+        }
+    }
+
+    private static void backupZoneFile( File backupDir, File zf ) {
+        if ( !zf.exists() ) {
+            return;
+        }
+        File dest = new File(backupDir, 
+                zf.getName() + "_" + Instant.now().toString() 
+        );
+        if ( !zf.renameTo(dest) ) {
+            log.log(Level.WARNING, 
+                    "backup of file: {0} did not succeed.", 
+                    zf.getName());
         }
     }
 
-    private void readFile(File projDir) throws FileNotFoundException {
+    private static Properties readProperties( File projDir ) throws FileNotFoundException {
         File propertiesFile = new File(projDir, "project.properties");
         Properties p = new Properties();
-        try {
-            FileInputStream is = new FileInputStream(propertiesFile);
+        try ( FileInputStream is = new FileInputStream(propertiesFile) ) {
             p.load(is);
         } catch (FileNotFoundException ex) {
             log.log(Level.SEVERE, "Project File Not Found", ex);
@@ -326,23 +584,48 @@ public final class EditorProject implements GameModel {
         } catch (IOException ex) {
             log.log(Level.SEVERE, "Project File IO Exception", ex);
         }
+        return p;
+    }
 
-        projectDir = projDir;
-        setName(p.getProperty("name", "Unknown"));
-        
-        // Look in Sheets Dir and load those.
+    /**
+     * Read every sheet in the project's sheets directory.  Off the FX thread.
+     */
+    private List<SheetModel> readSheets( File projDir ) {
         File sheetsDir = new File(projDir, "sheets");
         File[] sheetPngs = sheetsDir.listFiles(
                 (File dir, String name1) -> name1.endsWith(".png")
         );
-        for ( File sheetFile: sheetPngs ) {
-            try {
-                SheetModel sm = new SheetModel(sheetFile); // Also loads the props file for sheet.
+        ArrayList<Callable<SheetModel>> sheetTasks = new ArrayList<>();
+        if ( sheetPngs != null ) {
+            for ( File sheetFile: sheetPngs ) {
+                sheetTasks.add(() -> loadSheet(sheetFile));
+            }
+        }
+        return loadAll(sheetTasks);
+    }
+
+    /**
+     * Read the zones, one file per zone as picked by ZoneFiles.  Sheets must
+     * all be registered first.  Off the FX thread.
+     */
+    private List<Zone> readZones( List<File> files ) {
+        ArrayList<Callable<Zone>> zoneTasks = new ArrayList<>();
+        for ( File zoneFile: files ) {
+            zoneTasks.add(() -> loadZone(zoneFile));
+        }
+        return loadAll(zoneTasks);
+    }
+
+    /**
+     * First half of an open, on the FX thread.
+     */
+    private void openSheets( File projDir, Properties p, List<SheetModel> loadedSheets ) {
+        projectDir = projDir;
+        setName(p.getProperty("name", "Unknown"));
+        for ( SheetModel sm : loadedSheets ) {
+            if ( sm != null ) {
                 addSheet(sm);
                 //registerSheet(sm);
-                
-            } catch (IOException ex) {
-                log.log(Level.SEVERE, null, ex);
             }
         }
         if ( !sheets.isEmpty() ) {
@@ -352,30 +635,101 @@ public final class EditorProject implements GameModel {
                     //new Tile(null,0, 0, 0, "")
             );
         }
-        
-        // Look in Zones Dir and load those.
-        for ( File zoneFile: getZoneFiles() ) {
-            try {
-                Zone zm = Zone.load(this, new FileInputStream(zoneFile));
-                log.log(Level.INFO, "Loaded Zone: {0}", zm.getName());
+    }
+
+    /**
+     * Second half of an open, on the FX thread.
+     */
+    private void openZones( int open, File projDir, List<File> files, List<Zone> loadedZones ) {
+        if ( open != openCount ) {
+            return;
+        }
+        for ( int i = 0; i < loadedZones.size(); i++ ) {
+            Zone zm = loadedZones.get(i);
+            if ( zm != null ) {
                 getZones().add(zm);
-            } catch (IOException ex) {
-                log.log(Level.SEVERE, 
-                        "IO Exception has occurred for Zone file: " + zoneFile.getName(), 
-                        ex 
-                );
-            } catch (ZoneFileFormatException ex) {
-                log.log(Level.SEVERE, 
-                        "Zone File Load Failure! Zone file: " + zoneFile.getName(), 
-                        ex
-                );
+                zoneFiles.put(zm, files.get(i));
             }
         }
+        loading = false;
+        loaded = true;
+        rememberPreviousProject(projDir);
+        notifyProjectChanged(this, ChangeType.LOADED);
     }
 
-    private File[] getZoneFiles() {
-        File zonesDir = new File(projectDir, "zones");
-        return zonesDir.listFiles((File dir, String nam) -> nam.endsWith(".zone"));
+    /**
+     * Run the load tasks on a pool bounded by the number of cores.
+     * 
+     * @return results in the same order as the tasks, null where a task failed.
+     */
+    private static <T> List<T> loadAll( List<Callable<T>> tasks ) {
+        ArrayList<T> results = new ArrayList<>();
+        if ( tasks.isEmpty() ) {
+            return results;
+        }
+        int nThreads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService loader = Executors.newFixedThreadPool(nThreads, (r) -> {
+            Thread t = new Thread(r, "Project Load");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for ( Future<T> f : loader.invokeAll(tasks) ) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException ex) {
+                    log.log(Level.SEVERE, null, ex.getCause());
+                    results.add(null);
+                }
+            }
+        } catch (InterruptedException ex) {
+            log.log(Level.SEVERE, "Project load was interrupted!", ex);
+            Thread.currentThread().interrupt();
+        } finally {
+            loader.shutdown();
+        }
+        
+        return results;
+    }
+
+    private SheetModel loadSheet( File sheetFile ) {
+        try {
+            return new SheetModel(sheetFile); // Also loads the props file for sheet.
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    private Zone loadZone( File zoneFile ) {
+        try {
+            Zone zm;
+            if ( ZoneBinaryFormat.isBinaryZoneFile(zoneFile) ) {
+                zm = ZoneBinaryFormat.load(this, zoneFile, Zone.StorageMode.COMPACT);
+                log.log(Level.INFO, "Loaded binary Zone: {0}", zm.getName());
+            } else if ( ZoneChunkFormat.isChunkedZoneFile(zoneFile) ) {
+                // Only the header is read here.  Chunks load as they are viewed.
+                zm = ZoneChunkFormat.load(this, zoneFile);
+                log.log(Level.INFO, "Opened chunked Zone: {0}", zm.getName());
+            } else {
+                try ( FileInputStream in = new FileInputStream(zoneFile) ) {
+                    zm = Zone.load(this, in);
+                }
+                log.log(Level.INFO, "Loaded Zone: {0}", zm.getName());
+            }
+            return zm;
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, 
+                    "IO Exception has occurred for Zone file: " + zoneFile.getName(), 
+                    ex 
+            );
+        } catch (ZoneFileFormatException ex) {
+            log.log(Level.SEVERE, 
+                    "Zone File Load Failure! Zone file: " + zoneFile.getName(), 
+                    ex
+            );
+        }
+        return null;
     }
 
     public final File getProjectsDir() {
@@ -472,6 +826,9 @@ public final class EditorProject implements GameModel {
     public void addSheet(SheetModel sheet) {
         if ( !sheets.contains(sheet)) {
             sheets.add(sheet);
+            for ( Zone z : zones ) {
+                z.sheetsChanged();
+            }
         }
     }
 
@@ -42,6 +42,7 @@ public class EditorToolbar extends ToolBar implements EditorProjectListener {
     private final Button newFileButton; // = new Button("New");
     private final Button openButton; // = new Button("Open");
     private final Button saveButton;
+    private final Button exportButton;
 
     private final Button midButton = new Button("XXX");
     private final Button infoButton = new Button("?");
@@ -53,6 +54,7 @@ public class EditorToolbar extends ToolBar implements EditorProjectListener {
         newFileButton = createButton("New File", "/icons/plus-circle.png");
         openButton = createButton("Open", "/icons/folder-open.png");
         saveButton = createButton("Save", "/icons/floppy-disk.png");
+        exportButton = createButton("Export for Game", "/icons/play.png");
         
         HBox.setHgrow(
                 leftSpacer,
@@ -68,6 +70,7 @@ public class EditorToolbar extends ToolBar implements EditorProjectListener {
                 newFileButton,
                 openButton,
                 saveButton,
+                exportButton,
                 createSeparator(),
                 leftSpacer,
                 midButton,
@@ -113,7 +116,25 @@ public class EditorToolbar extends ToolBar implements EditorProjectListener {
             if ( project.getFilePath().equals("") ) {
                 EditorDialogs.projectSettingsDialog(project, stage);
             } else {
-                project.doSave();
+                project.doSaveAsync();
+            }
+        });
+        
+        exportButton.setOnAction((t) -> {
+            DirectoryChooser dc =  new DirectoryChooser();
+            dc.setTitle("Choose Directory to Export the Game Into");
+            dc.setInitialDirectory(project.getProjectsDir());
+            File selectedDir = dc.showDialog(stage);
+            
+            if ( selectedDir != null ) {
+                project.exportForGame(selectedDir, (ok) -> {
+                    Alert alert = new Alert(ok ? Alert.AlertType.INFORMATION : Alert.AlertType.ERROR);
+                    alert.setTitle("Export for Game");
+                    alert.setContentText(ok
+                            ? "Exported to " + selectedDir
+                            : "Export did not complete!  See the log for why.");
+                    alert.show();
+                });
             }
         });
     }
@@ -121,6 +142,7 @@ public class EditorToolbar extends ToolBar implements EditorProjectListener {
     private void updateState() {
         //saveButton.setDisable(!project.getFilePath().equals("") && !project.isEdited());
         saveButton.setDisable(!project.isEdited());
+        exportButton.setDisable(project.getFilePath().equals(""));
     }
     
     private Separator createSeparator() {
@@ -23,16 +23,20 @@ import com.maehem.deeps.model.MapTile;
 import com.maehem.deeps.model.SheetModel;
 import com.maehem.deeps.model.Tile;
 import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneHistory;
 import com.maehem.deeps.view.TileView;
 import com.maehem.deeps.view.ZoneView;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
 import javafx.scene.Cursor;
 import javafx.scene.Group;
 import javafx.scene.ImageCursor;
-import javafx.scene.Node;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
@@ -50,18 +54,32 @@ public class EditorZoneEditor extends ScrollPane implements EditorProjectListene
         SELECT, STAMP_MAP, STAMP_FIXTURE, STAMP_ENTITY
     }
 
+    /**
+     * What a stamp covers.  CELL the cell clicked, AREA the rectangle
+     * dragged over, FLOOD the cells joined to the one clicked that hold the
+     * same tile.
+     */
+    public static enum Brush {
+        CELL, AREA, FLOOD
+    }
+
     private final Zone zone;
     private final ZoneView zoneView;
+    private final ZoneHistory history;
     private final Group scaleGroup = new Group();
     private final EditorProject project;
     private final Rectangle stampHighlight;
     private final Rectangle propsHighlight;
 
     private Function function = Function.SELECT;
+    private Brush brush = Brush.CELL;
+    private int areaX = -1; // Cell an AREA drag started on.  -1 for none.
+    private int areaY = -1;
 
     public EditorZoneEditor(Zone model) {
         this.zone = model;
-        this.zoneView = new ZoneView(zone);
+        this.zoneView = new ZoneView(zone, ZoneView.RenderMode.CANVAS);
+        this.history = new ZoneHistory(zone);
 
         this.setFitToWidth(true);
         this.setFitToHeight(true);
@@ -92,20 +110,28 @@ public class EditorZoneEditor extends ScrollPane implements EditorProjectListene
 
         scaleGroup.getChildren().addAll(stampHighlight, propsHighlight);
 
+        // Only the cells in view get drawn.  Scrolling, zooming and resizing
+        // all move the zone view relative to the viewport.
+        scaleGroup.localToSceneTransformProperty().addListener((o) -> updateViewport(dim));
+        viewportBoundsProperty().addListener((o) -> updateViewport(dim));
+
         setOnMouseMoved((tt) -> {
             log.log(Level.FINER,
                     "Zone View: Mouse Moved: {0}x{1}",
                     new Object[]{tt.getX(), tt.getY()}
             );
 
-            int x = (int) (tt.getX() / dim / getZoom());
+            Point2D p = scaleGroup.sceneToLocal(tt.getSceneX(), tt.getSceneY());
+            int x = (int) (p.getX() / dim);
+            x = Math.max(x, 0);
             if (x > (zone.getWidth() - 1)) {
                 x = zone.getWidth() - 1;
             }
             //highlight.setLayoutX( dim*(int)(x/getZoom()) );
             stampHighlight.setLayoutX(dim * x);
 
-            int y = (int) (tt.getY() / dim / getZoom());
+            int y = (int) (p.getY() / dim);
+            y = Math.max(y, 0);
             if (y > (zone.getHeight() - 1)) {
                 y = zone.getHeight() - 1;
             }
@@ -113,36 +139,161 @@ public class EditorZoneEditor extends ScrollPane implements EditorProjectListene
             stampHighlight.setLayoutY(dim * y);
         });
 
-        setOnMouseClicked((t) -> {
+        addEventHandler(KeyEvent.KEY_PRESSED, (k) -> {
+            if ( !k.isShortcutDown() ) {
+                return;
+            }
+            if ( k.getCode() == KeyCode.Z ) {
+                if ( k.isShiftDown() ) {
+                    redo();
+                } else {
+                    undo();
+                }
+                k.consume();
+            } else if ( k.getCode() == KeyCode.Y ) {
+                redo();
+                k.consume();
+            }
+        });
 
-            switch (function) {
-                case SELECT:
-                    updatePropsHighlight(t, dim);
-                    break;
-                case STAMP_MAP:
-                    doStampBase(t, MapTile.class);
-                    break;
-                case STAMP_FIXTURE:
-                    doStampBase(t, FixtureTile.class);
-                    break;
-                case STAMP_ENTITY:
-                    doStampBase(t, EntityTile.class);
-                    break;
-                default:
+        setOnMousePressed((t) -> {
+            if ( function != Function.SELECT && brush == Brush.AREA ) {
+                areaX = cellX(t, dim);
+                areaY = cellY(t, dim);
+                showArea(areaX, areaY, dim);
+            }
+        });
 
+        setOnMouseDragged((t) -> {
+            if ( areaX >= 0 ) {
+                showArea(cellX(t, dim), cellY(t, dim), dim);
             }
         });
+
+        setOnMouseReleased((t) -> {
+            if ( areaX >= 0 ) {
+                doArea(t, layerClass(), dim);
+                areaX = -1;
+                areaY = -1;
+                stampHighlight.setWidth(dim);
+                stampHighlight.setHeight(dim);
+                stampHighlight.setLayoutX(dim * cellX(t, dim));
+                stampHighlight.setLayoutY(dim * cellY(t, dim));
+            }
+        });
+
+        setOnMouseClicked((t) -> {
+            requestFocus(); // For the undo keys.
+
+            if ( function == Function.SELECT ) {
+                updatePropsHighlight(t, dim);
+            } else if ( brush == Brush.FLOOD && t.getButton() == MouseButton.PRIMARY ) {
+                doFlood(t, layerClass(), dim);
+            } else if ( brush != Brush.AREA ) {
+                doStampBase(t, layerClass());
+            }
+        });
+    }
+
+    /**
+     * @return tile class of the layer being stamped, or null when selecting.
+     */
+    private Class<? extends Tile> layerClass() {
+        switch (function) {
+            case STAMP_MAP:
+                return MapTile.class;
+            case STAMP_FIXTURE:
+                return FixtureTile.class;
+            case STAMP_ENTITY:
+                return EntityTile.class;
+            default:
+                return null;
+        }
+    }
+
+    private int cellX(MouseEvent e, int dim) {
+        Point2D p = scaleGroup.sceneToLocal(e.getSceneX(), e.getSceneY());
+        return Math.max(0, Math.min((int) (p.getX() / dim), zone.getWidth() - 1));
+    }
+
+    private int cellY(MouseEvent e, int dim) {
+        Point2D p = scaleGroup.sceneToLocal(e.getSceneX(), e.getSceneY());
+        return Math.max(0, Math.min((int) (p.getY() / dim), zone.getHeight() - 1));
+    }
+
+    /**
+     * Stretch the stamp highlight from where the AREA drag started to x,y.
+     */
+    private void showArea(int x, int y, int dim) {
+        stampHighlight.setLayoutX(dim * Math.min(x, areaX));
+        stampHighlight.setLayoutY(dim * Math.min(y, areaY));
+        stampHighlight.setWidth(dim * (Math.abs(x - areaX) + 1));
+        stampHighlight.setHeight(dim * (Math.abs(y - areaY) + 1));
+    }
+
+    /**
+     * Fill the area dragged over with the current tile, or clear it with
+     * the secondary button.
+     */
+    private void doArea(MouseEvent mevt, Class<? extends Tile> clazz, int dim) {
+        int x = cellX(mevt, dim);
+        int y = cellY(mevt, dim);
+        int x0 = Math.min(x, areaX);
+        int y0 = Math.min(y, areaY);
+        int x1 = Math.max(x, areaX);
+        int y1 = Math.max(y, areaY);
+        int changed = 0;
+        if ( mevt.getButton() == MouseButton.PRIMARY ) {
+            Tile t = stampTile(clazz);
+            if ( t != null ) {
+                changed = zone.fillArea(x0, y0, x1, y1, t);
+            }
+        } else if ( mevt.getButton() == MouseButton.SECONDARY ) {
+            changed = zone.clearArea(x0, y0, x1, y1, clazz);
+        }
+        if ( changed > 0 ) {
+            project.setEdited(true);
+        }
+    }
+
+    private void doFlood(MouseEvent mevt, Class<? extends Tile> clazz, int dim) {
+        Tile t = stampTile(clazz);
+        if ( t != null && zone.floodFill(cellX(mevt, dim), cellY(mevt, dim), t) > 0 ) {
+            project.setEdited(true);
+        }
+    }
+
+    /**
+     * @return a copy of the current sheet tile keyed for this zone, or null
+     * if it does not belong on the layer.
+     */
+    private Tile stampTile(Class<? extends Tile> clazz) {
+        try {
+            Tile clone = (Tile) project.getCurrentSheetTile().clone();
+            if (clone.getClass() != clazz) {
+                log.log(Level.WARNING, "Could not fill as the tile is not a {0}", clazz.getSimpleName());
+                return null;
+            }
+            clone.setSheet(zone.getKeyFor(project.getCurrentTileUID()));
+            return clone;
+        } catch (CloneNotSupportedException ex) {
+            log.log(Level.SEVERE, "Clone operation not supported!", ex);
+            return null;
+        }
     }
 
     private void updatePropsHighlight(MouseEvent tt, int dim) {
         log.log(Level.FINER, "update props higlight.");
-        int x = (int) (tt.getX() / dim / getZoom());
+        Point2D p = scaleGroup.sceneToLocal(tt.getSceneX(), tt.getSceneY());
+        int x = (int) (p.getX() / dim);
+        x = Math.max(x, 0);
         if (x > (zone.getWidth() - 1)) {
             x = zone.getWidth() - 1;
         }
         propsHighlight.setLayoutX(dim * x);
 
-        int y = (int) (tt.getY() / dim / getZoom());
+        int y = (int) (p.getY() / dim);
+        y = Math.max(y, 0);
         if (y > (zone.getHeight() - 1)) {
             y = zone.getHeight() - 1;
         }
@@ -155,19 +306,29 @@ public class EditorZoneEditor extends ScrollPane implements EditorProjectListene
         project.setFocusedEntityTile(zone.getEntityTile(x, y));
     }
 
-    private void doStampBase(MouseEvent mevt, Class clazz) {
+    private void doStampBase(MouseEvent mevt, Class<? extends Tile> clazz) {
         log.log(Level.CONFIG, "Mouse click: {0}", mevt.getButton().name());
 
         Character sheetIndex = zone.getMapTile(0, 0).getSheet();
         SheetModel sm = zone.getSheet(sheetIndex);
         double tileSize = sm.getSize();
         
-        int x = (int) (mevt.getX() / tileSize / getZoom());
-        int y = (int) (mevt.getY() / tileSize / getZoom());
+        Point2D p = scaleGroup.sceneToLocal(mevt.getSceneX(), mevt.getSceneY());
+        int x = (int) (p.getX() / tileSize);
+        int y = (int) (p.getY() / tileSize);
         log.log(Level.INFO,
                 "Stamp at: {0}x{1}",
                 new Object[]{x, y});
         
+        history.begin("Stamp");
+        try {
+            stamp(mevt, clazz, x, y);
+        } finally {
+            history.end();
+        }
+    }
+
+    private void stamp(MouseEvent mevt, Class<? extends Tile> clazz, int x, int y) {
         long uid = project.getCurrentTileUID();
         Character key = zone.getKeyFor(uid);
         if (mevt.getButton() == MouseButton.PRIMARY) {
@@ -223,9 +384,66 @@ public class EditorZoneEditor extends ScrollPane implements EditorProjectListene
         }
     }
 
+    public ZoneHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Undo the last edit of this zone.
+     */
+    public void undo() {
+        if ( history.undo() ) {
+            afterHistory();
+        }
+    }
+
+    /**
+     * Redo the last edit undone.
+     */
+    public void redo() {
+        if ( history.redo() ) {
+            afterHistory();
+        }
+    }
+
+    /**
+     * Tiles in the cells changed were replaced, so focus the new ones.
+     */
+    private void afterHistory() {
+        project.setEdited(true);
+        int x = zoneView.getFocusX();
+        int y = zoneView.getFocusY();
+        project.setFocusedMapTile(null);
+        project.setFocusedFixtureTile(null);
+        project.setFocusedEntityTile(null);
+        project.setFocusedMapTile(zone.getMapTile(x, y));
+        project.setFocusedFixtureTile(zone.getFixtureTile(x, y));
+        project.setFocusedEntityTile(zone.getEntityTile(x, y));
+    }
+
+    /**
+     * Let the zone view know which cells can be seen.
+     * 
+     * @param dim tile size
+     */
+    private void updateViewport(int dim) {
+        Bounds visible = scaleGroup.sceneToLocal(localToScene(getLayoutBounds()));
+        if (visible == null) {
+            return;
+        }
+        zoneView.setViewport(
+                (int) Math.floor(visible.getMinX() / dim),
+                (int) Math.floor(visible.getMinY() / dim),
+                (int) Math.ceil(visible.getMaxX() / dim),
+                (int) Math.ceil(visible.getMaxY() / dim)
+        );
+    }
+
     protected void setZoom(double zoom) {
         scaleGroup.setScaleX(zoom);
         scaleGroup.setScaleY(zoom);
+        // Draw at the zoomed size so tiles come from the hi-fi sheet image.
+        zoneView.setRenderScale(zoom);
         updateCursor();
     }
 
@@ -233,6 +451,16 @@ public class EditorZoneEditor extends ScrollPane implements EditorProjectListene
         return scaleGroup.getScaleX();
     }
 
+    public void setBrush(Brush b) {
+        this.brush = b;
+        log.log(Level.FINE, "Zone Editor [{0}] set brush to: {1}",
+                zone.getName(), b.name());
+    }
+
+    public Brush getBrush() {
+        return brush;
+    }
+
     public void setFunction(Function f) {
         this.function = f;
         log.log(Level.FINE,
@@ -246,24 +474,19 @@ public class EditorZoneEditor extends ScrollPane implements EditorProjectListene
     }
 
     private void muteTiles(Function f) {
-        for (Node n : zoneView.getChildren()) {
-            if (n instanceof TileView) {
-                TileView tv = (TileView) n;
-                switch (f) {
-                    case SELECT:
-                        tv.setGrey(false);
-                        break;
-                    case STAMP_MAP:
-                        tv.setGrey(!(tv.getTile() instanceof MapTile));
-                        break;
-                    case STAMP_FIXTURE:
-                        tv.setGrey(!(tv.getTile() instanceof FixtureTile));
-                        break;
-                    case STAMP_ENTITY:
-                        tv.setGrey(!(tv.getTile() instanceof EntityTile));
-                        break;
-                }
-            }
+        switch (f) {
+            case SELECT:
+                zoneView.setMuted(null);
+                break;
+            case STAMP_MAP:
+                zoneView.setMuted(MapTile.class);
+                break;
+            case STAMP_FIXTURE:
+                zoneView.setMuted(FixtureTile.class);
+                break;
+            case STAMP_ENTITY:
+                zoneView.setMuted(EntityTile.class);
+                break;
         }
     }
 
@@ -315,6 +538,7 @@ public class EditorZoneEditor extends ScrollPane implements EditorProjectListene
             updateCursor();
         }
         if ( type == ChangeType.CLEARED ) {
+            history.dispose();
             project.removeListener(this);
         }
     }
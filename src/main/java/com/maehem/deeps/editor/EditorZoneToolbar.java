@@ -18,6 +18,7 @@ package com.maehem.deeps.editor;
 
 import static com.maehem.deeps.Deeps.log;
 import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneHistory;
 import java.util.logging.Level;
 import javafx.application.Platform;
 import javafx.scene.control.Button;
@@ -44,10 +45,15 @@ public class EditorZoneToolbar extends ToolBar{
     private final Button zoomOut;
     private final Button zoomIn;
     private final Button zoomReset;
+    private final Button undoButton;
+    private final Button redoButton;
     private final ToggleButton selectButton;
     private final ToggleButton stampBaseButton;
     private final ToggleButton stampItemButton;
     private final ToggleButton stampEntityButton;
+    private final ToggleButton cellBrushButton;
+    private final ToggleButton areaBrushButton;
+    private final ToggleButton floodBrushButton;
 
     private final Pane leftSpacer = new Pane();
 
@@ -57,10 +63,15 @@ public class EditorZoneToolbar extends ToolBar{
         zoomOut   = createButton("Zoom Out", "/icons/zoom-out.png");
         zoomIn    = createButton("Zoom Out", "/icons/zoom-in.png");
         zoomReset = createButton("Zoom Reset", "/icons/magnifier.png");
+        undoButton = createTextButton("Undo");
+        redoButton = createTextButton("Redo");
         selectButton = createToggleButton("Select", "/icons/plus-circle.png");
         stampBaseButton = createToggleButton("Stamp Map Base", "/icons/paw-print.png");
         stampItemButton = createToggleButton("Stamp Fixture", "/icons/poison-bottle.png");
         stampEntityButton = createToggleButton("Stamp Entity", "/icons/spider.png");
+        cellBrushButton = createTextToggleButton("Cell", "Stamp one cell");
+        areaBrushButton = createTextToggleButton("Area", "Fill the area dragged over, secondary button clears it");
+        floodBrushButton = createTextToggleButton("Flood", "Fill the cells joined to the one clicked that hold the same tile");
 
         ToggleGroup functionGroup = new ToggleGroup();
         selectButton.setToggleGroup(functionGroup);
@@ -71,13 +82,26 @@ public class EditorZoneToolbar extends ToolBar{
         HBox functionButtons = new HBox(selectButton, 
                 stampBaseButton, stampItemButton, stampEntityButton
         );
+
+        ToggleGroup brushGroup = new ToggleGroup();
+        cellBrushButton.setToggleGroup(brushGroup);
+        areaBrushButton.setToggleGroup(brushGroup);
+        floodBrushButton.setToggleGroup(brushGroup);
+        cellBrushButton.setSelected(true);
+
+        HBox brushButtons = new HBox(cellBrushButton, areaBrushButton, floodBrushButton);
         
         getItems().addAll(
                 zoomOut,
                 zoomIn,
                 zoomReset ,       
                 createSeparator(),
+                undoButton,
+                redoButton,
+                createSeparator(),
                 functionButtons,
+                createSeparator(),
+                brushButtons,
                 leftSpacer
         );
         
@@ -101,6 +125,15 @@ public class EditorZoneToolbar extends ToolBar{
             checkZoom();
             editor.setZoom(zoom);
         });
+        undoButton.setOnAction((t) -> editor.undo());
+        redoButton.setOnAction((t) -> editor.redo());
+        editor.getHistory().addListener(this::updateHistoryButtons);
+        updateHistoryButtons(editor.getHistory());
+
+        cellBrushButton.setOnAction((t) -> editor.setBrush(EditorZoneEditor.Brush.CELL));
+        areaBrushButton.setOnAction((t) -> editor.setBrush(EditorZoneEditor.Brush.AREA));
+        floodBrushButton.setOnAction((t) -> editor.setBrush(EditorZoneEditor.Brush.FLOOD));
+
         selectButton.setOnAction((t) -> {
             editor.setFunction(EditorZoneEditor.Function.SELECT);
             log.log(Level.INFO, "Toggle Select Button");
@@ -136,6 +169,27 @@ public class EditorZoneToolbar extends ToolBar{
         zoomOut.setDisable(zoom <= ZOOM_MIN);
     }
     
+    private void updateHistoryButtons( ZoneHistory h ) {
+        undoButton.setDisable(!h.canUndo());
+        redoButton.setDisable(!h.canRedo());
+        undoButton.getTooltip().setText(h.canUndo() ? "Undo " + h.getUndoName() : "Undo");
+        redoButton.getTooltip().setText(h.canRedo() ? "Redo " + h.getRedoName() : "Redo");
+    }
+
+    private Button createTextButton( String name ) {
+        Button b = new Button(name);
+        b.setTooltip(new Tooltip(name));
+
+        return b;
+    }
+    
+    private ToggleButton createTextToggleButton( String name, String tip ) {
+        ToggleButton b = new ToggleButton(name);
+        b.setTooltip(new Tooltip(tip));
+
+        return b;
+    }
+    
     private Button createButton( String name, String path ) {
         Image img = new Image(getClass().getResourceAsStream(path));
         ImageView view = new ImageView(img);
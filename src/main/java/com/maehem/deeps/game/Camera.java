@@ -0,0 +1,157 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.view.ZoneView;
+
+/**
+ * Scrolls a ZoneView to keep a point of the zone in the middle of the
+ * screen.
+ *
+ * The camera moves on ticks, in cells, and eases toward its target.  Each
+ * frame it places the view between where it was last tick and where it is
+ * now, so scrolling is smooth even when the frame rate and tick rate
+ * differ.  In CANVAS mode the view is also told which cells are on screen
+ * so only those are drawn.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class Camera implements GameSystem, GameRenderer {
+
+    private static final double DEFAULT_SPEED = 12.0; // cells per second
+
+    private final ZoneView view;
+    private final int dim;
+    private double screenWidth;
+    private double screenHeight;
+
+    private double prevX, prevY;     // Position last tick, in cells.
+    private double x, y;             // Position this tick, in cells.
+    private double targetX, targetY;
+    private double speed = DEFAULT_SPEED;
+    private double left, top;        // Scroll of the last frame, in pixels.
+
+    /**
+     * @param view the view to scroll
+     * @param screenWidth width of the visible area in pixels
+     * @param screenHeight height of the visible area in pixels
+     */
+    public Camera( ZoneView view, double screenWidth, double screenHeight ) {
+        this.view = view;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        Zone zone = view.getModel();
+        this.dim = zone.getSheet(zone.getMapSheetKey(0, 0)).getSize();
+        jumpTo(zone.getWidth() / 2.0, zone.getHeight() / 2.0);
+    }
+
+    /**
+     * Move to x,y at once, no easing.
+     */
+    public final void jumpTo( double x, double y ) {
+        this.x = prevX = targetX = x;
+        this.y = prevY = targetY = y;
+    }
+
+    /**
+     * Ease toward x,y over the next ticks.
+     */
+    public void moveTo( double x, double y ) {
+        Zone zone = view.getModel();
+        targetX = Math.max(0, Math.min(x, zone.getWidth()));
+        targetY = Math.max(0, Math.min(y, zone.getHeight()));
+    }
+
+    public void moveBy( double dx, double dy ) {
+        moveTo(targetX + dx, targetY + dy);
+    }
+
+    public void setSpeed( double cellsPerSecond ) {
+        this.speed = cellsPerSecond;
+    }
+
+    public void setScreenSize( double width, double height ) {
+        this.screenWidth = width;
+        this.screenHeight = height;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return pixel x of the zone at the left edge of the screen, as of
+     *         the last render.
+     */
+    public double getLeft() {
+        return left;
+    }
+
+    /**
+     * @return pixel y of the zone at the top edge of the screen, as of
+     *         the last render.
+     */
+    public double getTop() {
+        return top;
+    }
+
+    /**
+     * @return size of a zone cell in pixels.
+     */
+    public int getTileSize() {
+        return dim;
+    }
+
+    @Override
+    public void tick( long tick, double dt ) {
+        prevX = x;
+        prevY = y;
+        double dx = targetX - x;
+        double dy = targetY - y;
+        double dist = Math.sqrt(dx * dx + dy * dy);
+        double step = speed * dt;
+        if ( dist <= step ) {
+            x = targetX;
+            y = targetY;
+        } else {
+            x += dx / dist * step;
+            y += dy / dist * step;
+        }
+    }
+
+    @Override
+    public void render( double alpha ) {
+        double cx = prevX + (x - prevX) * alpha;
+        double cy = prevY + (y - prevY) * alpha;
+        // Whole pixels, or tile edges shimmer while scrolling.
+        left = Math.round(cx * dim - screenWidth / 2.0);
+        top = Math.round(cy * dim - screenHeight / 2.0);
+        view.setTranslateX(-left);
+        view.setTranslateY(-top);
+        view.setViewport(
+                (int) Math.floor(left / dim),
+                (int) Math.floor(top / dim),
+                (int) Math.floor((left + screenWidth) / dim),
+                (int) Math.floor((top + screenHeight) / dim)
+        );
+    }
+}
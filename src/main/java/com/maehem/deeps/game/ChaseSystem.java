@@ -0,0 +1,77 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+/**
+ * Points every enemy in an EntityStore at the target of a FlowField.
+ *
+ * Each tick the field is brought up to date once, then every enemy reads
+ * the step from its cell and heads for the middle of the next cell.  The
+ * MotionSystem does the moving.  Enemies are slowed by the cost of the
+ * cell they are in.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class ChaseSystem implements GameSystem {
+
+    private static final double DEFAULT_SPEED = 3.0; // cells per second
+
+    private final EntityStore store;
+    private final FlowField field;
+    private final PathFinder grid;
+    private float speed = (float) DEFAULT_SPEED;
+
+    public ChaseSystem( EntityStore store, FlowField field, PathFinder grid ) {
+        this.store = store;
+        this.field = field;
+        this.grid = grid;
+    }
+
+    public void setSpeed( double cellsPerSecond ) {
+        this.speed = (float) cellsPerSecond;
+    }
+
+    @Override
+    public void tick( long tick, double dt ) {
+        field.update();
+
+        final EntityStore s = store;
+        final short[] enemy = s.enemy;
+        final float[] x = s.x;
+        final float[] y = s.y;
+        final float[] vx = s.vx;
+        final float[] vy = s.vy;
+        for ( int i = 0; i < s.size(); i++ ) {
+            if ( enemy[i] < 0 ) {
+                continue;
+            }
+            int cx = (int) x[i];
+            int cy = (int) y[i];
+            int d = field.getDirection(cx, cy);
+            if ( d == FlowField.NO_STEP ) {
+                vx[i] = vy[i] = 0f;
+                continue;
+            }
+            float dx = cx + PathFinder.DX[d] + 0.5f - x[i];
+            float dy = cy + PathFinder.DY[d] + 0.5f - y[i];
+            float len = (float) Math.sqrt(dx * dx + dy * dy);
+            float v = speed * PathFinder.STEP_COST / grid.getCost(cx, cy) / len;
+            vx[i] = dx * v;
+            vy[i] = dy * v;
+        }
+    }
+}
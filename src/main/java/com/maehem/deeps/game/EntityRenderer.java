@@ -0,0 +1,73 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import com.maehem.deeps.view.ZoneView;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Draws the entities of an EntityStore over a ZoneView, at their position
+ * between ticks, so they glide from cell to cell.
+ *
+ * The canvas is the size of the screen and does not scroll.  Add it after
+ * the Camera so the camera has placed the view for this frame.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class EntityRenderer implements GameRenderer {
+
+    private final EntityStore store;
+    private final ZoneView view;
+    private final Camera camera;
+    private final Canvas canvas;
+    private final int dim;
+
+    public EntityRenderer( EntityStore store, ZoneView view, Camera camera, double width, double height ) {
+        this.store = store;
+        this.view = view;
+        this.camera = camera;
+        this.canvas = new Canvas(width, height);
+        this.dim = camera.getTileSize();
+        canvas.setMouseTransparent(true);
+        view.setEntitiesShown(false);
+    }
+
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    @Override
+    public void render( double alpha ) {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double w = canvas.getWidth();
+        double h = canvas.getHeight();
+        gc.clearRect(0, 0, w, h);
+
+        double left = camera.getLeft();
+        double top = camera.getTop();
+        final EntityStore s = store;
+        for ( int i = 0; i < s.size(); i++ ) {
+            double px = s.getRenderX(i, alpha) * dim - left;
+            double py = s.getRenderY(i, alpha) * dim - top;
+            if ( px < -dim || py < -dim || px > w || py > h ) {
+                continue;
+            }
+            view.drawEntity(gc, s.sheet[i], s.index[i], s.umbra[i], Math.round(px), Math.round(py));
+        }
+    }
+}
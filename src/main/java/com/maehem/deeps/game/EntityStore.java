@@ -0,0 +1,359 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.EntityTile;
+import com.maehem.deeps.model.Zone;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * Entities of a running zone, kept as parallel arrays.
+ *
+ * EntityTile is how entities are authored and saved.  When a zone is
+ * played its entities are copied in here, one slot each, and the systems
+ * work on the arrays.  A tick then walks a few flat arrays start to end
+ * and allocates nothing, which is what keeps thousands of entities cheap.
+ *
+ * Slots 0 to size()-1 are live.  Removing an entity moves the last one
+ * into its slot, so slots change.  Use the id, which never changes, to hold
+ * on to an entity between ticks.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class EntityStore {
+
+    public static final int NONE = -1;
+    public static final short HEALTH_MAX = 100;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Components, by slot.  Package access so systems can read them direct.
+    float[] x;          // Position in cells.  Cell of entity is (int) x.
+    float[] y;
+    float[] prevX;      // Position at the end of the previous tick.
+    float[] prevY;
+    float[] vx;         // Rolling velocity, cells per second.  0 if not rolling.
+    float[] vy;
+    short[] health;     // 0 is dead.
+    boolean[] aware;    // Enemy can see the player.
+    int[] rail;         // Rail segment the cart is on, NONE if not on rails.
+    float[] railPos;    // Cells along the segment.
+    byte[] railDir;     // 1 toward the segment end, -1 toward its start.
+    float[] railSpeed;  // Cells per second.
+    short[] npc;        // -1 if not a NPC.
+    short[] enemy;      // -1 if not an enemy.
+    byte[] umbra;       // Drop shadow 0-99.  0 for none.
+    char[] sheet;       // Look: sheet key and cell, as on the tile.
+    short[] index;
+    int[] id;           // Id of the entity in each slot.
+
+    private int[] slotById = new int[INITIAL_CAPACITY]; // NONE if id is free.
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int nextId = 0;
+    private int size = 0;
+
+    public EntityStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public EntityStore( int capacity ) {
+        capacity = Math.max(capacity, 1);
+        x = new float[capacity];
+        y = new float[capacity];
+        prevX = new float[capacity];
+        prevY = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        health = new short[capacity];
+        aware = new boolean[capacity];
+        rail = new int[capacity];
+        railPos = new float[capacity];
+        railDir = new byte[capacity];
+        railSpeed = new float[capacity];
+        npc = new short[capacity];
+        enemy = new short[capacity];
+        umbra = new byte[capacity];
+        sheet = new char[capacity];
+        index = new short[capacity];
+        id = new int[capacity];
+        Arrays.fill(slotById, NONE);
+    }
+
+    /**
+     * Store with every entity of a zone.  In CHUNKED mode this loads every
+     * chunk of the zone.
+     *
+     * @param zone to play
+     * @return new store
+     */
+    public static EntityStore load( Zone zone ) {
+        long start = System.nanoTime();
+        EntityStore store = new EntityStore(Math.max(zone.getEntities().size(), INITIAL_CAPACITY));
+        for ( EntityTile t : zone.getEntities() ) {
+            if ( t.getIndex() > 0 ) {
+                store.add(t);
+            }
+        }
+        log.log(Level.INFO, "Entity store for Zone {0}: {1} entities in {2} ms",
+                zone.getName(), store.size(), (System.nanoTime() - start) / 1_000_000);
+        return store;
+    }
+
+    /**
+     * Add an entity copied from its tile.
+     *
+     * @param t tile to copy
+     * @return id of the new entity
+     */
+    public int add( EntityTile t ) {
+        int e = add(t.getSheet(), t.getIndex(), t.getX(), t.getY());
+        int s = slotById[e];
+        npc[s] = (short) t.getNpc();
+        enemy[s] = (short) t.getEnemy();
+        umbra[s] = (byte) Math.max(t.getUmbra(), 0);
+        if ( t.isRolling() ) {
+            setRolling(e, t.getRolling());
+        }
+        return e;
+    }
+
+    /**
+     * Add a plain entity, full health, not moving.
+     *
+     * @return id of the new entity
+     */
+    public int add( char sheetKey, int sheetIndex, float cx, float cy ) {
+        if ( size == x.length ) {
+            grow();
+        }
+        int e = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        if ( e >= slotById.length ) {
+            int old = slotById.length;
+            slotById = Arrays.copyOf(slotById, old * 2);
+            Arrays.fill(slotById, old, slotById.length, NONE);
+        }
+        int s = size++;
+        slotById[e] = s;
+        id[s] = e;
+        x[s] = prevX[s] = cx;
+        y[s] = prevY[s] = cy;
+        vx[s] = vy[s] = 0f;
+        health[s] = HEALTH_MAX;
+        aware[s] = false;
+        rail[s] = NONE;
+        npc[s] = NONE;
+        enemy[s] = NONE;
+        umbra[s] = 0;
+        sheet[s] = sheetKey;
+        index[s] = (short) sheetIndex;
+        return e;
+    }
+
+    /**
+     * Remove an entity.  The last entity takes over its slot.
+     *
+     * @param e id of entity
+     */
+    public void remove( int e ) {
+        int s = slotOf(e);
+        if ( s == NONE ) {
+            return;
+        }
+        int last = --size;
+        if ( s != last ) {
+            x[s] = x[last];
+            y[s] = y[last];
+            prevX[s] = prevX[last];
+            prevY[s] = prevY[last];
+            vx[s] = vx[last];
+            vy[s] = vy[last];
+            health[s] = health[last];
+            aware[s] = aware[last];
+            rail[s] = rail[last];
+            railPos[s] = railPos[last];
+            railDir[s] = railDir[last];
+            railSpeed[s] = railSpeed[last];
+            npc[s] = npc[last];
+            enemy[s] = enemy[last];
+            umbra[s] = umbra[last];
+            sheet[s] = sheet[last];
+            index[s] = index[last];
+            id[s] = id[last];
+            slotById[id[s]] = s;
+        }
+        slotById[e] = NONE;
+        if ( freeCount == freeIds.length ) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = e;
+    }
+
+    private void grow() {
+        int n = x.length * 2;
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        prevX = Arrays.copyOf(prevX, n);
+        prevY = Arrays.copyOf(prevY, n);
+        vx = Arrays.copyOf(vx, n);
+        vy = Arrays.copyOf(vy, n);
+        health = Arrays.copyOf(health, n);
+        aware = Arrays.copyOf(aware, n);
+        rail = Arrays.copyOf(rail, n);
+        railPos = Arrays.copyOf(railPos, n);
+        railDir = Arrays.copyOf(railDir, n);
+        railSpeed = Arrays.copyOf(railSpeed, n);
+        npc = Arrays.copyOf(npc, n);
+        enemy = Arrays.copyOf(enemy, n);
+        umbra = Arrays.copyOf(umbra, n);
+        sheet = Arrays.copyOf(sheet, n);
+        index = Arrays.copyOf(index, n);
+        id = Arrays.copyOf(id, n);
+    }
+
+    /**
+     * @return number of live entities.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param e id of entity
+     * @return slot of entity, or NONE if there is no such entity.
+     */
+    public int slotOf( int e ) {
+        return e >= 0 && e < slotById.length ? slotById[e] : NONE;
+    }
+
+    /**
+     * Set velocity from an EntityTile rolling value.  The low two bits are
+     * the heading, 0 north, 1 east, 2 south, 3 west, and the rest is the
+     * speed in cells per second.
+     *
+     * @param e id of entity
+     * @param rolling value from EntityTile.getRolling(), less than 0 to stop.
+     */
+    public void setRolling( int e, int rolling ) {
+        int s = slotById[e];
+        if ( rolling < 0 ) {
+            vx[s] = vy[s] = 0f;
+            return;
+        }
+        float speed = rolling >> 2;
+        switch ( rolling & 3 ) {
+            case 0:  vx[s] = 0f;     vy[s] = -speed; break;
+            case 1:  vx[s] = speed;  vy[s] = 0f;     break;
+            case 2:  vx[s] = 0f;     vy[s] = speed;  break;
+            default: vx[s] = -speed; vy[s] = 0f;     break;
+        }
+    }
+
+    public int getId( int slot ) {
+        return id[slot];
+    }
+
+    public float getX( int slot ) {
+        return x[slot];
+    }
+
+    public float getY( int slot ) {
+        return y[slot];
+    }
+
+    /**
+     * @param slot of entity
+     * @param alpha from GameRenderer.render()
+     * @return x between the last two ticks.
+     */
+    public float getRenderX( int slot, double alpha ) {
+        return (float) (prevX[slot] + (x[slot] - prevX[slot]) * alpha);
+    }
+
+    public float getRenderY( int slot, double alpha ) {
+        return (float) (prevY[slot] + (y[slot] - prevY[slot]) * alpha);
+    }
+
+    /**
+     * Move an entity at once, i.e. a teleport.  No interpolation.
+     */
+    public void setPosition( int slot, float cx, float cy ) {
+        x[slot] = prevX[slot] = cx;
+        y[slot] = prevY[slot] = cy;
+    }
+
+    public float getVelocityX( int slot ) {
+        return vx[slot];
+    }
+
+    public float getVelocityY( int slot ) {
+        return vy[slot];
+    }
+
+    public void setVelocity( int slot, float vx, float vy ) {
+        this.vx[slot] = vx;
+        this.vy[slot] = vy;
+    }
+
+    public int getHealth( int slot ) {
+        return health[slot];
+    }
+
+    public void setHealth( int slot, int hp ) {
+        health[slot] = (short) Math.max(0, Math.min(hp, HEALTH_MAX));
+    }
+
+    /**
+     * @return true if the entity saw the player on the last tick.
+     */
+    public boolean isAware( int slot ) {
+        return aware[slot];
+    }
+
+    /**
+     * @return true if the entity is a cart moving on rails.
+     */
+    public boolean isOnRails( int slot ) {
+        return rail[slot] != NONE;
+    }
+
+    public int getNpc( int slot ) {
+        return npc[slot];
+    }
+
+    public int getEnemy( int slot ) {
+        return enemy[slot];
+    }
+
+    public boolean isEnemy( int slot ) {
+        return enemy[slot] >= 0;
+    }
+
+    public int getUmbra( int slot ) {
+        return umbra[slot];
+    }
+
+    public char getSheet( int slot ) {
+        return sheet[slot];
+    }
+
+    public int getIndex( int slot ) {
+        return index[slot];
+    }
+}
@@ -0,0 +1,202 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import java.util.Arrays;
+
+/**
+ * Cells a viewer can see, by recursive shadowcasting.
+ *
+ * Each of the eight octants around the viewer is scanned row by row going
+ * out.  An opaque cell starts a shadow, and the rows beyond are only
+ * scanned between the shadows.  Opaque cells themselves are seen, so walls
+ * show.
+ *
+ * The result is kept until the viewer moves to another cell or a cell
+ * within its radius turns opaque or clear, so update() can be called
+ * every tick for free.  Visible cells are stamped into an array the size
+ * of the view square, so a new scan clears nothing and allocates nothing.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class FieldOfView implements VisionGrid.Listener {
+
+    // Octant transforms: xx, xy, yx, yy.
+    private static final int[] XX = { 1,  0,  0, -1, -1,  0,  0,  1 };
+    private static final int[] XY = { 0,  1, -1,  0,  0, -1,  1,  0 };
+    private static final int[] YX = { 0,  1,  1,  0,  0, -1, -1,  0 };
+    private static final int[] YY = { 1,  0,  0,  1, -1,  0,  0, -1 };
+
+    private final VisionGrid grid;
+    private final int radius;
+    private final int side;
+    private final int[] seen;   // Stamp, by cell of the view square.
+    private int stamp = 0;
+    private boolean explores = false;
+
+    private int originX = Integer.MIN_VALUE;
+    private int originY = Integer.MIN_VALUE;
+    private boolean stale = true;
+    private long scans = 0;
+
+    /**
+     * @param grid what blocks sight
+     * @param radius furthest cell seen
+     */
+    public FieldOfView( VisionGrid grid, int radius ) {
+        this.grid = grid;
+        this.radius = radius;
+        this.side = 2 * radius + 1;
+        this.seen = new int[side * side];
+        grid.addListener(this);
+    }
+
+    public void dispose() {
+        grid.removeListener(this);
+    }
+
+    /**
+     * @param explores true to mark what is seen as explored, i.e. for the
+     *        player.
+     */
+    public void setExplores( boolean explores ) {
+        this.explores = explores;
+    }
+
+    /**
+     * See from x,y.  Only scans if the viewer moved or sight changed
+     * nearby.
+     *
+     * @return true if a scan was done.
+     */
+    public boolean update( int x, int y ) {
+        if ( !stale && x == originX && y == originY ) {
+            return false;
+        }
+        originX = x;
+        originY = y;
+        stale = false;
+        scan();
+        return true;
+    }
+
+    private void scan() {
+        scans++;
+        if ( ++stamp == Integer.MAX_VALUE ) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        mark(originX, originY);
+        for ( int oct = 0; oct < 8; oct++ ) {
+            cast(1, 1.0, 0.0, XX[oct], XY[oct], YX[oct], YY[oct]);
+        }
+    }
+
+    /**
+     * Scan one octant from row on, between slopes start and end.
+     */
+    private void cast( int row, double start, double end, int xx, int xy, int yx, int yy ) {
+        if ( start < end ) {
+            return;
+        }
+        final int r2 = radius * radius;
+        double newStart = 0.0;
+        for ( int j = row; j <= radius; j++ ) {
+            int dy = -j;
+            boolean blocked = false;
+            for ( int dx = -j; dx <= 0; dx++ ) {
+                double leftSlope = (dx - 0.5) / (dy + 0.5);
+                double rightSlope = (dx + 0.5) / (dy - 0.5);
+                if ( start < rightSlope ) {
+                    continue;
+                }
+                if ( end > leftSlope ) {
+                    break;
+                }
+                int x = originX + dx * xx + dy * xy;
+                int y = originY + dx * yx + dy * yy;
+                if ( dx * dx + dy * dy <= r2 ) {
+                    mark(x, y);
+                }
+                boolean opaque = grid.isOpaque(x, y);
+                if ( blocked ) {
+                    if ( opaque ) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if ( opaque && j < radius ) {
+                    blocked = true;
+                    cast(j + 1, start, leftSlope, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if ( blocked ) {
+                break;
+            }
+        }
+    }
+
+    private void mark( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= grid.getWidth() || y >= grid.getHeight() ) {
+            return;
+        }
+        seen[(y - originY + radius) * side + x - originX + radius] = stamp;
+        if ( explores ) {
+            grid.setExplored(x, y);
+        }
+    }
+
+    /**
+     * @return true if x,y was seen by the last update().
+     */
+    public boolean isVisible( int x, int y ) {
+        int sx = x - originX + radius;
+        int sy = y - originY + radius;
+        if ( sx < 0 || sy < 0 || sx >= side || sy >= side ) {
+            return false;
+        }
+        return seen[sy * side + sx] == stamp;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return number of scans done, to see how well the cache works.
+     */
+    public long getScanCount() {
+        return scans;
+    }
+
+    @Override
+    public void opacityChanged( int x, int y ) {
+        if ( Math.abs(x - originX) <= radius && Math.abs(y - originY) <= radius ) {
+            stale = true;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import static com.maehem.deeps.Deeps.log;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * Direction to walk from every cell to reach one target.
+ *
+ * One Dijkstra sweep out from the target, over the PathFinder cost grid,
+ * gives every cell the cheapest next step.  Any number of entities chasing
+ * the same target then read their step in O(1), instead of each running
+ * its own A* search.
+ *
+ * The sweep runs in update(), and only when something changed: the target
+ * went to another cell, or a cell cost went up inside the field.  Cells
+ * that got cheaper, i.e. a door opened, are repaired in place right away
+ * by sweeping on from the cells around them.  A radius keeps the sweep,
+ * and so a target move, to the cells near the target.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class FlowField implements PathFinder.CostListener {
+
+    public static final int NO_STEP = -1;
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final PathFinder grid;
+    private final byte[] costs;
+    private final int width;
+    private final int height;
+    private final int radius;
+
+    private final int[] dist;    // Cost from cell to target.
+    private final byte[] dir;    // Step to take from cell, 0-7.
+    private final int[] reached; // Stamp when dist and dir are valid.
+    private int stamp = 0;
+    private final IntMinHeap open = new IntMinHeap();
+
+    private int targetX = -1;
+    private int targetY = -1;
+    private boolean stale = true;
+    private long sweepNanos = 0;
+
+    public FlowField( PathFinder grid ) {
+        this(grid, UNLIMITED);
+    }
+
+    /**
+     * @param grid cost grid of the zone
+     * @param radius cells from the target, either way, the field reaches.
+     */
+    public FlowField( PathFinder grid, int radius ) {
+        this.grid = grid;
+        this.costs = grid.costs;
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.radius = radius;
+        this.dist = new int[width * height];
+        this.dir = new byte[width * height];
+        this.reached = new int[width * height];
+        grid.addCostListener(this);
+    }
+
+    /**
+     * Stop following cost changes.
+     */
+    public void dispose() {
+        grid.removeCostListener(this);
+    }
+
+    /**
+     * Set where everyone is going.  Cheap, the field is only swept again
+     * in update(), and only if the target changed cell.
+     */
+    public void setTarget( int x, int y ) {
+        if ( x != targetX || y != targetY ) {
+            targetX = x;
+            targetY = y;
+            stale = true;
+        }
+    }
+
+    public int getTargetX() {
+        return targetX;
+    }
+
+    public int getTargetY() {
+        return targetY;
+    }
+
+    /**
+     * Sweep the field again if it is out of date.  Call once per tick,
+     * before anyone reads it.
+     *
+     * @return true if the field was swept.
+     */
+    public boolean update() {
+        if ( !stale ) {
+            return false;
+        }
+        stale = false;
+        long start = System.nanoTime();
+        if ( ++stamp == Integer.MAX_VALUE ) {
+            Arrays.fill(reached, 0);
+            stamp = 1;
+        }
+        open.clear();
+        if ( grid.isWalkable(targetX, targetY) ) {
+            int t = targetY * width + targetX;
+            reached[t] = stamp;
+            dist[t] = 0;
+            dir[t] = NO_STEP;
+            open.push(t, 0);
+            sweep();
+        }
+        sweepNanos = System.nanoTime() - start;
+        if ( log.isLoggable(Level.FINER) ) {
+            log.log(Level.FINER, "Flow field to {0},{1} swept in {2} us",
+                    targetX, targetY, sweepNanos / 1000);
+        }
+        return true;
+    }
+
+    /**
+     * @return time the last full sweep took.
+     */
+    public long getSweepNanos() {
+        return sweepNanos;
+    }
+
+    /**
+     * Run Dijkstra on from whatever is in the open heap.  The field holds
+     * the cost from a cell to the target, so a cell c is relaxed from its
+     * settled neighbour n by the cost of stepping into n.
+     */
+    private void sweep() {
+        final int st = stamp;
+        while ( !open.isEmpty() ) {
+            int key = open.peekKey();
+            int n = open.pop();
+            if ( key > dist[n] ) {
+                continue; // Stale copy.
+            }
+            int nx = n % width;
+            int ny = n / width;
+            int cost = costs[n] & 0xFF;
+            for ( int d = 0; d < 8; d++ ) {
+                int cx = nx - PathFinder.DX[d];
+                int cy = ny - PathFinder.DY[d];
+                if ( !inField(cx, cy) ) {
+                    continue;
+                }
+                int c = cy * width + cx;
+                if ( (costs[c] & 0xFF) == PathFinder.BLOCKED ) {
+                    continue;
+                }
+                if ( d >= 4 && grid.cutsCorner(cx, cy, nx, ny) ) {
+                    continue;
+                }
+                int nd = key + PathFinder.stepCost(cost, d);
+                if ( reached[c] != st || nd < dist[c] ) {
+                    reached[c] = st;
+                    dist[c] = nd;
+                    dir[c] = (byte) d;
+                    open.push(c, nd);
+                }
+            }
+        }
+    }
+
+    private boolean inField( int x, int y ) {
+        return x >= 0 && y >= 0 && x < width && y < height
+                && Math.abs(x - targetX) <= radius && Math.abs(y - targetY) <= radius;
+    }
+
+    @Override
+    public void costChanged( int x, int y, int oldCost, int newCost ) {
+        if ( stale || targetX < 0 ) {
+            return;
+        }
+        if ( Math.abs(x - targetX) - 1 > radius || Math.abs(y - targetY) - 1 > radius ) {
+            return;
+        }
+        if ( newCost > oldCost ) {
+            // Routes through here may now be too cheap.  Sweep again if any
+            // cell that can route by it is in the field.
+            for ( int d = -1; d < 8; d++ ) {
+                int qx = d < 0 ? x : x + PathFinder.DX[d];
+                int qy = d < 0 ? y : y + PathFinder.DY[d];
+                if ( isReached(qx, qy) ) {
+                    stale = true;
+                    return;
+                }
+            }
+            return;
+        }
+        // Cheaper.  The cell and those around it, i.e. past a corner that
+        // opened, may find a better step.  Sweep on from any that do.
+        open.clear();
+        for ( int d = -1; d < 8; d++ ) {
+            int qx = d < 0 ? x : x + PathFinder.DX[d];
+            int qy = d < 0 ? y : y + PathFinder.DY[d];
+            relax(qx, qy);
+        }
+        sweep();
+    }
+
+    /**
+     * Give cell x,y its best step from its neighbours, if that is better
+     * than what it has, and queue it to pass the news on.
+     */
+    private void relax( int x, int y ) {
+        if ( !inField(x, y) || (x == targetX && y == targetY) ) {
+            return;
+        }
+        int c = y * width + x;
+        if ( (costs[c] & 0xFF) == PathFinder.BLOCKED ) {
+            return;
+        }
+        int best = reached[c] == stamp ? dist[c] : Integer.MAX_VALUE;
+        int bestDir = NO_STEP;
+        for ( int d = 0; d < 8; d++ ) {
+            int nx = x + PathFinder.DX[d];
+            int ny = y + PathFinder.DY[d];
+            if ( !isReached(nx, ny) ) {
+                continue;
+            }
+            if ( d >= 4 && grid.cutsCorner(x, y, nx, ny) ) {
+                continue;
+            }
+            int n = ny * width + nx;
+            int nd = dist[n] + PathFinder.stepCost(costs[n] & 0xFF, d);
+            if ( nd < best ) {
+                best = nd;
+                bestDir = d;
+            }
+        }
+        if ( bestDir != NO_STEP ) {
+            reached[c] = stamp;
+            dist[c] = best;
+            dir[c] = (byte) bestDir;
+            open.push(c, best);
+        }
+    }
+
+    private boolean isReached( int x, int y ) {
+        return x >= 0 && y >= 0 && x < width && y < height
+                && reached[y * width + x] == stamp;
+    }
+
+    /**
+     * @return direction, 0-7 as PathFinder, to step from x,y toward the
+     *         target.  NO_STEP at the target, out of reach or out of field.
+     */
+    public int getDirection( int x, int y ) {
+        return isReached(x, y) ? dir[y * width + x] : NO_STEP;
+    }
+
+    /**
+     * @return x of the next cell to step to from x,y, x if there is none.
+     */
+    public int getNextX( int x, int y ) {
+        int d = getDirection(x, y);
+        return d == NO_STEP ? x : x + PathFinder.DX[d];
+    }
+
+    /**
+     * @return y of the next cell to step to from x,y, y if there is none.
+     */
+    public int getNextY( int x, int y ) {
+        int d = getDirection(x, y);
+        return d == NO_STEP ? y : y + PathFinder.DY[d];
+    }
+
+    /**
+     * @return cost to walk from x,y to the target, -1 if it can't be
+     *         reached.
+     */
+    public int getDistance( int x, int y ) {
+        return isReached(x, y) ? dist[y * width + x] : -1;
+    }
+}
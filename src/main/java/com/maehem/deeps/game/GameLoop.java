@@ -0,0 +1,170 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import static com.maehem.deeps.Deeps.log;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import javafx.animation.AnimationTimer;
+
+/**
+ * Fixed timestep game loop.
+ *
+ * The simulation runs at a fixed tick rate, whatever the frame rate.  Each
+ * frame the time since the last frame is banked and as many whole ticks as
+ * it covers are run, then the renderers are told how far into the next
+ * tick the frame falls so they can interpolate.  If the game falls far
+ * behind, i.e. after a stall, the missed ticks are dropped rather than run
+ * all at once.
+ *
+ * Everything runs on the FX thread, so systems may change the Zone and
+ * its views directly.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class GameLoop {
+
+    public static final int DEFAULT_TICK_RATE = 30; // ticks per second
+    private static final int MAX_TICKS_PER_FRAME = 5;
+
+    private final long stepNanos;
+    private final double dt;
+    private final ArrayList<GameSystem> systems = new ArrayList<>();
+    private final ArrayList<GameRenderer> renderers = new ArrayList<>();
+    private final LoopMetrics metrics = new LoopMetrics();
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle( long now ) {
+            frame(now);
+        }
+    };
+
+    private boolean running = false;
+    private long lastFrame = -1;
+    private long accumulator = 0;
+    private long tick = 0;
+
+    public GameLoop() {
+        this(DEFAULT_TICK_RATE);
+    }
+
+    /**
+     * @param tickRate simulation ticks per second
+     */
+    public GameLoop( int tickRate ) {
+        this.stepNanos = 1_000_000_000L / tickRate;
+        this.dt = 1.0 / tickRate;
+    }
+
+    public void addSystem( GameSystem s ) {
+        systems.add(s);
+    }
+
+    public void removeSystem( GameSystem s ) {
+        systems.remove(s);
+    }
+
+    public void addRenderer( GameRenderer r ) {
+        renderers.add(r);
+    }
+
+    public void removeRenderer( GameRenderer r ) {
+        renderers.remove(r);
+    }
+
+    public void start() {
+        if ( running ) {
+            return;
+        }
+        log.log(Level.INFO, "Game loop start: {0} ticks per second.", Math.round(1.0 / dt));
+        lastFrame = -1;
+        accumulator = 0;
+        running = true;
+        timer.start();
+    }
+
+    public void stop() {
+        if ( !running ) {
+            return;
+        }
+        timer.stop();
+        running = false;
+        log.log(Level.INFO, "Game loop stop: {0}", metrics);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return ticks run since the loop was created.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * @return length of one tick in seconds.
+     */
+    public double getTickSeconds() {
+        return dt;
+    }
+
+    public LoopMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Run one frame: catch the simulation up to now, then render.
+     *
+     * @param now frame time in nanoseconds
+     */
+    void frame( long now ) {
+        if ( lastFrame < 0 ) {
+            lastFrame = now;
+        }
+        long elapsed = now - lastFrame;
+        lastFrame = now;
+        accumulator += elapsed;
+
+        int steps = 0;
+        while ( accumulator >= stepNanos ) {
+            if ( steps == MAX_TICKS_PER_FRAME ) {
+                long behind = accumulator / stepNanos;
+                metrics.recordDropped(behind);
+                accumulator -= behind * stepNanos;
+                log.log(Level.FINE, "Game loop fell behind, dropped {0} ticks.", behind);
+                break;
+            }
+            long t0 = System.nanoTime();
+            for ( int i = 0; i < systems.size(); i++ ) {
+                systems.get(i).tick(tick, dt);
+            }
+            metrics.recordTick(System.nanoTime() - t0);
+            tick++;
+            steps++;
+            accumulator -= stepNanos;
+        }
+
+        double alpha = (double) accumulator / stepNanos;
+        long r0 = System.nanoTime();
+        for ( int i = 0; i < renderers.size(); i++ ) {
+            renderers.get(i).render(alpha);
+        }
+        metrics.recordFrame(elapsed, System.nanoTime() - r0);
+    }
+}
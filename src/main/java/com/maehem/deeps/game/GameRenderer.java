@@ -0,0 +1,34 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+/**
+ * Part of the game that is drawn once per frame.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public interface GameRenderer {
+
+    /**
+     * Draw the current state.
+     *
+     * @param alpha how far, 0.0 to 1.0, the frame is between the previous
+     *        tick and the next one.  Blend previous and current simulation
+     *        state by this amount so motion is smooth at any frame rate.
+     */
+    public void render( double alpha );
+}
@@ -0,0 +1,36 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+/**
+ * Part of the game that is stepped by the simulation loop.
+ *
+ * Ticks come at a fixed rate no matter how fast frames are drawn, so a
+ * system can treat dt as constant.  Runs on the FX thread.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public interface GameSystem {
+
+    /**
+     * Advance one simulation step.
+     *
+     * @param tick number of this tick since the loop started
+     * @param dt length of a tick in seconds
+     */
+    public void tick( long tick, double dt );
+}
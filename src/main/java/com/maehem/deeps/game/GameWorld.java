@@ -0,0 +1,140 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.GameModel;
+import com.maehem.deeps.model.SheetModel;
+import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneBinaryFormat;
+import com.maehem.deeps.model.ZoneChunkFormat;
+import com.maehem.deeps.model.ZoneFileFormatException;
+import com.maehem.deeps.model.ZoneFiles;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Game side GameModel.  Reads the sheets and zones of a project made with
+ * the editor.
+ *
+ * Project layout is the same as the editor's:
+ * <pre>
+ *    project/sheets/*.png     Sheets, with their .properties
+ *    project/zones/*.zone     Zones, or .zonec / .zoneb
+ * </pre>
+ * Which file of a zone is read is up to ZoneFiles, the same as in the
+ * editor.  A project exported for the game has only .zoneb and .zonec.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class GameWorld implements GameModel {
+
+    private final File projectDir;
+    private final ArrayList<SheetModel> sheets = new ArrayList<>();
+
+    public GameWorld( File projectDir ) throws IOException {
+        this.projectDir = projectDir;
+        File sheetsDir = new File(projectDir, "sheets");
+        File[] files = sheetsDir.listFiles((File dir, String nam) -> nam.endsWith(".png"));
+        if ( files == null ) {
+            throw new IOException("No sheets directory in project: " + projectDir);
+        }
+        for ( File f : files ) {
+            sheets.add(new SheetModel(f));
+        }
+        log.log(Level.CONFIG, "Game World: {0}  sheets: {1}", projectDir.getName(), sheets.size());
+    }
+
+    public File getDir() {
+        return projectDir;
+    }
+
+    /**
+     * @return names of the zones in the project.
+     */
+    public List<String> getZoneNames() {
+        ArrayList<String> names = new ArrayList<>();
+        File[] files = new File(projectDir, "zones").listFiles();
+        if ( files == null ) {
+            return names;
+        }
+        for ( File f : files ) {
+            String n = ZoneFiles.nameOf(f.getName());
+            if ( n != null && !names.contains(n) ) {
+                names.add(n);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Load a zone by name, from the same file the editor reads and saves.
+     * See ZoneFiles for which one that is.  Chunked zones only read their
+     * header here, chunks load as they come into view.
+     *
+     * @param name zone file name without its extension
+     * @return the zone
+     * @throws IOException if no such zone or it can't be read
+     * @throws ZoneFileFormatException if the file is bad
+     */
+    public Zone loadZone( String name ) throws IOException, ZoneFileFormatException {
+        File zonesDir = new File(projectDir, "zones");
+        File file = ZoneFiles.find(zonesDir, name);
+        Zone zone;
+        if ( file == null ) {
+            throw new IOException("No zone named " + name + " in " + zonesDir);
+        } else if ( ZoneChunkFormat.isChunkedZoneFile(file) ) {
+            zone = ZoneChunkFormat.load(this, file);
+        } else if ( ZoneBinaryFormat.isBinaryZoneFile(file) ) {
+            zone = ZoneBinaryFormat.load(this, file, Zone.StorageMode.COMPACT);
+        } else {
+            try ( FileInputStream in = new FileInputStream(file) ) {
+                zone = Zone.load(this, in, Zone.StorageMode.COMPACT);
+            }
+        }
+        log.log(Level.INFO, "Game loaded Zone: {0}  {1}x{2}",
+                zone.getName(), zone.getWidth(), zone.getHeight());
+        return zone;
+    }
+
+    @Override
+    public SheetModel getSheet( Long uid ) {
+        for ( SheetModel sm : sheets ) {
+            if ( uid != null && sm.getUID() == uid ) {
+                return sm;
+            }
+        }
+        log.log(Level.INFO, "Key {0} not found in game sheets list!", uid);
+        return null;
+    }
+
+    @Override
+    public SheetModel getDefaultSheet() {
+        return sheets.isEmpty() ? null : sheets.get(0);
+    }
+
+    @Override
+    public void addSheet( SheetModel sheet ) {
+        if ( !sheets.contains(sheet) ) {
+            sheets.add(sheet);
+        }
+    }
+}
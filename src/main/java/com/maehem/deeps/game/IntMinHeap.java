@@ -0,0 +1,98 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import java.util.Arrays;
+
+/**
+ * Binary min heap of cell numbers keyed by an int, for grid searches.
+ *
+ * There is no decrease key.  Push a cell again with its better key and
+ * skip the stale copy when it comes out.  Grows as needed and is reused
+ * between searches, so a warm heap allocates nothing.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+final class IntMinHeap {
+
+    private int[] cells = new int[256];
+    private int[] keys = new int[256];
+    private int size = 0;
+
+    void clear() {
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return key of the cell pop() would return.
+     */
+    int peekKey() {
+        return keys[0];
+    }
+
+    void push( int cell, int key ) {
+        if ( size == cells.length ) {
+            cells = Arrays.copyOf(cells, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int i = size++;
+        while ( i > 0 ) {
+            int p = (i - 1) >> 1;
+            if ( keys[p] <= key ) {
+                break;
+            }
+            cells[i] = cells[p];
+            keys[i] = keys[p];
+            i = p;
+        }
+        cells[i] = cell;
+        keys[i] = key;
+    }
+
+    /**
+     * @return cell with the lowest key, removed from the heap.
+     */
+    int pop() {
+        int top = cells[0];
+        int last = --size;
+        int cell = cells[last];
+        int key = keys[last];
+        int i = 0;
+        while ( true ) {
+            int c = 2 * i + 1;
+            if ( c >= last ) {
+                break;
+            }
+            if ( c + 1 < last && keys[c + 1] < keys[c] ) {
+                c++;
+            }
+            if ( keys[c] >= key ) {
+                break;
+            }
+            cells[i] = cells[c];
+            keys[i] = keys[c];
+            i = c;
+        }
+        cells[i] = cell;
+        keys[i] = key;
+        return top;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.FixtureTile;
+import com.maehem.deeps.model.MapTile;
+import com.maehem.deeps.model.Tile;
+import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * Light level of every cell of a zone, from its luminous tiles.
+ *
+ * A tile with LUMI gives that much light, 0-99, to its own cell.  Light
+ * spreads out cell by cell, losing FALLOFF per step, and passing a cell
+ * with BLOK takes that percent more away, so walls cast shade.  Where
+ * lights overlap the brightest wins.
+ *
+ * When a tile that gives light, or blocks it, is swapped or edited only
+ * the cells that light could reach from it are worked out again.  The
+ * result is one byte per cell in getLevels(), row by row, for renderers
+ * to blend over the zone in one pass.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class LightMap implements ZoneListener {
+
+    public static final int MAX_LEVEL = Tile.LUMINOUS_MAX;
+    public static final int FALLOFF = 10;   // Light lost per cell travelled.
+    public static final int REACH = MAX_LEVEL / FALLOFF; // Furthest any light gets.
+
+    /**
+     * Told which cells have new light levels.
+     */
+    public interface Listener {
+        public void lightChanged( int x0, int y0, int x1, int y1 );
+    }
+
+    private final Zone zone;
+    private final int width;
+    private final int height;
+    private final byte[] emit;    // Light given by each cell.
+    private final byte[] pass;    // Percent of light let through, 0-100.
+    private final byte[] level;   // Result.
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+
+    // Scratch for spreading one light.  A square REACH each way of it.
+    private static final int SIDE = 2 * REACH + 1;
+    private final byte[] spread = new byte[SIDE * SIDE];
+    private final boolean[] queued = new boolean[SIDE * SIDE];
+    private final int[] queue = new int[SIDE * SIDE]; // Ring.  A cell is in it once at most.
+
+    /**
+     * Build the light map and follow changes to the zone.  In CHUNKED
+     * mode this visits every chunk once.
+     */
+    public LightMap( Zone zone ) {
+        this.zone = zone;
+        this.width = zone.getWidth();
+        this.height = zone.getHeight();
+        this.emit = new byte[width * height];
+        this.pass = new byte[width * height];
+        this.level = new byte[width * height];
+        long start = System.nanoTime();
+        for ( int y = 0; y < height; y++ ) {
+            for ( int x = 0; x < width; x++ ) {
+                readCell(x, y);
+            }
+        }
+        relight(0, 0, width - 1, height - 1);
+        log.log(Level.INFO, "Light map for Zone {0} built in {1} ms",
+                zone.getName(), (System.nanoTime() - start) / 1_000_000);
+        zone.addListener(this);
+    }
+
+    public void dispose() {
+        zone.removeListener(this);
+    }
+
+    public void addListener( Listener l ) {
+        listeners.add(l);
+    }
+
+    public void removeListener( Listener l ) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Light level of every cell, 0-99, at y * width + x.  Changes in place
+     * as the zone changes.  Do not write to it.
+     */
+    public byte[] getLevels() {
+        return level;
+    }
+
+    public int getLevel( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return 0;
+        }
+        return level[y * width + x];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Read the light and blocking of the tiles at x,y.
+     *
+     * @return true if either changed.
+     */
+    private boolean readCell( int x, int y ) {
+        int lum = zone.getMapLuminous(x, y);
+        int blok = zone.getMapBlocking(x, y);
+        FixtureTile f = zone.getFixtureTile(x, y);
+        if ( f != null && f.getIndex() > 0 ) {
+            lum = Math.max(lum, f.getLuminous());
+            blok = Math.max(blok, f.getBlocking());
+        }
+        int i = y * width + x;
+        byte e = (byte) Math.max(0, Math.min(lum, MAX_LEVEL));
+        byte p = (byte) (100 - Math.max(0, Math.min(blok, 100)));
+        boolean changed = emit[i] != e || pass[i] != p;
+        emit[i] = e;
+        pass[i] = p;
+        return changed;
+    }
+
+    /**
+     * Tiles at x,y gave or blocked light differently.  Work out again every
+     * cell its light could have reached, or that light passing it could.
+     */
+    public void updateCell( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return;
+        }
+        if ( readCell(x, y) ) {
+            relight(x - REACH, y - REACH, x + REACH, y + REACH);
+        }
+    }
+
+    /**
+     * Tiles anywhere in x0,y0 to x1,y1 may have changed.  The area and
+     * what its light reaches is worked out again once, not per cell.
+     */
+    public void updateArea( int x0, int y0, int x1, int y1 ) {
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, width - 1);
+        y1 = Math.min(y1, height - 1);
+        boolean changed = false;
+        for ( int y = y0; y <= y1; y++ ) {
+            for ( int x = x0; x <= x1; x++ ) {
+                changed |= readCell(x, y);
+            }
+        }
+        if ( changed ) {
+            relight(x0 - REACH, y0 - REACH, x1 + REACH, y1 + REACH);
+        }
+    }
+
+    /**
+     * Work out the light of cells x0,y0 to x1,y1 again.  Any light within
+     * REACH of the area may shine into it.
+     */
+    private void relight( int x0, int y0, int x1, int y1 ) {
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, width - 1);
+        y1 = Math.min(y1, height - 1);
+        for ( int y = y0; y <= y1; y++ ) {
+            int row = y * width;
+            for ( int x = x0; x <= x1; x++ ) {
+                level[row + x] = 0;
+            }
+        }
+        int sx0 = Math.max(x0 - REACH, 0);
+        int sy0 = Math.max(y0 - REACH, 0);
+        int sx1 = Math.min(x1 + REACH, width - 1);
+        int sy1 = Math.min(y1 + REACH, height - 1);
+        for ( int y = sy0; y <= sy1; y++ ) {
+            int row = y * width;
+            for ( int x = sx0; x <= sx1; x++ ) {
+                if ( emit[row + x] > 0 ) {
+                    shine(x, y, x0, y0, x1, y1);
+                }
+            }
+        }
+        for ( int n = 0; n < listeners.size(); n++ ) {
+            listeners.get(n).lightChanged(x0, y0, x1, y1);
+        }
+    }
+
+    /**
+     * Spread the light of cell lx,ly and raise the level of the cells it
+     * reaches inside x0,y0 to x1,y1.
+     */
+    private void shine( int lx, int ly, int x0, int y0, int x1, int y1 ) {
+        Arrays.fill(spread, (byte) 0);
+        Arrays.fill(queued, false);
+        int ox = lx - REACH; // Zone cell of spread[0].
+        int oy = ly - REACH;
+        int head = 0;
+        int tail = 0;
+        int start = REACH * SIDE + REACH;
+        spread[start] = emit[ly * width + lx];
+        queue[tail++] = start;
+        queued[start] = true;
+        while ( head != tail ) {
+            int s = queue[head];
+            head = (head + 1) % queue.length;
+            queued[s] = false;
+            int v = spread[s];
+            int sx = s % SIDE;
+            int sy = s / SIDE;
+            // Light leaving a cell is cut by what is in it, but not the
+            // light at its source.
+            int out = s == start ? v : v * pass[(oy + sy) * width + ox + sx] / 100;
+            out -= FALLOFF;
+            if ( out <= 0 ) {
+                continue;
+            }
+            for ( int d = 0; d < 4; d++ ) {
+                int nx = sx + PathFinder.DX[d];
+                int ny = sy + PathFinder.DY[d];
+                if ( nx < 0 || ny < 0 || nx >= SIDE || ny >= SIDE ) {
+                    continue;
+                }
+                int zx = ox + nx;
+                int zy = oy + ny;
+                if ( zx < 0 || zy < 0 || zx >= width || zy >= height ) {
+                    continue;
+                }
+                int n = ny * SIDE + nx;
+                if ( spread[n] < out ) {
+                    spread[n] = (byte) out;
+                    if ( !queued[n] ) {
+                        queued[n] = true;
+                        queue[tail] = n;
+                        tail = (tail + 1) % queue.length;
+                    }
+                }
+            }
+        }
+        int ax0 = Math.max(x0, ox);
+        int ay0 = Math.max(y0, oy);
+        int ax1 = Math.min(x1, ox + SIDE - 1);
+        int ay1 = Math.min(y1, oy + SIDE - 1);
+        for ( int y = ay0; y <= ay1; y++ ) {
+            for ( int x = ax0; x <= ax1; x++ ) {
+                byte v = spread[(y - oy) * SIDE + x - ox];
+                int i = y * width + x;
+                if ( v > level[i] ) {
+                    level[i] = v;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void zoneTileChanged( Tile t ) {
+        if ( t instanceof MapTile || t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneTileSwapped( Tile tOld, Tile tNew ) {
+        Tile t = tNew != null ? tNew : tOld;
+        if ( t instanceof MapTile || t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneAreaChanged( int x0, int y0, int x1, int y1 ) {
+        updateArea(x0, y0, x1, y1);
+    }
+}
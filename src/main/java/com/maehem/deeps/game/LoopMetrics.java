@@ -0,0 +1,101 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+/**
+ * Running timings of the game loop.
+ *
+ * Times are smoothed with an exponential moving average so they can be
+ * shown on screen without jumping around.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class LoopMetrics {
+
+    private static final double SMOOTHING = 0.05;
+
+    private double tickNanos = 0;    // Time spent in one tick.
+    private double frameNanos = 0;   // Time from one frame to the next.
+    private double renderNanos = 0;  // Time spent drawing one frame.
+    private long ticks = 0;
+    private long frames = 0;
+    private long droppedTicks = 0;   // Skipped to catch up after a stall.
+
+    void recordTick( long nanos ) {
+        tickNanos = ticks == 0 ? nanos : tickNanos + (nanos - tickNanos) * SMOOTHING;
+        ticks++;
+    }
+
+    void recordFrame( long interval, long render ) {
+        if ( frames == 0 ) {
+            frameNanos = interval;
+            renderNanos = render;
+        } else {
+            frameNanos += (interval - frameNanos) * SMOOTHING;
+            renderNanos += (render - renderNanos) * SMOOTHING;
+        }
+        frames++;
+    }
+
+    void recordDropped( long count ) {
+        droppedTicks += count;
+    }
+
+    /**
+     * @return average time spent running one tick of every system.
+     */
+    public double getTickMillis() {
+        return tickNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return average time between frames.
+     */
+    public double getFrameMillis() {
+        return frameNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return average time spent in the renderers each frame.
+     */
+    public double getRenderMillis() {
+        return renderNanos / 1_000_000.0;
+    }
+
+    public double getFramesPerSecond() {
+        return frameNanos > 0 ? 1_000_000_000.0 / frameNanos : 0;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tick %.2f ms  frame %.2f ms (%.0f fps)  render %.2f ms  dropped %d",
+                getTickMillis(), getFrameMillis(), getFramesPerSecond(),
+                getRenderMillis(), droppedTicks);
+    }
+}
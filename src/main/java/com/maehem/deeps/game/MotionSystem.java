@@ -0,0 +1,110 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import com.maehem.deeps.model.Tile;
+import com.maehem.deeps.model.Zone;
+
+/**
+ * Moves rolling entities by their velocity.
+ *
+ * A moving entity that would enter a blocking cell, or leave the zone,
+ * turns around instead.  Carts on rails are left to the RailSystem.  Dead
+ * entities are removed at the end of the tick.
+ *
+ * Saves every position as the previous one first, so add it before any
+ * other system that moves entities.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class MotionSystem implements GameSystem {
+
+    private final EntityStore store;
+    private final Zone zone;
+    private final PathFinder grid;
+
+    public MotionSystem( EntityStore store, Zone zone ) {
+        this.store = store;
+        this.zone = zone;
+        this.grid = null;
+    }
+
+    /**
+     * Block movement by the path finding cost grid instead of the tiles,
+     * so entities stop where paths and flow fields say they can't go.
+     */
+    public MotionSystem( EntityStore store, PathFinder grid ) {
+        this.store = store;
+        this.zone = grid.getZone();
+        this.grid = grid;
+    }
+
+    @Override
+    public void tick( long tick, double dt ) {
+        final EntityStore s = store;
+        final float fdt = (float) dt;
+        final int n = s.size();
+        final float[] x = s.x;
+        final float[] y = s.y;
+        final float[] px = s.prevX;
+        final float[] py = s.prevY;
+        final float[] vx = s.vx;
+        final float[] vy = s.vy;
+        final int[] rail = s.rail;
+
+        System.arraycopy(x, 0, px, 0, n);
+        System.arraycopy(y, 0, py, 0, n);
+        for ( int i = 0; i < n; i++ ) {
+            if ( (vx[i] == 0f && vy[i] == 0f) || rail[i] != EntityStore.NONE ) {
+                continue;
+            }
+            float nx = x[i] + vx[i] * fdt;
+            float ny = y[i] + vy[i] * fdt;
+            int cx = (int) Math.floor(nx);
+            int cy = (int) Math.floor(ny);
+            if ( (cx != (int) x[i] || cy != (int) y[i]) && isBlocked(cx, cy) ) {
+                vx[i] = -vx[i];
+                vy[i] = -vy[i];
+                continue;
+            }
+            x[i] = nx;
+            y[i] = ny;
+        }
+
+        // Backwards, as removing pulls the last entity into the slot.
+        final short[] health = s.health;
+        for ( int i = s.size() - 1; i >= 0; i-- ) {
+            if ( health[i] <= 0 ) {
+                s.remove(s.id[i]);
+            }
+        }
+    }
+
+    private boolean isBlocked( int cx, int cy ) {
+        if ( grid != null ) {
+            return !grid.isWalkable(cx, cy);
+        }
+        if ( !zone.isInside(cx, cy) ) {
+            return true;
+        }
+        if ( zone.getMapBlocking(cx, cy) >= 0 ) {
+            return true;
+        }
+        Tile t = zone.getFixtureTile(cx, cy);
+        return t != null && t.isBlocking();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import java.util.Arrays;
+
+/**
+ * Steps of a path found by PathFinder, first step first.  The start cell
+ * is not included.
+ *
+ * Keep one Path per entity and hand it to every query.  It is refilled in
+ * place and only grows, so steady state queries allocate nothing.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class Path {
+
+    private int[] cells = new int[32];  // Cell index, y * width + x.
+    private int length = 0;
+    private int width = 1;
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public int getX( int step ) {
+        return cells[step] % width;
+    }
+
+    public int getY( int step ) {
+        return cells[step] / width;
+    }
+
+    public void clear() {
+        length = 0;
+    }
+
+    /**
+     * Make room for n steps and set the length to n.  Filled by PathFinder.
+     */
+    void reset( int n, int width ) {
+        if ( n > cells.length ) {
+            cells = Arrays.copyOf(cells, Math.max(n, cells.length * 2));
+        }
+        this.length = n;
+        this.width = width;
+    }
+
+    void set( int step, int cell ) {
+        cells[step] = cell;
+    }
+}
@@ -0,0 +1,371 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.FixtureTile;
+import com.maehem.deeps.model.MapTile;
+import com.maehem.deeps.model.Tile;
+import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * A* path finding over a zone.
+ *
+ * The map and fixture layers are boiled down to one byte per cell, the
+ * cost to step into it.  BLOK and the fixture slowing are a percent slow
+ * down, 99 can't be walked through.  The grid follows the zone as tiles are
+ * swapped or edited, one cell at a time.
+ *
+ * Searches reuse their working arrays, so a query allocates nothing once
+ * warmed up.  Each array is the size of the zone and is never cleared,
+ * entries are stamped with the number of the search that wrote them.
+ * Searches may run on several threads at once, each takes its own set of
+ * arrays from a pool, but the grid must not change while they run.
+ *
+ * Moves are 8 way.  A diagonal step may not cut the corner of a blocked
+ * cell.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class PathFinder implements ZoneListener {
+
+    public static final int BLOCKED = 0xFF;
+    public static final int STEP_COST = 10;       // Cost of a plain cell.
+    private static final int MAX_COST = 0xFE;
+    private static final int BLOCKING_PERCENT = 99;
+
+    // Neighbour offsets.  0-3 are straight, 4-7 diagonal.
+    static final int[] DX = {  0, 1, 0, -1,  1, 1, -1, -1 };
+    static final int[] DY = { -1, 0, 1,  0, -1, 1,  1, -1 };
+
+    /**
+     * Told when the cost of a cell changes.
+     */
+    public interface CostListener {
+        public void costChanged( int x, int y, int oldCost, int newCost );
+    }
+
+    private final Zone zone;
+    private final int width;
+    private final int height;
+    final byte[] costs;  // By cell, unsigned.  BLOCKED for walls.
+    private final ArrayDeque<Search> pool = new ArrayDeque<>();
+    private final ArrayList<CostListener> listeners = new ArrayList<>();
+    private int version = 0; // Bumped on every cost change.
+
+    /**
+     * Build the cost grid and follow changes to the zone.  In CHUNKED mode
+     * this visits every chunk once.
+     *
+     * @param zone to search
+     */
+    public PathFinder( Zone zone ) {
+        this.zone = zone;
+        this.width = zone.getWidth();
+        this.height = zone.getHeight();
+        this.costs = new byte[width * height];
+        long start = System.nanoTime();
+        for ( int y = 0; y < height; y++ ) {
+            for ( int x = 0; x < width; x++ ) {
+                costs[y * width + x] = (byte) cellCost(x, y);
+            }
+        }
+        log.log(Level.INFO, "Path grid for Zone {0} built in {1} ms",
+                zone.getName(), (System.nanoTime() - start) / 1_000_000);
+        zone.addListener(this);
+    }
+
+    /**
+     * Stop following the zone.
+     */
+    public void dispose() {
+        zone.removeListener(this);
+    }
+
+    /**
+     * Cost to step into a cell, from the tiles there now.
+     */
+    private int cellCost( int x, int y ) {
+        int pct = zone.getMapBlocking(x, y);
+        FixtureTile f = zone.getFixtureTile(x, y);
+        if ( f != null && f.getIndex() > 0 ) {
+            pct = Math.max(pct, Math.max(f.getBlocking(), f.getSlowing()));
+        }
+        if ( pct >= BLOCKING_PERCENT ) {
+            return BLOCKED;
+        }
+        if ( pct <= 0 ) {
+            return STEP_COST;
+        }
+        return Math.min(MAX_COST, STEP_COST * 100 / (100 - pct));
+    }
+
+    /**
+     * Read the tiles at x,y again.
+     */
+    public void updateCell( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return;
+        }
+        int i = y * width + x;
+        int old = costs[i] & 0xFF;
+        int c = cellCost(x, y);
+        if ( old != c ) {
+            costs[i] = (byte) c;
+            version++;
+            for ( int n = 0; n < listeners.size(); n++ ) {
+                listeners.get(n).costChanged(x, y, old, c);
+            }
+        }
+    }
+
+    public void addCostListener( CostListener l ) {
+        listeners.add(l);
+    }
+
+    public void removeCostListener( CostListener l ) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Cost of stepping into a cell of the given cost.
+     *
+     * @param cost cell cost, not BLOCKED
+     * @param direction 0-3 straight, 4-7 diagonal
+     */
+    static int stepCost( int cost, int direction ) {
+        return direction >= 4 ? cost * 14 / 10 : cost;
+    }
+
+    /**
+     * @return cost to step into x,y.  BLOCKED if it can't be entered or is
+     *         outside the zone.
+     */
+    public int getCost( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return BLOCKED;
+        }
+        return costs[y * width + x] & 0xFF;
+    }
+
+    public boolean isWalkable( int x, int y ) {
+        return getCost(x, y) != BLOCKED;
+    }
+
+    /**
+     * Changes every time a cell cost changes.  Callers holding results may
+     * compare it to know when to ask again.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Zone getZone() {
+        return zone;
+    }
+
+    /**
+     * Cheapest path from sx,sy to tx,ty.
+     *
+     * @param out filled with the steps, cleared if there is no path
+     * @return true if a path was found
+     */
+    public boolean findPath( int sx, int sy, int tx, int ty, Path out ) {
+        return findPath(sx, sy, tx, ty, Integer.MAX_VALUE, out);
+    }
+
+    /**
+     * Cheapest path from sx,sy to tx,ty, giving up after looking at
+     * maxVisits cells.  Use a limit to bound the cost of far or unreachable
+     * targets when many queries share a tick.
+     *
+     * @param maxVisits cells to expand before giving up
+     * @param out filled with the steps, cleared if there is no path
+     * @return true if a path was found
+     */
+    public boolean findPath( int sx, int sy, int tx, int ty, int maxVisits, Path out ) {
+        out.clear();
+        if ( !isWalkable(sx, sy) || !isWalkable(tx, ty) ) {
+            return false;
+        }
+        if ( sx == tx && sy == ty ) {
+            out.reset(0, width);
+            return true;
+        }
+        Search s;
+        synchronized (pool) {
+            s = pool.poll();
+        }
+        if ( s == null ) {
+            s = new Search(width * height);
+        }
+        try {
+            return s.run(sx, sy, tx, ty, maxVisits, out);
+        } finally {
+            synchronized (pool) {
+                pool.push(s);
+            }
+        }
+    }
+
+    /**
+     * A diagonal step may only be taken if both cells beside it are open.
+     */
+    boolean cutsCorner( int x, int y, int nx, int ny ) {
+        return (costs[y * width + nx] & 0xFF) == BLOCKED
+                || (costs[ny * width + x] & 0xFF) == BLOCKED;
+    }
+
+    @Override
+    public void zoneTileChanged( Tile t ) {
+        if ( t instanceof MapTile || t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneTileSwapped( Tile tOld, Tile tNew ) {
+        Tile t = tNew != null ? tNew : tOld;
+        if ( t instanceof MapTile || t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneAreaChanged( int x0, int y0, int x1, int y1 ) {
+        for ( int y = y0; y <= y1; y++ ) {
+            for ( int x = x0; x <= x1; x++ ) {
+                updateCell(x, y);
+            }
+        }
+    }
+
+    /**
+     * Working arrays of one search.
+     */
+    private final class Search {
+
+        private final int[] g;       // Cost from start, by cell.
+        private final int[] parent;  // Cell we came from.
+        private final int[] opened;  // Stamp when g and parent are valid.
+        private final int[] closed;  // Stamp when done with.
+        private int stamp = 0;
+
+        // Open cells by f.  Stale copies are skipped as closed.
+        private final IntMinHeap open = new IntMinHeap();
+
+        Search( int cells ) {
+            g = new int[cells];
+            parent = new int[cells];
+            opened = new int[cells];
+            closed = new int[cells];
+        }
+
+        boolean run( int sx, int sy, int tx, int ty, int maxVisits, Path out ) {
+            if ( ++stamp == Integer.MAX_VALUE ) {
+                Arrays.fill(opened, 0);
+                Arrays.fill(closed, 0);
+                stamp = 1;
+            }
+            open.clear();
+            final int st = stamp;
+            final int target = ty * width + tx;
+            final int startCell = sy * width + sx;
+            g[startCell] = 0;
+            parent[startCell] = -1;
+            opened[startCell] = st;
+            open.push(startCell, heuristic(sx, sy, tx, ty));
+
+            int visits = 0;
+            while ( !open.isEmpty() ) {
+                int cell = open.pop();
+                if ( closed[cell] == st ) {
+                    continue;
+                }
+                if ( cell == target ) {
+                    build(target, out);
+                    return true;
+                }
+                closed[cell] = st;
+                if ( ++visits > maxVisits ) {
+                    break;
+                }
+                int cx = cell % width;
+                int cy = cell / width;
+                int gc = g[cell];
+                for ( int d = 0; d < 8; d++ ) {
+                    int nx = cx + DX[d];
+                    int ny = cy + DY[d];
+                    if ( nx < 0 || ny < 0 || nx >= width || ny >= height ) {
+                        continue;
+                    }
+                    int n = ny * width + nx;
+                    int cost = costs[n] & 0xFF;
+                    if ( cost == BLOCKED || closed[n] == st ) {
+                        continue;
+                    }
+                    if ( d >= 4 && cutsCorner(cx, cy, nx, ny) ) {
+                        continue;
+                    }
+                    int ng = gc + stepCost(cost, d);
+                    if ( opened[n] != st || ng < g[n] ) {
+                        opened[n] = st;
+                        g[n] = ng;
+                        parent[n] = cell;
+                        open.push(n, ng + heuristic(nx, ny, tx, ty));
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Octile distance at the plain cell cost.  Never more than the real
+         * cost, as no cell is cheaper than STEP_COST.
+         */
+        private int heuristic( int x, int y, int tx, int ty ) {
+            int dx = Math.abs(x - tx);
+            int dy = Math.abs(y - ty);
+            return STEP_COST * (dx + dy) - 6 * Math.min(dx, dy);
+        }
+
+        private void build( int target, Path out ) {
+            int n = 0;
+            for ( int c = target; parent[c] >= 0; c = parent[c] ) {
+                n++;
+            }
+            out.reset(n, width);
+            int i = n;
+            for ( int c = target; parent[c] >= 0; c = parent[c] ) {
+                out.set(--i, c);
+            }
+        }
+    }
+}
@@ -0,0 +1,523 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.FixtureTile;
+import com.maehem.deeps.model.Tile;
+import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneListener;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * Track fixtures of a zone compiled into a graph.
+ *
+ * A fixture with TRAK is track.  The low four bits of TRAK are the sides
+ * it joins: 1 north, 2 east, 4 south, 8 west.  0 joins every side.  Two
+ * track cells are joined when both join the side they share.
+ *
+ * Runs of track with no branches become segments, a list of cells from
+ * one end to the other.  Segments meet at junctions, dead ends and
+ * crossings, i.e. any track cell not joined on exactly two sides.  A loop
+ * with no junction is one segment that starts and ends on the same cell.
+ * Carts then move by position along a segment and only look at the graph
+ * when they reach the end of one.
+ *
+ * When a track tile is swapped or edited only the network it is part of
+ * is compiled again.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class RailNetwork implements ZoneListener {
+
+    public static final int NONE = -1;
+    private static final int ALL_SIDES = 0xF;
+
+    private final Zone zone;
+    private final int width;
+    private final int height;
+    private final byte[] sides;    // Sides joined, by cell.  0 if not track.
+
+    // By cell.  Cells inside a segment know which, and where in it.  Cells
+    // at the ends of segments, junctions, list those ends.
+    private final int[] segOf;
+    private final int[] posOf;
+    private final int[] endHead;   // First segment end at cell.
+
+    // Segments, by id.  null if the id is free.  An end is seg * 2 for the
+    // first cell, seg * 2 + 1 for the last.
+    private int[][] segCells = new int[64][];
+    private int[] endNext = new int[128]; // Next end at the same cell.
+    private int[] freeSegs = new int[16];
+    private int freeCount = 0;
+    private int segLimit = 0;      // Ids below this have been used.
+    private int segCount = 0;
+    private int rebuilds = 0;
+
+    // Scratch for compiling.
+    private final int[] visited;   // Pass that compiled the cell.
+    private final byte[] traced;   // Sides already made into a segment.
+    private int pass = 0;
+    private int[] list = new int[256];
+    private int[] path = new int[256];
+    private int[] changed = new int[64];
+
+    /**
+     * Compile every track fixture of a zone and follow changes.  In
+     * CHUNKED mode this visits every chunk once.
+     */
+    public RailNetwork( Zone zone ) {
+        this.zone = zone;
+        this.width = zone.getWidth();
+        this.height = zone.getHeight();
+        int cells = width * height;
+        this.sides = new byte[cells];
+        this.segOf = new int[cells];
+        this.posOf = new int[cells];
+        this.endHead = new int[cells];
+        this.visited = new int[cells];
+        this.traced = new byte[cells];
+        Arrays.fill(segOf, NONE);
+        Arrays.fill(endHead, NONE);
+
+        long start = System.nanoTime();
+        for ( int y = 0; y < height; y++ ) {
+            for ( int x = 0; x < width; x++ ) {
+                sides[y * width + x] = readSides(x, y);
+            }
+        }
+        beginPass();
+        for ( int c = 0; c < cells; c++ ) {
+            rebuild(c);
+        }
+        log.log(Level.INFO, "Rail network for Zone {0}: {1} segments in {2} ms",
+                zone.getName(), segCount, (System.nanoTime() - start) / 1_000_000);
+        zone.addListener(this);
+    }
+
+    public void dispose() {
+        zone.removeListener(this);
+    }
+
+    private byte readSides( int x, int y ) {
+        FixtureTile f = zone.getFixtureTile(x, y);
+        if ( f == null || f.getIndex() == 0 || !f.isTrack() ) {
+            return 0;
+        }
+        int s = f.getTrack() & ALL_SIDES;
+        return (byte) (s == 0 ? ALL_SIDES : s);
+    }
+
+    /**
+     * @return true if cell c and its neighbour on side d are joined.
+     */
+    private boolean joined( int c, int d ) {
+        if ( (sides[c] & (1 << d)) == 0 ) {
+            return false;
+        }
+        int x = c % width + PathFinder.DX[d];
+        int y = c / width + PathFinder.DY[d];
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return false;
+        }
+        return (sides[y * width + x] & (1 << (d ^ 2))) != 0;
+    }
+
+    private int degree( int c ) {
+        int n = 0;
+        for ( int d = 0; d < 4; d++ ) {
+            if ( joined(c, d) ) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private int step( int c, int d ) {
+        return c + PathFinder.DY[d] * width + PathFinder.DX[d];
+    }
+
+    /**
+     * Track at x,y changed.  Compile its network again, and that of its
+     * neighbours, which it may have joined or split.
+     */
+    public void updateCell( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return;
+        }
+        int c = y * width + x;
+        byte s = readSides(x, y);
+        if ( s == sides[c] ) {
+            return;
+        }
+        boolean wasTrack = sides[c] != 0;
+        sides[c] = s;
+        beginPass();
+        if ( wasTrack ) {
+            kill(c);  // Old segments here, it may no longer be track.
+        }
+        rebuild(c);
+        for ( int d = 0; d < 4; d++ ) {
+            int nx = x + PathFinder.DX[d];
+            int ny = y + PathFinder.DY[d];
+            if ( nx >= 0 && ny >= 0 && nx < width && ny < height ) {
+                rebuild(ny * width + nx);
+            }
+        }
+        rebuilds++;
+        if ( log.isLoggable(Level.FINE) ) {
+            log.log(Level.FINE, "Rail network rebuilt at {0},{1}: {2} segments",
+                    x, y, segCount);
+        }
+    }
+
+    /**
+     * Track anywhere in x0,y0 to x1,y1 may have changed.  Each network
+     * touched is compiled again once, not once per cell.
+     */
+    public void updateArea( int x0, int y0, int x1, int y1 ) {
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, width - 1);
+        y1 = Math.min(y1, height - 1);
+        int n = 0;
+        for ( int y = y0; y <= y1; y++ ) {
+            for ( int x = x0; x <= x1; x++ ) {
+                int c = y * width + x;
+                byte s = readSides(x, y);
+                if ( s != sides[c] ) {
+                    if ( sides[c] != 0 ) {
+                        kill(c);
+                    }
+                    sides[c] = s;
+                    changed = ensure(changed, n + 1);
+                    changed[n++] = c;
+                }
+            }
+        }
+        if ( n == 0 ) {
+            return;
+        }
+        beginPass();
+        for ( int i = 0; i < n; i++ ) {
+            int c = changed[i];
+            int x = c % width;
+            int y = c / width;
+            rebuild(c);
+            for ( int d = 0; d < 4; d++ ) {
+                int nx = x + PathFinder.DX[d];
+                int ny = y + PathFinder.DY[d];
+                if ( nx >= 0 && ny >= 0 && nx < width && ny < height ) {
+                    rebuild(ny * width + nx);
+                }
+            }
+        }
+        rebuilds++;
+        if ( log.isLoggable(Level.FINE) ) {
+            log.log(Level.FINE, "Rail network rebuilt for {0} cells: {1} segments",
+                    n, segCount);
+        }
+    }
+
+    private void beginPass() {
+        if ( ++pass == Integer.MAX_VALUE ) {
+            Arrays.fill(visited, 0);
+            pass = 1;
+        }
+    }
+
+    /**
+     * Compile the network holding cell c again, unless that was already
+     * done in this pass.
+     */
+    private void rebuild( int seed ) {
+        if ( sides[seed] == 0 || visited[seed] == pass ) {
+            return;
+        }
+        final int st = pass;
+        // Find every cell of the network.
+        int n = 0;
+        list = ensure(list, 1);
+        list[n++] = seed;
+        visited[seed] = st;
+        for ( int i = 0; i < n; i++ ) {
+            int c = list[i];
+            for ( int d = 0; d < 4; d++ ) {
+                if ( joined(c, d) ) {
+                    int m = step(c, d);
+                    if ( visited[m] != st ) {
+                        visited[m] = st;
+                        list = ensure(list, n + 1);
+                        list[n++] = m;
+                    }
+                }
+            }
+        }
+        // Drop its old segments and trace new ones.
+        for ( int i = 0; i < n; i++ ) {
+            kill(list[i]);
+            traced[list[i]] = 0;
+        }
+        for ( int i = 0; i < n; i++ ) {
+            int c = list[i];
+            if ( degree(c) != 2 ) {
+                for ( int d = 0; d < 4; d++ ) {
+                    if ( joined(c, d) && (traced[c] & (1 << d)) == 0 ) {
+                        trace(c, d);
+                    }
+                }
+            }
+        }
+        for ( int i = 0; i < n; i++ ) {
+            int c = list[i];
+            if ( segOf[c] == NONE && endHead[c] == NONE && degree(c) == 2 ) {
+                // A loop with no junction.  Start it here.
+                for ( int d = 0; d < 4; d++ ) {
+                    if ( joined(c, d) ) {
+                        trace(c, d);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Make a segment from cell c, leaving by side d, up to the next cell
+     * that is not plain track, or back to c.
+     */
+    private void trace( int start, int d ) {
+        int n = 0;
+        path = ensure(path, 2);
+        path[n++] = start;
+        traced[start] |= (byte) (1 << d);
+        int cur = step(start, d);
+        int in = d;
+        while ( cur != start && degree(cur) == 2 ) {
+            path = ensure(path, n + 2);
+            path[n++] = cur;
+            for ( int e = 0; e < 4; e++ ) {
+                if ( e != (in ^ 2) && joined(cur, e) ) {
+                    in = e;
+                    break;
+                }
+            }
+            cur = step(cur, in);
+        }
+        path[n++] = cur;
+        traced[cur] |= (byte) (1 << (in ^ 2));
+
+        int seg = freeCount > 0 ? freeSegs[--freeCount] : segLimit++;
+        if ( seg >= segCells.length ) {
+            segCells = Arrays.copyOf(segCells, seg * 2);
+            endNext = Arrays.copyOf(endNext, seg * 4);
+        }
+        int[] cells = Arrays.copyOf(path, n);
+        segCells[seg] = cells;
+        for ( int i = 1; i < n - 1; i++ ) {
+            segOf[cells[i]] = seg;
+            posOf[cells[i]] = i;
+        }
+        link(seg * 2, cells[0]);
+        link(seg * 2 + 1, cells[n - 1]);
+        segCount++;
+    }
+
+    private void link( int end, int cell ) {
+        endNext[end] = endHead[cell];
+        endHead[cell] = end;
+    }
+
+    private void unlink( int end, int cell ) {
+        if ( endHead[cell] == end ) {
+            endHead[cell] = endNext[end];
+            return;
+        }
+        for ( int e = endHead[cell]; e != NONE; e = endNext[e] ) {
+            if ( endNext[e] == end ) {
+                endNext[e] = endNext[end];
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove every segment through or ending at cell c.
+     */
+    private void kill( int c ) {
+        if ( segOf[c] != NONE ) {
+            killSegment(segOf[c]);
+        }
+        while ( endHead[c] != NONE ) {
+            killSegment(endHead[c] >> 1);
+        }
+    }
+
+    private void killSegment( int seg ) {
+        int[] cells = segCells[seg];
+        for ( int i = 1; i < cells.length - 1; i++ ) {
+            if ( segOf[cells[i]] == seg ) {
+                segOf[cells[i]] = NONE;
+            }
+        }
+        unlink(seg * 2, cells[0]);
+        unlink(seg * 2 + 1, cells[cells.length - 1]);
+        segCells[seg] = null;
+        if ( freeCount == freeSegs.length ) {
+            freeSegs = Arrays.copyOf(freeSegs, freeCount * 2);
+        }
+        freeSegs[freeCount++] = seg;
+        segCount--;
+    }
+
+    private static int[] ensure( int[] a, int n ) {
+        return n <= a.length ? a : Arrays.copyOf(a, Math.max(n, a.length * 2));
+    }
+
+    /**
+     * @return number of segments.
+     */
+    public int getSegmentCount() {
+        return segCount;
+    }
+
+    /**
+     * Goes up each time part of the network is compiled again.  Segment
+     * ids may be reused after that.
+     */
+    public int getRebuilds() {
+        return rebuilds;
+    }
+
+    public boolean isTrack( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return false;
+        }
+        return sides[y * width + x] != 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Cells of a segment, y * width + x, from one end to the other.  Do not
+     * write to it.
+     */
+    int[] cells( int seg ) {
+        return segCells[seg];
+    }
+
+    /**
+     * @return a segment end at cell c, for a cart stood on a junction.
+     *         NONE if none ends there.
+     */
+    int endAt( int c ) {
+        return endHead[c];
+    }
+
+    /**
+     * @return segment cell c is inside of, or NONE.
+     */
+    int segmentAt( int c ) {
+        return segOf[c];
+    }
+
+    int positionAt( int c ) {
+        return posOf[c];
+    }
+
+    /**
+     * Pick where a cart goes on at the end of a segment.  Straight on if
+     * there is track that way, else the first other branch.
+     *
+     * @param arrived end the cart reached
+     * @param heading side, 0-3, the cart was moving toward
+     * @return end to leave by, or arrived if it is a dead end.
+     */
+    int nextEnd( int arrived, int heading ) {
+        int[] cells = segCells[arrived >> 1];
+        int cell = (arrived & 1) == 0 ? cells[0] : cells[cells.length - 1];
+        int other = NONE;
+        for ( int e = endHead[cell]; e != NONE; e = endNext[e] ) {
+            if ( e == arrived ) {
+                continue;
+            }
+            if ( leaving(e) == heading ) {
+                return e;
+            }
+            if ( other == NONE ) {
+                other = e;
+            }
+        }
+        return other != NONE ? other : arrived;
+    }
+
+    /**
+     * @return side, 0-3, a cart leaving by end e moves toward.
+     */
+    int leaving( int e ) {
+        int[] cells = segCells[e >> 1];
+        int a, b;
+        if ( (e & 1) == 0 ) {
+            a = cells[0];
+            b = cells[1];
+        } else {
+            a = cells[cells.length - 1];
+            b = cells[cells.length - 2];
+        }
+        return sideOf(a, b);
+    }
+
+    /**
+     * @return side of cell a that b is on.
+     */
+    int sideOf( int a, int b ) {
+        int d = b - a;
+        if ( d == -width ) {
+            return 0;
+        }
+        if ( d == 1 ) {
+            return 1;
+        }
+        if ( d == width ) {
+            return 2;
+        }
+        return 3;
+    }
+
+    @Override
+    public void zoneTileChanged( Tile t ) {
+        if ( t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneTileSwapped( Tile tOld, Tile tNew ) {
+        Tile t = tNew != null ? tNew : tOld;
+        if ( t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneAreaChanged( int x0, int y0, int x1, int y1 ) {
+        updateArea(x0, y0, x1, y1);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import static com.maehem.deeps.Deeps.log;
+import java.util.logging.Level;
+
+/**
+ * Runs carts along a RailNetwork.
+ *
+ * A rolling entity, one with a velocity, that stands on track becomes a
+ * cart.  Its speed is kept and it sets off along the track the way its
+ * velocity points most.  Each tick every cart moves along its segment by
+ * position alone, the graph is only read when a cart runs off the end of a
+ * segment and picks the next.  At a dead end it turns back.
+ *
+ * Add after the MotionSystem, which saves the positions carts move from.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class RailSystem implements GameSystem {
+
+    private static final int MAX_HOPS = 8; // Segments a cart may cross in one tick.
+
+    private final EntityStore store;
+    private final RailNetwork net;
+    private final int width;
+    private int rebuilds;
+
+    public RailSystem( EntityStore store, RailNetwork net ) {
+        this.store = store;
+        this.net = net;
+        this.width = net.getWidth();
+        this.rebuilds = net.getRebuilds();
+        attachAll();
+    }
+
+    /**
+     * Put every moving entity on track onto the rails.  Carts already on
+     * rails are placed again, i.e. after the track changed.
+     */
+    public final void attachAll() {
+        int carts = 0;
+        for ( int i = 0; i < store.size(); i++ ) {
+            if ( store.rail[i] != EntityStore.NONE
+                    || store.vx[i] != 0f || store.vy[i] != 0f ) {
+                if ( attach(i) ) {
+                    carts++;
+                }
+            }
+        }
+        log.log(Level.FINE, "Rail carts attached: {0}", carts);
+    }
+
+    /**
+     * Place the entity in slot i on the track under it.
+     *
+     * @return true if it is now a cart.
+     */
+    private boolean attach( int i ) {
+        final EntityStore s = store;
+        int cx = (int) s.x[i];
+        int cy = (int) s.y[i];
+        float vx = s.vx[i];
+        float vy = s.vy[i];
+        float speed = s.rail[i] != EntityStore.NONE
+                ? s.railSpeed[i] : (float) Math.sqrt(vx * vx + vy * vy);
+        s.rail[i] = EntityStore.NONE;
+        if ( !net.isTrack(cx, cy) ) {
+            return false;
+        }
+        int c = cy * width + cx;
+        int seg = net.segmentAt(c);
+        int pos;
+        if ( seg != RailNetwork.NONE ) {
+            pos = net.positionAt(c);
+        } else {
+            int end = net.endAt(c);
+            if ( end == RailNetwork.NONE ) {
+                return false; // Lone piece of track.
+            }
+            seg = end >> 1;
+            pos = (end & 1) == 0 ? 0 : net.cells(seg).length - 1;
+        }
+        int[] cells = net.cells(seg);
+        int a = cells[Math.min(pos, cells.length - 2)];
+        int b = cells[Math.min(pos, cells.length - 2) + 1];
+        float dot = (b % width - a % width) * vx + (b / width - a / width) * vy;
+        s.rail[i] = seg;
+        s.railPos[i] = pos;
+        s.railDir[i] = (byte) (dot < 0 ? -1 : 1);
+        s.railSpeed[i] = speed;
+        return true;
+    }
+
+    @Override
+    public void tick( long tick, double dt ) {
+        if ( net.getRebuilds() != rebuilds ) {
+            rebuilds = net.getRebuilds();
+            attachAll();
+        }
+        final EntityStore s = store;
+        final int[] rail = s.rail;
+        final float[] pos = s.railPos;
+        final byte[] dir = s.railDir;
+        final float[] speed = s.railSpeed;
+        final float fdt = (float) dt;
+        for ( int i = 0; i < s.size(); i++ ) {
+            int seg = rail[i];
+            if ( seg == EntityStore.NONE ) {
+                continue;
+            }
+            float p = pos[i] + dir[i] * speed[i] * fdt;
+            int[] cells = net.cells(seg);
+            int last = cells.length - 1;
+            for ( int hop = 0; hop < MAX_HOPS && (p < 0f || p > last); hop++ ) {
+                int side = p < 0f ? 0 : 1;
+                float over = side == 0 ? -p : p - last;
+                int arrived = seg * 2 + side;
+                int heading = side == 0
+                        ? net.sideOf(cells[1], cells[0])
+                        : net.sideOf(cells[last - 1], cells[last]);
+                int next = net.nextEnd(arrived, heading);
+                seg = next >> 1;
+                cells = net.cells(seg);
+                last = cells.length - 1;
+                if ( (next & 1) == 0 ) {
+                    p = over;
+                    dir[i] = 1;
+                } else {
+                    p = last - over;
+                    dir[i] = -1;
+                }
+            }
+            p = Math.max(0f, Math.min(p, last));
+            rail[i] = seg;
+            pos[i] = p;
+
+            // Place between the middles of the two cells either side of p.
+            int k = Math.min((int) p, last - 1);
+            float f = p - k;
+            int a = cells[k];
+            int b = cells[k + 1];
+            float ax = a % width;
+            float ay = a / width;
+            float bx = b % width;
+            float by = b / width;
+            s.x[i] = ax + (bx - ax) * f + 0.5f;
+            s.y[i] = ay + (by - ay) * f + 0.5f;
+            s.vx[i] = (bx - ax) * dir[i] * speed[i];
+            s.vy[i] = (by - ay) * dir[i] * speed[i];
+        }
+    }
+}
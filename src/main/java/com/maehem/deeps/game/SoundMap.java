@@ -0,0 +1,301 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import com.maehem.deeps.model.FixtureTile;
+import com.maehem.deeps.model.MapTile;
+import com.maehem.deeps.model.Tile;
+import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneListener;
+import java.util.Arrays;
+
+/**
+ * What every cell of a zone heard this tick.
+ *
+ * A sound starts at a cell with a loudness, 1-99, and spreads out cell by
+ * cell until it dies out or reaches its radius.  It loses an even share
+ * of its loudness per step, so it fades to nothing at the radius, and
+ * passing a cell with BLOK takes that percent more away, so walls muffle
+ * it.  Each cell keeps the loudest sound to reach it, and which sound
+ * that was, until beginTick().
+ *
+ * Asking what a cell heard is one array load.  The spread only visits
+ * cells within the radius, each once, loudest first.  Loudness only drops
+ * as it goes, so a bucket per loudness level is all the ordering needed.
+ * The scratch arrays are kept between sounds, so many sounds a tick
+ * allocate nothing.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class SoundMap implements ZoneListener {
+
+    public static final int MAX_LOUDNESS = 99;
+    public static final int MAX_RADIUS = 64;
+    public static final int NO_SOUND = -1;
+
+    private final Zone zone;
+    private final int width;
+    private final int height;
+    private final byte[] pass;    // Percent of sound let through, 0-100.
+    private final byte[] loud;    // Loudest heard this tick.
+    private final short[] sound;  // Sound index of the loudest.
+    private final int[] heard;    // Tick stamp of loud and sound.
+    private int stamp = 1;
+
+    // Scratch for spreading one sound, a square radius each way of it,
+    // kept at the size of the widest sound so far.
+    private int side = 0;
+    private byte[] spread = new byte[0];
+    private int[] opened = new int[0];   // Round stamp of spread.
+    private int[] closed = new int[0];
+    private int round = 0;
+    private int[][] bucket = new int[MAX_LOUDNESS + 1][16]; // Cells to spread, by loudness.
+    private final int[] bucketSize = new int[MAX_LOUDNESS + 1];
+    private long visits = 0;
+
+    /**
+     * Read the zone and follow its changes.  In CHUNKED mode this visits
+     * every chunk once.
+     */
+    public SoundMap( Zone zone ) {
+        this.zone = zone;
+        this.width = zone.getWidth();
+        this.height = zone.getHeight();
+        this.pass = new byte[width * height];
+        this.loud = new byte[width * height];
+        this.sound = new short[width * height];
+        this.heard = new int[width * height];
+        for ( int y = 0; y < height; y++ ) {
+            for ( int x = 0; x < width; x++ ) {
+                updateCell(x, y);
+            }
+        }
+        zone.addListener(this);
+    }
+
+    public void dispose() {
+        zone.removeListener(this);
+    }
+
+    /**
+     * Forget what was heard.  Sounds made after this are this tick's.
+     */
+    public void beginTick() {
+        stamp++;
+        if ( stamp == 0 ) { // Wrapped.  Clear the stale stamps once.
+            Arrays.fill(heard, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Make a sound at x,y.
+     *
+     * @param x cell
+     * @param y cell
+     * @param index sound index, i.e. from a tile's NOIZ, 0-999
+     * @param loudness at x,y, 1-99
+     * @param radius furthest cells away it can be heard, up to MAX_RADIUS
+     */
+    public void emit( int x, int y, int index, int loudness, int radius ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return;
+        }
+        loudness = Math.min(loudness, MAX_LOUDNESS);
+        radius = Math.min(radius, MAX_RADIUS);
+        if ( loudness <= 0 || radius < 0 ) {
+            return;
+        }
+        int loss = Math.max(1, loudness / (radius + 1));
+        beginRound(radius);
+        int ox = x - radius; // Zone cell of scratch 0.
+        int oy = y - radius;
+        // Scratch cells that are inside the zone.
+        int minX = Math.max(0, -ox);
+        int minY = Math.max(0, -oy);
+        int maxX = Math.min(2 * radius, width - 1 - ox);
+        int maxY = Math.min(2 * radius, height - 1 - oy);
+        int start = radius * side + radius;
+        spread[start] = (byte) loudness;
+        opened[start] = round;
+        push(start, loudness);
+        for ( int level = loudness; level > 0; ) {
+            if ( bucketSize[level] == 0 ) {
+                level--;
+                continue;
+            }
+            int s = bucket[level][--bucketSize[level]];
+            if ( closed[s] == round || spread[s] != level ) {
+                continue; // Done, or pushed again louder.
+            }
+            closed[s] = round;
+            visits++;
+            int sx = s % side;
+            int sy = s / side;
+            int zi = (oy + sy) * width + ox + sx;
+            int v = spread[s];
+            hear(zi, v, index);
+
+            // Sound leaving a cell is muffled by what is in it, but not
+            // at its source.
+            int out = s == start ? v : v * pass[zi] / 100;
+            out -= loss;
+            if ( out <= 0 ) {
+                continue;
+            }
+            for ( int d = 0; d < 4; d++ ) {
+                int nx = sx + PathFinder.DX[d];
+                int ny = sy + PathFinder.DY[d];
+                if ( nx < minX || ny < minY || nx > maxX || ny > maxY ) {
+                    continue;
+                }
+                int n = ny * side + nx;
+                if ( closed[n] == round ) {
+                    continue;
+                }
+                if ( opened[n] != round || spread[n] < out ) {
+                    opened[n] = round;
+                    spread[n] = (byte) out;
+                    push(n, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Make the sound of a tile, from its NOIZ, at its cell.
+     *
+     * @return false if the tile has no sound.
+     */
+    public boolean emit( Tile t, int loudness, int radius ) {
+        if ( t.getSound() < 0 ) {
+            return false;
+        }
+        emit(t.getX(), t.getY(), t.getSound(), loudness, radius);
+        return true;
+    }
+
+    private void push( int s, int level ) {
+        int[] b = bucket[level];
+        int n = bucketSize[level];
+        if ( n == b.length ) {
+            b = bucket[level] = Arrays.copyOf(b, n * 2);
+        }
+        b[n] = s;
+        bucketSize[level] = n + 1;
+    }
+
+    private void hear( int i, int v, int index ) {
+        if ( heard[i] != stamp ) {
+            heard[i] = stamp;
+            loud[i] = (byte) v;
+            sound[i] = (short) index;
+        } else if ( v > loud[i] ) {
+            loud[i] = (byte) v;
+            sound[i] = (short) index;
+        }
+    }
+
+    private void beginRound( int radius ) {
+        int s = 2 * radius + 1;
+        if ( s > side ) {
+            side = s;
+            spread = new byte[s * s];
+            opened = new int[s * s];
+            closed = new int[s * s];
+            round = 0;
+        }
+        round++;
+    }
+
+    /**
+     * @return loudness heard at x,y this tick, 0 if none.
+     */
+    public int getLoudness( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return 0;
+        }
+        int i = y * width + x;
+        return heard[i] == stamp ? loud[i] : 0;
+    }
+
+    /**
+     * @return index of the loudest sound heard at x,y this tick, or
+     * NO_SOUND.
+     */
+    public int getSound( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return NO_SOUND;
+        }
+        int i = y * width + x;
+        return heard[i] == stamp ? sound[i] : NO_SOUND;
+    }
+
+    /**
+     * @return cells visited spreading sounds so far.
+     */
+    public long getVisits() {
+        return visits;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Read how much sound the tiles at x,y let through.
+     */
+    public void updateCell( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return;
+        }
+        int blok = zone.getMapBlocking(x, y);
+        FixtureTile f = zone.getFixtureTile(x, y);
+        if ( f != null && f.getIndex() > 0 ) {
+            blok = Math.max(blok, f.getBlocking());
+        }
+        pass[y * width + x] = (byte) (100 - Math.max(0, Math.min(blok, 100)));
+    }
+
+    @Override
+    public void zoneTileChanged( Tile t ) {
+        if ( t instanceof MapTile || t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneTileSwapped( Tile tOld, Tile tNew ) {
+        Tile t = tNew != null ? tNew : tOld;
+        if ( t instanceof MapTile || t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneAreaChanged( int x0, int y0, int x1, int y1 ) {
+        for ( int y = y0; y <= y1; y++ ) {
+            for ( int x = x0; x <= x1; x++ ) {
+                updateCell(x, y);
+            }
+        }
+    }
+}
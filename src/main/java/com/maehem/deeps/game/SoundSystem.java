@@ -0,0 +1,127 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import java.util.Arrays;
+
+/**
+ * Spreads the sounds made each tick and alerts the enemies that hear them.
+ *
+ * Anything can post() a sound during a tick.  When this system runs the
+ * last tick's sounds are forgotten and the new ones spread over the
+ * SoundMap together.  After that what an entity heard is a lookup of its
+ * cell, and an enemy that heard anything at least as loud as the alert
+ * level becomes aware, along with any that saw the player.
+ *
+ * Add after the VisionSystem.  Sounds posted by systems that run after
+ * this one are heard next tick.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class SoundSystem implements GameSystem {
+
+    public static final int DEFAULT_ALERT = 10;
+
+    private final EntityStore store;
+    private final SoundMap map;
+    private int alert = DEFAULT_ALERT;
+
+    // Sounds posted since the last tick.  Reused.
+    private int posted = 0;
+    private int[] postX = new int[16];
+    private int[] postY = new int[16];
+    private int[] postIndex = new int[16];
+    private int[] postLoudness = new int[16];
+    private int[] postRadius = new int[16];
+
+    public SoundSystem( EntityStore store, SoundMap map ) {
+        this.store = store;
+        this.map = map;
+    }
+
+    /**
+     * Make a sound, heard when this system next runs.
+     *
+     * @see SoundMap#emit(int, int, int, int, int)
+     */
+    public void post( int x, int y, int index, int loudness, int radius ) {
+        if ( posted == postX.length ) {
+            int n = posted * 2;
+            postX = Arrays.copyOf(postX, n);
+            postY = Arrays.copyOf(postY, n);
+            postIndex = Arrays.copyOf(postIndex, n);
+            postLoudness = Arrays.copyOf(postLoudness, n);
+            postRadius = Arrays.copyOf(postRadius, n);
+        }
+        postX[posted] = x;
+        postY[posted] = y;
+        postIndex[posted] = index;
+        postLoudness[posted] = loudness;
+        postRadius[posted] = radius;
+        posted++;
+    }
+
+    /**
+     * Loudness an enemy must hear to become aware.
+     */
+    public void setAlert( int loudness ) {
+        this.alert = loudness;
+    }
+
+    public SoundMap getMap() {
+        return map;
+    }
+
+    /**
+     * @return loudness the entity in slot heard this tick, 0 if none.
+     */
+    public int getHeard( int slot ) {
+        return map.getLoudness((int) store.x[slot], (int) store.y[slot]);
+    }
+
+    /**
+     * @return index of the loudest sound the entity in slot heard this
+     * tick, or SoundMap.NO_SOUND.
+     */
+    public int getHeardSound( int slot ) {
+        return map.getSound((int) store.x[slot], (int) store.y[slot]);
+    }
+
+    @Override
+    public void tick( long tick, double dt ) {
+        map.beginTick();
+        if ( posted == 0 ) {
+            return;
+        }
+        for ( int p = 0; p < posted; p++ ) {
+            map.emit(postX[p], postY[p], postIndex[p], postLoudness[p], postRadius[p]);
+        }
+        posted = 0;
+
+        final EntityStore s = store;
+        final short[] enemy = s.enemy;
+        final boolean[] aware = s.aware;
+        final float[] x = s.x;
+        final float[] y = s.y;
+        for ( int i = 0; i < s.size(); i++ ) {
+            if ( enemy[i] >= 0 && !aware[i]
+                    && map.getLoudness((int) x[i], (int) y[i]) >= alert ) {
+                aware[i] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timer wheel of small int ids, each due on a game tick.
+ *
+ * Four wheels of 64 slots.  The first holds what is due within 64 ticks,
+ * one slot per tick, the next within 64 * 64 ticks, 64 ticks a slot, and
+ * so on.  When the first wheel comes round the next wheel's current slot
+ * is spread down into it.  An id waiting far in the future is only moved
+ * a few times in all, not looked at every tick.  Scheduling and cancelling
+ * are a few array writes.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+final class TimerWheel {
+
+    /**
+     * Told of each id that came due.
+     */
+    interface Expired {
+        void expired( int id, long tick );
+    }
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (BITS * LEVELS); // Furthest ahead a slot reaches.
+    private static final int NIL = -1;
+
+    private final int[] head = new int[LEVELS * SLOTS];
+    private int[] next = new int[64];
+    private int[] prev = new int[64];
+    private int[] slot = new int[64];   // NIL when not scheduled.
+    private long[] due = new long[64];
+    private long current;
+    private int size = 0;
+
+    /**
+     * @param tick tick the wheel starts at
+     */
+    TimerWheel( long tick ) {
+        this.current = tick;
+        Arrays.fill(head, NIL);
+        Arrays.fill(slot, NIL);
+    }
+
+    /**
+     * @return tick the wheel has reached.
+     */
+    long getTick() {
+        return current;
+    }
+
+    /**
+     * @return ids waiting.
+     */
+    int size() {
+        return size;
+    }
+
+    boolean isScheduled( int id ) {
+        return id < slot.length && slot[id] != NIL;
+    }
+
+    /**
+     * Schedule id, or move it if already scheduled.  Due at or before the
+     * current tick means due on the next.
+     */
+    void schedule( int id, long tick ) {
+        if ( id >= slot.length ) {
+            int n = Math.max(slot.length * 2, id + 1);
+            next = Arrays.copyOf(next, n);
+            prev = Arrays.copyOf(prev, n);
+            due = Arrays.copyOf(due, n);
+            int old = slot.length;
+            slot = Arrays.copyOf(slot, n);
+            Arrays.fill(slot, old, n, NIL);
+        }
+        if ( slot[id] != NIL ) {
+            unlink(id);
+        } else {
+            size++;
+        }
+        due[id] = Math.max(tick, current + 1);
+        place(id);
+    }
+
+    void cancel( int id ) {
+        if ( isScheduled(id) ) {
+            unlink(id);
+            slot[id] = NIL;
+            size--;
+        }
+    }
+
+    /**
+     * Turn the wheel up to tick, telling e of every id that came due on
+     * the way.  An id is no longer scheduled when e hears of it, so e may
+     * schedule it again.
+     */
+    void advance( long tick, Expired e ) {
+        while ( current < tick ) {
+            current++;
+            if ( size == 0 ) {
+                current = tick;
+                return;
+            }
+            // Spread down any higher wheel that has come round.
+            for ( int level = 1; level < LEVELS; level++ ) {
+                if ( (current & ((1L << (BITS * level)) - 1)) != 0 ) {
+                    break;
+                }
+                cascade(level * SLOTS + (int) ((current >> (BITS * level)) & MASK));
+            }
+            int s = (int) (current & MASK);
+            int id;
+            while ( (id = head[s]) != NIL ) {
+                unlink(id);
+                slot[id] = NIL;
+                size--;
+                e.expired(id, current);
+            }
+        }
+    }
+
+    private void cascade( int s ) {
+        int id = head[s];
+        head[s] = NIL;
+        while ( id != NIL ) {
+            int n = next[id];
+            place(id);
+            id = n;
+        }
+    }
+
+    private void place( int id ) {
+        long delta = due[id] - current;
+        int s;
+        if ( delta >= SPAN ) {
+            // Too far.  Park in the top wheel, placed again as it comes round.
+            long t = current + SPAN - 1;
+            s = (LEVELS - 1) * SLOTS + (int) ((t >> (BITS * (LEVELS - 1))) & MASK);
+        } else {
+            int level = 0;
+            while ( delta >= (1L << (BITS * (level + 1))) ) {
+                level++;
+            }
+            s = level * SLOTS + (int) ((due[id] >> (BITS * level)) & MASK);
+        }
+        slot[id] = s;
+        prev[id] = NIL;
+        next[id] = head[s];
+        if ( head[s] != NIL ) {
+            prev[head[s]] = id;
+        }
+        head[s] = id;
+    }
+
+    private void unlink( int id ) {
+        int s = slot[id];
+        if ( prev[id] != NIL ) {
+            next[prev[id]] = next[id];
+        } else {
+            head[s] = next[id];
+        }
+        if ( next[id] != NIL ) {
+            prev[next[id]] = prev[id];
+        }
+    }
+}
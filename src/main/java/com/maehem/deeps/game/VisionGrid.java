@@ -0,0 +1,171 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import com.maehem.deeps.model.FixtureTile;
+import com.maehem.deeps.model.MapTile;
+import com.maehem.deeps.model.Tile;
+import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneListener;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * What can be seen through in a zone, and what the player has seen.
+ *
+ * A cell is opaque when its map tile or fixture isBlocking().  The grid
+ * follows the zone as tiles change and tells its listeners, so fields of
+ * view near the change know to look again.  The explored set is the fog
+ * of war, one bit per cell, set by any FieldOfView that explores.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class VisionGrid implements ZoneListener {
+
+    /**
+     * Told when a cell turns opaque or clear.
+     */
+    public interface Listener {
+        public void opacityChanged( int x, int y );
+    }
+
+    private final Zone zone;
+    private final int width;
+    private final int height;
+    private final BitSet opaque;
+    private final BitSet explored;
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+
+    /**
+     * Read the zone and follow its changes.  In CHUNKED mode this visits
+     * every chunk once.
+     */
+    public VisionGrid( Zone zone ) {
+        this.zone = zone;
+        this.width = zone.getWidth();
+        this.height = zone.getHeight();
+        this.opaque = new BitSet(width * height);
+        this.explored = new BitSet(width * height);
+        for ( int y = 0; y < height; y++ ) {
+            for ( int x = 0; x < width; x++ ) {
+                opaque.set(y * width + x, readOpaque(x, y));
+            }
+        }
+        zone.addListener(this);
+    }
+
+    public void dispose() {
+        zone.removeListener(this);
+    }
+
+    public void addListener( Listener l ) {
+        listeners.add(l);
+    }
+
+    public void removeListener( Listener l ) {
+        listeners.remove(l);
+    }
+
+    private boolean readOpaque( int x, int y ) {
+        if ( zone.getMapBlocking(x, y) >= 0 ) {
+            return true;
+        }
+        FixtureTile f = zone.getFixtureTile(x, y);
+        return f != null && f.getIndex() > 0 && f.isBlocking();
+    }
+
+    /**
+     * @return true if x,y can't be seen through.  Outside the zone is.
+     */
+    public boolean isOpaque( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return true;
+        }
+        return opaque.get(y * width + x);
+    }
+
+    public boolean isExplored( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return false;
+        }
+        return explored.get(y * width + x);
+    }
+
+    void setExplored( int x, int y ) {
+        explored.set(y * width + x);
+    }
+
+    /**
+     * Cells the player has seen, bit y * width + x.  Changes in place.  Do
+     * not write to it.
+     */
+    public BitSet getExplored() {
+        return explored;
+    }
+
+    /**
+     * Forget what was explored, i.e. for a new game.
+     */
+    public void clearExplored() {
+        explored.clear();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void updateCell( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return;
+        }
+        boolean o = readOpaque(x, y);
+        if ( opaque.get(y * width + x) != o ) {
+            opaque.set(y * width + x, o);
+            for ( int n = 0; n < listeners.size(); n++ ) {
+                listeners.get(n).opacityChanged(x, y);
+            }
+        }
+    }
+
+    @Override
+    public void zoneTileChanged( Tile t ) {
+        if ( t instanceof MapTile || t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneTileSwapped( Tile tOld, Tile tNew ) {
+        Tile t = tNew != null ? tNew : tOld;
+        if ( t instanceof MapTile || t instanceof FixtureTile ) {
+            updateCell(t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public void zoneAreaChanged( int x0, int y0, int x1, int y1 ) {
+        for ( int y = y0; y <= y1; y++ ) {
+            for ( int x = x0; x <= x1; x++ ) {
+                updateCell(x, y);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+/**
+ * Works out what the player sees each tick, explores it, and which
+ * enemies can see the player.
+ *
+ * The player's field of view is only scanned again when the player moves
+ * or sight changes nearby.  Enemies are not given a scan each.  An enemy
+ * within sight radius that the player can see is taken to see the player,
+ * so perception for thousands of enemies is a lookup apiece.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class VisionSystem implements GameSystem {
+
+    public static final int DEFAULT_RADIUS = 12;
+
+    private final EntityStore store;
+    private final VisionGrid grid;
+    private final FieldOfView view;
+    private int viewerX = 0;
+    private int viewerY = 0;
+
+    public VisionSystem( EntityStore store, VisionGrid grid ) {
+        this(store, grid, DEFAULT_RADIUS);
+    }
+
+    /**
+     * @param radius how far the player, and enemies, can see
+     */
+    public VisionSystem( EntityStore store, VisionGrid grid, int radius ) {
+        this.store = store;
+        this.grid = grid;
+        this.view = new FieldOfView(grid, radius);
+        view.setExplores(true);
+    }
+
+    /**
+     * Where the player is.  Takes effect next tick.
+     */
+    public void setViewer( int x, int y ) {
+        this.viewerX = x;
+        this.viewerY = y;
+    }
+
+    public FieldOfView getFieldOfView() {
+        return view;
+    }
+
+    public VisionGrid getGrid() {
+        return grid;
+    }
+
+    @Override
+    public void tick( long tick, double dt ) {
+        view.update(viewerX, viewerY);
+
+        final EntityStore s = store;
+        final short[] enemy = s.enemy;
+        final boolean[] aware = s.aware;
+        final float[] x = s.x;
+        final float[] y = s.y;
+        final int r2 = view.getRadius() * view.getRadius();
+        for ( int i = 0; i < s.size(); i++ ) {
+            if ( enemy[i] < 0 ) {
+                continue;
+            }
+            int cx = (int) x[i];
+            int cy = (int) y[i];
+            int dx = cx - viewerX;
+            int dy = cy - viewerY;
+            aware[i] = dx * dx + dy * dy <= r2 && view.isVisible(cx, cy);
+        }
+    }
+}
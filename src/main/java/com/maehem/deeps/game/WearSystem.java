@@ -0,0 +1,354 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.game;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.FixtureTile;
+import com.maehem.deeps.model.Tile;
+import com.maehem.deeps.model.Zone;
+import com.maehem.deeps.model.ZoneListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * Wears down the fixtures of a zone that have durability, WEAR 0-99.
+ *
+ * Nothing is counted down per tick.  Each wearing fixture keeps the
+ * durability it had at some tick and how many ticks it takes to lose a
+ * point, and its durability now is worked out from those when asked.  The
+ * tick it will break on is put on a timer wheel, so a fixture costs
+ * nothing until it breaks or is hit.  On breaking its WEAR is set to 0 and
+ * listeners are told.
+ *
+ * A fixture's own WEAR is only brought up to date when it breaks, is
+ * hit through applyWear(), or by commit(), i.e. before the zone is saved.
+ * Setting WEAR on the tile, as the editor does, starts it wearing from
+ * that value.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class WearSystem implements GameSystem, ZoneListener {
+
+    public static final int NONE = -1;
+    public static final int MAX_WEAR = 99;
+
+    /**
+     * Told when a fixture wears out.
+     */
+    public interface Listener {
+        public void fixtureBroke( FixtureTile t, long tick );
+    }
+
+    private final Zone zone;
+    private final int width;
+    private final int height;
+    private final int[] slotOf;     // By cell.  NONE if not wearing.
+    private final TimerWheel breaks;
+    private final TimerWheel.Expired onBreak = this::broke;
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+    private int period;
+    private long now;
+    private boolean writing = false; // Our own change to a tile, ignore it.
+
+    // By slot.  Slots are reused and double as timer ids.
+    private int[] cell = new int[64];
+    private long[] since = new long[64];  // Tick base was true at.
+    private byte[] base = new byte[64];   // Durability at since.
+    private byte[] written = new byte[64]; // WEAR on the tile, as we last saw it.
+    private int[] rate = new int[64];     // Ticks per point worn.
+    private int slots = 0;
+    private int[] free = new int[16];
+    private int freeCount = 0;
+
+    /**
+     * Start every fixture with WEAR above 0 wearing.  In CHUNKED mode this
+     * visits every chunk once.
+     *
+     * @param period ticks for a fixture to lose one point, unless set
+     * otherwise with setRate()
+     * @param tick game tick to start from
+     */
+    public WearSystem( Zone zone, int period, long tick ) {
+        this.zone = zone;
+        this.width = zone.getWidth();
+        this.height = zone.getHeight();
+        this.slotOf = new int[width * height];
+        this.period = Math.max(1, period);
+        this.now = tick;
+        this.breaks = new TimerWheel(tick);
+        Arrays.fill(slotOf, NONE);
+        for ( FixtureTile f : zone.getFixtures() ) {
+            track(f);
+        }
+        log.log(Level.INFO, "Zone {0} has {1} wearing fixtures",
+                zone.getName(), breaks.size());
+        zone.addListener(this);
+    }
+
+    public void dispose() {
+        zone.removeListener(this);
+    }
+
+    public void addListener( Listener l ) {
+        listeners.add(l);
+    }
+
+    public void removeListener( Listener l ) {
+        listeners.remove(l);
+    }
+
+    @Override
+    public void tick( long tick, double dt ) {
+        now = tick;
+        breaks.advance(tick, onBreak);
+    }
+
+    /**
+     * @return durability of the fixture at x,y now, or -1 if it can't wear.
+     */
+    public int getWear( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return NONE;
+        }
+        int s = slotOf[y * width + x];
+        if ( s != NONE ) {
+            return current(s);
+        }
+        FixtureTile f = zone.getFixtureTile(x, y);
+        return f != null ? f.getAblation() : NONE;
+    }
+
+    /**
+     * Tick the fixture at x,y will break on, or -1 if it is not wearing.
+     */
+    public long getBreakTick( int x, int y ) {
+        int s = slotAt(x, y);
+        return s != NONE ? since[s] + (long) base[s] * rate[s] : NONE;
+    }
+
+    /**
+     * Set how many ticks the fixture at x,y takes to lose a point.
+     */
+    public void setRate( int x, int y, int ticksPerPoint ) {
+        int s = slotAt(x, y);
+        if ( s == NONE ) {
+            return;
+        }
+        settle(s);
+        rate[s] = Math.max(1, ticksPerPoint);
+        schedule(s);
+    }
+
+    /**
+     * Change the durability of the fixture at x,y by amount, i.e. when hit.
+     * Like FixtureTile.applyAblation() on its up to date value.
+     *
+     * @return durability after, or -1 if it can't wear.
+     */
+    public int applyWear( int x, int y, int amount ) {
+        int s = slotAt(x, y);
+        if ( s == NONE ) {
+            FixtureTile f = zone.getFixtureTile(x, y);
+            if ( f == null || !f.canAblate() ) {
+                return NONE;
+            }
+            f.applyAblation(amount); // Worn out, we hear of it if it is mended.
+            return f.getAblation();
+        }
+        settle(s);
+        int v = Math.max(0, Math.min(base[s] + amount, MAX_WEAR));
+        base[s] = (byte) v;
+        write(s, v);
+        if ( v == 0 ) {
+            broke(s, now);
+        } else {
+            schedule(s);
+        }
+        return v;
+    }
+
+    /**
+     * Write the durability of every wearing fixture to its tile.
+     */
+    public void commit() {
+        for ( int s = 0; s < slots; s++ ) {
+            if ( cell[s] != NONE ) {
+                settle(s);
+                write(s, base[s]);
+            }
+        }
+    }
+
+    /**
+     * @return fixtures wearing.
+     */
+    public int getWearingCount() {
+        return breaks.size();
+    }
+
+    private int slotAt( int x, int y ) {
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return NONE;
+        }
+        return slotOf[y * width + x];
+    }
+
+    private int current( int s ) {
+        long worn = (now - since[s]) / rate[s];
+        return (int) Math.max(0, base[s] - worn);
+    }
+
+    /**
+     * Move base up to now, keeping the ticks already spent on the next
+     * point.
+     */
+    private void settle( int s ) {
+        long worn = Math.min((now - since[s]) / rate[s], base[s]);
+        base[s] -= worn;
+        since[s] += worn * rate[s];
+    }
+
+    private void schedule( int s ) {
+        breaks.schedule(s, since[s] + (long) base[s] * rate[s]);
+    }
+
+    private void write( int s, int v ) {
+        written[s] = (byte) v;
+        FixtureTile f = zone.getFixtureTile(cell[s] % width, cell[s] / width);
+        if ( f != null ) {
+            writing = true;
+            try {
+                f.setAblation(v);
+            } finally {
+                writing = false;
+            }
+        }
+    }
+
+    /**
+     * Start the fixture wearing from its WEAR, if it can wear and is not
+     * worn out.
+     */
+    private void track( FixtureTile f ) {
+        int c = f.getY() * width + f.getX();
+        int v = f.getAblation();
+        int s = slotOf[c];
+        if ( v <= 0 ) {
+            if ( s != NONE ) {
+                untrack(s);
+            }
+            return;
+        }
+        if ( s == NONE ) {
+            s = newSlot();
+            slotOf[c] = s;
+            cell[s] = c;
+            rate[s] = period;
+        }
+        since[s] = now;
+        base[s] = (byte) v;
+        written[s] = (byte) v;
+        schedule(s);
+    }
+
+    private void untrack( int s ) {
+        breaks.cancel(s);
+        slotOf[cell[s]] = NONE;
+        cell[s] = NONE;
+        if ( freeCount == free.length ) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = s;
+    }
+
+    private int newSlot() {
+        if ( freeCount > 0 ) {
+            return free[--freeCount];
+        }
+        if ( slots == cell.length ) {
+            int n = slots * 2;
+            cell = Arrays.copyOf(cell, n);
+            since = Arrays.copyOf(since, n);
+            base = Arrays.copyOf(base, n);
+            written = Arrays.copyOf(written, n);
+            rate = Arrays.copyOf(rate, n);
+        }
+        return slots++;
+    }
+
+    private void broke( int s, long tick ) {
+        int c = cell[s];
+        FixtureTile f = zone.getFixtureTile(c % width, c / width);
+        base[s] = 0;
+        since[s] = tick;
+        write(s, 0);
+        untrack(s);
+        if ( f == null ) {
+            return;
+        }
+        if ( log.isLoggable(Level.FINE) ) {
+            log.log(Level.FINE, "Fixture wore out: {0},{1}  {2}",
+                    f.getX(), f.getY(), f.getMnemonic());
+        }
+        for ( int n = 0; n < listeners.size(); n++ ) {
+            listeners.get(n).fixtureBroke(f, tick);
+        }
+    }
+
+    @Override
+    public void zoneTileChanged( Tile t ) {
+        if ( writing || !(t instanceof FixtureTile) ) {
+            return;
+        }
+        FixtureTile f = (FixtureTile) t;
+        int s = slotOf[f.getY() * width + f.getX()];
+        if ( s == NONE || f.getAblation() != written[s] ) {
+            // New WEAR from outside, i.e. the editor.  Wear from there.
+            track(f);
+        }
+    }
+
+    @Override
+    public void zoneTileSwapped( Tile tOld, Tile tNew ) {
+        if ( tOld instanceof FixtureTile ) {
+            int s = slotOf[tOld.getY() * width + tOld.getX()];
+            if ( s != NONE ) {
+                untrack(s);
+            }
+        }
+        if ( tNew instanceof FixtureTile ) {
+            track((FixtureTile) tNew);
+        }
+    }
+
+    @Override
+    public void zoneAreaChanged( int x0, int y0, int x1, int y1 ) {
+        for ( int y = Math.max(y0, 0); y <= Math.min(y1, height - 1); y++ ) {
+            for ( int x = Math.max(x0, 0); x <= Math.min(x1, width - 1); x++ ) {
+                int s = slotOf[y * width + x];
+                if ( s != NONE ) {
+                    untrack(s);
+                }
+                FixtureTile f = zone.getFixtureTile(x, y);
+                if ( f != null ) {
+                    track(f);
+                }
+            }
+        }
+    }
+}
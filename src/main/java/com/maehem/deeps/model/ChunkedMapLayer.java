@@ -0,0 +1,408 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Map layer that splits a zone into square chunks and only keeps some of
+ * them in memory.
+ *
+ * A chunk is read from the chunk file the first time one of its cells is
+ * touched, or created blank (A000) if there is no file.  Once the loaded
+ * chunks go over the memory budget the least recently used ones are
+ * dropped, except for chunks that are in focus, have unsaved changes or
+ * hold tiles that something is listening to.
+ *
+ * Fixtures and entities live in the chunk too, so a chunked Zone hands
+ * those lookups to this layer.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+class ChunkedMapLayer extends MapLayer {
+
+    static final int CHUNK_SIZE = 32;
+    static final long DEFAULT_BUDGET = 32L * 1024 * 1024;
+
+    private final Zone zone;
+    private final int chunkSize;
+    private final int cols;
+    private final int rows;
+    private final ZoneChunk[] chunks;   // null where not loaded.
+    private ZoneChunkFormat.Source source; // null when the zone has no file yet.
+
+    private long budget = DEFAULT_BUDGET;
+    private long clock = 0;
+    private int loaded = 0;
+    private long used = 0; // Estimated bytes of loaded chunks, as of when last counted.
+
+    // Chunks in focus, inclusive.  Never evicted.
+    private int focusX0 = 0, focusY0 = 0, focusX1 = -1, focusY1 = -1;
+
+    ChunkedMapLayer( Zone zone, int width, int height, int chunkSize, ZoneChunkFormat.Source source ) {
+        super(width, height);
+        this.zone = zone;
+        this.chunkSize = chunkSize;
+        this.cols = (width + chunkSize - 1) / chunkSize;
+        this.rows = (height + chunkSize - 1) / chunkSize;
+        this.chunks = new ZoneChunk[cols * rows];
+        this.source = source;
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    int getChunkCount() {
+        return chunks.length;
+    }
+
+    int getLoadedCount() {
+        return loaded;
+    }
+
+    ZoneChunkFormat.Source getSource() {
+        return source;
+    }
+
+    /**
+     * @param i chunk number, cy*cols+cx
+     * @return the chunk if it is in memory, otherwise null.
+     */
+    ZoneChunk getLoaded( int i ) {
+        return chunks[i];
+    }
+
+    /**
+     * @param x grid X
+     * @param y grid Y
+     * @return chunk holding cell x,y, loading it if needed.
+     */
+    ZoneChunk chunkAt( int x, int y ) {
+        return chunk((y / chunkSize) * cols + x / chunkSize);
+    }
+
+    /**
+     * @param i chunk number, cy*cols+cx
+     * @return the chunk, loading it if needed.
+     */
+    ZoneChunk chunk( int i ) {
+        ZoneChunk c = chunks[i];
+        if ( c == null ) {
+            c = load(i);
+        }
+        c.lastUsed = ++clock;
+        return c;
+    }
+
+    private ZoneChunk load( int i ) {
+        int ox = (i % cols) * chunkSize;
+        int oy = (i / cols) * chunkSize;
+        ZoneChunk c = new ZoneChunk(
+                zone, ox, oy,
+                Math.min(chunkSize, width - ox), Math.min(chunkSize, height - oy)
+        );
+        if ( source != null ) {
+            try {
+                ZoneChunkFormat.readChunk(source, i, zone, c);
+            } catch (ZoneFileFormatException ex) {
+                log.log(Level.SEVERE, "Zone " + zone.getName() + " chunk " + i + " could not be read!", ex);
+            }
+        }
+        if ( log.isLoggable(Level.FINE) ) {
+            log.log(Level.FINE, "Zone {0} loaded chunk {1} at {2},{3}",
+                    zone.getName(), i, ox, oy);
+        }
+        // Make room before this chunk counts against the budget.
+        evict();
+        chunks[i] = c;
+        c.counted = c.estimateBytes();
+        used += c.counted;
+        loaded++;
+        return c;
+    }
+
+    /**
+     * Drop least recently used chunks until under budget or nothing more
+     * can be dropped.
+     */
+    void evict() {
+        if ( used <= budget ) {
+            return;
+        }
+        // Tiles may have been handed out since the chunks were counted.
+        used = estimateBytes();
+        int passed = 0; // Held chunks skipped.
+        while ( loaded > 0 && used > budget ) {
+            int lru = -1;
+            for ( int i = 0; i < chunks.length; i++ ) {
+                ZoneChunk c = chunks[i];
+                if ( c == null || c.dirty || inFocus(i) ) {
+                    continue;
+                }
+                if ( lru < 0 || c.lastUsed < chunks[lru].lastUsed ) {
+                    lru = i;
+                }
+            }
+            if ( lru < 0 || passed > loaded ) {
+                log.log(Level.FINE, "Zone {0} is over its chunk budget but nothing can be evicted.", zone.getName());
+                return;
+            }
+            if ( chunks[lru].isHeld() ) {
+                chunks[lru].lastUsed = ++clock; // Try it again later.
+                passed++;
+                continue;
+            }
+            if ( log.isLoggable(Level.FINE) ) {
+                log.log(Level.FINE, "Zone {0} evict chunk {1}", zone.getName(), lru);
+            }
+            chunks[lru].detach();
+            used -= chunks[lru].counted;
+            chunks[lru] = null;
+            loaded--;
+        }
+    }
+
+    /**
+     * Count the approximate heap used by loaded chunks.
+     */
+    private long estimateBytes() {
+        long total = 0;
+        for ( ZoneChunk c : chunks ) {
+            if ( c != null ) {
+                c.counted = c.estimateBytes();
+                total += c.counted;
+            }
+        }
+        return total;
+    }
+
+    void setBudget( long bytes ) {
+        this.budget = bytes;
+        evict();
+    }
+
+    long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Load and keep the chunks under an area of the zone.
+     *
+     * @param x0 left cell
+     * @param y0 top cell
+     * @param x1 right cell, inclusive
+     * @param y1 bottom cell, inclusive
+     */
+    void focus( int x0, int y0, int x1, int y1 ) {
+        focusX0 = Math.max(x0, 0) / chunkSize;
+        focusY0 = Math.max(y0, 0) / chunkSize;
+        focusX1 = Math.min(x1, width - 1) / chunkSize;
+        focusY1 = Math.min(y1, height - 1) / chunkSize;
+        for ( int cy = focusY0; cy <= focusY1; cy++ ) {
+            for ( int cx = focusX0; cx <= focusX1; cx++ ) {
+                chunk(cy * cols + cx);
+            }
+        }
+    }
+
+    private boolean inFocus( int i ) {
+        int cx = i % cols;
+        int cy = i / cols;
+        return cx >= focusX0 && cx <= focusX1 && cy >= focusY0 && cy <= focusY1;
+    }
+
+    /**
+     * Note a change to the chunk holding x,y, if it is loaded.
+     */
+    void markDirty( int x, int y ) {
+        ZoneChunk c = chunks[(y / chunkSize) * cols + x / chunkSize];
+        if ( c != null ) {
+            c.changed();
+        }
+    }
+
+    /**
+     * Switch to a newly saved file.  Chunks that did not change since the
+     * save was taken are clean again.
+     *
+     * @param newSource the saved file
+     * @param changes change count of each chunk when the save was taken,
+     *        -1 for chunks that were not loaded.
+     */
+    void saved( ZoneChunkFormat.Source newSource, int[] changes ) {
+        this.source = newSource;
+        for ( int i = 0; i < chunks.length; i++ ) {
+            ZoneChunk c = chunks[i];
+            if ( c != null && c.changes == changes[i] ) {
+                c.dirty = false;
+            }
+        }
+        evict();
+    }
+
+    @Override
+    MapTile get( int x, int y ) {
+        ZoneChunk c = chunkAt(x, y);
+        return c.map.get(x - c.originX, y - c.originY);
+    }
+
+    @Override
+    void set( int x, int y, MapTile t ) {
+        ZoneChunk c = chunkAt(x, y);
+        c.map.set(x - c.originX, y - c.originY, t);
+    }
+
+    @Override
+    void applyFlags( int x, int y, String props ) {
+        ZoneChunk c = chunkAt(x, y);
+        c.map.applyFlags(x - c.originX, y - c.originY, props);
+    }
+
+    @Override
+    void setCell( int x, int y, char key, int index, int b, int l, int s, String desc ) {
+        ZoneChunk c = chunkAt(x, y);
+        c.map.setCell(x - c.originX, y - c.originY, key, index, b, l, s, desc);
+    }
+
+    @Override
+    char getSheetKey( int x, int y ) {
+        ZoneChunk c = chunkAt(x, y);
+        return c.map.getSheetKey(x - c.originX, y - c.originY);
+    }
+
+    @Override
+    int getTileIndex( int x, int y ) {
+        ZoneChunk c = chunkAt(x, y);
+        return c.map.getTileIndex(x - c.originX, y - c.originY);
+    }
+
+    @Override
+    int getBlocking( int x, int y ) {
+        ZoneChunk c = chunkAt(x, y);
+        return c.map.getBlocking(x - c.originX, y - c.originY);
+    }
+
+    @Override
+    int getLuminous( int x, int y ) {
+        ZoneChunk c = chunkAt(x, y);
+        return c.map.getLuminous(x - c.originX, y - c.originY);
+    }
+
+    @Override
+    int getSound( int x, int y ) {
+        ZoneChunk c = chunkAt(x, y);
+        return c.map.getSound(x - c.originX, y - c.originY);
+    }
+
+    @Override
+    String getDescription( int x, int y ) {
+        ZoneChunk c = chunkAt(x, y);
+        return c.map.getDescription(x - c.originX, y - c.originY);
+    }
+
+    @Override
+    void changed( MapTile t ) {
+        chunkAt(t.getX(), t.getY()).map.changed(t);
+    }
+
+    @Override
+    void watched( MapTile t ) {
+        chunkAt(t.getX(), t.getY()).map.watched(t);
+    }
+
+    @Override
+    void released( MapTile t ) {
+        // Only a loaded chunk can hold the tile.
+        ZoneChunk c = chunks[(t.getY() / chunkSize) * cols + t.getX() / chunkSize];
+        if ( c != null ) {
+            c.map.released(t);
+        }
+    }
+
+    @Override
+    void sheetsChanged() {
+        for ( ZoneChunk c : chunks ) {
+            if ( c != null ) {
+                c.map.sheetsChanged();
+            }
+        }
+    }
+
+    @Override
+    void trim() {
+        for ( ZoneChunk c : chunks ) {
+            if ( c != null ) {
+                c.map.trim();
+            }
+        }
+        evict();
+    }
+
+    FixtureTile getFixture( int x, int y ) {
+        ZoneChunk c = chunkAt(x, y);
+        return c.fixtures[(y - c.originY) * c.width + x - c.originX];
+    }
+
+    void setFixture( int x, int y, FixtureTile t ) {
+        ZoneChunk c = chunkAt(x, y);
+        c.setFixture((y - c.originY) * c.width + x - c.originX, t);
+    }
+
+    EntityTile getEntity( int x, int y ) {
+        ZoneChunk c = chunkAt(x, y);
+        return c.entities[(y - c.originY) * c.width + x - c.originX];
+    }
+
+    void setEntity( int x, int y, EntityTile t ) {
+        ZoneChunk c = chunkAt(x, y);
+        c.setEntity((y - c.originY) * c.width + x - c.originX, t);
+    }
+
+    /**
+     * Every fixture of the zone.  Visits each chunk, loading it if needed.
+     */
+    List<FixtureTile> allFixtures() {
+        ArrayList<FixtureTile> list = new ArrayList<>();
+        for ( int i = 0; i < chunks.length; i++ ) {
+            for ( FixtureTile t : chunk(i).fixtures ) {
+                if ( t != null ) {
+                    list.add(t);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Every entity of the zone.  Visits each chunk, loading it if needed.
+     */
+    List<EntityTile> allEntities() {
+        ArrayList<EntityTile> list = new ArrayList<>();
+        for ( int i = 0; i < chunks.length; i++ ) {
+            for ( EntityTile t : chunk(i).entities ) {
+                if ( t != null ) {
+                    list.add(t);
+                }
+            }
+        }
+        return list;
+    }
+}
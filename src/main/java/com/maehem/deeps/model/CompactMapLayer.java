@@ -0,0 +1,433 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import java.nio.CharBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Map layer that keeps each cell as a few primitive values.
+ *
+ * Per cell we hold the sheet key, the tile index on that sheet and any
+ * property values that differ from the sheet tile.  A MapTile is only
+ * created when someone asks for one via get(), and is not kept.  Changes
+ * made through it are written back to the arrays, as long as the cell
+ * still holds the same sheet tile.  Only a MapTile that
+ * something listens to is kept, and while it is kept it is the authority
+ * for its cell.  Once its last listener goes it is folded back into the
+ * arrays.
+ *
+ * Callers that only read a cell should use the accessors, i.e.
+ * getBlocking(), rather than get().
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+class CompactMapLayer extends MapLayer {
+
+    /** Property value is the same as the sheet tile. */
+    static final short NO_OVERRIDE = Short.MIN_VALUE;
+
+    private final Zone zone;
+    private final int originX; // Zone cell of this layer's 0,0.
+    private final int originY;
+    private final char[] sheetKey;
+    private final short[] tileIndex;
+    private final short[] blocking;
+    private final short[] luminous;
+    private final short[] sound;
+    private final HashMap<Integer, String> description = new HashMap<>();
+
+    // Tiles being listened to, by cell number.
+    private final HashMap<Integer, MapTile> views = new HashMap<>();
+
+    private final SheetModel[] sheets = new SheetModel[26]; // A-Z, cleared by sheetsChanged().
+
+    CompactMapLayer( Zone zone, int width, int height, char key, int index ) {
+        this(zone, width, height, key, index, 0, 0);
+    }
+
+    /**
+     * Layer for part of a zone, i.e. one chunk.  Cells are addressed
+     * relative to the layer but tiles handed out carry zone coordinates.
+     *
+     * @param zone owner of the tiles
+     * @param width in cells
+     * @param height in cells
+     * @param key sheet key every cell starts with
+     * @param index tile index every cell starts with
+     * @param originX zone X of cell 0,0
+     * @param originY zone Y of cell 0,0
+     */
+    CompactMapLayer( Zone zone, int width, int height, char key, int index, int originX, int originY ) {
+        super(width, height);
+        this.zone = zone;
+        this.originX = originX;
+        this.originY = originY;
+        int cells = width * height;
+
+        sheetKey = new char[cells];
+        tileIndex = new short[cells];
+        blocking = new short[cells];
+        luminous = new short[cells];
+        sound = new short[cells];
+
+        Arrays.fill(sheetKey, key);
+        Arrays.fill(tileIndex, (short) index);
+        Arrays.fill(blocking, NO_OVERRIDE);
+        Arrays.fill(luminous, NO_OVERRIDE);
+        Arrays.fill(sound, NO_OVERRIDE);
+    }
+
+    /**
+     * Apply flags to cell without creating a Tile.  The flags are scanned
+     * in place rather than split.
+     *
+     * @param x grid X
+     * @param y grid Y
+     * @param props colon separated flags, may be null
+     */
+    @Override
+    void applyFlags( int x, int y, String props ) {
+        if ( props == null || props.isEmpty() ) {
+            return;
+        }
+        int i = y * width + x;
+        MapTile view = views.get(i);
+        if ( view != null ) {
+            view.applyFlags(props);
+            return;
+        }
+
+        Tile proto = getSheetTile(i);
+        int len = props.length();
+        int start = 0;
+        while ( start < len ) {
+            int end = props.indexOf(':', start);
+            if ( end < 0 ) {
+                end = len;
+            }
+            boolean hasValue = end - start > 1;
+            if ( end > start ) {
+                switch ( props.charAt(start) ) {
+                    case 'B':
+                        int b = hasValue ? Integer.parseInt(props, start + 1, end, 10) : Tile.BLOCKING_MAX;
+                        blocking[i] = override(b, proto.getBlocking());
+                        break;
+                    case 'D':
+                        if ( hasValue ) {
+                            String protoDesc = proto.getDescription();
+                            if ( end - start - 1 == protoDesc.length()
+                                    && props.regionMatches(start + 1, protoDesc, 0, protoDesc.length()) ) {
+                                description.remove(i);
+                            } else {
+                                description.put(i, props.substring(start + 1, end));
+                            }
+                        }
+                        break;
+                    case 'F':
+                        if ( hasValue ) {
+                            sound[i] = override(Integer.parseInt(props, start + 1, end, 10), proto.getSound());
+                        }
+                        break;
+                    case 'L':
+                        if ( hasValue ) {
+                            luminous[i] = override(Integer.parseInt(props, start + 1, end, 10), proto.getLuminous());
+                        }
+                        break;
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Bulk set sheet keys and tile indexes for every cell, clearing any
+     * overrides.  Used by the binary zone loader.
+     *
+     * @param keys sheet key for each cell, row by row
+     * @param indexes tile index for each cell, row by row
+     */
+    void setCells( CharBuffer keys, ShortBuffer indexes ) {
+        for ( MapTile view : views.values() ) {
+            view.setZone(null);
+        }
+        views.clear();
+        description.clear();
+        keys.get(sheetKey);
+        indexes.get(tileIndex);
+        Arrays.fill(blocking, NO_OVERRIDE);
+        Arrays.fill(luminous, NO_OVERRIDE);
+        Arrays.fill(sound, NO_OVERRIDE);
+    }
+
+    /**
+     * Set the property values of cell i.  Values equal to the sheet tile
+     * are not stored.
+     *
+     * @param i cell number, y*width+x
+     * @param b blocking
+     * @param l luminous
+     * @param s sound
+     * @param desc description, null for the sheet tile description
+     */
+    void setValues( int i, int b, int l, int s, String desc ) {
+        drop(i);
+        Tile proto = getSheetTile(i);
+        blocking[i] = override(b, proto.getBlocking());
+        luminous[i] = override(l, proto.getLuminous());
+        sound[i] = override(s, proto.getSound());
+        if ( desc == null || desc.equals(proto.getDescription()) ) {
+            description.remove(i);
+        } else {
+            description.put(i, desc);
+        }
+    }
+
+    @Override
+    MapTile get( int x, int y ) {
+        int i = y * width + x;
+        MapTile view = views.get(i);
+        if ( view != null ) {
+            return view;
+        }
+
+        try {
+            view = (MapTile) getSheetTile(i).clone();
+        } catch (CloneNotSupportedException ex) {
+            log.log(Level.SEVERE, "Could not clone sheet tile for cell " + x + "," + y, ex);
+            return null;
+        }
+        view.setXY(originX + x, originY + y);
+        view.setSheet(sheetKey[i]);
+        if ( blocking[i] != NO_OVERRIDE ) {
+            view.setBlocking(blocking[i]);
+        }
+        if ( luminous[i] != NO_OVERRIDE ) {
+            view.setLuminous(luminous[i]);
+        }
+        if ( sound[i] != NO_OVERRIDE ) {
+            view.setSound(sound[i]);
+        }
+        String desc = description.get(i);
+        if ( desc != null ) {
+            view.setDescription(desc);
+        }
+        view.setZone(zone); // after overrides so the zone is not marked dirty
+
+        return view;
+    }
+
+    @Override
+    void set( int x, int y, MapTile t ) {
+        int i = y * width + x;
+        drop(i);
+        fold(i, t);
+        if ( t.hasListeners() ) {
+            views.put(i, t);
+        }
+    }
+
+    @Override
+    void changed( MapTile t ) {
+        int i = cellOf(t);
+        if ( i >= 0 && !views.containsKey(i) && isOf(i, t) ) {
+            fold(i, t);
+        }
+    }
+
+    @Override
+    void watched( MapTile t ) {
+        int i = cellOf(t);
+        if ( i >= 0 && !views.containsKey(i) && isOf(i, t) ) {
+            fold(i, t);
+            views.put(i, t);
+        }
+    }
+
+    @Override
+    void released( MapTile t ) {
+        int i = cellOf(t);
+        if ( i >= 0 && views.get(i) == t ) {
+            fold(i, t);
+            views.remove(i);
+        }
+    }
+
+    @Override
+    void sheetsChanged() {
+        Arrays.fill(sheets, null);
+    }
+
+    @Override
+    void setCell( int x, int y, char key, int index, int b, int l, int s, String desc ) {
+        int i = y * width + x;
+        sheetKey[i] = key;
+        tileIndex[i] = (short) index;
+        setValues(i, b, l, s, desc);
+    }
+
+    @Override
+    char getSheetKey( int x, int y ) {
+        int i = y * width + x;
+        MapTile view = views.get(i);
+        return view != null ? view.getSheet() : sheetKey[i];
+    }
+
+    @Override
+    int getTileIndex( int x, int y ) {
+        int i = y * width + x;
+        MapTile view = views.get(i);
+        return view != null ? view.getIndex() : tileIndex[i];
+    }
+
+    @Override
+    int getBlocking( int x, int y ) {
+        int i = y * width + x;
+        MapTile view = views.get(i);
+        if ( view != null ) {
+            return view.getBlocking();
+        }
+        return blocking[i] != NO_OVERRIDE ? blocking[i] : getSheetTile(i).getBlocking();
+    }
+
+    @Override
+    int getLuminous( int x, int y ) {
+        int i = y * width + x;
+        MapTile view = views.get(i);
+        if ( view != null ) {
+            return view.getLuminous();
+        }
+        return luminous[i] != NO_OVERRIDE ? luminous[i] : getSheetTile(i).getLuminous();
+    }
+
+    @Override
+    int getSound( int x, int y ) {
+        int i = y * width + x;
+        MapTile view = views.get(i);
+        if ( view != null ) {
+            return view.getSound();
+        }
+        return sound[i] != NO_OVERRIDE ? sound[i] : getSheetTile(i).getSound();
+    }
+
+    @Override
+    String getDescription( int x, int y ) {
+        int i = y * width + x;
+        MapTile view = views.get(i);
+        if ( view != null ) {
+            return view.getDescription();
+        }
+        String desc = description.get(i);
+        return desc != null ? desc : getSheetTile(i).getDescription();
+    }
+
+    /**
+     * @return tiles being listened to, held by the layer.
+     */
+    Iterable<MapTile> getViews() {
+        return views.values();
+    }
+
+    int getViewCount() {
+        return views.size();
+    }
+
+    @Override
+    void trim() {
+        Iterator<Map.Entry<Integer, MapTile>> it = views.entrySet().iterator();
+        while ( it.hasNext() ) {
+            Map.Entry<Integer, MapTile> e = it.next();
+            if ( !e.getValue().hasListeners() ) {
+                fold(e.getKey(), e.getValue());
+                it.remove();
+            }
+        }
+        log.log(Level.FINE, "Compact map layer for {0} holds {1} tiles after trim.",
+                zone.getName(), views.size());
+    }
+
+    /**
+     * @return cell number of tile t, or -1 if it is not in this layer.
+     */
+    private int cellOf( Tile t ) {
+        int x = t.getX() - originX;
+        int y = t.getY() - originY;
+        if ( x < 0 || y < 0 || x >= width || y >= height ) {
+            return -1;
+        }
+        return y * width + x;
+    }
+
+    /**
+     * A tile handed out before its cell was replaced is no longer the
+     * cell's.
+     *
+     * @return true if cell i still holds the sheet tile t was made from.
+     */
+    private boolean isOf( int i, MapTile t ) {
+        return t.getSheet() == sheetKey[i] && t.getIndex() == tileIndex[i];
+    }
+
+    /**
+     * Forget the tile kept for cell i.  It is cut loose from the zone so
+     * that changes to it no longer reach the cell.
+     */
+    private void drop( int i ) {
+        MapTile view = views.remove(i);
+        if ( view != null ) {
+            view.setZone(null);
+        }
+    }
+
+    /**
+     * Write the state of a tile back into the arrays for cell i.
+     */
+    private void fold( int i, MapTile t ) {
+        sheetKey[i] = t.getSheet();
+        tileIndex[i] = (short) t.getIndex();
+
+        Tile proto = getSheetTile(i);
+        blocking[i] = override(t.getBlocking(), proto.getBlocking());
+        luminous[i] = override(t.getLuminous(), proto.getLuminous());
+        sound[i] = override(t.getSound(), proto.getSound());
+        if ( t.getDescription().equals(proto.getDescription()) ) {
+            description.remove(i);
+        } else {
+            description.put(i, t.getDescription());
+        }
+    }
+
+    private static short override( int value, int protoValue ) {
+        return value == protoValue ? NO_OVERRIDE : (short) value;
+    }
+
+    private Tile getSheetTile( int i ) {
+        int k = sheetKey[i] - 'A';
+        SheetModel sm = sheets[k];
+        if ( sm == null ) {
+            sm = zone.getSheet(sheetKey[i]);
+            sheets[k] = sm;
+        }
+        return sm.getTile(tileIndex[i]);
+    }
+}
@@ -18,6 +18,7 @@ package com.maehem.deeps.model;
 
 import static com.maehem.deeps.Deeps.log;
 import static com.maehem.deeps.model.IntegerTileProperty.EditStyle.SLIDER;
+import java.util.List;
 import java.util.logging.Level;
 
 /**
@@ -30,6 +31,8 @@ public class EntityTile extends Tile {
 
     public static final String SHAD = "SHAD";
 
+    static final TilePropertyKey SHAD_KEY = TilePropertyKey.of(SHAD);
+
     public static final int SHAD_DEFAULT    = 30;
     public static final int SHAD_MIN        = -1;
     public static final int SHAD_MAX        = 99;
@@ -37,6 +40,13 @@ public class EntityTile extends Tile {
     public static final int NPC_DEFAULT        = -1;
     public static final int ENEMY_DEFAULT      = -1;
     public static final int ROLLING_DEFAULT    = -1;
+    
+    private static final List<TileProperty> PROPERTIES = definitions(
+            Tile.PROPERTIES,
+            new IntegerTileProperty(
+                    null, SHAD, "Drop Shadow", 
+                    SHAD_MIN, SHAD_MAX, SHAD_DEFAULT, SLIDER)
+    );
 
     private int npc       = NPC_DEFAULT;            // -1 = not a NPC.  0-999 = npc index from game.
     private int enemy     = ENEMY_DEFAULT;          // -1 = not enemy. 0-999 = enemy from game.     
@@ -45,31 +55,25 @@ public class EntityTile extends Tile {
     
     public EntityTile(Zone zone, Character sheet, int index, int x, int y, String props) {
         super(zone, sheet, index, x, y );//, props);
-        initProperties();
         applyFlags(props);
     }
 
     public EntityTile(Zone zone, int index, int x, int y, String props) {
         super(zone, index, x, y );//, props);
-        initProperties();
         applyFlags(props);
     }
     
-    private void initProperties() {
-        getProperties().add(new IntegerTileProperty(
-                this, SHAD, "Drop Shadow", 
-                SHAD_MIN, SHAD_MAX, SHAD_DEFAULT, SLIDER));
-        
+    @Override
+    protected List<TileProperty> propertyDefinitions() {
+        return PROPERTIES;
     }
     
     public int getUmbra() {
-        return ((IntegerTileProperty)getProperty(SHAD)).getValue();
+        return getValue(SHAD_KEY);
     }
     
     public void setUmbra( int val ) {
-        IntegerTileProperty prop = (IntegerTileProperty)getProperty(SHAD);
-        prop.setValue(val);
-        notifyPropertyChanged(prop);
+        setPropertyValue(SHAD_KEY, val);
     }
     
     /**
@@ -84,6 +88,7 @@ public class EntityTile extends Tile {
      */
     public void setNpc(int npc) {
         this.npc = npc;
+        touch();
     }
 
     /**
@@ -98,6 +103,7 @@ public class EntityTile extends Tile {
      */
     public void setEnemy(int enemy) {
         this.enemy = enemy;
+        touch();
     }
     
     /**
@@ -121,6 +127,7 @@ public class EntityTile extends Tile {
      */
     public void setRolling(int rolling) {
         this.rolling = rolling;
+        touch();
     }
 
     
@@ -146,6 +153,14 @@ public class EntityTile extends Tile {
                     log.log(Level.FINER, "    n = {0}", num);
                 }
                 break;
+            case 'R': // Rolling, moves on its own.  R<int>
+                log.log(Level.FINER, "   Rolling:");
+                if (flag.length() > 1) {
+                    String num = flag.substring(1);
+                    setRolling(Integer.parseInt(num));
+                    log.log(Level.FINER, "    n = {0}", num);
+                }
+                break;
             case 'U': // Cast shadow,  SHAD99 :  U<int>
                 log.log(Level.FINER, "   Umbra:");
                 if (flag.length() > 1) {
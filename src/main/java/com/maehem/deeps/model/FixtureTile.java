@@ -18,6 +18,7 @@ package com.maehem.deeps.model;
 
 import static com.maehem.deeps.Deeps.log;
 import static com.maehem.deeps.model.IntegerTileProperty.EditStyle.*;
+import java.util.List;
 import java.util.logging.Level;
 
 /**
@@ -36,6 +37,15 @@ public class FixtureTile extends Tile {
     public static final String WEAR = "WEAR";
     public static final String INVT = "INVT";
     public static final String STOR = "STOR";
+    public static final String SLOW = "SLOW";
+
+    static final TilePropertyKey TRAK_KEY = TilePropertyKey.of(TRAK);
+    static final TilePropertyKey SHAD_KEY = TilePropertyKey.of(SHAD);
+    static final TilePropertyKey WEAP_KEY = TilePropertyKey.of(WEAP);
+    static final TilePropertyKey WEAR_KEY = TilePropertyKey.of(WEAR);
+    static final TilePropertyKey INVT_KEY = TilePropertyKey.of(INVT);
+    static final TilePropertyKey STOR_KEY = TilePropertyKey.of(STOR);
+    static final TilePropertyKey SLOW_KEY = TilePropertyKey.of(SLOW);
     
     public static final int TRACK_DEFAULT      = -1;
     public static final int UMBRA_DEFAULT      = -1;
@@ -43,10 +53,35 @@ public class FixtureTile extends Tile {
     public static final int ABLATION_DEFAULT   = -1; // -1 = can't wear, 0-99 wears down over time.
     public static final int INVENTORY_DEFAULT  = -1;
     public static final int STORAGE_DEFAULT    = -1;
+    public static final int SLOWING_DEFAULT    = 0;  // 0-99. Slows entity by % when walking here.
     
     public static final int UMBRA_MAX = 99;
+    
+    private static final List<TileProperty> PROPERTIES = definitions(
+            Tile.PROPERTIES,
+            new IntegerTileProperty(
+                    null, TRAK, "Track/Rail", 
+                    -1, 99, TRACK_DEFAULT, TEXT_FIELD),
+            new IntegerTileProperty(
+                    null, SHAD, "Drop Shadow", 
+                    -1, 99, UMBRA_DEFAULT, SLIDER),
+            new IntegerTileProperty(
+                    null, WEAP, "Weapon Damage", 
+                    -1, 99, WEAPON_DEFAULT, SLIDER),
+            new IntegerTileProperty(
+                    null, WEAR, "Durability", 
+                    -1, 99, ABLATION_DEFAULT, SLIDER),
+            new IntegerTileProperty(
+                    null, INVT, "Inventory Index",
+                    -1, 999, INVENTORY_DEFAULT, TEXT_FIELD),
+            new IntegerTileProperty(
+                    null, STOR, "Storage Vault", 
+                    -1, 999, STORAGE_DEFAULT, TEXT_FIELD),
+            new IntegerTileProperty(
+                    null, SLOW, "Slows Walkers %", 
+                    0, 99, SLOWING_DEFAULT, SLIDER)
+    );
 
-    private int slowing = 0; // 0-99. Slows entity by % when walking here.
     private int harvestable = -1; // HP to harvest. -1=no. 0=free to pick. 1-99 Nailed down, hits needed.
     private boolean autoHarvest = false; // Will go into player inventory if free.
     
@@ -61,7 +96,6 @@ public class FixtureTile extends Tile {
         super(zone, sheet, index, x, y ); //, props);
         
         // Apply props (local)
-        initProperties();
         applyFlags(props);
     }
 
@@ -69,41 +103,33 @@ public class FixtureTile extends Tile {
         super(zone, index, x, y ); //, props);
         
         // Apply props (local)
-        initProperties();
         applyFlags(props);
     }
     
-    private void initProperties() {
-        getProperties().add(new IntegerTileProperty(
-                this, TRAK, "Track/Rail", 
-                -1, 99, TRACK_DEFAULT, TEXT_FIELD));
-        getProperties().add(new IntegerTileProperty(
-                this, SHAD, "Drop Shadow", 
-                -1, 99, UMBRA_DEFAULT, SLIDER));
-        getProperties().add(new IntegerTileProperty(
-                this, WEAP, "Weapon Damage", 
-                -1, 99, WEAPON_DEFAULT, SLIDER));
-        getProperties().add(new IntegerTileProperty(
-                this, WEAR, "Durability", 
-                -1, 99, ABLATION_DEFAULT, SLIDER));
-        getProperties().add(new IntegerTileProperty(
-                this, INVT, "Inventory Index",
-                -1, 999, INVENTORY_DEFAULT, TEXT_FIELD));
-        getProperties().add(new IntegerTileProperty(
-                this, STOR, "Storage Vault", 
-                -1, 999, STORAGE_DEFAULT, TEXT_FIELD));
+    /**
+     * @return percent an entity is slowed walking here, 0-99.
+     */
+    public int getSlowing() {
+        return getValue(SLOW_KEY);
+    }
+
+    public void setSlowing( int val ) {
+        setPropertyValue(SLOW_KEY, val);
+    }
+
+    @Override
+    protected List<TileProperty> propertyDefinitions() {
+        return PROPERTIES;
     }
     
     public int getAblation() {
-        return ((IntegerTileProperty)getProperty(WEAR)).getValue();
+        return getValue(WEAR_KEY);
 //        return ablation;
     }
     
     public void setAblation( int val )  {
         //ablation = newValue;
-        IntegerTileProperty prop = (IntegerTileProperty)getProperty(WEAR);
-        prop.setValue(val);
-        notifyPropertyChanged(prop);
+        setPropertyValue(WEAR_KEY, val);
     }
     
     public void applyAblation(int amount) {
@@ -123,15 +149,13 @@ public class FixtureTile extends Tile {
     }
 
     public int getInventoryItem() {
-        return ((IntegerTileProperty)getProperty(INVT)).getValue();
+        return getValue(INVT_KEY);
         //return inventoryItem;
     }
     
     public void setInventoryItem( int index) {
         //this.inventoryItem = i;
-        IntegerTileProperty prop = (IntegerTileProperty)getProperty(INVT);
-        prop.setValue(index);
-        notifyPropertyChanged(prop);
+        setPropertyValue(INVT_KEY, index);
     }
     
     public boolean isInventoryItem() {
@@ -142,7 +166,7 @@ public class FixtureTile extends Tile {
      * @return the storage
      */
     public int getStorage() {
-        return ((IntegerTileProperty)getProperty(STOR)).getValue();
+        return getValue(STOR_KEY);
         //return storage;
     }
 
@@ -151,34 +175,28 @@ public class FixtureTile extends Tile {
      */
     public void setStorage(int index) {
         //this.storage = storage;
-        IntegerTileProperty prop = (IntegerTileProperty)getProperty(STOR);
-        prop.setValue(index);
-        notifyPropertyChanged(prop);
+        setPropertyValue(STOR_KEY, index);
     }
 
     public int getUmbra() {
-        return ((IntegerTileProperty)getProperty(SHAD)).getValue();
+        return getValue(SHAD_KEY);
         //return umbra;
     }
     
     public void setUmbra( int val ) {
-        IntegerTileProperty prop = (IntegerTileProperty)getProperty(SHAD);
-        prop.setValue(val);
+        setPropertyValue(SHAD_KEY, val);
         //this.umbra = umbra;
         //notifyPropertyChanged("umbra");
-        notifyPropertyChanged(prop);
     }
     
     public int getWeapon() {
-        return ((IntegerTileProperty)getProperty(WEAP)).getValue();
+        return getValue(WEAP_KEY);
         //return weapon;
     }
     
     public void setWeapon(int damage) {
         //this.weapon = damage;
-        IntegerTileProperty prop = (IntegerTileProperty)getProperty(WEAP);
-        prop.setValue(damage);
-        notifyPropertyChanged(prop);
+        setPropertyValue(WEAP_KEY, damage);
     }
     
     public boolean isWeapon() {
@@ -193,7 +211,7 @@ public class FixtureTile extends Tile {
     }
 
     public int getTrack() {
-        return ((IntegerTileProperty)getProperty(TRAK)).getValue();
+        return getValue(TRAK_KEY);
         //return track;
     }
     
@@ -202,15 +220,15 @@ public class FixtureTile extends Tile {
      */
     public void setTrack(int track) {
         //this.track = track;
-        IntegerTileProperty prop = (IntegerTileProperty)getProperty(TRAK);
-        prop.setValue(track);
-        notifyPropertyChanged(prop);
+        setPropertyValue(TRAK_KEY, track);
     }
     
     @Override
     public void configureFlagSetting( String flag ) {
-        log.log(Level.FINE, "Configure Fixture Tile Setting: {0}  {1}", 
-                new Object[]{getMnemonic(), flag });
+        if ( log.isLoggable(Level.FINE) ) {
+            log.log(Level.FINE, "Configure Fixture Tile Setting: {0}  {1}", 
+                    getMnemonic(), flag);
+        }
         Character f = flag.charAt(0);
         // Addtional flag considerations.
         switch( f ) {
@@ -254,6 +272,14 @@ public class FixtureTile extends Tile {
                     log.log(Level.FINER, "    n = {0}", num);
                 }
                 break;
+            case 'M': // Mire, slows walkers, SLOW  SLOW99 : M<percent>
+                log.log(Level.FINER, "   Slowing:");
+                if (flag.length() > 1) {
+                    String num = flag.substring(1);
+                    setSlowing(Integer.parseInt(num));
+                    log.log(Level.FINER, "    n = {0}", num);
+                }
+                break;
             case 'U': // Cast shadow,  SHAD99 :  U<int>
                 log.log(Level.FINER, "   Umbra:");
                 if (flag.length() > 1) {
@@ -279,6 +305,9 @@ public class FixtureTile extends Tile {
         if ( getInventoryItem() != INVENTORY_DEFAULT ) {
             sb.append("I").append(getInventoryItem()).append(":");
         }
+        if ( getSlowing() != SLOWING_DEFAULT ) {
+            sb.append("M").append(getSlowing()).append(":");
+        }
         if ( getStorage() != STORAGE_DEFAULT ) {
             sb.append("S").append(getStorage()).append(":");
         }
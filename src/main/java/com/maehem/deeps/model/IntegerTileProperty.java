@@ -31,7 +31,7 @@ public class IntegerTileProperty extends TileProperty {
     public final static int MAX_VAL = 99;
     public final static int DEFAULT_VAL = MIN_VAL;
     
-    private int value = DEFAULT_VAL;
+    private int defaultValue = DEFAULT_VAL; // Value itself is kept by the parent Tile.
     private int minValue = MIN_VAL;
     private int maxValue = MAX_VAL;
     private EditStyle editStyle = EditStyle.TEXT_FIELD;
@@ -47,7 +47,7 @@ public class IntegerTileProperty extends TileProperty {
         
         this.minValue = min;
         this.maxValue = max;
-        this.value = val;
+        this.defaultValue = val;
         this.editStyle = style;
     }
     
@@ -60,7 +60,14 @@ public class IntegerTileProperty extends TileProperty {
     }
     
     public int getValue() {
-        return value;
+        if ( getParent() == null ) {
+            return defaultValue;
+        }
+        return getParent().getValue(getKey());
+    }
+    
+    public int getDefaultValue() {
+        return defaultValue;
     }
     
     public EditStyle getEditStyle() {
@@ -77,6 +84,7 @@ public class IntegerTileProperty extends TileProperty {
      * @param val 
      */
     public void setValue(int val) {
+        int value = getValue();
         if ( val == value ) { return; }
         if ( val < minValue ) {
             value = minValue;
@@ -84,16 +92,25 @@ public class IntegerTileProperty extends TileProperty {
             value = maxValue;
         } else {
             log.log(FINER, "IntegerTileProperty value change:  old={0} new={1}", 
-                    new Object[]{value, val});
+                    value, val);
             value = val;
         }
         
-        // todo: notify value changed.
+        getParent().putValue(getKey(), value);
         getParent().notifyPropertyChanged(this);
     }
+    
+    /**
+     * @param val value to check
+     * @return val limited to the range of this property.
+     */
+    int clamp( int val ) {
+        return Math.max(minValue, Math.min(maxValue, val));
+    }
 
     @Override
     public String getFlagLump() {
+        int value = getValue();
         if ( value != DEFAULT_VAL ) {
             return getLabel() + value;
         } else {
@@ -0,0 +1,155 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+/**
+ * Storage for the base (map) layer of a Zone.
+ * 
+ * Every cell of a zone has exactly one MapTile.  How those cells are held
+ * in memory is up to the implementation.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+abstract class MapLayer {
+
+    protected final int width;
+    protected final int height;
+
+    MapLayer( int width, int height ) {
+        this.width = width;
+        this.height = height;
+    }
+    
+    /**
+     * @param x grid X
+     * @param y grid Y
+     * @return the MapTile at x,y
+     */
+    abstract MapTile get( int x, int y );
+    
+    /**
+     * Replace the MapTile at x,y.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @param t new tile
+     */
+    abstract void set( int x, int y, MapTile t );
+    
+    /**
+     * Apply colon separated flags, as read from a zone file, to a cell.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @param props flags, may be null
+     */
+    abstract void applyFlags( int x, int y, String props );
+
+    /**
+     * Make cell x,y a tile from a sheet with the given values, without a
+     * MapTile passing through the caller.  Nobody is notified.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @param key sheet key, A-Z
+     * @param index tile index on the sheet
+     * @param blocking value
+     * @param luminous value
+     * @param sound value
+     * @param desc description, null for the sheet tile description
+     */
+    abstract void setCell( int x, int y, char key, int index,
+            int blocking, int luminous, int sound, String desc );
+
+    /**
+     * @param x grid X
+     * @param y grid Y
+     * @return sheet key of the cell, A-Z
+     */
+    abstract char getSheetKey( int x, int y );
+
+    /**
+     * @param x grid X
+     * @param y grid Y
+     * @return tile index on the sheet
+     */
+    abstract int getTileIndex( int x, int y );
+
+    abstract int getBlocking( int x, int y );
+
+    abstract int getLuminous( int x, int y );
+
+    abstract int getSound( int x, int y );
+
+    abstract String getDescription( int x, int y );
+
+    /**
+     * Mnemonic of cell, i.e. A012, without creating a Tile for it.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @return mnemonic for cell
+     */
+    String getMnemonic( int x, int y ) {
+        return getSheetKey(x, y) + String.format("%03d", getTileIndex(x, y));
+    }
+    
+    /**
+     * Flags of cell, as written to the zone file, without creating a Tile for it.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @return flags for cell
+     */
+    String getFlags( int x, int y ) {
+        return Tile.formatFlags(
+                getBlocking(x, y), getLuminous(x, y), getSound(x, y),
+                getDescription(x, y)
+        );
+    }
+    
+    /**
+     * Tile t of this layer was changed through its setters.
+     *
+     * @param t tile that changed
+     */
+    void changed( MapTile t ) {}
+
+    /**
+     * Tile t of this layer got its first listener.
+     *
+     * @param t tile now listened to
+     */
+    void watched( MapTile t ) {}
+
+    /**
+     * Tile t of this layer lost its last listener.
+     *
+     * @param t tile no longer listened to
+     */
+    void released( MapTile t ) {}
+
+    /**
+     * The sheets behind the zone's sheet keys may have changed.
+     */
+    void sheetsChanged() {}
+
+    /**
+     * Release any Tile objects that are no longer referenced by a listener.
+     */
+    void trim() {}
+}
@@ -0,0 +1,113 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import java.util.logging.Level;
+
+/**
+ * Map layer that keeps a full MapTile object for every cell.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+class ObjectMapLayer extends MapLayer {
+
+    private final Zone zone;
+    private final MapTile[][] baseTile;
+
+    ObjectMapLayer( Zone zone, int width, int height ) {
+        super(width, height);
+        this.zone = zone;
+        this.baseTile = new MapTile[height][width];
+    }
+
+    @Override
+    MapTile get( int x, int y ) {
+        return baseTile[y][x];
+    }
+
+    @Override
+    void set( int x, int y, MapTile t ) {
+        baseTile[y][x] = t;
+    }
+
+    @Override
+    void applyFlags( int x, int y, String props ) {
+        baseTile[y][x].applyFlags(props);
+    }
+
+    @Override
+    void setCell( int x, int y, char key, int index, int b, int l, int s, String desc ) {
+        MapTile t;
+        try {
+            t = (MapTile) zone.getSheet(key).getTile(index).clone();
+        } catch (CloneNotSupportedException ex) {
+            log.log(Level.SEVERE, "Could not clone sheet tile for cell " + x + "," + y, ex);
+            return;
+        }
+        t.setXY(x, y);
+        t.setSheet(key);
+        t.putValue(Tile.BLOK_KEY, b);
+        t.putValue(Tile.LUMI_KEY, l);
+        t.putValue(Tile.NOIZ_KEY, s);
+        if ( desc != null ) {
+            t.setDescription(desc);
+        }
+        t.setZone(zone); // after values so the zone is not told
+        baseTile[y][x] = t;
+    }
+
+    @Override
+    char getSheetKey( int x, int y ) {
+        return baseTile[y][x].getSheet();
+    }
+
+    @Override
+    int getTileIndex( int x, int y ) {
+        return baseTile[y][x].getIndex();
+    }
+
+    @Override
+    int getBlocking( int x, int y ) {
+        return baseTile[y][x].getBlocking();
+    }
+
+    @Override
+    int getLuminous( int x, int y ) {
+        return baseTile[y][x].getLuminous();
+    }
+
+    @Override
+    int getSound( int x, int y ) {
+        return baseTile[y][x].getSound();
+    }
+
+    @Override
+    String getDescription( int x, int y ) {
+        return baseTile[y][x].getDescription();
+    }
+
+    @Override
+    String getMnemonic( int x, int y ) {
+        return baseTile[y][x].getMnemonic();
+    }
+
+    @Override
+    String getFlags( int x, int y ) {
+        return baseTile[y][x].getFlags();
+    }
+}
@@ -111,8 +111,13 @@ public class SheetModel {
                 int tilenum = (getWidth()*y)+x;
                 //Tile t = new Tile("_" + tilenum, x, y, getPropsFor(tilenum));
                 String props = getPropsFor(tilenum);
-                log.log(Level.CONFIG, "    Props for tilenum: {0} ==>{1}", new Object[]{tilenum, props});
-                tiles.add(createTile(tilenum, x, y, props));
+                log.log(Level.CONFIG, "    Props for tilenum: {0} ==>{1}", tilenum, props);
+                Tile t = createTile(tilenum, x, y, props);
+                if ( t != null ) {
+                    // Made now so that zones loading in parallel all share it.
+                    t.asPrototype();
+                }
+                tiles.add(t);
                 //TileView tv = new TileView(t, sheet ); //, x, y);
                 //tileGroup.getChildren().add(tv);
             }
@@ -168,6 +173,25 @@ public class SheetModel {
     public Tile getTile( int i ) {
         return tiles.get(i);
     }
+
+    /**
+     * Number of tiles in the sheet.  Tile indexes run from 0 to one less.
+     *
+     * @return tile count
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * Shared data for every tile placed from sheet tile i.
+     * 
+     * @param i tile index
+     * @return prototype of tile
+     */
+    public TilePrototype getPrototype( int i ) {
+        return tiles.get(i).asPrototype();
+    }
     
     public final String getPropertiesFileName() {
         return path.split(".png")[0] + ".properties";
@@ -19,6 +19,7 @@ package com.maehem.deeps.model;
 import static com.maehem.deeps.Deeps.log;
 import static com.maehem.deeps.model.IntegerTileProperty.EditStyle.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
@@ -30,9 +31,13 @@ import java.util.logging.Level;
  */
 public abstract class Tile implements Cloneable {
 
-    private ArrayList<TileListener> listeners = new ArrayList<>();
+    private ArrayList<TileListener> listeners = null; // Created on first addListener()
     
-    private ArrayList<TileProperty> properties = new ArrayList<>();
+    private ArrayList<TileProperty> properties = null; // Created on first use by editor.
+    
+    private TilePrototype prototype;         // Values shared with other tiles from the same sheet tile.
+    private int[] values = null; // By key ordinal.  null while all values match the prototype.
+    private TilePrototype shared = null;    // Prototype made from this tile for its clones.
     
     private Zone zone;
     private Character sheet;
@@ -40,12 +45,16 @@ public abstract class Tile implements Cloneable {
     private int x; //  Grid X
     private int y; //   Grid Y
     
-    private String description = ""; // String description
+    private String description = null; // String description, null for prototype's.
     
     public static final String BLOK = "BLOK";
     public static final String LUMI = "LUMI";
     public static final String NOIZ = "NOIZ";
 
+    static final TilePropertyKey BLOK_KEY = TilePropertyKey.of(BLOK);
+    static final TilePropertyKey LUMI_KEY = TilePropertyKey.of(LUMI);
+    static final TilePropertyKey NOIZ_KEY = TilePropertyKey.of(NOIZ);
+
     public static final String BLOK_LBL = "Blocking";
     public static final String LUMI_LBL = "Luminance";
     public static final String NOIZ_LBL = "Sound Effect";
@@ -62,9 +71,14 @@ public abstract class Tile implements Cloneable {
     public static final int NOIZ_MIN            = NOIZ_DEFAULT;
     public static final int NOIZ_MAX            = 99;
 
-    private int blocking  = BLOCKING_DEFAULT;       // -1 = not blocking,  0-99  blocks/slows by this amount (99 is default)
-    private int luminous  = LUMINOUS_DEFAULT;       // -1 = no light emmited.  00-99, light effect # in game engine.
-    private int sound     = NOIZ_DEFAULT;          // -1 = no sound emitted. 0-999 = sound index from a game table.
+    // BLOK  -1 = not blocking,  0-99  blocks/slows by this amount (99 is default)
+    // LUMI  -1 = no light emmited.  00-99, light effect # in game engine.
+    // NOIZ  -1 = no sound emitted. 0-999 = sound index from a game table.
+    static final List<TileProperty> PROPERTIES = List.of(
+        new IntegerTileProperty(null, BLOK, "Block", -1, 99, BLOCKING_DEFAULT, SLIDER),
+        new IntegerTileProperty(null, NOIZ, "Sound Effect", -1, 999, NOIZ_DEFAULT, TEXT_FIELD),
+        new IntegerTileProperty(null, LUMI, "Light Emmision", -1, 99, LUMINOUS_DEFAULT, SPINNER)
+    );
 
     /**
      * Abstract Tile.   Extend the class.  Call super() and then applyFlags().
@@ -81,18 +95,41 @@ public abstract class Tile implements Cloneable {
         this.index = index;
         this.x = x;
         this.y = y;
-        log.log(Level.CONFIG, "Create new Tile({0},{1},{2},{3},{4})", 
-                new Object[]{zone==null?"null":zone.getName(), sheet, index, x, y}
-        );
+        if ( log.isLoggable(Level.CONFIG) ) {
+            log.log(Level.CONFIG, "Create new Tile({0},{1},{2},{3},{4})", 
+                    zone==null?"null":zone.getName(), sheet, index, x, y
+            );
+        }
         
-        // TODO: Define Strings above.
-        properties.add(new IntegerTileProperty(this, "BLOK", "Block", -1, 99, BLOCKING_DEFAULT, SLIDER));
-        properties.add(new IntegerTileProperty(this, "NOIZ", "Sound Effect", -1, 999, NOIZ_DEFAULT, TEXT_FIELD));
-        properties.add(new IntegerTileProperty(this, "LUMI", "Light Emmision", -1, 99, LUMINOUS_DEFAULT, SPINNER));
+        this.prototype = TilePrototype.defaultFor(this);
         
         //applyFlags(props);  // colon :  separated list.
     }
     
+    /**
+     * Property definitions for this kind of tile.  Subclasses with more
+     * properties override this and add theirs to the list.  Called from the
+     * constructor so it must only return constants.
+     * 
+     * @return property definitions with no parent.
+     */
+    protected List<TileProperty> propertyDefinitions() {
+        return PROPERTIES;
+    }
+    
+    /**
+     * Join property definition lists.
+     * 
+     * @param base definitions of super class
+     * @param more definitions to add
+     * @return unmodifiable list of all definitions
+     */
+    protected static List<TileProperty> definitions( List<TileProperty> base, TileProperty... more ) {
+        ArrayList<TileProperty> all = new ArrayList<>(base);
+        all.addAll(Arrays.asList(more));
+        return Collections.unmodifiableList(all);
+    }
+    
     /**
      * Abstract Blank Tile.  Extend the class and call super().  Call applyFlags() in subclass.
      * 
@@ -108,10 +145,12 @@ public abstract class Tile implements Cloneable {
     public final void applyFlags(String props) {
         if (props != null && props.length() > 0) {
             String[] flags = props.split(":");
-            log.log(Level.FINER,
-                    "Tile {0} has {1} items.",
-                    new Object[]{getMnemonic(), flags.length}
-            );
+            if ( log.isLoggable(Level.FINER) ) {
+                log.log(Level.FINER,
+                        "Tile {0} has {1} items.",
+                        getMnemonic(), flags.length
+                );
+            }
 
             for (String flag : flags) {
                 log.log(Level.FINER, "    flag: {0}", flag);
@@ -119,7 +158,9 @@ public abstract class Tile implements Cloneable {
                 configureFlagSetting(flag); // Configure child class flags or overwrite parent flags/defaults.
             }
         } else {
-            log.log(Level.FINER, "No props for {0}", getMnemonic());
+            if ( log.isLoggable(Level.FINER) ) {
+                log.log(Level.FINER, "No props for {0}", getMnemonic());
+            }
         }
     }
 
@@ -143,7 +184,7 @@ public abstract class Tile implements Cloneable {
                 break;
             case 'D': // Description    DESC<string>  : D<string>
                 if ( flag.length() > 1 ) {
-                    this.description = flag.substring(1);
+                    putDescription(flag.substring(1));
                 }
                 break;
             case 'F': // Foley/Sound, SNDX  SNDX999 : F<idNumber>
@@ -190,13 +231,15 @@ public abstract class Tile implements Cloneable {
             //Thread.dumpStack();
             return false;
         }
-        String zoneName = "NONE";
-        if ( getZone() != null ) {
-            zoneName = getZone().getName();
+        if ( log.isLoggable(Level.FINE) ) {
+            String zoneName = "NONE";
+            if ( getZone() != null ) {
+                zoneName = getZone().getName();
+            }
+            log.log(Level.FINE, "Tile at {0}x{1} in zone: {2} sheet changed from {3} -> {4} obj: {5}",
+                    new Object[]{ getX(), getY(), zoneName, getSheet(), sheet, this.toString() }
+            );
         }
-        log.log(Level.FINE, "Tile at {0}x{1} in zone: {2} sheet changed from {3} -> {4} obj: {5}",
-                new Object[]{ getX(), getY(), zoneName, getSheet(), sheet, this.toString() }
-        );
         this.sheet = sheet;
         notifyMnemonicChanged();
         return true;
@@ -254,29 +297,56 @@ public abstract class Tile implements Cloneable {
     }
     
     public String getDescription() {
-        return description;
+        return description != null ? description : prototype.getDescription();
     }
     
     public void setDescription( String s) {
-         this.description = s;
+         putDescription(s);
+         touch();
      }
+    
+    private void putDescription( String s ) {
+        this.description = (s == null || s.equals(prototype.getDescription())) ? null : s;
+        shared = null;
+    }
      
     public final void addListener(TileListener l) {
-        String zoneName = "null";
-        if ( zone != null ) {
-            zoneName = zone.getName();
+        if ( log.isLoggable(Level.FINE) ) {
+            String zoneName = "null";
+            if ( zone != null ) {
+                zoneName = zone.getName();
+            }
+            log.log(Level.FINE, "Tile: Zone: {0} Add Tile Listener: {1}x{2}  obj: {3}   list:{4}", 
+                    zoneName, getX(), getY(), this, l);
+        }
+        if ( listeners == null ) {
+            listeners = new ArrayList<>();
         }
-        log.log(Level.FINE, "Tile: Zone: {0} Add Tile Listener: {1}x{2}  obj: {3}   list:{4}", 
-                new Object[]{ zoneName, getX(), getY(), this.toString(), l.toString() });
         listeners.add(l);
+        if ( zone != null && listeners.size() == 1 ) {
+            zone.tileWatched(this, true);
+        }
     }
 
     public final Object getListeners() {
+        if ( listeners == null ) {
+            return new Object[0];
+        }
         return listeners.toArray( );
     }
     
     public final boolean removeListener(TileListener l) {
-        return listeners.remove(l);
+        if ( listeners == null || !listeners.remove(l) ) {
+            return false;
+        }
+        if ( zone != null && listeners.isEmpty() ) {
+            zone.tileWatched(this, false);
+        }
+        return true;
+    }
+    
+    final boolean hasListeners() {
+        return listeners != null && !listeners.isEmpty();
     }
     
     /**
@@ -284,58 +354,79 @@ public abstract class Tile implements Cloneable {
      * 
      */
     public void retire() {
-        log.log(Level.INFO, "Clear listeners:  obj: {0}x{1}", new Object[]{getX(), getY()});
-        listeners.clear();
+        log.log(Level.INFO, "Clear listeners:  obj: {0}x{1}", getX(), getY());
+        listeners = null;
+    }
+    
+    /**
+     * Let the zone know that something it saves about this tile changed.
+     */
+    protected final void touch() {
+        shared = null;
+        if ( zone != null ) {
+            zone.tileChanged(this);
+        }
     }
     
     private void notifyMnemonicChanged() {
-        log.log(Level.FINE, "Tile.notifyMnemonicChanged: {0}x{1}  {2}",
-                new Object[]{ getX(), getY(), getMnemonic() });
+        if ( log.isLoggable(Level.FINE) ) {
+            log.log(Level.FINE, "Tile.notifyMnemonicChanged: {0}x{1}  {2}",
+                    getX(), getY(), getMnemonic());
+        }
+        touch();
+        if ( listeners == null ) {
+            return;
+        }
         for (TileListener l : listeners) {
-            log.log(Level.FINER, "TileListener: {0}", l.toString());
+            log.log(Level.FINER, "TileListener: {0}", l);
             l.tileCodeChanged(this);
         }
     }
     
     public void notifyPropertyChanged( String propName ) {
         log.log(Level.INFO, "(old) Tile.notifyPropertyChanged: {0}x{1}  {2}",
-                new Object[]{ getX(), getY(), propName });
+                getX(), getY(), propName);
+        touch();
+        if ( listeners == null ) {
+            return;
+        }
         for (TileListener l : listeners) {
-            log.log(Level.FINER, "TileListener: {0}", l.toString());
+            log.log(Level.FINER, "TileListener: {0}", l);
             l.tilePropertyChanged(this, propName);
         }
     }
     
     public void notifyPropertyChanged( TileProperty property ) {
-        log.log(Level.FINE, "Tile.notifyPropertyChanged: {0}x{1}  {2}  obj: {3}",
-                new Object[]{ getX(), getY(), property.getFlag(), this });
-        if ( listeners.isEmpty() ) {
+        if ( log.isLoggable(Level.FINE) ) {
+            log.log(Level.FINE, "Tile.notifyPropertyChanged: {0}x{1}  {2}  obj: {3}",
+                    getX(), getY(), property.getFlag(), this);
+        }
+        touch();
+        if ( !hasListeners() ) {
             log.log(Level.FINER, "   no one is listening!");
+            return;
         }
         for (TileListener l : listeners) {
-            log.log(Level.FINER, "TileListener: {0}", l.toString());
+            log.log(Level.FINER, "TileListener: {0}", l);
             l.tilePropertyChanged(property);
         }        
     }
     
     public int getLuminous() {
-        return luminous;
+        return getValue(LUMI_KEY);
     }
     
     public void setLuminous( int lum ) {
-        this.luminous = lum;
+        putValue(LUMI_KEY, lum);
+        touch();
     }
     
     public int getBlocking() {
-        return ((IntegerTileProperty)getProperty(BLOK)).getValue();
-        //return blocking;
+        return getValue(BLOK_KEY);
     }
     
     public void setBlocking( int val) {
-        //this.blocking = val;
-        IntegerTileProperty prop = (IntegerTileProperty)getProperty(BLOK);
-        prop.setValue(val);
-        notifyPropertyChanged(prop);
+        setPropertyValue(BLOK_KEY, val);
     }
     
     public boolean isBlocking() {
@@ -346,35 +437,146 @@ public abstract class Tile implements Cloneable {
      * @return the sound
      */
     public int getSound() {
-        return sound;
+        return getValue(NOIZ_KEY);
     }
 
     /**
      * @param soundFx the game engine soundFx # to set
      */
     public void setSound(int soundFx) {
-        this.sound = soundFx;
+        putValue(NOIZ_KEY, soundFx);
+        touch();
+    }
+    
+    /**
+     * @param key property key
+     * @return value of property for this tile, -1 if it has no such property.
+     */
+    public final int getValue( TilePropertyKey key ) {
+        int[] v = values != null ? values : prototype.values();
+        int o = key.ordinal();
+        return o < v.length ? v[o] : IntegerTileProperty.DEFAULT_VAL;
+    }
+    
+    /**
+     * @param flag property flag, i.e. "BLOK"
+     * @return value of property for this tile, -1 if it has no such property.
+     */
+    public final int getValue( String flag ) {
+        TilePropertyKey key = TilePropertyKey.get(flag);
+        return key != null ? getValue(key) : IntegerTileProperty.DEFAULT_VAL;
+    }
+    
+    /**
+     * Set a property value, limited to its range, and let listeners know.
+     * 
+     * @param key property key
+     * @param val new value
+     */
+    protected final void setPropertyValue( TilePropertyKey key, int val ) {
+        IntegerTileProperty def = (IntegerTileProperty) prototype.getProperty(key);
+        int v = def.clamp(val);
+        if ( v == getValue(key) ) {
+            return;
+        }
+        putValue(key, v);
+        if ( hasListeners() ) {
+            notifyPropertyChanged(getProperty(key));
+        } else {
+            touch();
+        }
+    }
+    
+    /**
+     * Store a value.  The value array is copied from the prototype on the
+     * first change and dropped again when it matches the prototype.
+     * Nobody is notified, but the zone's history, if any, records it.
+     */
+    final void putValue( TilePropertyKey key, int val ) {
+        int o = key.ordinal();
+        int[] protoValues = prototype.values();
+        if ( o >= protoValues.length ) {
+            log.log(Level.WARNING, "{0} has no property {1}",
+                    getClass().getSimpleName(), key);
+            return;
+        }
+        int old = values != null ? values[o] : protoValues[o];
+        if ( old == val ) {
+            return;
+        }
+        if ( zone != null ) {
+            zone.valueChanging(this, o, old, val);
+        }
+        if ( values == null ) {
+            values = protoValues.clone();
+        }
+        values[o] = val;
+        if ( Arrays.equals(values, protoValues) ) {
+            values = null;
+        }
+        shared = null;
+    }
+    
+    /**
+     * @return current values by key ordinal.  Not to be changed.
+     */
+    final int[] values() {
+        return values != null ? values : prototype.values();
+    }
+    
+    /**
+     * @return the prototype this tile's values are kept against.
+     */
+    public final TilePrototype getPrototype() {
+        return prototype;
+    }
+    
+    /**
+     * Prototype for tiles cloned from this one.  If this tile has no values
+     * of its own, its prototype is shared as is.
+     */
+    final TilePrototype asPrototype() {
+        if ( values == null && description == null ) {
+            return prototype;
+        }
+        if ( shared == null ) {
+            shared = TilePrototype.of(this);
+        }
+        return shared;
     }
 
     public String getFlags() {
         //  I, W, T, R, C, E, M, N, S, U
+        return formatFlags(getBlocking(), getLuminous(), getSound(), getDescription());
+    }
+    
+    /**
+     * Format the common tile flags in the same form that applyFlags() reads.
+     * 
+     * @param blocking value
+     * @param luminous value
+     * @param sound value
+     * @param description text
+     * @return colon separated flags
+     */
+    static String formatFlags( int blocking, int luminous, int sound, String description ) {
         StringBuilder sb = new StringBuilder();
         
-        if ( getBlocking() != BLOCKING_DEFAULT ) {
-            if ( getBlocking() < 99 ) {
-                sb.append("B").append(getBlocking()).append(":");
+        if ( blocking != BLOCKING_DEFAULT ) {
+            if ( blocking < 99 ) {
+                sb.append("B").append(blocking).append(":");
             } else {
                 sb.append("B").append(":");                
             }
         }
-        if ( getLuminous()!= LUMINOUS_DEFAULT ) {
-            sb.append("L").append(getLuminous()).append(":");
+        if ( luminous != LUMINOUS_DEFAULT ) {
+            sb.append("L").append(luminous).append(":");
         }
-        if ( getSound() != NOIZ_DEFAULT ) {
-            sb.append("F").append(getSound()).append(":");
+        if ( sound != NOIZ_DEFAULT ) {
+            sb.append("F").append(sound).append(":");
         }
 
-        sb.append("D").append(getDescription());
+        sb.append("D").append(description);
         
         return sb.toString();
     }
@@ -383,37 +585,60 @@ public abstract class Tile implements Cloneable {
     public Object clone() throws CloneNotSupportedException {
         Tile t = (Tile) super.clone();
         log.log(Level.FINE, "Cloned tile {0} -> {1}",
-                new Object[]{this, t}
+                this, t
         );
-        t.listeners = new ArrayList<>();
+        t.listeners = null;
         t.x = 0;
         t.y = 0;
         
-        ArrayList<TileProperty> newProps = new ArrayList<>();
-        for ( TileProperty tp: this.getPropertiesUnmodifiable() ) {
-            TileProperty newTp = (TileProperty) tp.clone();
-            newTp.setParent(t);
-            newProps.add(newTp);
-        }
-        t.properties = newProps;
+        // Share this tile's values rather than copying them.
+        t.prototype = asPrototype();
+        t.values = null;
+        t.description = null;
+        t.shared = null;
+        t.properties = null;
         t.zone = null;
         t.sheet = '_';
         return t; 
     }
      
+    /**
+     * Property objects for the editor.  They are made on first call and
+     * read and write this tile's values.
+     * 
+     * @return properties of this tile.
+     */
     public ArrayList<TileProperty> getProperties() {
+        if ( properties == null ) {
+            properties = new ArrayList<>();
+            for ( TileProperty def : prototype.getProperties() ) {
+                try {
+                    TileProperty tp = (TileProperty) def.clone();
+                    tp.setParent(this);
+                    properties.add(tp);
+                } catch (CloneNotSupportedException ex) {
+                    log.log(Level.SEVERE, null, ex);
+                }
+            }
+        }
         return properties;
     }
     
     public List<TileProperty> getPropertiesUnmodifiable() {
-        return Collections.unmodifiableList(properties);
+        return Collections.unmodifiableList(getProperties());
     }
     
     public TileProperty getProperty( String flag ) {
-        for ( TileProperty tp: getPropertiesUnmodifiable()) {
-            log.log(Level.FINER, "    get:{0}   found:{1}", new Object[]{flag, tp.getFlag()});
-            if ( tp.getFlag().equals(flag) ) {
-                log.log(Level.FINER, "    ^-- match!");
+        TilePropertyKey key = TilePropertyKey.get(flag);
+        return key != null ? getProperty(key) : null;
+    }
+    
+    public TileProperty getProperty( TilePropertyKey key ) {
+        if ( prototype.getProperty(key) == null ) {
+            return null;
+        }
+        for ( TileProperty tp: getProperties()) {
+            if ( tp.getKey() == key ) {
                 return tp;
             }
         }
@@ -27,13 +27,14 @@ public abstract class TileProperty implements Cloneable {
     
     private Tile parent;
     private final String flagName;
+    private final TilePropertyKey key;
     private String label = "";
     private String description = "";
 
     public TileProperty( Tile parent, String flagName ) {
         this.parent = parent;
         this.flagName = flagName;
-        
+        this.key = TilePropertyKey.of(flagName);
     }
     
     public Tile getParent() {
@@ -48,6 +49,10 @@ public abstract class TileProperty implements Cloneable {
         return flagName;
     }
     
+    public TilePropertyKey getKey() {
+        return key;
+    }
+    
     /**
      * Return the human readable name/label if it was set by subclass.
      * Otherwise return the flag name, i.e. "BLOK"
@@ -85,7 +90,7 @@ public abstract class TileProperty implements Cloneable {
     public Object clone() throws CloneNotSupportedException {
         TileProperty t = (TileProperty) super.clone();
         log.log(Level.FINER, "Cloned TileProperty {0} -> {1}",
-                new Object[]{this, t}
+                this, t
         );
 
         return t; 
@@ -0,0 +1,103 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of tile property flags.
+ *
+ * Every flag, i.e. "BLOK", gets a small ordinal the first time it is seen.
+ * Tiles keep their property values in an int array indexed by that
+ * ordinal, so reading a value is a single array load.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public final class TilePropertyKey {
+
+    private static final ConcurrentHashMap<String, TilePropertyKey> KEYS = new ConcurrentHashMap<>();
+    private static final ArrayList<TilePropertyKey> ORDER = new ArrayList<>();
+
+    private final String flag;
+    private final int ordinal;
+
+    private TilePropertyKey( String flag, int ordinal ) {
+        this.flag = flag;
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * Key for a flag, registering it if it is new.
+     *
+     * @param flag property flag, i.e. "BLOK"
+     * @return the key for flag
+     */
+    public static TilePropertyKey of( String flag ) {
+        TilePropertyKey key = KEYS.get(flag);
+        if ( key != null ) {
+            return key;
+        }
+        synchronized (ORDER) {
+            return KEYS.computeIfAbsent(flag, (f) -> {
+                TilePropertyKey k = new TilePropertyKey(f, ORDER.size());
+                ORDER.add(k);
+                return k;
+            });
+        }
+    }
+
+    /**
+     * @param flag property flag, i.e. "BLOK"
+     * @return the key for flag, or null if it was never registered.
+     */
+    public static TilePropertyKey get( String flag ) {
+        return KEYS.get(flag);
+    }
+
+    /**
+     * @param ordinal of a registered key
+     * @return the key with that ordinal
+     */
+    static TilePropertyKey forOrdinal( int ordinal ) {
+        synchronized (ORDER) {
+            return ORDER.get(ordinal);
+        }
+    }
+
+    /**
+     * @return number of keys registered so far.
+     */
+    public static int count() {
+        synchronized (ORDER) {
+            return ORDER.size();
+        }
+    }
+
+    public String getFlag() {
+        return flag;
+    }
+
+    public int ordinal() {
+        return ordinal;
+    }
+
+    @Override
+    public String toString() {
+        return flag;
+    }
+}
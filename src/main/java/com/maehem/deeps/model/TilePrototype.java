@@ -0,0 +1,124 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared, unchanging data for every tile placed from one sheet tile.
+ *
+ * Holds the property definitions (labels, ranges, edit styles), the value
+ * of every property and the description.  A placed Tile only keeps its
+ * location and the values that differ from its prototype.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public final class TilePrototype {
+
+    // Blank prototype for each kind of Tile, all properties at their defaults.
+    private static final ConcurrentHashMap<Class<? extends Tile>, TilePrototype> DEFAULTS = new ConcurrentHashMap<>();
+
+    private final List<TileProperty> properties; // Definitions only, no parent.
+    private final TileProperty[] definitions;    // Same, by key ordinal.  null where not defined.
+    private final int[] values;                  // By key ordinal.
+    private final String description;
+
+    private TilePrototype( List<TileProperty> properties, TileProperty[] definitions, int[] values, String description ) {
+        this.properties = properties;
+        this.definitions = definitions;
+        this.values = values;
+        this.description = description;
+    }
+
+    /**
+     * Blank prototype for a kind of Tile.
+     *
+     * @param tile a tile of the kind wanted
+     * @return shared prototype
+     */
+    static TilePrototype defaultFor( Tile tile ) {
+        return DEFAULTS.computeIfAbsent(tile.getClass(), (c) -> {
+            List<TileProperty> props = tile.propertyDefinitions();
+            int size = 0;
+            for ( TileProperty tp : props ) {
+                size = Math.max(size, tp.getKey().ordinal() + 1);
+            }
+            TileProperty[] defs = new TileProperty[size];
+            int[] vals = new int[size];
+            Arrays.fill(vals, IntegerTileProperty.DEFAULT_VAL);
+            for ( TileProperty tp : props ) {
+                defs[tp.getKey().ordinal()] = tp;
+                if ( tp instanceof IntegerTileProperty ) {
+                    vals[tp.getKey().ordinal()] = ((IntegerTileProperty) tp).getDefaultValue();
+                }
+            }
+            return new TilePrototype(props, defs, vals, "");
+        });
+    }
+
+    /**
+     * Prototype holding the current state of a tile.
+     *
+     * @param tile to copy
+     * @return new prototype
+     */
+    static TilePrototype of( Tile tile ) {
+        TilePrototype base = tile.getPrototype();
+        return new TilePrototype(
+                base.properties, base.definitions,
+                tile.values().clone(), tile.getDescription()
+        );
+    }
+
+    /**
+     * @return property definitions, in display order.
+     */
+    public List<TileProperty> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @param key property key
+     * @return definition of property or null if this kind of tile has none.
+     */
+    public TileProperty getProperty( TilePropertyKey key ) {
+        int o = key.ordinal();
+        return o < definitions.length ? definitions[o] : null;
+    }
+
+    /**
+     * @param key property key
+     * @return value of property, or -1 if this kind of tile has none.
+     */
+    public int getValue( TilePropertyKey key ) {
+        int o = key.ordinal();
+        return o < values.length ? values[o] : IntegerTileProperty.DEFAULT_VAL;
+    }
+
+    /**
+     * Values by key ordinal.  Not to be changed.
+     */
+    int[] values() {
+        return values;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -17,18 +17,19 @@
 package com.maehem.deeps.model;
 
 import static com.maehem.deeps.Deeps.log;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Properties;
 import java.util.logging.Level;
 
 /**
@@ -40,12 +41,25 @@ public class Zone {
     public static final int WIDTH = 10;
     public static final int HEIGHT = 10;
     
-    private static final String BASE_PROP_KEY = "base.";
-    private static final String ITEM_PROP_KEY = "item.";
-    private static final String ENTITY_PROP_KEY = "entity.";
+    // Steps to the cells sharing a side, N E S W.
+    private static final int[] SIDE_DX = {0, 1, 0, -1};
+    private static final int[] SIDE_DY = {-1, 0, 1, 0};
+
+    static final String BASE_PROP_KEY = "base.";
+    static final String ITEM_PROP_KEY = "item.";
+    static final String ENTITY_PROP_KEY = "entity.";
 
     //public static enum TileType { BASE, ITEM };
 
+    /**
+     * How the base (map) layer is held in memory.
+     * OBJECT keeps a MapTile for every cell.  COMPACT keeps primitive
+     * arrays and only creates a MapTile when one is asked for.  CHUNKED
+     * keeps the zone in compact chunks that are loaded when touched and
+     * dropped under a memory budget.
+     */
+    public static enum StorageMode { OBJECT, COMPACT, CHUNKED };
+
     private final ArrayList<ZoneListener> listeners = new ArrayList<>();
     
     private final GameModel gameModel;
@@ -54,11 +68,22 @@ public class Zone {
     private String name;
     private int width;
     private int height;
-    private MapTile[][] baseTile;
+    private final StorageMode storageMode;
+    private MapLayer baseTile;
+    
+    private boolean dirty = false; // Changed since loaded or last saved.
+    private int sheetsVersion = 0; // Bumped by sheetsChanged().
     
     private ArrayList<FixtureTile> fixtures = new ArrayList<>();
     private ArrayList<EntityTile> entities = new ArrayList<>();
 
+    // Per-cell lookup for the fixture and entity layers, index is y*width+x.
+    // Not used in CHUNKED mode, where the chunks hold them.
+    private FixtureTile[] fixtureGrid;
+    private EntityTile[] entityGrid;
+
+    private ZoneHistory history = null; // Records edits, if set.
+
     /**
      * Construct a new Zone using data, usually from a dialog.
      * 
@@ -68,136 +93,90 @@ public class Zone {
      * @param height in cells.
      */
     public Zone(GameModel gm, String name, int width, int height) {
+        this(gm, name, width, height, StorageMode.OBJECT);
+    }
+
+    /**
+     * Construct a new Zone using data, usually from a dialog.
+     * 
+     * @param gm GameModel, usually the Zone editor.
+     * @param name of this Zone.
+     * @param width in cells.
+     * @param height in cells.
+     * @param mode how the map layer is held in memory.
+     */
+    public Zone(GameModel gm, String name, int width, int height, StorageMode mode) {
         this.gameModel = gm;
         this.name = name;
         this.width = width;
         this.height = height;
-        this.baseTile = new MapTile[height][width];
+        this.storageMode = mode;
+        this.dirty = true; // Never been saved.
 
         // Associate default sheet with 'A'
         this.sheetMap.put('A', gm.getDefaultSheet().getUID() );
         
-        // Full map with default tiles.
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                baseTile[y][x] = new MapTile(this, 0, x, y, null );
+        if ( mode == StorageMode.CHUNKED ) {
+            // Chunks are created, all A000, as they are touched.
+            this.baseTile = new ChunkedMapLayer(this, width, height, ChunkedMapLayer.CHUNK_SIZE, null);
+            return;
+        }
+        this.fixtureGrid = new FixtureTile[width * height];
+        this.entityGrid = new EntityTile[width * height];
+        if ( mode == StorageMode.COMPACT ) {
+            // Every cell starts as A000.
+            this.baseTile = new CompactMapLayer(this, width, height, 'A', 0);
+        } else {
+            this.baseTile = new ObjectMapLayer(this, width, height);
+            // Full map with default tiles.
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    baseTile.set(x, y, new MapTile(this, 0, x, y, null ));
+                }
             }
         }
     }
 
     /**
-     * Construct a zone from data read from a file.
+     * Construct an empty zone for a file loader to fill in.
+     * In OBJECT mode the loader must set every map cell.
      * 
-     * @param gm GameModel, usually the game engine.
+     * @param gm GameModel
      * @param name of the Zone
      * @param sheetMap map of character index to UID for each sheet.
-     * @param base a row of mnemonics for the map.
-     * @param flags properties for map and other item tiles.
-     */
-    private Zone( GameModel gm, String name, 
-            HashMap<Character, Long> sheetMap, 
-            ArrayList<String> base,
-            //ArrayList<String> item,
-            Properties flags
+     * @param width in cells.
+     * @param height in cells.
+     * @param mode how the map layer is held in memory.
+     */
+    Zone( GameModel gm, String name, Map<Character, Long> sheetMap,
+            int width, int height, StorageMode mode
     ) {
         this.gameModel = gm;
         this.name = name;
+        this.width = width;
+        this.height = height;
+        this.storageMode = mode;
         this.sheetMap.putAll(sheetMap);
-        
-        // split line and count elements.  Set Width.
-        this.width = base.get(0).split(" ").length;
-        this.height = base.size();
-        baseTile = new MapTile[height][width];
-        
-        for ( int y=0; y<height; y++ ) {
-            String[] baseRow = base.get(y).split(" ");
-            for ( int x = 0; x<width; x++ ) {
-                String baseCode = baseRow[x];
-                Long sheetUid = sheetMap.get(baseCode.charAt(0));
-                SheetModel sheet = gm.getSheet(sheetUid);
-                
-                try {
-                    // Clone the tile from the Sheet.
-                    Tile sheetBaseTile = (Tile) sheet.getTile(
-                            Integer.parseInt(baseCode.substring(1))
-                    ).clone();
-                    if ( sheetBaseTile instanceof MapTile ) {
-                        sheetBaseTile.setZone(this);
-                        sheetBaseTile.setXY(x,y);
-                        sheetBaseTile.setSheet(baseCode.charAt(0));
-                        // Apply flags for this tile.
-                        String pFlags = flags.getProperty(BASE_PROP_KEY + (y*width+x));
-                        sheetBaseTile.applyFlags( pFlags );
-                        this.baseTile[y][x] = (MapTile) sheetBaseTile;
-                    } else {
-                        log.log(Level.SEVERE, 
-                                "Zone constructor: Tile is NOT MapTile! class:{0}", 
-                                sheetBaseTile.getClass().getSimpleName()
-                        );
-                    }
-                } catch (CloneNotSupportedException ex) {
-                    log.log(Level.SEVERE, "Could not clone uid:" + sheetUid + ":" + baseCode, ex);
-                }
-                
-                // Process any FixtureTile at this grid location
-                String pFlags = flags.getProperty(ITEM_PROP_KEY + (y * width + x));
-                if (pFlags != null) {
-                    String mnemonic = pFlags.split(":")[0];
-                    try {
-                        // Clone the tile from the sheet.
-                        Tile sheetItemTile = (Tile) sheet.getTile(
-                                Integer.parseInt(mnemonic.substring(1))
-                        ).clone();
-                        if (sheetItemTile instanceof FixtureTile) {
-                            sheetItemTile.setZone(this);
-                            sheetItemTile.setXY(x, y);
-                            sheetItemTile.setSheet(mnemonic.charAt(0));
-                            sheetItemTile.applyFlags(pFlags.substring(pFlags.indexOf(":") + 1));
-                            fixtures.add((FixtureTile) sheetItemTile);
-                        } 
-                        else {
-                            log.log(Level.SEVERE, 
-                                    "Item tile at {0},{1} is not a Fixture Tile! Obj:{2}",
-                                    new Object[]{x, y, sheetItemTile});
-                        }
-                    } catch (CloneNotSupportedException ex) {
-                        log.log(Level.SEVERE, "Could not clone uid:" + sheetUid + ":" + mnemonic, ex);
-                    }
-                }
-                // Process any EntityTile at this grid location
-                pFlags = flags.getProperty(ENTITY_PROP_KEY + (y * width + x));
-                if (pFlags != null) {
-                    String mnemonic = pFlags.split(":")[0];
-                    try {
-                        // Clone the tile from the sheet.
-                        Tile sheetItemTile = (Tile) sheet.getTile(
-                                Integer.parseInt(mnemonic.substring(1))
-                        ).clone();
-                        if (sheetItemTile instanceof EntityTile) {
-                            sheetItemTile.setZone(this);
-                            sheetItemTile.setXY(x, y);
-                            sheetItemTile.setSheet(mnemonic.charAt(0));
-                            sheetItemTile.applyFlags(pFlags.substring(pFlags.indexOf(":") + 1));
-                            entities.add((EntityTile) sheetItemTile);
-                        }else {
-                            log.log(Level.SEVERE, 
-                                    "Item tile at {0},{1} is not a Entity Tile! Obj:{2}",
-                                    new Object[]{x, y, sheetItemTile});
-                        }
-                    } catch (CloneNotSupportedException ex) {
-                        log.log(Level.SEVERE, "Could not clone uid:" + sheetUid + ":" + mnemonic, ex);
-                    }
-                }
-            }
+        if ( mode == StorageMode.CHUNKED ) {
+            this.baseTile = new ChunkedMapLayer(this, width, height, ChunkedMapLayer.CHUNK_SIZE, null);
+            return;
+        }
+        this.fixtureGrid = new FixtureTile[width * height];
+        this.entityGrid = new EntityTile[width * height];
+        if ( mode == StorageMode.COMPACT ) {
+            this.baseTile = new CompactMapLayer(this, width, height, 'A', 0);
+        } else {
+            this.baseTile = new ObjectMapLayer(this, width, height);
         }
     }
-    
+
     public String getName() {
         return name;
     }
 
     public void setName(String name) {
         this.name = name;
+        dirty = true;
     }
 
     public int getWidth() {
@@ -205,7 +184,13 @@ public class Zone {
     }
 
     public void setWidth(int width) {
+        if ( storageMode == StorageMode.CHUNKED ) {
+            log.log(Level.WARNING, "Chunked zone {0} can not be resized.", name);
+            return;
+        }
         this.width = width;
+        rebuildCellIndex();
+        dirty = true;
     }
 
     public int getHeight() {
@@ -213,18 +198,116 @@ public class Zone {
     }
 
     public void setHeight(int height) {
+        if ( storageMode == StorageMode.CHUNKED ) {
+            log.log(Level.WARNING, "Chunked zone {0} can not be resized.", name);
+            return;
+        }
         this.height = height;
+        rebuildCellIndex();
+        dirty = true;
+    }
+
+    /**
+     * @return true if this zone changed since it was loaded or last saved.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+    
+    public void setDirty( boolean dirty ) {
+        this.dirty = dirty;
+    }
+    
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+    
+    /**
+     * Let go of MapTile objects that nobody is listening to.  Only has an
+     * effect in COMPACT storage mode, where their state is folded back into
+     * the primitive map layer.
+     */
+    public void releaseMapTiles() {
+        baseTile.trim();
+    }
+
+    /**
+     * Call when a sheet used by this zone was added or replaced in the
+     * game model, so that cached lookups of it are dropped.
+     */
+    public void sheetsChanged() {
+        sheetsVersion++;
+        baseTile.sheetsChanged();
+    }
+
+    /**
+     * Changes each time {@link #sheetsChanged()} is called, so views that
+     * cache sheets know when to drop them.
+     * 
+     * @return count of sheet changes
+     */
+    public int getSheetsVersion() {
+        return sheetsVersion;
+    }
+
+    /**
+     * Tell the zone which area is being looked at, i.e. by the editor
+     * viewport or the game camera.  In CHUNKED mode the chunks under it are
+     * loaded now and kept, while chunks far from it may be dropped.  Has no
+     * effect in the other modes.
+     * 
+     * @param x0 left cell
+     * @param y0 top cell
+     * @param x1 right cell, inclusive
+     * @param y1 bottom cell, inclusive
+     */
+    public void setFocusArea( int x0, int y0, int x1, int y1 ) {
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            ((ChunkedMapLayer) baseTile).focus(x0, y0, x1, y1);
+        }
+    }
+
+    /**
+     * Set roughly how much memory the loaded chunks of a CHUNKED zone may
+     * use before the least recently used are dropped.  Chunks with unsaved
+     * changes are never dropped.  Has no effect in the other modes.
+     * 
+     * @param bytes memory budget
+     */
+    public void setMemoryBudget( long bytes ) {
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            ((ChunkedMapLayer) baseTile).setBudget(bytes);
+        }
+    }
+
+    /**
+     * @return number of chunks in memory, or 0 if this zone is not CHUNKED.
+     */
+    public int getLoadedChunkCount() {
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            return ((ChunkedMapLayer) baseTile).getLoadedCount();
+        }
+        return 0;
     }
 
     public boolean removeFixture( int x, int y ) {
         FixtureTile t = getFixtureTile(x, y);
         boolean result = false;
         if ( t != null ) {
-            result = fixtures.remove(t);
+            if ( baseTile instanceof ChunkedMapLayer ) {
+                ((ChunkedMapLayer) baseTile).setFixture(x, y, null);
+                result = true;
+            } else {
+                result = fixtures.remove(t);
+                fixtureGrid[y * width + x] = null;
+            }
             log.log(Level.INFO, 
                     "Removed existing FixtureTile at: {0}x{1}", 
-                    new Object[]{t.getX(), t.getY()}
+                    t.getX(), t.getY()
             );
+            if ( history != null ) {
+                history.swapped(x, y, t, null);
+            }
             notifyTileSwapped(t, null); 
         }
         
@@ -235,11 +318,20 @@ public class Zone {
         EntityTile t = getEntityTile(x, y);
         boolean result = false;
         if ( t != null ) {
-            result = entities.remove(t);
+            if ( baseTile instanceof ChunkedMapLayer ) {
+                ((ChunkedMapLayer) baseTile).setEntity(x, y, null);
+                result = true;
+            } else {
+                result = entities.remove(t);
+                entityGrid[y * width + x] = null;
+            }
             log.log(Level.INFO, 
                     "Removed existing EntityTile at: {0}x{1}", 
-                    new Object[]{t.getX(), t.getY()}
+                    t.getX(), t.getY()
             );
+            if ( history != null ) {
+                history.swapped(x, y, t, null);
+            }
             notifyTileSwapped(t, null); 
         }
         
@@ -258,12 +350,17 @@ public class Zone {
         Tile oldTile;
         if ( t instanceof MapTile ) {
             log.log(Level.INFO, "Swapping a MapTile.");
-            oldTile = baseTile[y][x];
+            oldTile = baseTile.get(x, y);
             oldTile.retire();
             t.setXY(x,y);
-            baseTile[y][x] = (MapTile) t;
+            baseTile.set(x, y, (MapTile) t);
+            if ( history != null ) {
+                history.swapped(x, y, oldTile, t);
+            }
             // Notify tile change.
             notifyTileSwapped(oldTile, t);        
+            // Changes to the old tile no longer belong to the cell.
+            oldTile.setZone(null);
         } else if ( t instanceof FixtureTile ) {
             log.log(Level.INFO, "Swapping a FixtureTile.");
             t.setXY(x,y);
@@ -272,10 +369,13 @@ public class Zone {
                 fixtures.remove((FixtureTile)oldTile);
                 log.log(Level.INFO, 
                         "Removed existing FixtureTile at: {0}{1}", 
-                        new Object[]{oldTile.getX(), oldTile.getY()}
+                        oldTile.getX(), oldTile.getY()
                 );
             }
-            fixtures.add((FixtureTile)t);
+            putFixture((FixtureTile) t);
+            if ( history != null ) {
+                history.swapped(x, y, oldTile, t);
+            }
             // Notify tile change.
             notifyTileSwapped(oldTile, t); 
         } else if ( t instanceof EntityTile ) {
@@ -286,10 +386,13 @@ public class Zone {
                 entities.remove((EntityTile)oldTile);
                 log.log(Level.INFO, 
                         "Removed existing EntityTile at: {0}{1}", 
-                        new Object[]{oldTile.getX(), oldTile.getY()}
+                        oldTile.getX(), oldTile.getY()
                 );
             }
-            entities.add((EntityTile)t);
+            putEntity((EntityTile) t);
+            if ( history != null ) {
+                history.swapped(x, y, oldTile, t);
+            }
             // Notify tile change.
             notifyTileSwapped(oldTile, t); 
         } else {
@@ -298,78 +401,216 @@ public class Zone {
     }
 
     /**
-     * load zone data
-     * 
-     * TODO: Read zone tile flag data, updating any defaults.
-     * 
-     * @param gm GameModel
-     * @param in Input Stream
-     * @return the loaded data as a Zone
-     * @throws IOException
-     * @throws ZoneFileFormatException 
+     * Make every cell of an area a copy of a tile.  The layer is the one
+     * the tile belongs on.  The whole area changes in one pass and
+     * listeners hear of it once, through zoneAreaChanged().
+     *
+     * @param x0 left cell
+     * @param y0 top cell
+     * @param x1 right cell, inclusive
+     * @param y1 bottom cell, inclusive
+     * @param t tile to copy, with its sheet key set for this zone
+     * @return number of cells that changed.
      */
-    public static Zone load(GameModel gm, InputStream in ) throws IOException, ZoneFileFormatException {
-        HashMap<Character, Long> sheetMap = new HashMap<>();
-        ArrayList<String> baseRows = new ArrayList<>();
-        //ArrayList<String> itemRows = new ArrayList<>();
-        
-        // Read each line
-        BufferedReader br = new BufferedReader(new InputStreamReader(in));
-        
-        String line = br.readLine();
-
-        // Lines with hash '#' are comments.
-        // Look for line match "# Base Tiles"
-        while ( line != null && !line.startsWith("# name:")) {
-            line = br.readLine();
+    public int fillArea( int x0, int y0, int x1, int y1, Tile t ) {
+        ZoneEdit e = new ZoneEdit("Fill");
+        int layer = ZoneEdit.layerOf(t);
+        Tile st = sheetTile(t);
+        int packed = ZoneEdit.pack(t);
+        int[] values = t.values();
+        int[] sheetValues = st.values();
+        String desc = ZoneHistory.ownDescription(t, st);
+        for ( int y = Math.max(y0, 0); y <= Math.min(y1, height - 1); y++ ) {
+            for ( int x = Math.max(x0, 0); x <= Math.min(x1, width - 1); x++ ) {
+                recordCell(e, layer, x, y, packed, values, sheetValues, desc);
+            }
         }
-        if ( line == null ) {
-            log.log(Level.SEVERE, "Zone file does not seem to have 'name:' defined!");
-            throw new ZoneFileFormatException("Zone file does not seem to have 'name:' defined!");
+        return applyEdit(e);
+    }
+
+    /**
+     * Make every cell joined to x,y that holds the same tile as it, on the
+     * tile's layer, a copy of a tile.  Cells are joined by their sides.
+     * In CHUNKED mode the chunks the fill spreads into are loaded.
+     *
+     * @param x grid X to fill from
+     * @param y grid Y to fill from
+     * @param t tile to copy, with its sheet key set for this zone
+     * @return number of cells that changed.
+     */
+    public int floodFill( int x, int y, Tile t ) {
+        if ( !isInside(x, y) ) {
+            return 0;
         }
-        String name = line.split(": ")[1];
-        log.log(Level.FINE, "Reading Zone file for: {0}", name);
+        ZoneEdit e = new ZoneEdit("Flood Fill");
+        int layer = ZoneEdit.layerOf(t);
+        Tile st = sheetTile(t);
+        int packed = ZoneEdit.pack(t);
+        int[] values = t.values();
+        int[] sheetValues = st.values();
+        String desc = ZoneHistory.ownDescription(t, st);
 
-        while ( line != null && !line.startsWith("IDX")) {
-            line = br.readLine();
+        int target = packedAt(layer, x, y);
+        BitSet seen = new BitSet(width * height);
+        int[] queue = new int[64];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = y * width + x;
+        seen.set(y * width + x);
+        while ( head < tail ) {
+            int c = queue[head++];
+            int cx = c % width;
+            int cy = c / width;
+            recordCell(e, layer, cx, cy, packed, values, sheetValues, desc);
+            for ( int d = 0; d < 4; d++ ) {
+                int nx = cx + SIDE_DX[d];
+                int ny = cy + SIDE_DY[d];
+                if ( !isInside(nx, ny) ) {
+                    continue;
+                }
+                int n = ny * width + nx;
+                if ( !seen.get(n) && packedAt(layer, nx, ny) == target ) {
+                    seen.set(n);
+                    if ( tail == queue.length ) {
+                        queue = Arrays.copyOf(queue, tail * 2);
+                    }
+                    queue[tail++] = n;
+                }
+            }
         }
-        if ( line == null ) {
-            log.log(Level.SEVERE, "Zone file does not seem to have 'IDX' table defined!");
-            throw new ZoneFileFormatException("Zone file does not seem to have 'IDX' table defined!");
+        return applyEdit(e);
+    }
+
+    /**
+     * Clear every cell of an area on one layer.  Fixtures and entities are
+     * removed, map cells become tile 0 of their sheet.  The whole area
+     * changes in one pass and listeners hear of it once.
+     *
+     * @param x0 left cell
+     * @param y0 top cell
+     * @param x1 right cell, inclusive
+     * @param y1 bottom cell, inclusive
+     * @param layer MapTile, FixtureTile or EntityTile class
+     * @return number of cells that changed.
+     */
+    public int clearArea( int x0, int y0, int x1, int y1, Class<? extends Tile> layer ) {
+        ZoneEdit e = new ZoneEdit("Clear");
+        int l = MapTile.class.isAssignableFrom(layer) ? ZoneEdit.MAP
+                : FixtureTile.class.isAssignableFrom(layer) ? ZoneEdit.FIXTURE : ZoneEdit.ENTITY;
+        for ( int y = Math.max(y0, 0); y <= Math.min(y1, height - 1); y++ ) {
+            for ( int x = Math.max(x0, 0); x <= Math.min(x1, width - 1); x++ ) {
+                if ( l == ZoneEdit.MAP ) {
+                    char key = baseTile.getSheetKey(x, y);
+                    int[] values = getSheet(key).getTile(0).values();
+                    recordCell(e, l, x, y, ZoneEdit.pack(key, 0), values, values, null);
+                } else {
+                    recordCell(e, l, x, y, ZoneEdit.NO_TILE, null, null, null);
+                }
+            }
         }
-        
-        while( line != null && line.startsWith("IDX")) {
-            log.log(Level.CONFIG, "    Found IDX {0}", line.substring(4));
-            String[] idxArray = line.split(":");  //   IDX:A:<big number>
-            sheetMap.put(idxArray[1].charAt(0), Long.valueOf(idxArray[2]));
-            line = br.readLine();
+        return applyEdit(e);
+    }
+
+    /**
+     * Apply a bulk edit made here and hand it to the history, if any.
+     *
+     * @return cells changed
+     */
+    private int applyEdit( ZoneEdit e ) {
+        if ( e.size() == 0 ) {
+            return 0;
         }
-        
-        line = br.readLine();        
-        while ( line != null && !line.startsWith("# Base Tiles") ) {
-            line = br.readLine();
+        apply(e, false);
+        if ( history != null ) {
+            history.applied(e);
         }
-        if ( line == null ) {
-            throw new ZoneFileFormatException("Could not find '# Base Tiles' header!");
+        log.log(Level.INFO, "{0}: {1} cells at {2},{3} to {4},{5}",
+                new Object[]{e.getName(), e.size(), e.x0, e.y0, e.x1, e.y1});
+        return e.size();
+    }
+
+    /**
+     * Add a row to e for cell x,y of a layer becoming another tile, unless
+     * it already is that tile.
+     */
+    private void recordCell( ZoneEdit e, int layer, int x, int y,
+            int packed, int[] values, int[] sheetValues, String desc ) {
+        if ( layer == ZoneEdit.MAP ) {
+            char key = baseTile.getSheetKey(x, y);
+            int index = baseTile.getTileIndex(x, y);
+            Tile st = getSheet(key).getTile(index);
+            int[] sv = st.values();
+            int[] v = sv.clone();
+            v[Tile.BLOK_KEY.ordinal()] = baseTile.getBlocking(x, y);
+            v[Tile.LUMI_KEY.ordinal()] = baseTile.getLuminous(x, y);
+            v[Tile.NOIZ_KEY.ordinal()] = baseTile.getSound(x, y);
+            String d = baseTile.getDescription(x, y);
+            e.addSwap(layer, x, y,
+                    ZoneEdit.pack(key, index), v, sv,
+                    d == null || d.equals(st.getDescription()) ? null : d,
+                    packed, values, sheetValues, desc);
+            return;
         }
-        log.log( Level.FINER, "    found 'Base Tiles.'");
-        
-        line = br.readLine();  
-        while ( line != null && line.matches("^[A-Z].*$") ) { // line must start with char A-Z
-            log.log(Level.FINER, "        read Base tile line.");
-            baseRows.add(line);
-            line = br.readLine();
+        Tile old = layer == ZoneEdit.FIXTURE ? getFixtureTile(x, y) : getEntityTile(x, y);
+        Tile so = sheetTile(old);
+        e.addSwap(layer, x, y,
+                ZoneEdit.pack(old), old != null ? old.values() : null,
+                so != null ? so.values() : null, ZoneHistory.ownDescription(old, so),
+                packed, values, sheetValues, desc);
+    }
+
+    /**
+     * @return packed sheet key and index of the tile at x,y of a layer.
+     */
+    private int packedAt( int layer, int x, int y ) {
+        switch ( layer ) {
+            case ZoneEdit.MAP:
+                return ZoneEdit.pack(baseTile.getSheetKey(x, y), baseTile.getTileIndex(x, y));
+            case ZoneEdit.FIXTURE:
+                return ZoneEdit.pack(getFixtureTile(x, y));
+            default:
+                return ZoneEdit.pack(getEntityTile(x, y));
         }
-        if ( baseRows.isEmpty() ) {
-            throw new ZoneFileFormatException("'Base Rows' section did not parse! Check Zone file.");
+    }
+
+    /**
+     * @return the sheet tile t was made from, or null.
+     */
+    Tile sheetTile( Tile t ) {
+        if ( t == null ) {
+            return null;
         }
-        
-        // Rest of file is properties.
-        Properties p = new Properties();
-        p.load(br);
-        log.log(Level.FINE, "    Found {0} properties", p.size());
-        
-        return new Zone(gm, name, sheetMap, baseRows, p);        
+        SheetModel sm = getSheet(t.getSheet());
+        return sm != null ? sm.getTile(t.getIndex()) : null;
+    }
+
+    /**
+     * load zone data
+     *
+     * TODO: Read zone tile flag data, updating any defaults.
+     * 
+     * @param gm GameModel
+     * @param in Input Stream
+     * @return the loaded data as a Zone
+     * @throws IOException
+     * @throws ZoneFileFormatException 
+     */
+    public static Zone load(GameModel gm, InputStream in ) throws IOException, ZoneFileFormatException {
+        return load(gm, in, StorageMode.OBJECT);
+    }
+    
+    /**
+     * load zone data
+     * 
+     * @param gm GameModel
+     * @param in Input Stream
+     * @param mode how the map layer is held in memory.
+     * @return the loaded data as a Zone
+     * @throws IOException
+     * @throws ZoneFileFormatException 
+     */
+    public static Zone load(GameModel gm, InputStream in, StorageMode mode ) throws IOException, ZoneFileFormatException {
+        return new ZoneTextParser(gm, mode).parse(new InputStreamReader(in));
     }
     
     /**
@@ -381,85 +622,271 @@ public class Zone {
      * @return 
     */
     public boolean store(OutputStream os) {
-        try ( BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(os))) {
-            bw.write("# name: " + name);
-            bw.newLine();
-            bw.write("# Sheet map");
-            bw.newLine();
-            for ( Map.Entry<Character, Long> map :  sheetMap.entrySet() ) {
-                bw.write("IDX:" + map.getKey() + ":" + map.getValue() );
-                bw.newLine();
-            }
-            bw.newLine();
-            bw.write("# Base Tiles");
-            bw.newLine();
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    bw.write(baseTile[y][x].getMnemonic());
-                    bw.write(" ");
-                }
-                bw.newLine();
-            }
-            bw.newLine();
-            
-            // Write base tile properties
-            bw.write("# Base Tile Flags");
-            bw.newLine();
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    bw.write(BASE_PROP_KEY + (y*width+x) + " = " + baseTile[y][x].getFlags());
-                    bw.newLine();
+        return snapshot().store(os);
+    }
+
+    /**
+     * Copy the state of this Zone so it can be stored on another thread.
+     * 
+     * @return immutable snapshot of this Zone.
+     */
+    public ZoneSnapshot snapshot() {
+        return new ZoneSnapshot(this, baseTile, sheetMap);
+    }
+
+    /**
+     * Create a tile for this zone by cloning it from its sheet.
+     * 
+     * @param key sheet key, A-Z
+     * @param index tile index on sheet
+     * @param x grid X
+     * @param y grid Y
+     * @param flags colon separated flags, may be null
+     * @return new tile, or null if it could not be cloned
+     */
+    Tile createTile( char key, int index, int x, int y, String flags ) {
+        try {
+            Tile t = (Tile) getSheet(key).getTile(index).clone();
+            t.setXY(x, y);
+            t.setSheet(key);
+            t.applyFlags(flags);
+            t.setZone(this); // after flags so the zone is not marked dirty
+            return t;
+        } catch (CloneNotSupportedException ex) {
+            log.log(Level.SEVERE, "Could not clone tile " + key + index, ex);
+            return null;
+        }
+    }
+    
+    /**
+     * Put a freshly loaded tile at its x,y location.  Listeners are not
+     * notified.
+     * 
+     * @param t tile to place
+     */
+    void placeTile( Tile t ) {
+        int x = t.getX();
+        int y = t.getY();
+        if ( t instanceof MapTile ) {
+            baseTile.set(x, y, (MapTile) t);
+        } else if ( t instanceof FixtureTile ) {
+            putFixture((FixtureTile) t);
+        } else if ( t instanceof EntityTile ) {
+            putEntity((EntityTile) t);
+        }
+    }
+
+    private void putFixture( FixtureTile t ) {
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            ((ChunkedMapLayer) baseTile).setFixture(t.getX(), t.getY(), t);
+            return;
+        }
+        fixtures.add(t);
+        fixtureGrid[t.getY() * width + t.getX()] = t;
+    }
+
+    private void putEntity( EntityTile t ) {
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            ((ChunkedMapLayer) baseTile).setEntity(t.getX(), t.getY(), t);
+            return;
+        }
+        entities.add(t);
+        entityGrid[t.getY() * width + t.getX()] = t;
+    }
+
+    /**
+     * Set by a ZoneHistory to hear of the edits made.
+     */
+    void setHistory( ZoneHistory h ) {
+        this.history = h;
+    }
+
+    /**
+     * Called by a tile of this zone before one of its values changes.
+     */
+    void valueChanging( Tile t, int ordinal, int old, int val ) {
+        if ( history != null ) {
+            history.valueChanging(t, ordinal, old, val);
+        }
+    }
+
+    /**
+     * Put an edit's cells back as they were before it, or after it.
+     *
+     * One pass over the rows, undone last first.  Tiles are made straight
+     * from the sheets and put in place without logging, retiring or telling
+     * anybody, then listeners hear of the whole area once.
+     *
+     * @param e edit to apply
+     * @param undo true for the cells before the edit
+     */
+    void apply( ZoneEdit e, boolean undo ) {
+        final boolean chunked = baseTile instanceof ChunkedMapLayer;
+        final int[] tiles = undo ? e.before : e.after;
+        final int[] vals = undo ? e.valueBefore : e.valueAfter;
+        final HashMap<Integer, String> descs = undo ? e.descBefore : e.descAfter;
+        // Fixtures and entities taken out, dropped from the lists at the end.
+        IdentityHashMap<Tile, Boolean> gone = new IdentityHashMap<>();
+        int n = e.size();
+        for ( int k = 0; k < n; k++ ) {
+            int r = undo ? n - 1 - k : k;
+            int x = e.x(r);
+            int y = e.y(r);
+            int v0 = e.valueStart(r);
+            int v1 = e.valueEnd[r];
+            boolean swap = (e.kind[r] & ZoneEdit.SWAP) != 0;
+            String desc = descs != null ? descs.get(r) : null;
+            switch ( e.kind[r] & ZoneEdit.LAYER_MASK ) {
+                case ZoneEdit.MAP:
+                    applyMap(x, y, tiles[r], swap, e.ordinal, vals, v0, v1, desc);
+                    break;
+                case ZoneEdit.FIXTURE: {
+                    FixtureTile old = getFixtureTile(x, y);
+                    if ( !swap ) {
+                        putValues(old, e.ordinal, vals, v0, v1);
+                        break;
+                    }
+                    FixtureTile t = (FixtureTile) restoreTile(x, y, tiles[r], e.ordinal, vals, v0, v1, desc);
+                    if ( chunked ) {
+                        ((ChunkedMapLayer) baseTile).setFixture(x, y, t);
+                    } else {
+                        if ( old != null ) {
+                            gone.put(old, Boolean.TRUE);
+                        }
+                        fixtureGrid[y * width + x] = t;
+                        if ( t != null ) {
+                            fixtures.add(t);
+                        }
+                    }
+                    break;
                 }
-                bw.newLine();
-            }
-            
-            // Write fixture tile properties
-            bw.write("# Fixture Tile Flags");
-            bw.newLine();
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    FixtureTile t = getFixtureTile(x, y);
-                    if ( t != null ) {
-                        bw.write(ITEM_PROP_KEY + (y*width+x) + " = " + 
-                                t.getMnemonic() + ":" +
-                                t.getFlags()
-                        );     
-                        bw.newLine();
+                case ZoneEdit.ENTITY: {
+                    EntityTile old = getEntityTile(x, y);
+                    if ( !swap ) {
+                        putValues(old, e.ordinal, vals, v0, v1);
+                        break;
+                    }
+                    EntityTile t = (EntityTile) restoreTile(x, y, tiles[r], e.ordinal, vals, v0, v1, desc);
+                    if ( chunked ) {
+                        ((ChunkedMapLayer) baseTile).setEntity(x, y, t);
+                    } else {
+                        if ( old != null ) {
+                            gone.put(old, Boolean.TRUE);
+                        }
+                        entityGrid[y * width + x] = t;
+                        if ( t != null ) {
+                            entities.add(t);
+                        }
                     }
+                    break;
                 }
             }
-            bw.newLine();
+            if ( chunked ) {
+                ((ChunkedMapLayer) baseTile).markDirty(x, y);
+            }
+        }
+        if ( !gone.isEmpty() ) {
+            fixtures.removeIf(gone::containsKey);
+            entities.removeIf(gone::containsKey);
+        }
+        if ( n > 0 ) {
+            dirty = true;
+            notifyAreaChanged(e.x0, e.y0, e.x1, e.y1);
+        }
+    }
 
-            // Write entity tile properties
-            bw.write("# Entity Tile Flags");
-            bw.newLine();
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    EntityTile t = getEntityTile(x, y);
-                    if ( t != null ) {
-                        bw.write(ENTITY_PROP_KEY + (y*width+x) + " = " + 
-                                t.getMnemonic() + ":" +
-                                t.getFlags()
-                        );
-                        bw.newLine();
-                    }
-                }
+    private void applyMap( int x, int y, int packed, boolean swap,
+            short[] ordinal, int[] vals, int v0, int v1, String desc ) {
+        char key = ZoneEdit.keyOf(packed);
+        int index = ZoneEdit.indexOf(packed);
+        int b;
+        int l;
+        int s;
+        if ( swap ) {
+            Tile proto = getSheet(key).getTile(index);
+            b = proto.getBlocking();
+            l = proto.getLuminous();
+            s = proto.getSound();
+        } else {
+            b = baseTile.getBlocking(x, y);
+            l = baseTile.getLuminous(x, y);
+            s = baseTile.getSound(x, y);
+            desc = baseTile.getDescription(x, y);
+        }
+        for ( int v = v0; v < v1; v++ ) {
+            int o = ordinal[v];
+            if ( o == Tile.BLOK_KEY.ordinal() ) {
+                b = vals[v];
+            } else if ( o == Tile.LUMI_KEY.ordinal() ) {
+                l = vals[v];
+            } else if ( o == Tile.NOIZ_KEY.ordinal() ) {
+                s = vals[v];
             }
-            
+        }
+        baseTile.setCell(x, y, key, index, b, l, s, desc);
+    }
 
-        } catch (IOException ex) {
-            log.log(Level.SEVERE, null, ex);
-            return false;
+    /**
+     * Make a fixture or entity from its sheet with the recorded values.
+     *
+     * @return the tile, or null for NO_TILE
+     */
+    private Tile restoreTile( int x, int y, int packed,
+            short[] ordinal, int[] vals, int v0, int v1, String desc ) {
+        if ( packed == ZoneEdit.NO_TILE ) {
+            return null;
         }
-        
-        return true;
+        char key = ZoneEdit.keyOf(packed);
+        int index = ZoneEdit.indexOf(packed);
+        Tile t;
+        try {
+            t = (Tile) getSheet(key).getTile(index).clone();
+        } catch (CloneNotSupportedException ex) {
+            log.log(Level.SEVERE, "Could not clone tile " + key + index, ex);
+            return null;
+        }
+        t.setXY(x, y);
+        t.setSheet(key);
+        putValues(t, ordinal, vals, v0, v1);
+        if ( desc != null ) {
+            t.setDescription(desc);
+        }
+        t.setZone(this);
+        return t;
     }
 
+    private static void putValues( Tile t, short[] ordinal, int[] vals, int v0, int v1 ) {
+        if ( t == null ) {
+            return;
+        }
+        for ( int v = v0; v < v1; v++ ) {
+            t.putValue(TilePropertyKey.forOrdinal(ordinal[v]), vals[v]);
+        }
+    }
+
+    MapLayer getMapLayer() {
+        return baseTile;
+    }
+
+    /**
+     * Replace the map layer, before the zone is used.  Used by the chunked
+     * zone loader.
+     */
+    void setMapLayer( MapLayer layer ) {
+        this.baseTile = layer;
+    }
+    
+    Map<Character, Long> getSheetMap() {
+        return Collections.unmodifiableMap(sheetMap);
+    }
+    
     public SheetModel getSheet( Character key ) {
-        log.log(Level.FINER, "Zone.getSheet( {0} )", key);
-        log.log( Level.FINER, "Sheets:");
-        for ( Entry<Character, Long> sm : sheetMap.entrySet() ) {
-            log.log(Level.FINER, "    {0}:{1}", new Object[]{sm.getKey(), sm.getValue()});
+        if ( log.isLoggable(Level.FINER) ) {
+            log.log(Level.FINER, "Zone.getSheet( {0} )", key);
+            log.log( Level.FINER, "Sheets:");
+            for ( Entry<Character, Long> sm : sheetMap.entrySet() ) {
+                log.log(Level.FINER, "    {0}:{1}", sm.getKey(), sm.getValue());
+            }
         }
         return gameModel.getSheet(sheetMap.get(key));
     }
@@ -474,6 +901,40 @@ public class Zone {
         
     }
 
+    /**
+     * Called by a tile of this zone when something about it that gets
+     * saved has changed.
+     * 
+     * @param t tile that changed
+     */
+    void tileChanged( Tile t ) {
+        dirty = true;
+        if ( t instanceof MapTile ) {
+            baseTile.changed((MapTile) t);
+        }
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            ((ChunkedMapLayer) baseTile).markDirty(t.getX(), t.getY());
+        }
+        notifyTileChange(t);
+    }
+    
+    /**
+     * Called by a tile of this zone when it gets its first listener or
+     * loses its last one.
+     *
+     * @param t tile
+     * @param watched true if it is now listened to
+     */
+    void tileWatched( Tile t, boolean watched ) {
+        if ( t instanceof MapTile ) {
+            if ( watched ) {
+                baseTile.watched((MapTile) t);
+            } else {
+                baseTile.released((MapTile) t);
+            }
+        }
+    }
+
     private void notifyTileChange( Tile t) {
         for ( ZoneListener l: listeners ) {
             l.zoneTileChanged(t);
@@ -481,37 +942,153 @@ public class Zone {
     }
     
     private void notifyTileSwapped( Tile tOld, Tile tNew) {
+        dirty = true;
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            Tile t = tNew != null ? tNew : tOld;
+            ((ChunkedMapLayer) baseTile).markDirty(t.getX(), t.getY());
+        }
         for ( ZoneListener l: listeners ) {
             l.zoneTileSwapped(tOld, tNew);
         }
     }
+
+    private void notifyAreaChanged( int x0, int y0, int x1, int y1 ) {
+        for ( ZoneListener l: listeners ) {
+            l.zoneAreaChanged(x0, y0, x1, y1);
+        }
+    }
     
     public void addListener(ZoneListener l) {
         listeners.add(l);
     }
     
+    public void removeListener(ZoneListener l) {
+        listeners.remove(l);
+    }
+    
     public FixtureTile getFixtureTile( int x, int y ) {
-        for( FixtureTile t: fixtures ) {
-            if ( t.getX() == x && t.getY() == y ) {
-                return t;
-            }
+        if ( !isInside(x, y) ) {
+            return null;
         }
-        
-        return null;
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            return ((ChunkedMapLayer) baseTile).getFixture(x, y);
+        }
+        return fixtureGrid[y * width + x];
     }
     
     public EntityTile getEntityTile( int x, int y ) {
-        for( EntityTile t: entities ) {
-            if ( t.getX() == x && t.getY() == y ) {
-                return t;
+        if ( !isInside(x, y) ) {
+            return null;
+        }
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            return ((ChunkedMapLayer) baseTile).getEntity(x, y);
+        }
+        return entityGrid[y * width + x];
+    }
+    
+    /**
+     * Check that a grid location is within the bounds of this zone.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @return true if x,y is a cell of this zone.
+     */
+    public boolean isInside( int x, int y ) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+    
+    /**
+     * Re-create the per-cell fixture and entity lookup from the tile lists.
+     * Called when the zone dimensions change.
+     */
+    private void rebuildCellIndex() {
+        fixtureGrid = new FixtureTile[width * height];
+        entityGrid = new EntityTile[width * height];
+        for ( FixtureTile t : fixtures ) {
+            if ( isInside(t.getX(), t.getY()) ) {
+                fixtureGrid[t.getY() * width + t.getX()] = t;
             }
         }
-        
-        return null;
+        for ( EntityTile t : entities ) {
+            if ( isInside(t.getX(), t.getY()) ) {
+                entityGrid[t.getY() * width + t.getX()] = t;
+            }
+        }
+    }
+    
+    /**
+     * In CHUNKED mode this visits, and so loads, every chunk.  Use
+     * getFixtureTile() to look at part of a large zone.
+     * 
+     * @return every fixture of the zone.
+     */
+    public List<FixtureTile> getFixtures() {
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            return Collections.unmodifiableList(((ChunkedMapLayer) baseTile).allFixtures());
+        }
+        return Collections.unmodifiableList(fixtures);
+    }
+    
+    /**
+     * In CHUNKED mode this visits, and so loads, every chunk.  Use
+     * getEntityTile() to look at part of a large zone.
+     * 
+     * @return every entity of the zone.
+     */
+    public List<EntityTile> getEntities() {
+        if ( baseTile instanceof ChunkedMapLayer ) {
+            return Collections.unmodifiableList(((ChunkedMapLayer) baseTile).allEntities());
+        }
+        return Collections.unmodifiableList(entities);
     }
     
     public MapTile getMapTile( int x, int y ) {
-        return baseTile[y][x];
+        return baseTile.get(x, y);
+    }
+    
+    /**
+     * Blocking of the map cell at x,y without making a MapTile for it.  Use
+     * this to scan a large zone.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @return BLOK value of cell, -1 if not blocking.
+     */
+    public int getMapBlocking( int x, int y ) {
+        return baseTile.getBlocking(x, y);
+    }
+    
+    /**
+     * Luminance of the map cell at x,y without making a MapTile for it.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @return LUMI value of cell, -1 if it gives no light.
+     */
+    public int getMapLuminous( int x, int y ) {
+        return baseTile.getLuminous(x, y);
+    }
+
+    /**
+     * Sheet key of the map cell at x,y without making a MapTile for it.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @return sheet key of cell, A-Z
+     */
+    public char getMapSheetKey( int x, int y ) {
+        return baseTile.getSheetKey(x, y);
+    }
+    
+    /**
+     * Sheet tile index of the map cell at x,y without making a MapTile for it.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     * @return index of the tile on its sheet
+     */
+    public int getMapTileIndex( int x, int y ) {
+        return baseTile.getTileIndex(x, y);
     }
     
 }
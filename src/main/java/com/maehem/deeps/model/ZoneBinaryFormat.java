@@ -0,0 +1,364 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.Zone.StorageMode;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Binary zone file, ".zoneb".
+ *
+ * Same content as the text ".zone" file but laid out so that it can be
+ * memory mapped and copied straight into a Zone.  All values are big-endian.
+ *
+ * <pre>
+ *   int     magic  'ZONB'
+ *   short   version
+ *   short   reserved (0)
+ *   int     width
+ *   int     height
+ *   string  name
+ *   byte    sheet count,  then per sheet:  char key, long uid
+ *   char    sheet key  [width*height]
+ *   short   tile index [width*height]
+ *   int     map override count, then per cell that differs from its sheet tile:
+ *               int cell, short blocking, short luminous, short sound, string description
+ *   int     fixture count, then per fixture:  int cell, char key, short index, string flags
+ *   int     entity count,  then per entity:   int cell, char key, short index, string flags
+ *
+ *   string = unsigned short length (0xFFFF = none) followed by UTF-8 bytes
+ *   cell   = y*width+x
+ * </pre>
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public final class ZoneBinaryFormat {
+
+    public static final String EXTENSION = ".zoneb";
+
+    public static final int MAGIC = 0x5A4F4E42; // ZONB
+    public static final short VERSION = 1;
+
+    private ZoneBinaryFormat() {}
+
+    /**
+     * Load a binary zone file using a memory map.
+     *
+     * @param gm GameModel
+     * @param file .zoneb file
+     * @param mode how the map layer is held in memory.
+     * @return the loaded Zone
+     * @throws IOException
+     * @throws ZoneFileFormatException
+     */
+    public static Zone load( GameModel gm, File file, StorageMode mode ) throws IOException, ZoneFileFormatException {
+        try ( FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ) ) {
+            MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            return read(gm, buf, mode);
+        }
+    }
+
+    /**
+     * Read a Zone from a buffer holding a binary zone file.
+     *
+     * @param gm GameModel
+     * @param buf buffer positioned at start of zone data
+     * @param mode how the map layer is held in memory.
+     * @return the loaded Zone
+     * @throws ZoneFileFormatException
+     */
+    public static Zone read( GameModel gm, ByteBuffer buf, StorageMode mode ) throws ZoneFileFormatException {
+        try {
+            if ( buf.getInt() != MAGIC ) {
+                throw new ZoneFileFormatException("Not a binary zone file!");
+            }
+            short version = buf.getShort();
+            if ( version != VERSION ) {
+                throw new ZoneFileFormatException("Unsupported binary zone file version: " + version);
+            }
+            buf.getShort(); // reserved
+
+            int width = buf.getInt();
+            int height = buf.getInt();
+            if ( width <= 0 || height <= 0 ) {
+                throw new ZoneFileFormatException("Bad zone dimensions: " + width + "x" + height);
+            }
+            String name = getString(buf);
+            log.log(Level.FINE, "Reading binary Zone file for: {0}", name);
+
+            HashMap<Character, Long> sheetMap = new HashMap<>();
+            int sheetCount = buf.get() & 0xFF;
+            for ( int i = 0; i < sheetCount; i++ ) {
+                char key = buf.getChar();
+                sheetMap.put(key, buf.getLong());
+            }
+
+            Zone zone = new Zone(gm, name, sheetMap, width, height, mode);
+            int cells = width * height;
+
+            // Map layer.
+            ByteBuffer keys = buf.slice();
+            keys.limit(cells * Character.BYTES);
+            buf.position(buf.position() + cells * Character.BYTES);
+            ByteBuffer indexes = buf.slice();
+            indexes.limit(cells * Short.BYTES);
+            buf.position(buf.position() + cells * Short.BYTES);
+
+            checkCells(zone, keys.asCharBuffer(), indexes.asShortBuffer());
+            MapLayer layer = zone.getMapLayer();
+            if ( layer instanceof CompactMapLayer ) {
+                ((CompactMapLayer) layer).setCells(keys.asCharBuffer(), indexes.asShortBuffer());
+            } else {
+                for ( int i = 0; i < cells; i++ ) {
+                    Tile t = zone.createTile(
+                            keys.getChar(), indexes.getShort(), i % width, i / width, null
+                    );
+                    if ( t == null ) {
+                        throw new ZoneFileFormatException("Could not create map tile for cell " + i);
+                    }
+                    zone.placeTile(t);
+                }
+            }
+
+            int overrides = buf.getInt();
+            for ( int n = 0; n < overrides; n++ ) {
+                int i = buf.getInt();
+                short b = buf.getShort();
+                short l = buf.getShort();
+                short s = buf.getShort();
+                String desc = getString(buf);
+                if ( layer instanceof CompactMapLayer ) {
+                    ((CompactMapLayer) layer).setValues(i, b, l, s, desc);
+                } else {
+                    Tile t = layer.get(i % width, i / width);
+                    t.setBlocking(b);
+                    t.setLuminous(l);
+                    t.setSound(s);
+                    if ( desc != null ) {
+                        t.setDescription(desc);
+                    }
+                }
+            }
+
+            readItems(zone, buf, FixtureTile.class);
+            readItems(zone, buf, EntityTile.class);
+            zone.setDirty(false);
+
+            return zone;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new ZoneFileFormatException("Binary zone file is truncated or corrupt!");
+        }
+    }
+
+    private static void readItems( Zone zone, ByteBuffer buf, Class<? extends Tile> clazz ) throws ZoneFileFormatException {
+        int width = zone.getWidth();
+        SheetModel[] sheets = new SheetModel[26]; // A-Z
+        int count = buf.getInt();
+        for ( int n = 0; n < count; n++ ) {
+            int i = buf.getInt();
+            char key = buf.getChar();
+            short index = buf.getShort();
+            String flags = getString(buf);
+            checkTile(zone, sheets, key, index, i);
+            Tile t = zone.createTile(key, index, i % width, i / width, flags);
+            if ( t != null && clazz.isInstance(t) ) {
+                zone.placeTile(t);
+            } else {
+                log.log(Level.SEVERE,
+                        "Tile {0}{1} at cell {2} is not a {3}!",
+                        key, index, i, clazz.getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * Store a Zone as a binary zone file.
+     *
+     * @param zone to store
+     * @param os stream to write to, closed when done.
+     * @throws IOException
+     */
+    public static void store( Zone zone, OutputStream os ) throws IOException {
+        try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os)) ) {
+            int width = zone.getWidth();
+            int height = zone.getHeight();
+            MapLayer layer = zone.getMapLayer();
+
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeInt(width);
+            out.writeInt(height);
+            putString(out, zone.getName());
+
+            Map<Character, Long> sheetMap = zone.getSheetMap();
+            out.writeByte(sheetMap.size());
+            for ( Map.Entry<Character, Long> e : sheetMap.entrySet() ) {
+                out.writeChar(e.getKey());
+                out.writeLong(e.getValue());
+            }
+
+            for ( int y = 0; y < height; y++ ) {
+                for ( int x = 0; x < width; x++ ) {
+                    out.writeChar(layer.getSheetKey(x, y));
+                }
+            }
+            for ( int y = 0; y < height; y++ ) {
+                for ( int x = 0; x < width; x++ ) {
+                    out.writeShort(layer.getTileIndex(x, y));
+                }
+            }
+
+            // Only cells that differ from their sheet tile.
+            SheetModel[] sheets = new SheetModel[26]; // A-Z
+            ByteArrayOutputStream overrideBytes = new ByteArrayOutputStream();
+            DataOutputStream ov = new DataOutputStream(overrideBytes);
+            int overrideCount = 0;
+            for ( int y = 0; y < height; y++ ) {
+                for ( int x = 0; x < width; x++ ) {
+                    char key = layer.getSheetKey(x, y);
+                    SheetModel sm = sheets[key - 'A'];
+                    if ( sm == null ) {
+                        sm = zone.getSheet(key);
+                        sheets[key - 'A'] = sm;
+                    }
+                    Tile proto = sm.getTile(layer.getTileIndex(x, y));
+                    String desc = layer.getDescription(x, y);
+                    boolean descDiffers = !desc.equals(proto.getDescription());
+                    if ( layer.getBlocking(x, y) == proto.getBlocking()
+                            && layer.getLuminous(x, y) == proto.getLuminous()
+                            && layer.getSound(x, y) == proto.getSound()
+                            && !descDiffers ) {
+                        continue;
+                    }
+                    overrideCount++;
+                    ov.writeInt(y * width + x);
+                    ov.writeShort(layer.getBlocking(x, y));
+                    ov.writeShort(layer.getLuminous(x, y));
+                    ov.writeShort(layer.getSound(x, y));
+                    putString(ov, descDiffers ? desc : null);
+                }
+            }
+            out.writeInt(overrideCount);
+            overrideBytes.writeTo(out);
+
+            writeItems(out, width, zone.getFixtures());
+            writeItems(out, width, zone.getEntities());
+        }
+    }
+
+    private static void writeItems( DataOutputStream out, int width, List<? extends Tile> tiles ) throws IOException {
+        out.writeInt(tiles.size());
+        for ( Tile t : tiles ) {
+            out.writeInt(t.getY() * width + t.getX());
+            out.writeChar(t.getSheet());
+            out.writeShort(t.getIndex());
+            putString(out, t.getFlags());
+        }
+    }
+
+    /**
+     * Make sure every map cell names a tile in one of the zone's sheets, so
+     * that a corrupt file fails while loading and not when it is drawn.
+     *
+     * @param zone the cells belong to
+     * @param keys sheet key of each cell
+     * @param indexes tile index of each cell
+     * @throws ZoneFileFormatException for the first cell that is bad
+     */
+    static void checkCells( Zone zone, CharBuffer keys, ShortBuffer indexes ) throws ZoneFileFormatException {
+        SheetModel[] sheets = new SheetModel[26]; // A-Z
+        for ( int i = 0; i < keys.limit(); i++ ) {
+            checkTile(zone, sheets, keys.get(i), indexes.get(i), i);
+        }
+    }
+
+    /**
+     * Make sure a key and index name a tile in one of the zone's sheets.
+     *
+     * @param sheets sheets looked up so far, by key A-Z
+     * @param cell where the tile is, for the message
+     * @throws ZoneFileFormatException if there is no such tile
+     */
+    static void checkTile( Zone zone, SheetModel[] sheets, char key, int index, int cell ) throws ZoneFileFormatException {
+        if ( key < 'A' || key > 'Z' || !zone.getSheetMap().containsKey(key) ) {
+            throw new ZoneFileFormatException("Unknown sheet key " + (int) key + " at cell " + cell);
+        }
+        SheetModel sm = sheets[key - 'A'];
+        if ( sm == null ) {
+            sm = zone.getSheet(key);
+            if ( sm == null ) {
+                throw new ZoneFileFormatException("No sheet is loaded for sheet key '" + key + "'");
+            }
+            sheets[key - 'A'] = sm;
+        }
+        if ( index < 0 || index >= sm.getTileCount() ) {
+            throw new ZoneFileFormatException(
+                    "Tile " + key + index + " at cell " + cell + " is outside of its sheet"
+            );
+        }
+    }
+
+    static String getString( ByteBuffer buf ) {
+        int len = buf.getShort() & 0xFFFF;
+        if ( len == 0xFFFF ) {
+            return null;
+        }
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    static void putString( DataOutputStream out, String s ) throws IOException {
+        if ( s == null ) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if ( b.length >= 0xFFFF ) {
+            throw new IOException("String of " + b.length + " bytes is too long for a zone file");
+        }
+        out.writeShort(b.length);
+        out.write(b);
+    }
+
+    /**
+     * @param file to check
+     * @return true if the file name ends in the binary zone extension.
+     */
+    public static boolean isBinaryZoneFile( File file ) {
+        return file.getName().endsWith(EXTENSION);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+/**
+ * One square block of cells of a chunked Zone.
+ *
+ * Holds the map layer of its cells in compact form along with the fixtures
+ * and entities that sit on them.  Chunks are loaded when first touched and
+ * may be dropped again once nobody needs them.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+final class ZoneChunk {
+
+    // Rough heap use, for the memory budget.
+    private static final int CHUNK_BYTES = 256;
+    private static final int CELL_BYTES = 18; // map arrays plus fixture and entity slots.
+    private static final int TILE_BYTES = 160;
+
+    final int originX; // Zone cell of this chunk's 0,0.
+    final int originY;
+    final int width;
+    final int height;
+    final CompactMapLayer map;
+    final FixtureTile[] fixtures; // By local cell, y*width+x.
+    final EntityTile[] entities;
+
+    private int items = 0;   // Fixtures and entities held.
+
+    boolean dirty = false;   // Changed since loaded or last saved.
+    int changes = 0;         // Bumped on every change, to tell if a save is current.
+    long lastUsed = 0;
+    long counted = 0;        // Bytes this chunk was counted as against the budget.
+
+    ZoneChunk( Zone zone, int originX, int originY, int width, int height ) {
+        this.originX = originX;
+        this.originY = originY;
+        this.width = width;
+        this.height = height;
+        this.map = new CompactMapLayer(zone, width, height, 'A', 0, originX, originY);
+        this.fixtures = new FixtureTile[width * height];
+        this.entities = new EntityTile[width * height];
+    }
+
+    void changed() {
+        dirty = true;
+        changes++;
+    }
+
+    void setFixture( int i, FixtureTile t ) {
+        items += (t != null ? 1 : 0) - (fixtures[i] != null ? 1 : 0);
+        fixtures[i] = t;
+    }
+
+    void setEntity( int i, EntityTile t ) {
+        items += (t != null ? 1 : 0) - (entities[i] != null ? 1 : 0);
+        entities[i] = t;
+    }
+
+    /**
+     * @return approximate heap used by this chunk, in bytes.
+     */
+    long estimateBytes() {
+        return CHUNK_BYTES + (long) width * height * CELL_BYTES
+                + (long) (map.getViewCount() + items) * TILE_BYTES;
+    }
+
+    /**
+     * @return true if some tile of this chunk is being listened to, i.e.
+     *         shown in a view or an editor.
+     */
+    boolean isHeld() {
+        for ( MapTile t : map.getViews() ) {
+            if ( t.hasListeners() ) {
+                return true;
+            }
+        }
+        for ( int i = 0; i < fixtures.length; i++ ) {
+            if ( fixtures[i] != null && fixtures[i].hasListeners() ) {
+                return true;
+            }
+            if ( entities[i] != null && entities[i].hasListeners() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cut this chunk's tiles loose from the zone.  Anyone still holding one
+     * can read it but changes no longer reach the zone.
+     */
+    void detach() {
+        for ( MapTile t : map.getViews() ) {
+            t.setZone(null);
+        }
+        for ( int i = 0; i < fixtures.length; i++ ) {
+            if ( fixtures[i] != null ) {
+                fixtures[i].setZone(null);
+            }
+            if ( entities[i] != null ) {
+                entities[i].setZone(null);
+            }
+        }
+    }
+}
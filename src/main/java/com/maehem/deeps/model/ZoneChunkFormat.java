@@ -0,0 +1,537 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import static com.maehem.deeps.model.ZoneBinaryFormat.checkCells;
+import static com.maehem.deeps.model.ZoneBinaryFormat.checkTile;
+import static com.maehem.deeps.model.ZoneBinaryFormat.getString;
+import static com.maehem.deeps.model.ZoneBinaryFormat.putString;
+import com.maehem.deeps.model.Zone.StorageMode;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Chunked zone file, ".zonec".
+ *
+ * The zone is cut into square chunks, each stored on its own, with a
+ * directory at the end of the file.  Opening the file only reads the header
+ * and the directory.  Chunks are read when the zone first needs them, so a
+ * very large zone can be worked on without loading all of it.  All values
+ * are big-endian.
+ *
+ * <pre>
+ *   int     magic  'ZONC'
+ *   short   version
+ *   short   chunk size, in cells
+ *   int     width
+ *   int     height
+ *   string  name
+ *   byte    sheet count,  then per sheet:  char key, long uid
+ *   chunk   [chunk count]
+ *   directory, per chunk in row order:  int offset, int length
+ *   int     offset of directory
+ *
+ *   chunk:
+ *   char    sheet key  [cells]
+ *   short   tile index [cells]
+ *   int     map override count, then per cell that differs from its sheet tile:
+ *               int cell, short blocking, short luminous, short sound, string description
+ *   int     fixture count, then per fixture:  int cell, char key, short index, string flags
+ *   int     entity count,  then per entity:   int cell, char key, short index, string flags
+ *
+ *   string = unsigned short length (0xFFFF = none) followed by UTF-8 bytes
+ *   cell   = y*chunkWidth+x within the chunk.  Chunks on the right and
+ *            bottom edges are cut short to the zone size.
+ * </pre>
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public final class ZoneChunkFormat {
+
+    public static final String EXTENSION = ".zonec";
+
+    public static final int MAGIC = 0x5A4F4E43; // ZONC
+    public static final short VERSION = 1;
+
+    private ZoneChunkFormat() {}
+
+    /**
+     * Chunk file a zone reads its chunks from.
+     */
+    static final class Source {
+
+        private final ByteBuffer buf;
+        private final int[] offset;
+        private final int[] length;
+
+        private Source( ByteBuffer buf, int[] offset, int[] length ) {
+            this.buf = buf;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @param i chunk number
+         * @return the bytes of chunk i, or null if the file has none.
+         */
+        ByteBuffer chunk( int i ) {
+            if ( length[i] == 0 ) {
+                return null;
+            }
+            ByteBuffer b = buf.duplicate();
+            b.position(offset[i]);
+            b.limit(offset[i] + length[i]);
+            return b.slice();
+        }
+    }
+
+    /**
+     * Open a chunked zone file.  Only the header and chunk directory are
+     * read.  The Zone reads its chunks from the file as they are needed.
+     *
+     * @param gm GameModel
+     * @param file .zonec file
+     * @return the Zone, in CHUNKED storage mode
+     * @throws IOException
+     * @throws ZoneFileFormatException
+     */
+    public static Zone load( GameModel gm, File file ) throws IOException, ZoneFileFormatException {
+        return read(gm, map(file));
+    }
+
+    /**
+     * Read a Zone from a buffer holding a chunked zone file.  The buffer is
+     * kept by the Zone to read chunks from.
+     *
+     * @param gm GameModel
+     * @param buf buffer holding the whole file
+     * @return the Zone, in CHUNKED storage mode
+     * @throws ZoneFileFormatException
+     */
+    public static Zone read( GameModel gm, ByteBuffer buf ) throws ZoneFileFormatException {
+        try {
+            buf.position(0);
+            if ( buf.getInt() != MAGIC ) {
+                throw new ZoneFileFormatException("Not a chunked zone file!");
+            }
+            short version = buf.getShort();
+            if ( version != VERSION ) {
+                throw new ZoneFileFormatException("Unsupported chunked zone file version: " + version);
+            }
+            int chunkSize = buf.getShort();
+            int width = buf.getInt();
+            int height = buf.getInt();
+            if ( width <= 0 || height <= 0 || chunkSize <= 0 ) {
+                throw new ZoneFileFormatException(
+                        "Bad zone dimensions: " + width + "x" + height + " chunk: " + chunkSize
+                );
+            }
+            String name = getString(buf);
+            log.log(Level.FINE, "Reading chunked Zone file for: {0}", name);
+
+            HashMap<Character, Long> sheetMap = new HashMap<>();
+            int sheetCount = buf.get() & 0xFF;
+            for ( int i = 0; i < sheetCount; i++ ) {
+                char key = buf.getChar();
+                sheetMap.put(key, buf.getLong());
+            }
+
+            Source source = readDirectory(buf, chunkCount(width, height, chunkSize));
+            Zone zone = new Zone(gm, name, sheetMap, width, height, StorageMode.CHUNKED);
+            zone.setMapLayer(new ChunkedMapLayer(zone, width, height, chunkSize, source));
+            zone.setDirty(false);
+
+            return zone;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new ZoneFileFormatException("Chunked zone file is truncated or corrupt!");
+        }
+    }
+
+    private static ByteBuffer map( File file ) throws IOException {
+        try ( FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ) ) {
+            return fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        }
+    }
+
+    private static int chunkCount( int width, int height, int chunkSize ) {
+        return ((width + chunkSize - 1) / chunkSize) * ((height + chunkSize - 1) / chunkSize);
+    }
+
+    private static Source readDirectory( ByteBuffer buf, int count ) throws ZoneFileFormatException {
+        int dir = buf.getInt(buf.limit() - Integer.BYTES);
+        if ( dir < 0 || dir + count * 2L * Integer.BYTES > buf.limit() - Integer.BYTES ) {
+            throw new ZoneFileFormatException("Chunked zone file directory is corrupt!");
+        }
+        int[] offset = new int[count];
+        int[] length = new int[count];
+        buf.position(dir);
+        for ( int i = 0; i < count; i++ ) {
+            offset[i] = buf.getInt();
+            length[i] = buf.getInt();
+            if ( offset[i] < 0 || length[i] < 0 || offset[i] + length[i] > dir ) {
+                throw new ZoneFileFormatException("Chunk " + i + " is outside of the file!");
+            }
+        }
+        return new Source(buf, offset, length);
+    }
+
+    /**
+     * Fill a chunk from its bytes in the file.
+     *
+     * @param source chunk file
+     * @param i chunk number
+     * @param zone owner of the chunk
+     * @param c blank chunk to fill
+     * @throws ZoneFileFormatException
+     */
+    static void readChunk( Source source, int i, Zone zone, ZoneChunk c ) throws ZoneFileFormatException {
+        ByteBuffer buf = source.chunk(i);
+        if ( buf == null ) {
+            return;
+        }
+        try {
+            int cells = c.width * c.height;
+            ByteBuffer keys = buf.slice();
+            keys.limit(cells * Character.BYTES);
+            buf.position(buf.position() + cells * Character.BYTES);
+            ByteBuffer indexes = buf.slice();
+            indexes.limit(cells * Short.BYTES);
+            buf.position(buf.position() + cells * Short.BYTES);
+            checkCells(zone, keys.asCharBuffer(), indexes.asShortBuffer());
+            c.map.setCells(keys.asCharBuffer(), indexes.asShortBuffer());
+
+            int overrides = buf.getInt();
+            for ( int n = 0; n < overrides; n++ ) {
+                int cell = buf.getInt();
+                short b = buf.getShort();
+                short l = buf.getShort();
+                short s = buf.getShort();
+                c.map.setValues(cell, b, l, s, getString(buf));
+            }
+
+            SheetModel[] sheets = new SheetModel[26]; // A-Z
+            int count = buf.getInt();
+            for ( int n = 0; n < count; n++ ) {
+                int cell = buf.getInt();
+                Tile t = readItem(buf, zone, c, cell, sheets);
+                if ( t instanceof FixtureTile ) {
+                    c.setFixture(cell, (FixtureTile) t);
+                } else {
+                    log.log(Level.SEVERE, "Chunk {0} cell {1} is not a FixtureTile!", i, cell);
+                }
+            }
+            count = buf.getInt();
+            for ( int n = 0; n < count; n++ ) {
+                int cell = buf.getInt();
+                Tile t = readItem(buf, zone, c, cell, sheets);
+                if ( t instanceof EntityTile ) {
+                    c.setEntity(cell, (EntityTile) t);
+                } else {
+                    log.log(Level.SEVERE, "Chunk {0} cell {1} is not an EntityTile!", i, cell);
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new ZoneFileFormatException("Chunk " + i + " is truncated or corrupt!");
+        }
+    }
+
+    private static Tile readItem( ByteBuffer buf, Zone zone, ZoneChunk c, int cell, SheetModel[] sheets ) throws ZoneFileFormatException {
+        char key = buf.getChar();
+        short index = buf.getShort();
+        String flags = getString(buf);
+        checkTile(zone, sheets, key, index, cell);
+        return zone.createTile(
+                key, index, c.originX + cell % c.width, c.originY + cell / c.width, flags
+        );
+    }
+
+    /**
+     * Store a Zone as a chunked zone file.  Any storage mode may be stored.
+     *
+     * @param zone to store
+     * @param os stream to write to, closed when done.
+     * @throws IOException
+     */
+    public static void store( Zone zone, OutputStream os ) throws IOException {
+        try ( OutputStream out = os ) {
+            snapshot(zone).write(out);
+        }
+    }
+
+    /**
+     * Copy what is needed to write a zone's chunk file, so it can be written
+     * on another thread.  Chunks that are loaded are encoded now.  Chunks
+     * that were never loaded are copied from the zone's current file when
+     * written.
+     *
+     * @param zone to copy
+     * @return snapshot of zone
+     */
+    public static Snapshot snapshot( Zone zone ) {
+        MapLayer layer = zone.getMapLayer();
+        if ( !(layer instanceof ChunkedMapLayer) ) {
+            int size = ChunkedMapLayer.CHUNK_SIZE;
+            int cols = (zone.getWidth() + size - 1) / size;
+            byte[][] encoded = new byte[chunkCount(zone.getWidth(), zone.getHeight(), size)][];
+            for ( int i = 0; i < encoded.length; i++ ) {
+                int ox = (i % cols) * size;
+                int oy = (i / cols) * size;
+                encoded[i] = encode(zone, layer, ox, oy,
+                        Math.min(size, zone.getWidth() - ox), Math.min(size, zone.getHeight() - oy),
+                        ox, oy);
+            }
+            return new Snapshot(zone, size, encoded, null, null);
+        }
+
+        ChunkedMapLayer chunked = (ChunkedMapLayer) layer;
+        Source source = chunked.getSource();
+        byte[][] encoded = new byte[chunked.getChunkCount()][];
+        int[] changes = new int[encoded.length];
+        for ( int i = 0; i < encoded.length; i++ ) {
+            ZoneChunk c = chunked.getLoaded(i);
+            if ( c == null && source != null ) {
+                changes[i] = -1; // Copied from file.
+                continue;
+            }
+            if ( c == null ) {
+                c = chunked.chunk(i); // Blank, never been saved.
+            }
+            encoded[i] = encode(zone, c.map, 0, 0, c.width, c.height, c.originX, c.originY);
+            changes[i] = c.changes;
+        }
+        return new Snapshot(zone, chunked.getChunkSize(), encoded, source, changes);
+    }
+
+    /**
+     * Encode a w by h block of cells as a chunk.
+     *
+     * @param zone owner of the cells
+     * @param layer map layer holding the cells
+     * @param ox cell of layer at the chunk's 0,0
+     * @param oy
+     * @param w chunk width
+     * @param h chunk height
+     * @param zx zone cell at the chunk's 0,0
+     * @param zy
+     */
+    private static byte[] encode( Zone zone, MapLayer layer, int ox, int oy, int w, int h, int zx, int zy ) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            for ( int y = oy; y < oy + h; y++ ) {
+                for ( int x = ox; x < ox + w; x++ ) {
+                    out.writeChar(layer.getSheetKey(x, y));
+                }
+            }
+            for ( int y = oy; y < oy + h; y++ ) {
+                for ( int x = ox; x < ox + w; x++ ) {
+                    out.writeShort(layer.getTileIndex(x, y));
+                }
+            }
+
+            // Only cells that differ from their sheet tile.
+            SheetModel[] sheets = new SheetModel[26]; // A-Z
+            ByteArrayOutputStream overrideBytes = new ByteArrayOutputStream();
+            DataOutputStream ov = new DataOutputStream(overrideBytes);
+            int overrideCount = 0;
+            for ( int y = oy; y < oy + h; y++ ) {
+                for ( int x = ox; x < ox + w; x++ ) {
+                    char key = layer.getSheetKey(x, y);
+                    SheetModel sm = sheets[key - 'A'];
+                    if ( sm == null ) {
+                        sm = zone.getSheet(key);
+                        sheets[key - 'A'] = sm;
+                    }
+                    Tile proto = sm.getTile(layer.getTileIndex(x, y));
+                    String desc = layer.getDescription(x, y);
+                    boolean descDiffers = !desc.equals(proto.getDescription());
+                    if ( layer.getBlocking(x, y) == proto.getBlocking()
+                            && layer.getLuminous(x, y) == proto.getLuminous()
+                            && layer.getSound(x, y) == proto.getSound()
+                            && !descDiffers ) {
+                        continue;
+                    }
+                    overrideCount++;
+                    ov.writeInt((y - oy) * w + x - ox);
+                    ov.writeShort(layer.getBlocking(x, y));
+                    ov.writeShort(layer.getLuminous(x, y));
+                    ov.writeShort(layer.getSound(x, y));
+                    putString(ov, descDiffers ? desc : null);
+                }
+            }
+            out.writeInt(overrideCount);
+            overrideBytes.writeTo(out);
+
+            ByteArrayOutputStream itemBytes = new ByteArrayOutputStream();
+            DataOutputStream it = new DataOutputStream(itemBytes);
+            int count = 0;
+            for ( int y = oy; y < oy + h; y++ ) {
+                for ( int x = ox; x < ox + w; x++ ) {
+                    count += writeItem(it, zone.getFixtureTile(zx + x - ox, zy + y - oy), (y - oy) * w + x - ox);
+                }
+            }
+            out.writeInt(count);
+            itemBytes.writeTo(out);
+
+            itemBytes.reset();
+            count = 0;
+            for ( int y = oy; y < oy + h; y++ ) {
+                for ( int x = ox; x < ox + w; x++ ) {
+                    count += writeItem(it, zone.getEntityTile(zx + x - ox, zy + y - oy), (y - oy) * w + x - ox);
+                }
+            }
+            out.writeInt(count);
+            itemBytes.writeTo(out);
+
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            // Cannot happen writing to memory.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static int writeItem( DataOutputStream out, Tile t, int cell ) throws IOException {
+        if ( t == null ) {
+            return 0;
+        }
+        out.writeInt(cell);
+        out.writeChar(t.getSheet());
+        out.writeShort(t.getIndex());
+        putString(out, t.getFlags());
+        return 1;
+    }
+
+    /**
+     * Everything needed to write one chunked zone file.
+     */
+    public static final class Snapshot {
+
+        private final Zone zone;
+        private final String name;
+        private final int width;
+        private final int height;
+        private final int chunkSize;
+        private final HashMap<Character, Long> sheetMap;
+        private final byte[][] encoded; // null where copied from source.
+        private final Source source;
+        private final int[] changes;   // Chunk change counts when taken, null if not chunked.
+
+        private Snapshot( Zone zone, int chunkSize, byte[][] encoded, Source source, int[] changes ) {
+            this.zone = zone;
+            this.name = zone.getName();
+            this.width = zone.getWidth();
+            this.height = zone.getHeight();
+            this.chunkSize = chunkSize;
+            this.sheetMap = new HashMap<>(zone.getSheetMap());
+            this.encoded = encoded;
+            this.source = source;
+            this.changes = changes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Write the chunk file.  The stream is flushed but not closed.
+         *
+         * @param os stream to write to
+         * @throws IOException
+         */
+        public void write( OutputStream os ) throws IOException {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(chunkSize);
+            out.writeInt(width);
+            out.writeInt(height);
+            putString(out, name);
+            out.writeByte(sheetMap.size());
+            for ( Map.Entry<Character, Long> e : sheetMap.entrySet() ) {
+                out.writeChar(e.getKey());
+                out.writeLong(e.getValue());
+            }
+
+            int[] offset = new int[encoded.length];
+            int[] length = new int[encoded.length];
+            for ( int i = 0; i < encoded.length; i++ ) {
+                offset[i] = out.size();
+                if ( encoded[i] != null ) {
+                    out.write(encoded[i]);
+                } else {
+                    ByteBuffer b = source.chunk(i);
+                    if ( b != null ) {
+                        byte[] raw = new byte[b.remaining()];
+                        b.get(raw);
+                        out.write(raw);
+                    }
+                }
+                length[i] = out.size() - offset[i];
+                if ( out.size() == Integer.MAX_VALUE ) {
+                    throw new IOException("Chunked zone file is over 2GB!");
+                }
+            }
+
+            int dir = out.size();
+            for ( int i = 0; i < encoded.length; i++ ) {
+                out.writeInt(offset[i]);
+                out.writeInt(length[i]);
+            }
+            out.writeInt(dir);
+            out.flush();
+        }
+
+        /**
+         * Let the zone know its snapshot is now safely in a file.  The zone
+         * reads unloaded chunks from that file from now on.  Must be called
+         * on the thread that edits the zone.
+         *
+         * @param file the file the snapshot was written to
+         * @throws IOException
+         * @throws ZoneFileFormatException
+         */
+        public void saved( File file ) throws IOException, ZoneFileFormatException {
+            if ( changes == null || !(zone.getMapLayer() instanceof ChunkedMapLayer) ) {
+                return;
+            }
+            ByteBuffer buf = map(file);
+            Source s = readDirectory(buf, encoded.length);
+            ((ChunkedMapLayer) zone.getMapLayer()).saved(s, changes);
+        }
+    }
+
+    /**
+     * @param file to check
+     * @return true if the file name ends in the chunked zone extension.
+     */
+    public static boolean isChunkedZoneFile( File file ) {
+        return file.getName().endsWith(EXTENSION);
+    }
+}
@@ -0,0 +1,266 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * One undoable edit of a zone, any number of cells.
+ *
+ * Kept as rows of primitives, one per cell changed: the cell, its layer,
+ * the tile before and after as a packed mnemonic, and the property
+ * values, by key ordinal, that are not the sheet tile's own.  A row that
+ * only changed values in place keeps just those.  No Tile objects are
+ * held, so a large edit costs a few bytes a cell.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public final class ZoneEdit {
+
+    /** Packed mnemonic of an empty fixture or entity cell. */
+    public static final int NO_TILE = -1;
+
+    static final int MAP = 0;
+    static final int FIXTURE = 1;
+    static final int ENTITY = 2;
+    static final int LAYER_MASK = 3;
+    static final int SWAP = 4;    // Row replaced the tile, not only values.
+
+    // Rough heap use, for the history's memory budget.
+    private static final int EDIT_BYTES = 160;
+    private static final int ROW_BYTES = 17;
+    private static final int VALUE_BYTES = 10;
+    private static final int DESC_BYTES = 64;
+
+    private final String name;
+
+    int rows = 0;
+    int[] xy = new int[8];        // y << 16 | x
+    byte[] kind = new byte[8];    // Layer, or'd with SWAP.
+    int[] before = new int[8];    // Packed mnemonics.
+    int[] after = new int[8];
+    int[] valueEnd = new int[8];  // End of the row's values, the next row's start.
+
+    int values = 0;
+    short[] ordinal = new short[8];
+    int[] valueBefore = new int[8];
+    int[] valueAfter = new int[8];
+
+    // By row.  Only for descriptions that are not the sheet tile's.
+    HashMap<Integer, String> descBefore = null;
+    HashMap<Integer, String> descAfter = null;
+
+    int x0 = Integer.MAX_VALUE; // Bounds of the cells changed.
+    int y0 = Integer.MAX_VALUE;
+    int x1 = Integer.MIN_VALUE;
+    int y1 = Integer.MIN_VALUE;
+
+    ZoneEdit( String name ) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return cells changed.
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * @return rough heap use of this edit.
+     */
+    public long getBytes() {
+        long b = EDIT_BYTES + (long) xy.length * ROW_BYTES + (long) ordinal.length * VALUE_BYTES;
+        if ( descBefore != null ) {
+            b += (long) descBefore.size() * DESC_BYTES;
+        }
+        if ( descAfter != null ) {
+            b += (long) descAfter.size() * DESC_BYTES;
+        }
+        return b;
+    }
+
+    static int pack( char key, int index ) {
+        return key << 16 | index;
+    }
+
+    static int pack( Tile t ) {
+        return t != null ? pack(t.getSheet(), t.getIndex()) : NO_TILE;
+    }
+
+    static char keyOf( int packed ) {
+        return (char) (packed >>> 16);
+    }
+
+    static int indexOf( int packed ) {
+        return packed & 0xFFFF;
+    }
+
+    static int layerOf( Tile t ) {
+        if ( t instanceof FixtureTile ) {
+            return FIXTURE;
+        }
+        if ( t instanceof EntityTile ) {
+            return ENTITY;
+        }
+        return MAP;
+    }
+
+    int x( int row ) {
+        return xy[row] & 0xFFFF;
+    }
+
+    int y( int row ) {
+        return xy[row] >>> 16;
+    }
+
+    int valueStart( int row ) {
+        return row == 0 ? 0 : valueEnd[row - 1];
+    }
+
+    /**
+     * Start a row.  Values added next belong to it.
+     *
+     * @return the row
+     */
+    int addRow( int k, int x, int y, int b, int a ) {
+        if ( rows == xy.length ) {
+            int n = rows * 2;
+            xy = Arrays.copyOf(xy, n);
+            kind = Arrays.copyOf(kind, n);
+            before = Arrays.copyOf(before, n);
+            after = Arrays.copyOf(after, n);
+            valueEnd = Arrays.copyOf(valueEnd, n);
+        }
+        int r = rows++;
+        xy[r] = y << 16 | x;
+        kind[r] = (byte) k;
+        before[r] = b;
+        after[r] = a;
+        valueEnd[r] = values;
+        x0 = Math.min(x0, x);
+        y0 = Math.min(y0, y);
+        x1 = Math.max(x1, x);
+        y1 = Math.max(y1, y);
+        return r;
+    }
+
+    /**
+     * Add a value to the last row.
+     */
+    void addValue( int o, int b, int a ) {
+        if ( values == ordinal.length ) {
+            int n = values * 2;
+            ordinal = Arrays.copyOf(ordinal, n);
+            valueBefore = Arrays.copyOf(valueBefore, n);
+            valueAfter = Arrays.copyOf(valueAfter, n);
+        }
+        ordinal[values] = (short) o;
+        valueBefore[values] = b;
+        valueAfter[values] = a;
+        values++;
+        valueEnd[rows - 1] = values;
+    }
+
+    /**
+     * Add a row for the tile of a cell being replaced.  Values are kept
+     * for every key where the tile before or after is not its sheet tile.
+     *
+     * @param b packed tile before, NO_TILE for none
+     * @param vb values of b, null for none
+     * @param pb values of b's sheet tile, null for none
+     * @param db description of b if not its sheet tile's, or null
+     * @return false if the cell stays as it is, and no row was added.
+     */
+    boolean addSwap( int layer, int x, int y,
+            int b, int[] vb, int[] pb, String db,
+            int a, int[] va, int[] pa, String da ) {
+        int n = Math.max(vb != null ? vb.length : 0, va != null ? va.length : 0);
+        if ( b == a && (db == null ? da == null : db.equals(da)) ) {
+            int o = 0;
+            while ( o < n && valueOf(vb, o) == valueOf(va, o) ) {
+                o++;
+            }
+            if ( o == n ) {
+                return false;
+            }
+        }
+        int row = addRow(layer | SWAP, x, y, b, a);
+        for ( int o = 0; o < n; o++ ) {
+            int vo = valueOf(vb, o);
+            int vn = valueOf(va, o);
+            if ( vo != valueOf(pb, o) || vn != valueOf(pa, o) ) {
+                addValue(o, vo, vn);
+            }
+        }
+        setDescriptions(row, db, da);
+        return true;
+    }
+
+    /**
+     * Add every row of another edit after ours.
+     */
+    void append( ZoneEdit e ) {
+        for ( int r = 0; r < e.rows; r++ ) {
+            int row = addRow(e.kind[r], e.x(r), e.y(r), e.before[r], e.after[r]);
+            for ( int v = e.valueStart(r); v < e.valueEnd[r]; v++ ) {
+                addValue(e.ordinal[v], e.valueBefore[v], e.valueAfter[v]);
+            }
+            setDescriptions(row,
+                    e.descBefore != null ? e.descBefore.get(r) : null,
+                    e.descAfter != null ? e.descAfter.get(r) : null);
+        }
+    }
+
+    static int valueOf( int[] v, int o ) {
+        return v != null && o < v.length ? v[o] : IntegerTileProperty.DEFAULT_VAL;
+    }
+
+    void setDescriptions( int row, String b, String a ) {
+        if ( b != null ) {
+            if ( descBefore == null ) {
+                descBefore = new HashMap<>();
+            }
+            descBefore.put(row, b);
+        }
+        if ( a != null ) {
+            if ( descAfter == null ) {
+                descAfter = new HashMap<>();
+            }
+            descAfter.put(row, a);
+        }
+    }
+
+    /**
+     * Let go of unused room once the edit is done.
+     */
+    void trim() {
+        xy = Arrays.copyOf(xy, rows);
+        kind = Arrays.copyOf(kind, rows);
+        before = Arrays.copyOf(before, rows);
+        after = Arrays.copyOf(after, rows);
+        valueEnd = Arrays.copyOf(valueEnd, rows);
+        ordinal = Arrays.copyOf(ordinal, values);
+        valueBefore = Arrays.copyOf(valueBefore, values);
+        valueAfter = Arrays.copyOf(valueAfter, values);
+    }
+}
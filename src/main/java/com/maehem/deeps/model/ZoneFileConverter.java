@@ -0,0 +1,196 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.Zone.StorageMode;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+
+/**
+ * Convert zone files between the text ".zone", binary ".zoneb" and
+ * chunked ".zonec" formats.
+ *
+ * The sheets used by the zone must already be registered with the GameModel.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public final class ZoneFileConverter {
+
+    private ZoneFileConverter() {}
+
+    /**
+     * Convert a text zone file into a binary one.
+     *
+     * @param gm GameModel holding the zone's sheets
+     * @param zoneFile text .zone file to read
+     * @param binaryFile .zoneb file to write
+     * @throws IOException
+     * @throws ZoneFileFormatException
+     */
+    public static void toBinary( GameModel gm, File zoneFile, File binaryFile ) throws IOException, ZoneFileFormatException {
+        Zone zone;
+        try ( InputStream in = new FileInputStream(zoneFile) ) {
+            zone = Zone.load(gm, in, StorageMode.COMPACT);
+        }
+        ZoneBinaryFormat.store(zone, new FileOutputStream(binaryFile));
+        log.log(Level.INFO, "Converted {0} -> {1}",
+                zoneFile.getName(), binaryFile.getName());
+    }
+
+    /**
+     * Convert a binary zone file into a text one.
+     *
+     * @param gm GameModel holding the zone's sheets
+     * @param binaryFile .zoneb file to read
+     * @param zoneFile text .zone file to write
+     * @throws IOException
+     * @throws ZoneFileFormatException
+     */
+    public static void toText( GameModel gm, File binaryFile, File zoneFile ) throws IOException, ZoneFileFormatException {
+        Zone zone = ZoneBinaryFormat.load(gm, binaryFile, StorageMode.COMPACT);
+        if ( !zone.store(new FileOutputStream(zoneFile)) ) {
+            throw new IOException("Could not write zone file: " + zoneFile.getName());
+        }
+        log.log(Level.INFO, "Converted {0} -> {1}",
+                binaryFile.getName(), zoneFile.getName());
+    }
+
+    /**
+     * Convert a text or binary zone file into a chunked one.
+     *
+     * @param gm GameModel holding the zone's sheets
+     * @param zoneFile .zone or .zoneb file to read
+     * @param chunkedFile .zonec file to write
+     * @throws IOException
+     * @throws ZoneFileFormatException
+     */
+    public static void toChunked( GameModel gm, File zoneFile, File chunkedFile ) throws IOException, ZoneFileFormatException {
+        Zone zone;
+        if ( ZoneBinaryFormat.isBinaryZoneFile(zoneFile) ) {
+            zone = ZoneBinaryFormat.load(gm, zoneFile, StorageMode.COMPACT);
+        } else {
+            try ( InputStream in = new FileInputStream(zoneFile) ) {
+                zone = Zone.load(gm, in, StorageMode.COMPACT);
+            }
+        }
+        ZoneChunkFormat.store(zone, new FileOutputStream(chunkedFile));
+        log.log(Level.INFO, "Converted {0} -> {1}",
+                zoneFile.getName(), chunkedFile.getName());
+    }
+
+    /**
+     * Convert a chunked zone file into a text one.  Every chunk is visited
+     * so this is slow for very large zones.
+     *
+     * @param gm GameModel holding the zone's sheets
+     * @param chunkedFile .zonec file to read
+     * @param zoneFile text .zone file to write
+     * @throws IOException
+     * @throws ZoneFileFormatException
+     */
+    public static void chunkedToText( GameModel gm, File chunkedFile, File zoneFile ) throws IOException, ZoneFileFormatException {
+        Zone zone = ZoneChunkFormat.load(gm, chunkedFile);
+        if ( !zone.store(new FileOutputStream(zoneFile)) ) {
+            throw new IOException("Could not write zone file: " + zoneFile.getName());
+        }
+        log.log(Level.INFO, "Converted {0} -> {1}",
+                chunkedFile.getName(), zoneFile.getName());
+    }
+
+    /**
+     * Convert a zone file to the other format, writing it next to the
+     * original with the other extension.  Text becomes binary, binary and
+     * chunked become text.  Text is read before the others, see ZoneFiles,
+     * so binary written next to text is not read until the text is gone.
+     *
+     * @param gm GameModel holding the zone's sheets
+     * @param file .zone, .zoneb or .zonec file
+     * @return the file that was written
+     * @throws IOException
+     * @throws ZoneFileFormatException
+     */
+    public static File convert( GameModel gm, File file ) throws IOException, ZoneFileFormatException {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        if ( ZoneBinaryFormat.isBinaryZoneFile(file) ) {
+            File out = new File(file.getParentFile(), base + ".zone");
+            toText(gm, file, out);
+            return out;
+        } else if ( ZoneChunkFormat.isChunkedZoneFile(file) ) {
+            File out = new File(file.getParentFile(), base + ".zone");
+            chunkedToText(gm, file, out);
+            return out;
+        } else {
+            File out = new File(file.getParentFile(), base + ZoneBinaryFormat.EXTENSION);
+            toBinary(gm, file, out);
+            return out;
+        }
+    }
+
+    /**
+     * Write every zone of a zones directory into another directory in the
+     * form the game loads fastest.  Text zones become binary, chunked and
+     * binary zones are copied.  Only the file ZoneFiles picks for each zone
+     * is used, and nothing of the same name is left beside it in the
+     * output, so the game reads what was written.
+     *
+     * @param gm GameModel holding the zones' sheets
+     * @param zonesDir zones to read
+     * @param outDir where to write them, made if missing
+     * @return number of zones written
+     * @throws IOException
+     * @throws ZoneFileFormatException
+     */
+    public static int export( GameModel gm, File zonesDir, File outDir ) throws IOException, ZoneFileFormatException {
+        if ( outDir.getCanonicalFile().equals(zonesDir.getCanonicalFile()) ) {
+            throw new IOException("Can not export zones into their own directory: " + outDir);
+        }
+        if ( !outDir.isDirectory() && !outDir.mkdirs() ) {
+            throw new IOException("Could not make directory: " + outDir);
+        }
+        int n = 0;
+        for ( File f : ZoneFiles.findAll(zonesDir) ) {
+            String name = ZoneFiles.nameOf(f.getName());
+            File out;
+            if ( ZoneBinaryFormat.isBinaryZoneFile(f) || ZoneChunkFormat.isChunkedZoneFile(f) ) {
+                out = new File(outDir, f.getName());
+                Files.copy(f.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                out = new File(outDir, name + ZoneBinaryFormat.EXTENSION);
+                toBinary(gm, f, out);
+            }
+            // An older export in another format would be read instead.
+            for ( String ext : new String[]{ZoneFiles.TEXT_EXTENSION, ZoneChunkFormat.EXTENSION, ZoneBinaryFormat.EXTENSION} ) {
+                File other = new File(outDir, name + ext);
+                if ( !other.equals(out) && other.exists() && !other.delete() ) {
+                    throw new IOException("Could not remove old zone file: " + other);
+                }
+            }
+            n++;
+        }
+        log.log(Level.INFO, "Exported {0} zones to {1}", n, outDir);
+        return n;
+    }
+}
@@ -22,8 +22,40 @@ package com.maehem.deeps.model;
  */
 public class ZoneFileFormatException extends Exception {
 
+    private final int line;
+    private final int column;
+    
     public ZoneFileFormatException( String message ) {
         super(message);
+        this.line = -1;
+        this.column = -1;
+    }
+    
+    /**
+     * Format error at a known place in a text zone file.
+     * 
+     * @param message what went wrong
+     * @param line number, starting at 1
+     * @param column number, starting at 1
+     */
+    public ZoneFileFormatException( String message, int line, int column ) {
+        super("line " + line + ", column " + column + ": " + message);
+        this.line = line;
+        this.column = column;
+    }
+    
+    /**
+     * @return line number of error, or -1 if not known.
+     */
+    public int getLine() {
+        return line;
+    }
+    
+    /**
+     * @return column number of error, or -1 if not known.
+     */
+    public int getColumn() {
+        return column;
     }
     
 }
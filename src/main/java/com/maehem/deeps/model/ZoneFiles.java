@@ -0,0 +1,147 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.logging.Level;
+
+/**
+ * Which file in a zones directory is a zone.
+ *
+ * A zone may be saved as text ".zone", binary ".zoneb" or chunked ".zonec".
+ * Only one file of a name is read, in this order:
+ * <pre>
+ *    name.zone      text, what the editor saves
+ *    name.zonec     chunked, for zones too big to hold as text
+ *    name.zoneb     binary, for zones that only exist in that form
+ * </pre>
+ * The other files of the name are ignored, with a warning if one of them
+ * is newer than the one read.  The editor and the game both use this
+ * order.
+ *
+ * The file read is the one the editor saves to.  Zones the editor holds
+ * whole are saved as text and chunked zones are saved chunked.  When it
+ * saves, the editor moves every other file of the zone's name to
+ * backups, so a project's zones directory holds one file per zone.
+ * Binary files are only written by an export for the game, into a
+ * directory of their own with no text beside them.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public final class ZoneFiles {
+
+    public static final String TEXT_EXTENSION = ".zone";
+
+    private static final String[] ORDER = {
+        TEXT_EXTENSION, ZoneChunkFormat.EXTENSION, ZoneBinaryFormat.EXTENSION
+    };
+
+    private ZoneFiles() {}
+
+    /**
+     * @param fileName file name
+     * @return true if the name is of any zone file format.
+     */
+    public static boolean isZoneFile( String fileName ) {
+        return nameOf(fileName) != null;
+    }
+
+    /**
+     * @param fileName file name
+     * @return zone name of the file, or null if it is not a zone file.
+     */
+    public static String nameOf( String fileName ) {
+        for ( String ext : ORDER ) {
+            if ( fileName.endsWith(ext) && fileName.length() > ext.length() ) {
+                return fileName.substring(0, fileName.length() - ext.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param zonesDir zones directory
+     * @return the file to read for each zone in the directory, one per
+     *         zone name, by name.
+     */
+    public static List<File> findAll( File zonesDir ) {
+        ArrayList<File> found = new ArrayList<>();
+        File[] files = zonesDir.listFiles();
+        if ( files == null ) {
+            return found;
+        }
+        TreeSet<String> names = new TreeSet<>();
+        for ( File f : files ) {
+            String n = nameOf(f.getName());
+            if ( n != null ) {
+                names.add(n);
+            }
+        }
+        for ( String n : names ) {
+            File f = find(zonesDir, n);
+            if ( f != null ) {
+                found.add(f);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param file a zone file
+     * @return the other files, of any format, of the same zone that exist.
+     */
+    public static List<File> twins( File file ) {
+        ArrayList<File> found = new ArrayList<>();
+        String name = nameOf(file.getName());
+        if ( name == null ) {
+            return found;
+        }
+        for ( String ext : ORDER ) {
+            File f = new File(file.getParentFile(), name + ext);
+            if ( !f.equals(file) && f.exists() ) {
+                found.add(f);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param zonesDir zones directory
+     * @param name zone name
+     * @return the file to read for the zone, or null if there is none.
+     */
+    public static File find( File zonesDir, String name ) {
+        File found = null;
+        for ( String ext : ORDER ) {
+            File f = new File(zonesDir, name + ext);
+            if ( !f.isFile() ) {
+                continue;
+            }
+            if ( found == null ) {
+                found = f;
+            } else if ( f.lastModified() > found.lastModified() ) {
+                log.log(Level.WARNING, "Zone {0}: {1} is newer than {2} but is not read.",
+                        new Object[]{name, f.getName(), found.getName()});
+            }
+        }
+        return found;
+    }
+}
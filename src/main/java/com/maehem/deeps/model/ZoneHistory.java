@@ -0,0 +1,355 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import java.util.ArrayList;
+import java.util.logging.Level;
+
+/**
+ * Undo and redo for the edits made to a zone.
+ *
+ * Once made, the history hears of every tile swapped into or removed from
+ * the zone and every property value changed, and keeps them as
+ * ZoneEdits.  Changes between begin() and end() make one edit, i.e. a
+ * drag of the stamp.  The zone's own bulk edits, i.e. fillArea(), arrive
+ * as one edit.  A value changed again and again on its own, as a slider
+ * does, stays one edit.
+ *
+ * Edits are kept in a ring of fixed size, and the oldest are dropped when
+ * the ring is full or the edits use more than the memory budget.  Undo
+ * and redo put a whole edit back in one pass over the zone, with one
+ * zoneAreaChanged() for its listeners.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public class ZoneHistory {
+
+    public static final int DEFAULT_EDITS = 256;
+    public static final long DEFAULT_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Told when there is something new to undo or redo.
+     */
+    public interface Listener {
+        public void historyChanged( ZoneHistory h );
+    }
+
+    private final Zone zone;
+    private final ZoneEdit[] ring;
+    private final long maxBytes;
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+    private int first = 0;    // Ring slot of the oldest edit.
+    private int count = 0;    // Edits held.
+    private int done = 0;     // Edits held that are applied, the rest can be redone.
+    private long bytes = 0;
+
+    private ZoneEdit open = null; // Edit being recorded between begin() and end().
+    private int depth = 0;
+    private ZoneEdit merging = null; // Last edit, if it is one value that may change again.
+    private boolean applying = false;
+
+    public ZoneHistory( Zone zone ) {
+        this(zone, DEFAULT_EDITS, DEFAULT_BYTES);
+    }
+
+    /**
+     * @param zone zone to follow
+     * @param maxEdits most edits kept
+     * @param maxBytes rough memory the edits may use
+     */
+    public ZoneHistory( Zone zone, int maxEdits, long maxBytes ) {
+        this.zone = zone;
+        this.ring = new ZoneEdit[Math.max(1, maxEdits)];
+        this.maxBytes = maxBytes;
+        zone.setHistory(this);
+    }
+
+    /**
+     * Stop following the zone.
+     */
+    public void dispose() {
+        zone.setHistory(null);
+    }
+
+    public void addListener( Listener l ) {
+        listeners.add(l);
+    }
+
+    public void removeListener( Listener l ) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Start an edit.  Every change until the matching end() is undone as
+     * one.  May be nested, the outer name is kept.
+     *
+     * @param name of the edit, i.e. "Fill"
+     */
+    public void begin( String name ) {
+        if ( depth++ == 0 ) {
+            open = new ZoneEdit(name);
+        }
+    }
+
+    public void end() {
+        if ( depth == 0 || --depth > 0 ) {
+            return;
+        }
+        ZoneEdit e = open;
+        open = null;
+        if ( e.size() > 0 ) {
+            push(e);
+        }
+    }
+
+    public boolean canUndo() {
+        return depth == 0 && done > 0;
+    }
+
+    public boolean canRedo() {
+        return depth == 0 && done < count;
+    }
+
+    /**
+     * @return name of the edit undo() would undo, or null.
+     */
+    public String getUndoName() {
+        return canUndo() ? at(done - 1).getName() : null;
+    }
+
+    /**
+     * @return name of the edit redo() would redo, or null.
+     */
+    public String getRedoName() {
+        return canRedo() ? at(done).getName() : null;
+    }
+
+    public boolean undo() {
+        if ( !canUndo() ) {
+            return false;
+        }
+        ZoneEdit e = at(--done);
+        apply(e, true);
+        log.log(Level.FINE, "Undo {0}: {1} cells", e.getName(), e.size());
+        return true;
+    }
+
+    public boolean redo() {
+        if ( !canRedo() ) {
+            return false;
+        }
+        ZoneEdit e = at(done++);
+        apply(e, false);
+        log.log(Level.FINE, "Redo {0}: {1} cells", e.getName(), e.size());
+        return true;
+    }
+
+    /**
+     * Forget every edit.
+     */
+    public void clear() {
+        for ( int i = 0; i < count; i++ ) {
+            ring[(first + i) % ring.length] = null;
+        }
+        first = 0;
+        count = 0;
+        done = 0;
+        bytes = 0;
+        merging = null;
+        notifyChanged();
+    }
+
+    /**
+     * @return edits held, done and undone.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return rough memory used by the edits held.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private ZoneEdit at( int i ) {
+        return ring[(first + i) % ring.length];
+    }
+
+    private void apply( ZoneEdit e, boolean undo ) {
+        merging = null;
+        applying = true;
+        try {
+            zone.apply(e, undo);
+        } finally {
+            applying = false;
+        }
+        notifyChanged();
+    }
+
+    private void push( ZoneEdit e ) {
+        e.trim();
+        // Anything undone can no longer be redone.
+        for ( int i = done; i < count; i++ ) {
+            int s = (first + i) % ring.length;
+            bytes -= ring[s].getBytes();
+            ring[s] = null;
+        }
+        count = done;
+        if ( count == ring.length ) {
+            dropOldest();
+        }
+        ring[(first + count) % ring.length] = e;
+        count++;
+        done = count;
+        bytes += e.getBytes();
+        while ( bytes > maxBytes && count > 1 ) {
+            dropOldest();
+        }
+        notifyChanged();
+    }
+
+    private void dropOldest() {
+        ZoneEdit e = ring[first];
+        ring[first] = null;
+        bytes -= e.getBytes();
+        first = (first + 1) % ring.length;
+        count--;
+        done--;
+        if ( e == merging ) {
+            merging = null;
+        }
+        log.log(Level.FINE, "History of {0} dropped edit {1}, {2} cells",
+                zone.getName(), e.getName(), e.size());
+    }
+
+    private void notifyChanged() {
+        for ( int i = 0; i < listeners.size(); i++ ) {
+            listeners.get(i).historyChanged(this);
+        }
+    }
+
+    private boolean isRecording() {
+        return !applying;
+    }
+
+    /**
+     * A tile was swapped into, or removed from, a cell.
+     *
+     * @param tOld tile that was there, null for none
+     * @param tNew tile there now, null for none
+     */
+    void swapped( int x, int y, Tile tOld, Tile tNew ) {
+        if ( !isRecording() ) {
+            return;
+        }
+        Tile t = tNew != null ? tNew : tOld;
+        Tile sOld = zone.sheetTile(tOld);
+        Tile sNew = zone.sheetTile(tNew);
+        ZoneEdit e = editFor(tNew != null ? "Stamp" : "Clear");
+        boolean added = e.addSwap(ZoneEdit.layerOf(t), x, y,
+                ZoneEdit.pack(tOld), valuesOf(tOld), valuesOf(sOld), ownDescription(tOld, sOld),
+                ZoneEdit.pack(tNew), valuesOf(tNew), valuesOf(sNew), ownDescription(tNew, sNew));
+        if ( added && e != open ) {
+            push(e);
+        }
+        merging = null;
+    }
+
+    /**
+     * The zone made an edit of many cells itself, i.e. a fill, and has
+     * applied it.
+     */
+    void applied( ZoneEdit e ) {
+        if ( !isRecording() ) {
+            return;
+        }
+        if ( open != null ) {
+            open.append(e);
+        } else {
+            push(e);
+        }
+        merging = null;
+    }
+
+    /**
+     * A value of a tile in the zone is about to change.
+     */
+    void valueChanging( Tile t, int o, int old, int val ) {
+        if ( !isRecording() || !isPlaced(t) ) {
+            return;
+        }
+        int layer = ZoneEdit.layerOf(t);
+        if ( open == null && merging != null
+                && merging.kind[0] == layer
+                && merging.xy[0] == (t.getY() << 16 | t.getX())
+                && merging.ordinal[0] == o ) {
+            merging.valueAfter[0] = val; // Same value again.
+            return;
+        }
+        ZoneEdit e = editFor("Set " + TilePropertyKey.forOrdinal(o).getFlag());
+        int packed = ZoneEdit.pack(t);
+        e.addRow(layer, t.getX(), t.getY(), packed, packed);
+        e.addValue(o, old, val);
+        if ( open == null ) {
+            push(e);
+            merging = e;
+        }
+    }
+
+    /**
+     * Changes outside begin() and end() are edits of their own.
+     */
+    private ZoneEdit editFor( String name ) {
+        return open != null ? open : new ZoneEdit(name);
+    }
+
+    /**
+     * Only tiles in the zone's cells are recorded, not ones being made,
+     * i.e. as a chunk loads.
+     */
+    private boolean isPlaced( Tile t ) {
+        if ( t instanceof FixtureTile ) {
+            return zone.getFixtureTile(t.getX(), t.getY()) == t;
+        }
+        if ( t instanceof EntityTile ) {
+            return zone.getEntityTile(t.getX(), t.getY()) == t;
+        }
+        return true;
+    }
+
+    private static int[] valuesOf( Tile t ) {
+        return t != null ? t.values() : null;
+    }
+
+    /**
+     * @return description of t if it is not its sheet tile's, or null.
+     */
+    static String ownDescription( Tile t, Tile sheetTile ) {
+        if ( t == null ) {
+            return null;
+        }
+        String d = t.getDescription();
+        return sheetTile != null && d.equals(sheetTile.getDescription()) ? null : d;
+    }
+}
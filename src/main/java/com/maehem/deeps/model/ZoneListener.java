@@ -23,4 +23,15 @@ package com.maehem.deeps.model;
 public interface ZoneListener {
     public void zoneTileChanged( Tile t );
     public void zoneTileSwapped(Tile tOld, Tile tNew );
+
+    /**
+     * Any number of cells in the area changed at once, i.e. by an undo.
+     * Nothing is said of which tiles, look at the cells again.
+     *
+     * @param x0 left cell
+     * @param y0 top cell
+     * @param x1 right cell, inclusive
+     * @param y1 bottom cell, inclusive
+     */
+    public void zoneAreaChanged( int x0, int y0, int x1, int y1 );
 }
@@ -0,0 +1,177 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Immutable copy of a Zone's saved state.
+ *
+ * Taking the snapshot only copies primitive values and String references
+ * so it is cheap enough to do on the UI thread.  The snapshot can then be
+ * written out on any thread while the Zone keeps being edited.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+public final class ZoneSnapshot {
+
+    private final String name;
+    private final int width;
+    private final int height;
+    private final HashMap<Character, Long> sheetMap;
+
+    private final char[] sheetKey;
+    private final short[] tileIndex;
+    private final int[] blocking;
+    private final int[] luminous;
+    private final int[] sound;
+    private final String[] description;
+
+    // Fixtures and entities in cell order, as "cell = mnemonic:flags".
+    private final ArrayList<String> fixtureLines = new ArrayList<>();
+    private final ArrayList<String> entityLines = new ArrayList<>();
+
+    ZoneSnapshot( Zone zone, MapLayer layer, Map<Character, Long> sheetMap ) {
+        this.name = zone.getName();
+        this.width = zone.getWidth();
+        this.height = zone.getHeight();
+        this.sheetMap = new HashMap<>(sheetMap);
+
+        int cells = width * height;
+        sheetKey = new char[cells];
+        tileIndex = new short[cells];
+        blocking = new int[cells];
+        luminous = new int[cells];
+        sound = new int[cells];
+        description = new String[cells];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                sheetKey[i] = layer.getSheetKey(x, y);
+                tileIndex[i] = (short) layer.getTileIndex(x, y);
+                blocking[i] = layer.getBlocking(x, y);
+                luminous[i] = layer.getLuminous(x, y);
+                sound[i] = layer.getSound(x, y);
+                description[i] = layer.getDescription(x, y);
+
+                FixtureTile f = zone.getFixtureTile(x, y);
+                if ( f != null ) {
+                    fixtureLines.add(i + " = " + f.getMnemonic() + ":" + f.getFlags());
+                }
+                EntityTile e = zone.getEntityTile(x, y);
+                if ( e != null ) {
+                    entityLines.add(i + " = " + e.getMnemonic() + ":" + e.getFlags());
+                }
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Write the snapshot in the text ".zone" format.  The writer is flushed
+     * but not closed.
+     *
+     * @param w writer to write to
+     * @throws IOException
+     */
+    public void write( Writer w ) throws IOException {
+        BufferedWriter bw = w instanceof BufferedWriter ? (BufferedWriter) w : new BufferedWriter(w);
+        bw.write("# name: " + name);
+        bw.newLine();
+        bw.write("# Sheet map");
+        bw.newLine();
+        for ( Map.Entry<Character, Long> map :  sheetMap.entrySet() ) {
+            bw.write("IDX:" + map.getKey() + ":" + map.getValue() );
+            bw.newLine();
+        }
+        bw.newLine();
+        bw.write("# Base Tiles");
+        bw.newLine();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                bw.write(sheetKey[i]);
+                bw.write(String.format("%03d", tileIndex[i]));
+                bw.write(" ");
+            }
+            bw.newLine();
+        }
+        bw.newLine();
+
+        // Write base tile properties
+        bw.write("# Base Tile Flags");
+        bw.newLine();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                bw.write(Zone.BASE_PROP_KEY + i + " = " + Tile.formatFlags(
+                        blocking[i], luminous[i], sound[i], description[i]
+                ));
+                bw.newLine();
+            }
+            bw.newLine();
+        }
+
+        // Write fixture tile properties
+        bw.write("# Fixture Tile Flags");
+        bw.newLine();
+        for ( String line : fixtureLines ) {
+            bw.write(Zone.ITEM_PROP_KEY + line);
+            bw.newLine();
+        }
+        bw.newLine();
+
+        // Write entity tile properties
+        bw.write("# Entity Tile Flags");
+        bw.newLine();
+        for ( String line : entityLines ) {
+            bw.write(Zone.ENTITY_PROP_KEY + line);
+            bw.newLine();
+        }
+        bw.flush();
+    }
+
+    /**
+     * Store the snapshot in the text ".zone" format.
+     *
+     * @param os stream to write to, closed when done.
+     * @return true if successful
+     */
+    public boolean store( OutputStream os ) {
+        try ( BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(os)) ) {
+            write(bw);
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, null, ex);
+            return false;
+        }
+
+        return true;
+    }
+}
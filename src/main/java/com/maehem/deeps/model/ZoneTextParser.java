@@ -0,0 +1,347 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.model;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.Zone.StorageMode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.logging.Level;
+
+/**
+ * Single pass reader for the text ".zone" format.
+ *
+ * Base rows are decoded straight into primitive cell arrays and the flag
+ * lines that follow are applied to the zone as they are read.  Errors are
+ * reported with the line and column where they were found.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+final class ZoneTextParser {
+
+    private static final String NAME_HEADER = "# name:";
+    private static final String BASE_HEADER = "# Base Tiles";
+    private static final String IDX_PREFIX = "IDX";
+
+    private final GameModel gm;
+    private final StorageMode mode;
+    private final HashMap<Character, Long> sheetMap = new HashMap<>();
+    private final SheetModel[] sheets = new SheetModel[26]; // A-Z, by checkTile().
+
+    private BufferedReader reader;
+    private String line;
+    private int lineNo = 0;
+
+    // Base cells as they are decoded, row by row.
+    private char[] keys = new char[1024];
+    private short[] indexes = new short[1024];
+    private int cellCount = 0;
+
+    ZoneTextParser( GameModel gm, StorageMode mode ) {
+        this.gm = gm;
+        this.mode = mode;
+    }
+
+    Zone parse( Reader in ) throws IOException, ZoneFileFormatException {
+        reader = new BufferedReader(in);
+
+        // Lines with hash '#' are comments, except for the few headers we look for.
+        while ( next() && !line.startsWith(NAME_HEADER) ) {}
+        if ( line == null ) {
+            throw error("Zone file does not seem to have 'name:' defined!", 1);
+        }
+        String name = line.startsWith(NAME_HEADER + " ")
+                ? line.substring(NAME_HEADER.length() + 1)
+                : line.substring(NAME_HEADER.length());
+        log.log(Level.FINE, "Reading Zone file for: {0}", name);
+
+        while ( next() && !line.startsWith(IDX_PREFIX) ) {}
+        if ( line == null ) {
+            throw error("Zone file does not seem to have 'IDX' table defined!", 1);
+        }
+        while ( line != null && line.startsWith(IDX_PREFIX) ) {
+            parseIdx();
+            next();
+        }
+
+        while ( line != null && !line.startsWith(BASE_HEADER) ) {
+            next();
+        }
+        if ( line == null ) {
+            throw error("Could not find '" + BASE_HEADER + "' header!", 1);
+        }
+
+        int width = -1;
+        int height = 0;
+        while ( next() && !line.isEmpty() && line.charAt(0) >= 'A' && line.charAt(0) <= 'Z' ) {
+            int n = parseBaseRow();
+            if ( width < 0 ) {
+                width = n;
+            } else if ( n != width ) {
+                throw error("Base row has " + n + " cells but the first row has " + width, line.length());
+            }
+            height++;
+        }
+        if ( height == 0 ) {
+            throw error("'Base Rows' section did not parse! Check Zone file.", 1);
+        }
+
+        Zone zone = createZone(name, width, height);
+
+        // Rest of file is flags, one cell per line.
+        while ( line != null ) {
+            parseFlagLine(zone);
+            next();
+        }
+        zone.setDirty(false);
+
+        return zone;
+    }
+
+    /**
+     * Read next line.
+     *
+     * @return false at end of file.
+     */
+    private boolean next() throws IOException {
+        line = reader.readLine();
+        lineNo++;
+        return line != null;
+    }
+
+    private ZoneFileFormatException error( String message, int column ) {
+        log.log(Level.SEVERE, "Zone file line {0}, column {1}: {2}",
+                lineNo, column, message);
+        return new ZoneFileFormatException(message, lineNo, column);
+    }
+
+    /**
+     * IDX:A:<sheet uid>
+     */
+    private void parseIdx() throws ZoneFileFormatException {
+        int len = line.length();
+        if ( len < 7 || line.charAt(3) != ':' || line.charAt(5) != ':' ) {
+            throw error("Expected IDX:<key>:<sheet uid>", 1);
+        }
+        char key = line.charAt(4);
+        if ( key < 'A' || key > 'Z' ) {
+            throw error("Sheet key must be A-Z but was '" + key + "'", 5);
+        }
+        try {
+            sheetMap.put(key, Long.parseLong(line, 6, len, 10));
+        } catch (NumberFormatException ex) {
+            throw error("Bad sheet uid", 7);
+        }
+        log.log(Level.CONFIG, "    Found IDX {0}", line.substring(4));
+    }
+
+    /**
+     * Decode a row of mnemonics, i.e. "A000 A012 B003 ", into the cell arrays.
+     *
+     * @return number of cells in row.
+     */
+    private int parseBaseRow() throws ZoneFileFormatException {
+        int len = line.length();
+        int pos = 0;
+        int n = 0;
+        while ( true ) {
+            while ( pos < len && line.charAt(pos) == ' ' ) {
+                pos++;
+            }
+            if ( pos >= len ) {
+                return n;
+            }
+            char key = line.charAt(pos);
+            if ( key < 'A' || key > 'Z' ) {
+                throw error("Mnemonic must start with a sheet key A-Z but was '" + key + "'", pos + 1);
+            }
+            if ( !sheetMap.containsKey(key) ) {
+                throw error("Sheet key '" + key + "' is not in the IDX table", pos + 1);
+            }
+            pos++;
+            int start = pos;
+            int index = 0;
+            while ( pos < len && line.charAt(pos) != ' ' ) {
+                char c = line.charAt(pos);
+                if ( c < '0' || c > '9' ) {
+                    throw error("Bad digit '" + c + "' in mnemonic", pos + 1);
+                }
+                index = index * 10 + (c - '0');
+                if ( index > Short.MAX_VALUE ) {
+                    throw error("Tile index is too large", pos + 1);
+                }
+                pos++;
+            }
+            if ( pos == start ) {
+                throw error("Mnemonic has no tile index", pos + 1);
+            }
+            checkTile(key, index, start);
+            addCell(key, index);
+            n++;
+        }
+    }
+
+    /**
+     * Make sure a mnemonic names a tile that exists, so that a bad one is
+     * reported here instead of failing when the tile is made.
+     *
+     * @param key sheet key, already known to be in the IDX table
+     */
+    private void checkTile( char key, int index, int column ) throws ZoneFileFormatException {
+        SheetModel sm = sheets[key - 'A'];
+        if ( sm == null ) {
+            sm = gm.getSheet(sheetMap.get(key));
+            if ( sm == null ) {
+                throw error("No sheet is loaded for sheet key '" + key + "'", column);
+            }
+            sheets[key - 'A'] = sm;
+        }
+        if ( index < 0 || index >= sm.getTileCount() ) {
+            throw error("Tile index " + index + " is outside of sheet '" + key
+                    + "', which has " + sm.getTileCount() + " tiles", column);
+        }
+    }
+
+    private void addCell( char key, int index ) {
+        if ( cellCount == keys.length ) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            indexes = Arrays.copyOf(indexes, indexes.length * 2);
+        }
+        keys[cellCount] = key;
+        indexes[cellCount] = (short) index;
+        cellCount++;
+    }
+
+    private Zone createZone( String name, int width, int height ) throws ZoneFileFormatException {
+        Zone zone = new Zone(gm, name, sheetMap, width, height, mode);
+        MapLayer layer = zone.getMapLayer();
+        if ( layer instanceof CompactMapLayer ) {
+            ((CompactMapLayer) layer).setCells(
+                    CharBuffer.wrap(keys, 0, cellCount),
+                    ShortBuffer.wrap(indexes, 0, cellCount)
+            );
+        } else {
+            for ( int i = 0; i < cellCount; i++ ) {
+                Tile t = zone.createTile(keys[i], indexes[i], i % width, i / width, null);
+                if ( !(t instanceof MapTile) ) {
+                    throw error("Base tile " + keys[i] + indexes[i] + " at cell " + i + " is not a MapTile!", 1);
+                }
+                zone.placeTile(t);
+            }
+        }
+        keys = null;
+        indexes = null;
+
+        return zone;
+    }
+
+    /**
+     * base.N = flags
+     * item.N = mnemonic:flags
+     * entity.N = mnemonic:flags
+     */
+    private void parseFlagLine( Zone zone ) throws ZoneFileFormatException {
+        int len = line.length();
+        int pos = 0;
+        while ( pos < len && Character.isWhitespace(line.charAt(pos)) ) {
+            pos++;
+        }
+        if ( pos >= len || line.charAt(pos) == '#' || line.charAt(pos) == '!' ) {
+            return; // blank or comment
+        }
+
+        Class<? extends Tile> clazz;
+        if ( line.startsWith(Zone.BASE_PROP_KEY, pos) ) {
+            clazz = MapTile.class;
+            pos += Zone.BASE_PROP_KEY.length();
+        } else if ( line.startsWith(Zone.ITEM_PROP_KEY, pos) ) {
+            clazz = FixtureTile.class;
+            pos += Zone.ITEM_PROP_KEY.length();
+        } else if ( line.startsWith(Zone.ENTITY_PROP_KEY, pos) ) {
+            clazz = EntityTile.class;
+            pos += Zone.ENTITY_PROP_KEY.length();
+        } else {
+            log.log(Level.FINE, "Ignoring unknown zone file line {0}", lineNo);
+            return;
+        }
+
+        int start = pos;
+        int cell = 0;
+        while ( pos < len && line.charAt(pos) >= '0' && line.charAt(pos) <= '9' ) {
+            cell = cell * 10 + (line.charAt(pos) - '0');
+            if ( cell >= zone.getWidth() * zone.getHeight() ) {
+                throw error("Cell number is outside of the zone", start + 1);
+            }
+            pos++;
+        }
+        if ( pos == start ) {
+            throw error("Expected a cell number", pos + 1);
+        }
+
+        while ( pos < len && Character.isWhitespace(line.charAt(pos)) ) {
+            pos++;
+        }
+        if ( pos >= len || (line.charAt(pos) != '=' && line.charAt(pos) != ':') ) {
+            throw error("Expected '='", pos + 1);
+        }
+        pos++;
+        while ( pos < len && Character.isWhitespace(line.charAt(pos)) ) {
+            pos++;
+        }
+
+        int x = cell % zone.getWidth();
+        int y = cell / zone.getWidth();
+        int valueStart = pos;
+        try {
+            if ( clazz == MapTile.class ) {
+                zone.getMapLayer().applyFlags(x, y, line.substring(pos));
+                return;
+            }
+
+            if ( pos >= len || line.charAt(pos) < 'A' || line.charAt(pos) > 'Z' ) {
+                throw error("Expected a mnemonic", pos + 1);
+            }
+            char key = line.charAt(pos++);
+            if ( !sheetMap.containsKey(key) ) {
+                throw error("Sheet key '" + key + "' is not in the IDX table", pos);
+            }
+            int end = line.indexOf(':', pos);
+            if ( end < 0 ) {
+                end = len;
+            }
+            int index = Integer.parseInt(line, pos, end, 10);
+            String flags = end < len ? line.substring(end + 1) : null;
+            checkTile(key, index, valueStart + 1);
+
+            Tile t = zone.createTile(key, index, x, y, flags);
+            if ( clazz.isInstance(t) ) {
+                zone.placeTile(t);
+            } else {
+                log.log(Level.SEVERE,
+                        "Item tile at {0},{1} is not a {2}! Obj:{3}",
+                        x, y, clazz.getSimpleName(), t);
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+            throw error("Bad value: " + ex.getMessage(), valueStart + 1);
+        }
+    }
+}
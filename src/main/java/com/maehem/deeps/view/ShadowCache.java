@@ -0,0 +1,180 @@
+/*
+    Licensed to the Apache Software Foundation (ASF) under one or more 
+    contributor license agreements.  See the NOTICE file distributed with this
+    work for additional information regarding copyright ownership.  The ASF 
+    licenses this file to you under the Apache License, Version 2.0 
+    (the "License"); you may not use this file except in compliance with the 
+    License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software 
+    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the 
+    License for the specific language governing permissions and limitations 
+    under the License.
+ */
+package com.maehem.deeps.view;
+
+import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.EntityTile;
+import com.maehem.deeps.model.FixtureTile;
+import com.maehem.deeps.model.SheetModel;
+import com.maehem.deeps.model.Tile;
+import java.util.HashMap;
+import java.util.logging.Level;
+import javafx.geometry.Bounds;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.effect.BlurType;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.paint.Color;
+
+/**
+ * Sheet tiles with their drop shadow already drawn in.
+ *
+ * Each sheet tile, umbra and kind of tile is rendered once and the image
+ * is shared by every view that shows it, so no live effect is left on the
+ * scene graph.  Only to be used from the FX thread.
+ *
+ * @author Mark J Koch ( GitHub @maehem)
+ */
+final class ShadowCache {
+
+    /**
+     * Tile and shadow, at sheet image resolution.
+     */
+    static final class Baked {
+        final Image image;
+        final double offsetX; // Where the tile's top left is in the image.
+        final double offsetY;
+
+        private Baked( Image image, double offsetX, double offsetY ) {
+            this.image = image;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+    }
+
+    private static final class Key {
+        final long sheet;
+        final int index;
+        final int umbra;
+        final boolean entity;
+
+        Key( long sheet, int index, int umbra, boolean entity ) {
+            this.sheet = sheet;
+            this.index = index;
+            this.umbra = umbra;
+            this.entity = entity;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( !(o instanceof Key) ) {
+                return false;
+            }
+            Key k = (Key) o;
+            return sheet == k.sheet && index == k.index && umbra == k.umbra && entity == k.entity;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(sheet) * 31 * 31 * 2 + index * 31 * 2 + umbra * 2 + (entity ? 1 : 0);
+        }
+    }
+
+    private static final HashMap<Key, Baked> CACHE = new HashMap<>();
+
+    private ShadowCache() {}
+
+    /**
+     * @param tile to show
+     * @return umbra of tile, or 0 if it does not cast a shadow.
+     */
+    static int umbraOf( Tile tile ) {
+        if ( tile instanceof FixtureTile ) {
+            return Math.max(((FixtureTile) tile).getUmbra(), 0);
+        }
+        if ( tile instanceof EntityTile ) {
+            return Math.max(((EntityTile) tile).getUmbra(), 0);
+        }
+        return 0;
+    }
+
+    /**
+     * Image of a tile with its shadow, rendering it the first time it is
+     * asked for.
+     *
+     * @param sm sheet of tile
+     * @param tile to show
+     * @return tile and shadow, or null if the tile casts no shadow.
+     */
+    static Baked get( SheetModel sm, Tile tile ) {
+        return get(sm, tile.getIndex(), umbraOf(tile), tile instanceof EntityTile);
+    }
+
+    /**
+     * Same as get(sm, tile), for a sheet cell that has no Tile.
+     *
+     * @param sm sheet
+     * @param index cell of sheet
+     * @param umbra shadow strength, 0-99
+     * @param entity true to cast like an entity, false like a fixture
+     * @return tile and shadow, or null if umbra is 0 or less.
+     */
+    static Baked get( SheetModel sm, int index, int umbra, boolean entity ) {
+        if ( umbra <= 0 ) {
+            return null;
+        }
+        Key key = new Key(sm.getUID(), index, umbra, entity);
+        Baked b = CACHE.get(key);
+        if ( b == null ) {
+            b = bake(sm, index, umbra, entity);
+            CACHE.put(key, b);
+        }
+        return b;
+    }
+
+    private static Baked bake( SheetModel sm, int index, int umbra, boolean entity ) {
+        if ( log.isLoggable(Level.FINER) ) {
+            log.log(Level.FINER, "Bake shadow for sheet {0} tile {1} umbra {2}",
+                    sm.getName(), index, umbra);
+        }
+        double dSc = sm.getSize() * sm.getFidelity();
+        int cx = index % sm.getWidth();
+        int cy = index / sm.getWidth();
+
+        DropShadow dropShadow = new DropShadow();
+        dropShadow.setBlurType(BlurType.GAUSSIAN);
+        if ( entity ) {
+            dropShadow.setRadius(10.0);
+            dropShadow.setOffsetX(2.0);
+            dropShadow.setOffsetY(-10.0);
+        } else {
+            dropShadow.setRadius(16.0);
+            dropShadow.setOffsetX(0.0);
+            dropShadow.setOffsetY(16.0);
+        }
+        dropShadow.setColor(Color.color(0.0, 0.0, 0.0, umbra / 100.0));
+
+        ImageView view = new ImageView(sm.getImage());
+        view.setViewport(new Rectangle2D(cx * dSc, cy * dSc, dSc, dSc));
+        view.setEffect(dropShadow);
+
+        SnapshotParameters sp = new SnapshotParameters();
+        sp.setFill(Color.TRANSPARENT);
+        Bounds bounds = view.getBoundsInLocal();
+
+        return new Baked(view.snapshot(sp, null), -bounds.getMinX(), -bounds.getMinY());
+    }
+
+    /**
+     * Drop every baked image, i.e. when sheets are reloaded.
+     */
+    static void clear() {
+        CACHE.clear();
+    }
+}
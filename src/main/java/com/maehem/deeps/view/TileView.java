@@ -19,8 +19,6 @@ package com.maehem.deeps.view;
 import static com.maehem.deeps.Deeps.log;
 import com.maehem.deeps.model.EntityTile;
 import com.maehem.deeps.model.FixtureTile;
-import static com.maehem.deeps.model.FixtureTile.SHAD;
-import com.maehem.deeps.model.IntegerTileProperty;
 import com.maehem.deeps.model.MapTile;
 import com.maehem.deeps.model.SheetModel;
 import com.maehem.deeps.model.Tile;
@@ -31,8 +29,6 @@ import java.util.logging.Level;
 import javafx.geometry.Bounds;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Group;
-import javafx.scene.effect.BlurType;
-import javafx.scene.effect.DropShadow;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
@@ -52,7 +48,6 @@ public class TileView extends Group implements TileListener {
     private final double dSc; // image tile dimension
     private final Zone zone;
     private final Rectangle greyOut;
-    private DropShadow dropShadow = new DropShadow();
 
     public TileView(Tile tm, Zone zone) {
         this.zone = zone;
@@ -90,51 +85,37 @@ public class TileView extends Group implements TileListener {
         view.setScaleX(1.0 / sm.getFidelity());
         view.setScaleY(1.0 / sm.getFidelity());
 
-        int cx = tile.getIndex() % sm.getWidth();
-        int cy = tile.getIndex() / sm.getWidth();
-
-        view.setViewport(new Rectangle2D(cx * dSc, cy * dSc, dSc, dSc));
-
         greyOut.setFill(Color.DARKGRAY);
         greyOut.setOpacity(0.5);
         greyOut.setVisible(false);
 
-        if ( getTile() instanceof FixtureTile  ) {
-            int umbra = ((FixtureTile)getTile()).getUmbra();
-            log.log(Level.FINER, "Tile is a FixtureTile:  umbra={0}", umbra);
-            if ( umbra > 0 ) {
-                dropShadow.setBlurType(BlurType.GAUSSIAN);
-                dropShadow.setRadius(16.0);
-                dropShadow.setOffsetX(0.0);
-                dropShadow.setOffsetY(16.0);
-                setDropShadow(umbra);
-                view.setEffect(dropShadow);
-            }
-        }
-        if ( getTile() instanceof EntityTile  ) {
-            int umbra = ((EntityTile)getTile()).getUmbra();
-            log.log(Level.FINER, "Tile is a EntityTile:  SHAD={0}", umbra);
-            if ( umbra > 0 ) {
-                dropShadow.setBlurType(BlurType.GAUSSIAN);
-                dropShadow.setRadius(10.0);
-                dropShadow.setOffsetX(2.0);
-                dropShadow.setOffsetY(-10.0);
-                setDropShadow(umbra);
-                view.setEffect(dropShadow);
-                this.setTranslateY(-3.0);
-            }
-        }
-               
         this.getChildren().addAll(new StackPane(new Group(view), greyOut));
+        updateImage(sm);
+    }
+
+    /**
+     * Show the tile's sheet cell, or its pre-baked image when it casts a
+     * drop shadow.
+     */
+    private void updateImage(SheetModel sm) {
+        ShadowCache.Baked baked = ShadowCache.get(sm, tile);
+        if ( baked != null ) {
+            log.log(Level.FINER, "Tile casts shadow:  umbra={0}", ShadowCache.umbraOf(tile));
+            view.setImage(baked.image);
+            view.setViewport(null);
+        } else {
+            int cx = tile.getIndex() % sm.getWidth();
+            int cy = tile.getIndex() / sm.getWidth();
+            view.setImage(sm.getImage());
+            view.setViewport(new Rectangle2D(cx * dSc, cy * dSc, dSc, dSc));
+        }
+        this.setTranslateY(baked != null && tile instanceof EntityTile ? -3.0 : 0.0);
+
         Bounds bounds = view.getBoundsInParent(); // when a drop shadow, adjust position.
         this.setLayoutX(tile.getX() * dim  - (bounds.getWidth()-dim)/2.0 );
         this.setLayoutY(tile.getY() * dim  - (bounds.getHeight()-dim)/2.0 );
     }
 
-    private void setDropShadow( int val ) {
-        dropShadow.setColor(Color.color(0.0, 0.0, 0.0, val/100.0 ));        
-    }
-    
     public final int getSize() {
         return dim;
     }
@@ -146,18 +127,14 @@ public class TileView extends Group implements TileListener {
     @Override
     public void tileCodeChanged(Tile tile) {
         log.log(Level.INFO, "Tile code changed. {0},{1}  {2}:{3}",
-                new Object[]{
-                    tile.getX(), tile.getY(),
+                tile.getX(), tile.getY(),
                     tile.getMnemonic(), tile.getDescription()
-                }
         );
         // Sheet might have changed.  Need to get it.
         SheetModel sm = zone.getSheet(tile.getSheet());
-        int cx = tile.getIndex() % sm.getWidth();
-        int cy = tile.getIndex() / sm.getWidth();
         updateTileVisible();
         setGrey(false);
-        view.setViewport(new Rectangle2D(cx * dSc, cy * dSc, dSc, dSc));
+        updateImage(sm);
     }
 
     private void updateTileVisible() {
@@ -195,25 +172,13 @@ public class TileView extends Group implements TileListener {
     @Override
     public void tilePropertyChanged(TileProperty property) {
         log.log(Level.FINER, "TileView: Tile Property changed: {0}", property.getFlag());
-        if ( property.getParent() instanceof FixtureTile ) {
-            //FixtureTile t = (FixtureTile) property.getParent();
-            switch (property.getFlag() ) {
-                case FixtureTile.SHAD:
-                    if ( property instanceof IntegerTileProperty ) {
-                        setDropShadow(((IntegerTileProperty) property).getValue());
-                    }
-                    break;
-            }
+        if ( zone == null ) {
+            return;
         }
-        if ( property.getParent() instanceof EntityTile ) {
-            //EntityTile t = (EntityTile) property.getParent();
-            switch (property.getFlag() ) {
-                case EntityTile.SHAD:
-                    if ( property instanceof IntegerTileProperty ) {
-                        setDropShadow(((IntegerTileProperty) property).getValue());
-                    }
-                    break;
-            }
+        if ( (property.getParent() instanceof FixtureTile && property.getFlag().equals(FixtureTile.SHAD))
+                || (property.getParent() instanceof EntityTile && property.getFlag().equals(EntityTile.SHAD)) ) {
+            // Only a new umbra gets baked, others come from the cache.
+            updateImage(zone.getSheet(tile.getSheet()));
         }
     }
 }
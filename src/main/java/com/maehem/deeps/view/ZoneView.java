@@ -17,13 +17,29 @@
 package com.maehem.deeps.view;
 
 import static com.maehem.deeps.Deeps.log;
+import com.maehem.deeps.model.EntityTile;
+import com.maehem.deeps.model.FixtureTile;
 import com.maehem.deeps.model.MapTile;
+import com.maehem.deeps.model.SheetModel;
 import com.maehem.deeps.model.Tile;
 import com.maehem.deeps.model.ZoneListener;
 import com.maehem.deeps.model.Zone;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
+import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Scale;
 
 /**
  *
@@ -31,18 +47,87 @@ import javafx.scene.Node;
  */
 public class ZoneView extends Group implements ZoneListener {
 
+    /**
+     * How the zone is put on screen.
+     * 
+     * NODES makes a TileView for every tile.  CANVAS draws every layer
+     * onto a single Canvas, so the node count does not grow with the zone.
+     */
+    public static enum RenderMode {
+        NODES, CANVAS
+    }
+
+    private static final double FIXTURE_GREY_OPACITY = 0.2;
+    private static final int SHADOW_REACH = 32; // Furthest a drop shadow spills past its tile, in pixels.
+    private static final int VIEWPORT_MARGIN = 8; // Cells drawn past each edge of the viewport.
+    private static final int INITIAL_WINDOW = 128; // Cells drawn before the viewport is known.
+    private static final double MAX_CANVAS = 8192; // Widest canvas, in pixels.  Most GPUs allow no more.
+    private static final int MAX_LIGHT = Tile.LUMINOUS_MAX;
+
     private final Zone zone;
+    private final RenderMode mode;
     private int focusX = 0;
     private int focusY = 0;
+    private Class<? extends Tile> active = null; // Layer not muted.  null: none muted.
+    private boolean entitiesShown = true;
+
+    // NODES mode only.  The view of each cell by layer, index y*width+x.
+    private final Group mapNodes = new Group();
+    private final Group fixtureNodes = new Group();
+    private final Group entityNodes = new Group();
+    private TileView[] mapViews;
+    private TileView[] fixtureViews;
+    private TileView[] entityViews;
+
+    // CANVAS mode only.
+    private Canvas canvas;
+    private final Scale canvasScale = new Scale(1.0, 1.0, 0, 0);
+    private double renderScale = 1.0; // Canvas pixels per view pixel, as asked for.
+    private double drawScale = 1.0;   // Same, as drawn.  Less for a window too big for it.
+    private int dim;
+    private int margin;  // SHADOW_REACH in cells.
+    private int wx0, wy0, wx1, wy1; // Cells the canvas covers, inclusive.
+    private final BitSet dirty = new BitSet();
+    private boolean windowMoved = false;
+    private boolean redrawPending = false;
+    private int rx0 = Integer.MAX_VALUE, ry0, rx1, ry1; // Dirty area from repaint().
+    private byte[] light = null;  // Light level by cell, 0-99.  null for none.
+    private int ambient = 0;      // Least light any cell gets.
+    private final SheetModel[] sheets = new SheetModel[26]; // A-Z, looked up once.
+    private int sheetsVersion;
 
     public ZoneView(Zone zm) {
+        this(zm, RenderMode.NODES);
+    }
+
+    public ZoneView(Zone zm, RenderMode mode) {
         this.zone = zm;
-        log.log(Level.INFO, "Create ZoneView for : {0}", zm.getName());
+        this.mode = mode;
+        log.log(Level.INFO, "Create ZoneView for : {0}  mode: {1}", zm.getName(), mode);
+
+        switch (mode) {
+            case CANVAS:
+                buildCanvas();
+                break;
+            default:
+                buildNodes();
+        }
+        zone.addListener(this);
+    }
 
+    /**
+     * A Group per layer, map at the bottom, each holding a TileView for
+     * every tile of that layer.
+     */
+    private void buildNodes() {
+        int cells = zone.getWidth() * zone.getHeight();
+        mapViews = new TileView[cells];
+        fixtureViews = new TileView[cells];
+        entityViews = new TileView[cells];
+        getChildren().addAll(mapNodes, fixtureNodes, entityNodes);
         buildMap();
         buildFixtures();
         buildEntities();
-        zone.addListener(this);
     }
 
     /**
@@ -54,12 +139,11 @@ public class ZoneView extends Group implements ZoneListener {
             for (int x = 0; x < zone.getWidth(); x++) {
                 Tile tm = zone.getMapTile(x, y);
                 if (tm != null) {
-                    TileView t = new TileView(tm, zone); //, x, y);                
-                    getChildren().add(t);
+                    mapNodes.getChildren().add(newView(tm));
                 } else {
                     log.log(Level.SEVERE,
                             "Zone: {0} MapTile {2}x{3} didn''t load!",
-                            new Object[]{zone.getName(), x, y});
+                            zone.getName(), x, y);
                     // TODO: Maybe throw since all map cells should have an object.
                 }
             }
@@ -76,8 +160,7 @@ public class ZoneView extends Group implements ZoneListener {
                         continue;  // Don't place Fixture.index 0 tiles.
                     }
 
-                    TileView t = new TileView(tm, zone); //, x, y);                
-                    getChildren().add(t);
+                    fixtureNodes.getChildren().add(newView(tm));
                 } 
             }
         }
@@ -93,13 +176,457 @@ public class ZoneView extends Group implements ZoneListener {
                         continue;  // Don't place Entity.index 0 tiles.
                     }
 
-                    TileView t = new TileView(tm, zone); //, x, y);                
-                    getChildren().add(t);
+                    entityNodes.getChildren().add(newView(tm));
                 } 
             }
         }
     }
 
+    /**
+     * Make the view of a tile and note it as the view of its cell.
+     * NODES mode only.
+     */
+    private TileView newView( Tile t ) {
+        TileView tv = new TileView(t, zone);
+        tv.setGrey(active != null && !active.isInstance(t));
+        viewsOf(t)[t.getY() * zone.getWidth() + t.getX()] = tv;
+        return tv;
+    }
+
+    private TileView[] viewsOf( Tile t ) {
+        if ( t instanceof MapTile ) {
+            return mapViews;
+        }
+        return t instanceof FixtureTile ? fixtureViews : entityViews;
+    }
+
+    private Group nodesOf( Tile t ) {
+        if ( t instanceof MapTile ) {
+            return mapNodes;
+        }
+        return t instanceof FixtureTile ? fixtureNodes : entityNodes;
+    }
+
+    /**
+     * One Canvas, covering the top left of the zone until told what part
+     * of it is visible.  Tile size comes from the sheet of the first map tile, as
+     * it does for the editor highlights.
+     */
+    private void buildCanvas() {
+        log.log(Level.CONFIG, "    Build Canvas");
+        dim = zone.getSheet(zone.getMapSheetKey(0, 0)).getSize();
+        margin = (SHADOW_REACH + dim - 1) / dim;
+
+        // Keeps the bounds of the view the size of the whole zone.
+        Rectangle extent = new Rectangle(zone.getWidth() * dim, zone.getHeight() * dim);
+        extent.setFill(Color.TRANSPARENT);
+        extent.setMouseTransparent(true);
+
+        canvas = new Canvas();
+        canvas.setMouseTransparent(true);
+        canvas.getTransforms().add(canvasScale);
+        getChildren().addAll(extent, canvas);
+        setWindow(0, 0,
+                Math.min(zone.getWidth(), INITIAL_WINDOW) - 1,
+                Math.min(zone.getHeight(), INITIAL_WINDOW) - 1
+        );
+    }
+
+    /**
+     * Tell the view which cells are on screen.  In CANVAS mode only those
+     * cells, and a few around them, are drawn.  The canvas is only moved
+     * once the visible cells leave it or it grows much larger than needed,
+     * so scrolling a little does not redraw anything.
+     * 
+     * In NODES mode every tile always has a view and this does nothing.
+     * 
+     * @param x0 left most visible cell
+     * @param y0 top most visible cell
+     * @param x1 right most visible cell
+     * @param y1 bottom most visible cell
+     */
+    public void setViewport( int x0, int y0, int x1, int y1 ) {
+        if ( mode != RenderMode.CANVAS ) {
+            return;
+        }
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, zone.getWidth() - 1);
+        y1 = Math.min(y1, zone.getHeight() - 1);
+        boolean inside = x0 >= wx0 && y0 >= wy0 && x1 <= wx1 && y1 <= wy1;
+        boolean tooBig = (wx1 - wx0) > (x1 - x0) + 4 * VIEWPORT_MARGIN
+                || (wy1 - wy0) > (y1 - y0) + 4 * VIEWPORT_MARGIN;
+        if ( inside && !tooBig ) {
+            return;
+        }
+        setWindow(
+                Math.max(x0 - VIEWPORT_MARGIN, 0),
+                Math.max(y0 - VIEWPORT_MARGIN, 0),
+                Math.min(x1 + VIEWPORT_MARGIN, zone.getWidth() - 1),
+                Math.min(y1 + VIEWPORT_MARGIN, zone.getHeight() - 1)
+        );
+    }
+
+    /**
+     * Move and size the canvas over cells x0,y0 to x1,y1 and draw them all
+     * on the next pulse.
+     */
+    private void setWindow( int x0, int y0, int x1, int y1 ) {
+        if ( log.isLoggable(Level.FINE) ) {
+            log.log(Level.FINE, "ZoneView[{0}] window: {1},{2} to {3},{4}",
+                    new Object[]{zone.getName(), x0, y0, x1, y1});
+        }
+        wx0 = x0;
+        wy0 = y0;
+        wx1 = x1;
+        wy1 = y1;
+        drawScale = Math.min(renderScale, MAX_CANVAS / ((Math.max(x1 - x0, y1 - y0) + 1) * dim));
+        canvasScale.setX(1.0 / drawScale);
+        canvasScale.setY(1.0 / drawScale);
+        canvas.setWidth(Math.ceil((x1 - x0 + 1) * dim * drawScale));
+        canvas.setHeight(Math.ceil((y1 - y0 + 1) * dim * drawScale));
+        canvas.setLayoutX(x0 * dim);
+        canvas.setLayoutY(y0 * dim);
+        windowMoved = true;
+        dirty.clear();
+        scheduleRedraw();
+    }
+
+    /**
+     * Draw the canvas at a larger or smaller size than the view, i.e. at the
+     * zoom of a parent that scales the view.  Tiles are then drawn from the
+     * sheet image at that size and stay sharp, up to the sheet's fidelity.
+     * CANVAS mode only.
+     * 
+     * @param scale canvas pixels per view pixel
+     */
+    public void setRenderScale( double scale ) {
+        if ( mode != RenderMode.CANVAS || scale <= 0 || scale == renderScale ) {
+            return;
+        }
+        renderScale = scale;
+        setWindow(wx0, wy0, wx1, wy1);
+    }
+
+    /**
+     * Mark a cell to be drawn again on the next pulse.  Cells too far off
+     * the canvas for their shadow to reach it are ignored.
+     * 
+     * @param x grid X
+     * @param y grid Y
+     */
+    private void markDirty( int x, int y ) {
+        if ( x < wx0 - margin || y < wy0 - margin || x > wx1 + margin || y > wy1 + margin ) {
+            return;
+        }
+        if ( x < 0 || y < 0 || x >= zone.getWidth() || y >= zone.getHeight() ) {
+            return;
+        }
+        dirty.set(y * zone.getWidth() + x);
+        scheduleRedraw();
+    }
+
+    /**
+     * Draw cells x0,y0 to x1,y1 again, i.e. after the light on them changed.
+     * CANVAS mode only.
+     */
+    public void repaint( int x0, int y0, int x1, int y1 ) {
+        if ( mode != RenderMode.CANVAS ) {
+            return;
+        }
+        x0 = Math.max(x0, wx0);
+        y0 = Math.max(y0, wy0);
+        x1 = Math.min(x1, wx1);
+        y1 = Math.min(y1, wy1);
+        if ( x0 > x1 || y0 > y1 ) {
+            return;
+        }
+        if ( rx0 == Integer.MAX_VALUE ) {
+            rx0 = x0;
+            ry0 = y0;
+            rx1 = x1;
+            ry1 = y1;
+        } else {
+            rx0 = Math.min(rx0, x0);
+            ry0 = Math.min(ry0, y0);
+            rx1 = Math.max(rx1, x1);
+            ry1 = Math.max(ry1, y1);
+        }
+        scheduleRedraw();
+    }
+
+    /**
+     * Darken each cell by how little light it gets.  CANVAS mode only.
+     * 
+     * @param levels light of each cell, 0-99, row by row.  The view reads
+     *        it each time it draws, so call repaint() when it changes.
+     *        null to draw everything fully lit.
+     * @param ambient light level every cell has at least, 0-99
+     */
+    public void setLightMap( byte[] levels, int ambient ) {
+        this.light = levels;
+        this.ambient = ambient;
+        if ( mode == RenderMode.CANVAS ) {
+            markAllDirty();
+        }
+    }
+
+    private void markAllDirty() {
+        windowMoved = true;
+        scheduleRedraw();
+    }
+
+    private void scheduleRedraw() {
+        if ( !redrawPending ) {
+            redrawPending = true;
+            Platform.runLater(this::redrawDirty);
+        }
+    }
+
+    /**
+     * Draw every dirty cell, all at once.  When most of the canvas is dirty
+     * it is cheaper to draw it all than cell by cell.
+     */
+    private void redrawDirty() {
+        redrawPending = false;
+        int w = zone.getWidth();
+        int windowCells = (wx1 - wx0 + 1) * (wy1 - wy0 + 1);
+        if ( windowMoved ) {
+            // Chunked zones load what is about to be drawn and may drop the rest.
+            zone.setFocusArea(wx0, wy0, wx1, wy1);
+        }
+        if ( windowMoved || dirty.cardinality() > windowCells / 4 ) {
+            drawRegion(wx0, wy0, wx1, wy1);
+        } else {
+            if ( rx0 != Integer.MAX_VALUE ) {
+                drawRegion(rx0, ry0, rx1, ry1);
+            }
+            for ( int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1) ) {
+                int x = i % w;
+                int y = i / w;
+                // Old shadow of this cell may have spilled onto its neighbors.
+                drawRegion(x - margin, y - margin, x + margin, y + margin);
+            }
+        }
+        windowMoved = false;
+        dirty.clear();
+        rx0 = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Clear and draw again the cells x0,y0 to x1,y1, inclusive, as far as
+     * they are on the canvas.  Fixtures and entities just outside the
+     * region are drawn too, clipped, as their shadows can reach into it.
+     */
+    private void drawRegion( int x0, int y0, int x1, int y1 ) {
+        x0 = Math.max(x0, wx0);
+        y0 = Math.max(y0, wy0);
+        x1 = Math.min(x1, wx1);
+        y1 = Math.min(y1, wy1);
+        if ( x0 > x1 || y0 > y1 ) {
+            return;
+        }
+
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.save();
+        gc.scale(drawScale, drawScale);
+        gc.translate(-wx0 * dim, -wy0 * dim);
+        gc.beginPath();
+        gc.rect(x0 * dim, y0 * dim, (x1 - x0 + 1) * dim, (y1 - y0 + 1) * dim);
+        gc.clip();
+        gc.clearRect(x0 * dim, y0 * dim, (x1 - x0 + 1) * dim, (y1 - y0 + 1) * dim);
+
+        // Map cells are drawn from the zone's map layer, without tiles.
+        char key = 0;
+        SheetModel sm = null;
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                char k = zone.getMapSheetKey(x, y);
+                if ( k != key ) {
+                    key = k;
+                    sm = sheetOf(k);
+                }
+                if ( sm != null ) {
+                    drawCell(gc, sm, zone.getMapTileIndex(x, y), null, false, x * dim, y * dim);
+                }
+            }
+        }
+        if ( isMuted(MapTile.class) ) {
+            gc.setFill(Color.DARKGRAY);
+            gc.setGlobalAlpha(0.5);
+            gc.fillRect(x0 * dim, y0 * dim, (x1 - x0 + 1) * dim, (y1 - y0 + 1) * dim);
+            gc.setGlobalAlpha(1.0);
+        }
+
+        int sx0 = Math.max(x0 - margin, 0);
+        int sy0 = Math.max(y0 - margin, 0);
+        int sx1 = Math.min(x1 + margin, zone.getWidth() - 1);
+        int sy1 = Math.min(y1 + margin, zone.getHeight() - 1);
+        gc.setGlobalAlpha(isMuted(FixtureTile.class) ? FIXTURE_GREY_OPACITY : 1.0);
+        for (int y = sy0; y <= sy1; y++) {
+            for (int x = sx0; x <= sx1; x++) {
+                Tile t = zone.getFixtureTile(x, y);
+                if ( t != null && t.getIndex() > 0 ) {
+                    drawTile(gc, t);
+                }
+            }
+        }
+        gc.setGlobalAlpha(isMuted(EntityTile.class) ? FIXTURE_GREY_OPACITY : 1.0);
+        for (int y = sy0; entitiesShown && y <= sy1; y++) {
+            for (int x = sx0; x <= sx1; x++) {
+                Tile t = zone.getEntityTile(x, y);
+                if ( t != null && t.getIndex() > 0 ) {
+                    drawTile(gc, t);
+                }
+            }
+        }
+        if ( light != null ) {
+            drawLight(gc, x0, y0, x1, y1);
+        }
+        gc.restore();
+    }
+
+    /**
+     * Shade cells x0,y0 to x1,y1 black by how dark they are.  Runs of cells
+     * with the same level are filled together.
+     */
+    private void drawLight( GraphicsContext gc, int x0, int y0, int x1, int y1 ) {
+        int w = zone.getWidth();
+        gc.setFill(Color.BLACK);
+        for (int y = y0; y <= y1; y++) {
+            int x = x0;
+            while ( x <= x1 ) {
+                int lvl = Math.max(light[y * w + x], ambient);
+                int run = x + 1;
+                while ( run <= x1 && Math.max(light[y * w + run], ambient) == lvl ) {
+                    run++;
+                }
+                if ( lvl < MAX_LIGHT ) {
+                    gc.setGlobalAlpha(1.0 - (double) lvl / MAX_LIGHT);
+                    gc.fillRect(x * dim, y * dim, (run - x) * dim, dim);
+                }
+                x = run;
+            }
+        }
+        gc.setGlobalAlpha(1.0);
+    }
+
+    /**
+     * Draw one tile at its cell, with its drop shadow if it has one.
+     */
+    private void drawTile( GraphicsContext gc, Tile t ) {
+        SheetModel sm = sheetOf(t.getSheet());
+        drawCell(gc, sm, t.getIndex(), ShadowCache.get(sm, t), t instanceof EntityTile,
+                t.getX() * dim, t.getY() * dim);
+    }
+
+    /**
+     * Draw an entity sprite anywhere, i.e. one that is between cells while
+     * it moves.  The sprite gets the same drop shadow an EntityTile would.
+     * 
+     * @param gc where to draw
+     * @param sheet sheet key of the sprite, as on a Tile
+     * @param index cell of sheet
+     * @param umbra drop shadow, 0-99.  0 or less for none.
+     * @param x pixel x of the sprite's top left corner in gc
+     * @param y pixel y of the sprite's top left corner in gc
+     */
+    public void drawEntity( GraphicsContext gc, char sheet, int index, int umbra, double x, double y ) {
+        SheetModel sm = sheetOf(sheet);
+        if ( sm != null ) {
+            drawCell(gc, sm, index, ShadowCache.get(sm, index, umbra, true), true, x, y);
+        }
+    }
+
+    /**
+     * The zone's sheet for a key, kept so that drawing doesn't look it up
+     * every frame.  Dropped when the zone's sheets change.
+     */
+    private SheetModel sheetOf( char key ) {
+        if ( key < 'A' || key > 'Z' ) {
+            return zone.getSheet(key);
+        }
+        if ( sheetsVersion != zone.getSheetsVersion() ) {
+            sheetsVersion = zone.getSheetsVersion();
+            Arrays.fill(sheets, null);
+        }
+        SheetModel sm = sheets[key - 'A'];
+        if ( sm == null ) {
+            sm = zone.getSheet(key);
+            sheets[key - 'A'] = sm;
+        }
+        return sm;
+    }
+
+    private void drawCell( GraphicsContext gc, SheetModel sm, int index,
+            ShadowCache.Baked baked, boolean entity, double dx, double dy ) {
+        double fidelity = sm.getFidelity();
+        int size = sm.getSize();
+        if ( baked != null ) {
+            if ( entity ) {
+                dy -= 3.0;
+            }
+            gc.drawImage(baked.image,
+                    dx - baked.offsetX / fidelity, dy - baked.offsetY / fidelity,
+                    baked.image.getWidth() / fidelity, baked.image.getHeight() / fidelity
+            );
+            return;
+        }
+        double dSc = size * fidelity;
+        int cx = index % sm.getWidth();
+        int cy = index / sm.getWidth();
+        gc.drawImage(sm.getImage(), cx * dSc, cy * dSc, dSc, dSc, dx, dy, size, size);
+    }
+
+    private boolean isMuted( Class<? extends Tile> layer ) {
+        return active != null && active != layer;
+    }
+
+    /**
+     * Grey out every layer except one, i.e. the layer being stamped.
+     * 
+     * @param layer MapTile, FixtureTile or EntityTile class.  null for none muted.
+     */
+    public void setMuted( Class<? extends Tile> layer ) {
+        this.active = layer;
+        if ( mode == RenderMode.CANVAS ) {
+            markAllDirty();
+            return;
+        }
+        for (Group g : new Group[]{mapNodes, fixtureNodes, entityNodes}) {
+            for (Node n : g.getChildren()) {
+                TileView tv = (TileView) n;
+                tv.setGrey(layer != null && !layer.isInstance(tv.getTile()));
+            }
+        }
+    }
+
+    /**
+     * Show or hide the entity layer, i.e. when the game draws entities
+     * itself as they move.
+     * 
+     * @param show false to leave entities out
+     */
+    public void setEntitiesShown( boolean show ) {
+        if ( show == entitiesShown ) {
+            return;
+        }
+        this.entitiesShown = show;
+        if ( mode == RenderMode.CANVAS ) {
+            markAllDirty();
+            return;
+        }
+        entityNodes.setVisible(show);
+    }
+
+    public boolean isEntitiesShown() {
+        return entitiesShown;
+    }
+
+    public RenderMode getRenderMode() {
+        return mode;
+    }
+
     public final Zone getModel() {
         return zone;
     }
@@ -120,48 +647,110 @@ public class ZoneView extends Group implements ZoneListener {
         this.focusY = y;
     }
     
+    /**
+     * Tiles pass their code and property changes on to the zone, so in
+     * CANVAS mode there is no need to listen to each tile.
+     */
     @Override
     public void zoneTileChanged(Tile t) {
+        if ( mode == RenderMode.CANVAS ) {
+            markDirty(t.getX(), t.getY());
+        }
     }
 
     @Override
     public void zoneTileSwapped(Tile tOld, Tile tNew) {
-        if (tOld == null) { // Add new non-map tile.
-            if (tOld instanceof MapTile) {
-                log.log(Level.SEVERE, 
-                        "Tried to insert MapTile where there was previously no tile.\n" +
-                        "    This should not be possible!"
-                );
-                return;
-            }
-            log.log(Level.INFO, "New non-map Tile created at: {0}x{1}", new Object[]{tNew.getX(), tNew.getY()});
-            TileView tvNew = new TileView(tNew, zone);
-            tvNew.setGrey(false);
-            getChildren().add(tvNew);
-        } else {
-            for (Node n : getChildrenUnmodifiable()) {
-                if (n instanceof TileView) {
-                    TileView tv = (TileView) n;
-                    if (tv.getTile().equals(tOld)) {
-                        int idx = getChildren().indexOf(tv);
-                        Node node = getChildren().get(idx);
-                        if (node instanceof TileView) {
-                            TileView tvOld = (TileView) node;
-                            tvOld.getTile().removeListener(tvOld);
-                        }
-                        if ( tNew != null ) {
-                            log.log(Level.INFO, "Swapped Tile at: {0}x{1}", new Object[]{tNew.getX(), tNew.getY()});
-                            TileView tvNew = new TileView(tNew, zone);
-                            tvNew.setGrey(tv.isGrey()); // copy grey value from old tile
-                            getChildren().set(idx, tvNew);
-                        } else {
-                            getChildren().remove(idx);
-                        }
-                        return;
-                    }
+        if ( mode == RenderMode.CANVAS ) {
+            if ( tOld != null ) {
+                markDirty(tOld.getX(), tOld.getY());
+            }
+            if ( tNew != null ) {
+                markDirty(tNew.getX(), tNew.getY());
+            }
+            return;
+        }
+        Tile t = tNew != null ? tNew : tOld;
+        int c = t.getY() * zone.getWidth() + t.getX();
+        TileView[] views = viewsOf(t);
+        Group layer = nodesOf(t);
+        TileView tvOld = views[c];
+        views[c] = null;
+        if ( tvOld != null ) {
+            tvOld.getTile().removeListener(tvOld);
+            layer.getChildren().remove(tvOld);
+        }
+        if ( tNew != null && (tNew instanceof MapTile || tNew.getIndex() != 0) ) {
+            if ( log.isLoggable(Level.FINE) ) {
+                log.log(Level.FINE, "Swapped Tile at: {0}x{1}", tNew.getX(), tNew.getY());
+            }
+            layer.getChildren().add(newView(tNew));
+        }
+    }
+
+    /**
+     * In NODES mode the views of the area are dropped and made again from
+     * what the zone holds now, with one change to each layer.
+     */
+    @Override
+    public void zoneAreaChanged(int x0, int y0, int x1, int y1) {
+        if ( mode == RenderMode.CANVAS ) {
+            // Old shadows may have spilled past the area.
+            repaint(x0 - margin, y0 - margin, x1 + margin, y1 + margin);
+            return;
+        }
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, zone.getWidth() - 1);
+        y1 = Math.min(y1, zone.getHeight() - 1);
+        Set<Node> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayList<Node> maps = new ArrayList<>();
+        ArrayList<Node> fixtures = new ArrayList<>();
+        ArrayList<Node> entities = new ArrayList<>();
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                int c = y * zone.getWidth() + x;
+                drop(mapViews, c, gone);
+                drop(fixtureViews, c, gone);
+                drop(entityViews, c, gone);
+                Tile m = zone.getMapTile(x, y);
+                if ( m != null ) {
+                    maps.add(newView(m));
+                }
+                Tile f = zone.getFixtureTile(x, y);
+                if ( f != null && f.getIndex() != 0 ) {
+                    fixtures.add(newView(f));
+                }
+                Tile e = zone.getEntityTile(x, y);
+                if ( e != null && e.getIndex() != 0 ) {
+                    entities.add(newView(e));
                 }
             }
         }
+        replace(mapNodes, gone, maps);
+        replace(fixtureNodes, gone, fixtures);
+        replace(entityNodes, gone, entities);
+    }
+
+    private static void drop( TileView[] views, int c, Set<Node> gone ) {
+        TileView tv = views[c];
+        if ( tv != null ) {
+            tv.getTile().removeListener(tv);
+            gone.add(tv);
+            views[c] = null;
+        }
     }
 
+    private static void replace( Group layer, Set<Node> gone, List<Node> added ) {
+        if ( gone.isEmpty() && added.isEmpty() ) {
+            return;
+        }
+        ArrayList<Node> all = new ArrayList<>(layer.getChildren().size() + added.size());
+        for (Node n : layer.getChildren()) {
+            if ( !gone.contains(n) ) {
+                all.add(n);
+            }
+        }
+        all.addAll(added);
+        layer.getChildren().setAll(all);
+    }
 }
@@ -1,5 +1,5 @@
 module com.maehem.deeps {
-    requires java.logging;
+    requires transitive java.logging;
     requires javafx.controls;
 
     exports com.maehem.deeps;